@@ -24,6 +24,20 @@ import com.twitter.scalding.{TupleConverter, Tsv, Args}
 import org.kiji.express.flow.{KijiJob, Column, KijiInput}
 import org.kiji.express.KijiSlice
 
+/**
+ * Computes the top senders and the top (sender, recipient) pairs of the emails table.
+ *
+ * Options:
+ * <ul>
+ *   <li><code>--topk 10</code>: the number of senders and pairs to output.</li>
+ *   <li><code>--approximate</code>: count with Space-Saving summaries on the map side instead of
+ *       counting every sender and pair exactly. Only one summary per mapper is shuffled, and the
+ *       outputs get an extra last column: the maximum overestimate of each count.</li>
+ *   <li><code>--sketch-capacity N</code>: the number of counters of each summary, by default
+ *       the larger of 1000 and 100 times the top K. The counts are overestimated by at most the
+ *       number of messages divided by the capacity.</li>
+ * </ul>
+ */
 class EnronEmailSummaryCompleted(args: Args) extends KijiJob(args) {
 
   lazy val log = LoggerFactory.getLogger(getClass)
@@ -35,35 +49,56 @@ class EnronEmailSummaryCompleted(args: Args) extends KijiJob(args) {
   // Parse arguments
   val inputUri: String = args("input")
   val outputUri: String = args("output")
+  val topK: Int = args.getOrElse("topk", "10").toInt
+  val approximate: Boolean = args.boolean("approximate")
+  val sketchCapacity: Int =
+    args.getOrElse("sketch-capacity", math.max(1000, 100 * topK).toString).toInt
 
   /**
-   * Configure a pipe to compute top 10 email senders
+   * Configure a pipe to compute top K email senders
    */
   // Configure an input source -- The "from" column in our HBase table mapped to the 'from field in our pipe
-  KijiInput(inputUri)(Map(Column("info:from") -> 'from))
+  val senders = KijiInput(inputUri)(Map(Column("info:from") -> 'from))
     // KijiInput provides a KijiSlice which is a collection of cells for the requested column(s)
     // We are interested in the value of each cell, which is a string representing a from email address, so
     // we do a flat map to store the strings in the 'fromStr field
     .flatMapTo('from -> 'fromStr) { from: KijiSlice[String] =>
       from.cells.map(cell => cell.datum) }
-    // Here we group by each sender. The group by gives us a GroupBuilder which allows us to call reduce-type
-    // functions on each group. Here we call size to compute the size of each group. We optionally store it to
-    // the named tuple field 'emailCount
-    .groupBy('fromStr) { _.size('emailCount) }
-    // Since 'emailCount didn't exist when the first groupBy was called, we must do our sorting in a separate
-    // call to a grouping function. But... because we already did our grouping, we can call groupAll which
-    // will simply place everything into one group. We do a reverse sort (descending) by emailCount
-    .groupAll { _.sortBy('emailCount).reverse }
-    // Now since everything is in the correct order, we can limit our output to 10 values
-    .limit(10)
-    // And write it to an output file in HDFS. We could also write to a KijiTable or a number of other sinks
-    .write(Tsv(outputUri + sep + "top-senders-enron"))
+
+  val topSenders = if (approximate) {
+    senders
+      // Each mapper folds its senders into a bounded summary; the reducer merges one summary per
+      // mapper and keeps the K senders with the largest estimated counts
+      .groupAll { _.mapReduceMap('fromStr -> 'top)
+          { from: String => SpaceSaving(sketchCapacity, from) }
+          { (left: SpaceSaving[String], right: SpaceSaving[String]) => left ++ right }
+          { sketch: SpaceSaving[String] => sketch.top(topK) } }
+      .flatMapTo('top -> ('fromStr, 'emailCount, 'maxError)) {
+        top: List[(String, Long, Long)] => top }
+  } else {
+    senders
+      // Here we group by each sender. The group by gives us a GroupBuilder which allows us to call reduce-type
+      // functions on each group. Here we call size to compute the size of each group. We optionally store it to
+      // the named tuple field 'emailCount
+      .groupBy('fromStr) { _.size('emailCount) }
+      // Rather than sorting every sender on one reducer, each mapper keeps its K largest counts
+      // and the reducer merges these short lists
+      .groupAll { _.mapReduceMap(('fromStr, 'emailCount) -> 'top)
+          { entry: (String, Long) => List((entry._2, entry._1)) }
+          { TopK.merge[String](topK) _ }
+          { top: List[(Long, String)] => top } }
+      .flatMapTo('top -> ('fromStr, 'emailCount)) { top: List[(Long, String)] =>
+        top.map { case (count, from) => (from, count) } }
+  }
+  // And write it to an output file in HDFS. We could also write to a KijiTable or a number of other sinks
+  topSenders.write(Tsv(outputUri + sep + "top-senders-enron"))
 
   /**
-   * Configure a pipe to compute top 10 correspondents
+   * Configure a pipe to compute top K correspondents
    */
   // Configure another input source -- The from and to columns are required this time to create pairs of correspondents
-  KijiInput(inputUri)(Map(Column("info:from") -> 'fromColumn, Column("info:to") -> 'toColumn))
+  val correspondents =
+    KijiInput(inputUri)(Map(Column("info:from") -> 'fromColumn, Column("info:to") -> 'toColumn))
     // 'recipients actually contains comma separated emails since there can be more than one recipient
     // we need to "explode" this field so we have an email sent from each sender to each recipient
     .mapTo(('fromColumn, 'toColumn) -> ('sender, 'recipient)) {
@@ -71,9 +106,28 @@ class EnronEmailSummaryCompleted(args: Args) extends KijiJob(args) {
       val (fromColumn, toColumn) = columns
       (fromColumn.getFirstValue(), toColumn.getFirstValue()) }
     .flatMap('recipient -> 'recipient) { recipients: String => recipients.split(",").map(_.trim.toLowerCase) }
-    // Now we can do a proper groupBy and output the size of each group (a count)
-    .groupBy('sender, 'recipient) { _.size('emailCount) }
-    .groupAll { _.sortBy('emailCount).reverse }
-    .limit(10)
-    .write(Tsv(outputUri + sep + "top-correspondents-enron"))
+
+  val topCorrespondents = if (approximate) {
+    correspondents
+      .groupAll { _.mapReduceMap(('sender, 'recipient) -> 'top)
+          { pair: (String, String) => SpaceSaving(sketchCapacity, pair) }
+          { (left: SpaceSaving[(String, String)], right: SpaceSaving[(String, String)]) =>
+            left ++ right }
+          { sketch: SpaceSaving[(String, String)] => sketch.top(topK) } }
+      .flatMapTo('top -> ('sender, 'recipient, 'emailCount, 'maxError)) {
+        top: List[((String, String), Long, Long)] =>
+        top.map { case ((sender, recipient), count, error) => (sender, recipient, count, error) } }
+  } else {
+    correspondents
+      // Now we can do a proper groupBy and output the size of each group (a count)
+      .groupBy('sender, 'recipient) { _.size('emailCount) }
+      .groupAll { _.mapReduceMap(('sender, 'recipient, 'emailCount) -> 'top)
+          { entry: (String, String, Long) => List((entry._3, (entry._1, entry._2))) }
+          { TopK.merge[(String, String)](topK) _ }
+          { top: List[(Long, (String, String))] => top } }
+      .flatMapTo('top -> ('sender, 'recipient, 'emailCount)) {
+        top: List[(Long, (String, String))] =>
+        top.map { case (count, (sender, recipient)) => (sender, recipient, count) } }
+  }
+  topCorrespondents.write(Tsv(outputUri + sep + "top-correspondents-enron"))
 }
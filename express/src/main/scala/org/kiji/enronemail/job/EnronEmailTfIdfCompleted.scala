@@ -1,10 +1,13 @@
 package org.kiji.enronemail.job
 
+import scala.collection.mutable.ListBuffer
+
 import com.twitter.scalding.{Tsv, Args}
 import org.kiji.express.flow.{Column, KijiInput, KijiJob}
 import org.slf4j.LoggerFactory
 import com.twitter.scalding.mathematics.Matrix
 import org.kiji.express.{EntityId, KijiSlice}
+import org.kiji.enronemail.text.Tokenizer
 
 class EnronEmailTfIdfCompleted(args: Args) extends KijiJob(args) {
 
@@ -31,10 +34,21 @@ class EnronEmailTfIdfCompleted(args: Args) extends KijiJob(args) {
   KijiInput(inputUri)(Map(Column("info:body") -> 'docColumn))
   .map('entityId -> 'entityId) { entityId: EntityId => entityId.toString() }
   .flatMap('docColumn -> 'doc) { column: KijiSlice[String] => column.cells.map(cell => cell.datum) }
-  .flatMap('doc -> 'word) {
-    doc: String => doc.split("\\s+").map( _.trim.toLowerCase)
-      // Filter stop words and short words.
-      .filterNot(word => Constants.englishStopWords.contains(word) || word.length < 3) }
+  .flatMap('doc -> 'word) { doc: String =>
+    // Split the body into lower-cased words in place, and only materialize the words kept.
+    val tokenizer = new Tokenizer().reset(doc)
+    val words = ListBuffer[String]()
+    while (tokenizer.next()) {
+      // Filter short words and stop words.
+      if (tokenizer.length >= 3) {
+        val word = tokenizer.toString
+        if (!Constants.englishStopWords.contains(word)) {
+          words += word
+        }
+      }
+    }
+    words
+  }
   .groupBy('entityId, 'word) { _.size('count) }
   .project('entityId, 'word, 'count)
   .toMatrix[String, String, Double]('entityId, 'word, 'count)
@@ -0,0 +1,250 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.job
+
+/**
+ * Bounded top-K aggregations for the summary jobs.
+ *
+ * Sorting every key on a single reducer to keep the first K does not scale with the number of
+ * mappers. These aggregations are associative, so Scalding's <code>mapReduceMap</code> runs them
+ * on the map side: each mapper keeps a bounded partial result, and the single reducer only
+ * merges one small partial result per mapper.
+ */
+object TopK {
+  /**
+   * Merges two lists of (count, key) entries sorted by decreasing count, keeping the k entries
+   * with the largest counts. Ties are broken by key, so the result does not depend on the order
+   * the partial results are merged in.
+   *
+   * @param k the number of entries to keep.
+   * @param left a list of at most k entries, sorted by decreasing count.
+   * @param right another list of at most k entries, sorted by decreasing count.
+   * @return the k entries of both lists with the largest counts, sorted by decreasing count.
+   */
+  def merge[T](k: Int)(left: List[(Long, T)], right: List[(Long, T)]): List[(Long, T)] = {
+    val merged = List.newBuilder[(Long, T)]
+    var l = left
+    var r = right
+    var size = 0
+    while (size < k && (!l.isEmpty || !r.isEmpty)) {
+      if (r.isEmpty || (!l.isEmpty && before(l.head, r.head))) {
+        merged += l.head
+        l = l.tail
+      } else {
+        merged += r.head
+        r = r.tail
+      }
+      size += 1
+    }
+    merged.result()
+  }
+
+  /**
+   * @param a an entry.
+   * @param b another entry.
+   * @return whether the entry a sorts before the entry b: by decreasing count, then by key.
+   */
+  private def before[T](a: (Long, T), b: (Long, T)): Boolean =
+    a._1 > b._1 || (a._1 == b._1 && a._2.toString < b._2.toString)
+}
+
+/**
+ * Mergeable Space-Saving summary, which estimates the counts of the most frequent keys of a
+ * stream in bounded memory (Metwally et al., with the merge of Agarwal et al.).
+ *
+ * The summary keeps at most <code>capacity</code> counters. A key that is not counted takes the
+ * counter of the least counted key, and inherits its count as a possible overestimate. The
+ * estimated count of a key exceeds its true count by at most its error, itself at most the
+ * number of keys counted divided by the capacity; every key more frequent than that is counted.
+ *
+ * Like the Stream-Summary of Metwally et al., the counters are indexed by key and bucketed by
+ * count, so counting one more key costs a hash lookup and a few operations on the buckets,
+ * whatever the capacity. Summaries are mutable: <code>++</code> folds a summary of a single key
+ * into the other summary and returns it, so the operands of <code>++</code> must not be used
+ * afterwards, as is the case in the reduce functions of Scalding.
+ *
+ * @param capacity the maximum number of counters.
+ */
+@SerialVersionUID(2L)
+class SpaceSaving[T] private (val capacity: Int) extends Serializable {
+  /** Estimated count and maximum overestimate of each counted key. */
+  private val counters = new java.util.HashMap[T, SpaceSaving.Counter]()
+  /** Counted keys by estimated count, each bucket in the order its keys reached the count. */
+  private val buckets = new java.util.TreeMap[java.lang.Long, java.util.LinkedHashSet[T]]()
+
+  /** @return the count a key without a counter may have: 0 until the summary is full. */
+  def minCount: Long = if (counters.size < capacity) 0L else buckets.firstKey.longValue
+
+  /**
+   * Merges two summaries, reusing one of them.
+   *
+   * @param other the summary to merge with this one.
+   * @return the summary of both streams.
+   */
+  def ++(other: SpaceSaving[T]): SpaceSaving[T] = {
+    if (other.isSingleton) {
+      // Fast path for the summaries of a single key, which every mapped record is.
+      other.foreach { (key, count, error) => add(key, count, error) }
+      this
+    } else if (isSingleton) {
+      foreach { (key, count, error) => other.add(key, count, error) }
+      other
+    } else {
+      val leftMin = minCount
+      val rightMin = other.minCount
+      val merged = List.newBuilder[(T, (Long, Long))]
+      foreach { (key, count, error) =>
+        val right = other.counters.get(key)
+        merged += ((key, if (null == right) {
+          (count + rightMin, error + rightMin)
+        } else {
+          (count + right.count, error + right.error)
+        }))
+      }
+      other.foreach { (key, count, error) =>
+        if (!counters.containsKey(key)) {
+          merged += ((key, (count + leftMin, error + leftMin)))
+        }
+      }
+      val summary = new SpaceSaving[T](capacity)
+      for ((key, (count, error)) <- SpaceSaving.sorted(merged.result()).take(capacity)) {
+        summary.add(key, count, error)
+      }
+      summary
+    }
+  }
+
+  /**
+   * @param k the number of keys to return.
+   * @return the k keys with the largest estimated counts, with their estimated count and
+   *     maximum overestimate, sorted by decreasing estimated count.
+   */
+  def top(k: Int): List[(T, Long, Long)] = {
+    val entries = List.newBuilder[(T, (Long, Long))]
+    foreach { (key, count, error) => entries += ((key, (count, error))) }
+    SpaceSaving.sorted(entries.result()).take(k).map { case (key, (count, error)) =>
+      (key, count, error)
+    }
+  }
+
+  /**
+   * @return whether the summary counts a single key and is not full, so that every other key
+   *     has a count of 0.
+   */
+  private def isSingleton: Boolean = 1 == counters.size && counters.size < capacity
+
+  /**
+   * Calls a function on every counter.
+   *
+   * @param f the function, called with each key, its estimated count and its maximum
+   *     overestimate.
+   */
+  private def foreach(f: (T, Long, Long) => Unit) {
+    val entries = counters.entrySet.iterator
+    while (entries.hasNext) {
+      val entry = entries.next()
+      f(entry.getKey, entry.getValue.count, entry.getValue.error)
+    }
+  }
+
+  /**
+   * Counts occurrences of a key. Without a counter, the key takes the counter of the least
+   * counted key once the summary is full.
+   *
+   * @param key the key.
+   * @param count the number of occurrences.
+   * @param error the maximum overestimate of the number of occurrences.
+   */
+  private def add(key: T, count: Long, error: Long) {
+    val counter = counters.get(key)
+    if (null != counter) {
+      unbucket(key, counter.count)
+      counter.count += count
+      counter.error += error
+      bucket(key, counter.count)
+    } else if (counters.size < capacity) {
+      counters.put(key, new SpaceSaving.Counter(count, error))
+      bucket(key, count)
+    } else {
+      val least = buckets.firstEntry
+      val evicted = least.getValue.iterator.next()
+      val min = least.getKey.longValue
+      unbucket(evicted, min)
+      counters.remove(evicted)
+      counters.put(key, new SpaceSaving.Counter(count + min, error + min))
+      bucket(key, count + min)
+    }
+  }
+
+  /**
+   * @param key a counted key.
+   * @param count its estimated count.
+   */
+  private def bucket(key: T, count: Long) {
+    var keys = buckets.get(count)
+    if (null == keys) {
+      keys = new java.util.LinkedHashSet[T]()
+      buckets.put(count, keys)
+    }
+    keys.add(key)
+  }
+
+  /**
+   * @param key a counted key.
+   * @param count its estimated count, before it changes.
+   */
+  private def unbucket(key: T, count: Long) {
+    val keys = buckets.get(count)
+    keys.remove(key)
+    if (keys.isEmpty) {
+      buckets.remove(count)
+    }
+  }
+}
+
+/** Factory of the Space-Saving summaries. */
+object SpaceSaving {
+  /**
+   * The estimated count and maximum overestimate of a key.
+   *
+   * @param count the estimated count.
+   * @param error the maximum overestimate of the count.
+   */
+  @SerialVersionUID(1L)
+  private final class Counter(var count: Long, var error: Long) extends Serializable
+
+  /**
+   * @param capacity the maximum number of counters.
+   * @param key a key.
+   * @return the summary of one occurrence of the key.
+   */
+  def apply[T](capacity: Int, key: T): SpaceSaving[T] = {
+    val summary = new SpaceSaving[T](math.max(1, capacity))
+    summary.add(key, 1L, 0L)
+    summary
+  }
+
+  /**
+   * @param counters counters of keys.
+   * @return the counters sorted by decreasing count, then by key.
+   */
+  private def sorted[T](counters: List[(T, (Long, Long))]): List[(T, (Long, Long))] =
+    counters.sortBy { case (key, (count, _)) => (-count, key.toString) }
+}
@@ -0,0 +1,174 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+
+/**
+ * Minimal harness for the micro-benchmarks of this package.
+ *
+ * <p>Each workload is run for a number of warm-up iterations, so the JIT compiles the hot paths,
+ * and then for a number of measured iterations. The harness reports the time and the bytes
+ * allocated per operation, as measured by the HotSpot thread allocation counters when the JVM
+ * supports them.</p>
+ */
+public final class BenchmarkHarness {
+  /** A benchmarked workload. */
+  public interface Workload {
+    /**
+     * Runs one iteration of the workload.
+     *
+     * @return the number of operations performed by the iteration.
+     * @throws Exception on error.
+     */
+    long run() throws Exception;
+  }
+
+  /** Consumes benchmark results so the JIT cannot eliminate the computations producing them. */
+  private static volatile long sSink = 0;
+
+  /** Utility class cannot be instantiated. */
+  private BenchmarkHarness() {
+  }
+
+  /**
+   * Feeds a value to a sink the JIT cannot optimize away.
+   *
+   * @param value the value to consume.
+   */
+  public static void consume(long value) {
+    sSink += value;
+  }
+
+  /**
+   * Feeds a floating point value to a sink the JIT cannot optimize away.
+   *
+   * @param value the value to consume.
+   */
+  public static void consume(double value) {
+    sSink += Double.doubleToRawLongBits(value);
+  }
+
+  /**
+   * Feeds an object to a sink the JIT cannot optimize away.
+   *
+   * @param value the object to consume.
+   */
+  public static void consume(Object value) {
+    sSink += (null == value) ? 0 : System.identityHashCode(value);
+  }
+
+  /**
+   * Runs and reports a workload.
+   *
+   * @param name the name of the workload in the report.
+   * @param workload the workload to run.
+   * @param warmupIterations the number of iterations to run before measuring.
+   * @param iterations the number of measured iterations.
+   * @return the average time per operation, in nanoseconds.
+   * @throws Exception if the workload fails.
+   */
+  public static double run(String name, Workload workload, int warmupIterations, int iterations)
+      throws Exception {
+    for (int i = 0; i < warmupIterations; i++) {
+      consume(workload.run());
+    }
+    System.gc();
+
+    final long startBytes = allocatedBytes();
+    final long startNanos = System.nanoTime();
+    long ops = 0;
+    for (int i = 0; i < iterations; i++) {
+      ops += workload.run();
+    }
+    final long nanos = System.nanoTime() - startNanos;
+    final long bytes = allocatedBytes() - startBytes;
+
+    final double nanosPerOp = (double) nanos / Math.max(1, ops);
+    System.out.println(String.format("%-40s %12.1f ns/op %12.0f ops/s %12s B/op",
+        name,
+        nanosPerOp,
+        ops * 1e9 / Math.max(1, nanos),
+        (startBytes < 0) ? "n/a" : String.format("%.1f", (double) bytes / Math.max(1, ops))));
+    return nanosPerOp;
+  }
+
+  /**
+   * Loads sample messages from a Maildir.
+   *
+   * @param root the Maildir root, or any directory below it.
+   * @param max the maximum number of messages to load.
+   * @return the raw messages.
+   * @throws IOException if a message cannot be read.
+   */
+  public static List<String> loadMessages(File root, int max) throws IOException {
+    final List<String> messages = Lists.newArrayList();
+    loadMessages(root, max, messages);
+    System.out.println("Loaded " + messages.size() + " messages from " + root);
+    return messages;
+  }
+
+  /**
+   * Recursively loads sample messages.
+   *
+   * @param file the directory or message file to load.
+   * @param max the maximum number of messages to load.
+   * @param messages the list to load the messages into.
+   * @throws IOException if a message cannot be read.
+   */
+  private static void loadMessages(File file, int max, List<String> messages)
+      throws IOException {
+    if (messages.size() >= max) {
+      return;
+    }
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null != files) {
+        for (File child : files) {
+          loadMessages(child, max, messages);
+        }
+      }
+    } else {
+      messages.add(EmailBulkImporter.readMessage(file));
+    }
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread so far, or -1 if the JVM does
+   *     not track allocations.
+   */
+  private static long allocatedBytes() {
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+      if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+        return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+}
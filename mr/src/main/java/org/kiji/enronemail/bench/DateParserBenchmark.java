@@ -0,0 +1,115 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailParser;
+
+/**
+ * Compares {@link EmailDateParser} with the SimpleDateFormat the importer used before, on the
+ * Date headers of real Enron messages.
+ *
+ * <p>Usage: <code>DateParserBenchmark &lt;maildir&gt; [max messages] [iterations]</code></p>
+ */
+public final class DateParserBenchmark {
+  /** Utility class cannot be instantiated. */
+  private DateParserBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: DateParserBenchmark <maildir> [max messages] [iterations]");
+      System.exit(1);
+    }
+    final int max = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+    final int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+    final EmailParser parser = new EmailParser();
+    final List<String> dates = Lists.newArrayList();
+    for (String message : BenchmarkHarness.loadMessages(new File(args[0]), max)) {
+      final String date = parser.parse(message).getHeader(EmailHeader.DATE);
+      if (null != date) {
+        dates.add(date);
+      }
+    }
+
+    // Sanity check: both parsers must agree wherever SimpleDateFormat succeeds.
+    final DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z (z)");
+    int mismatches = 0;
+    int legacyFailures = 0;
+    int failures = 0;
+    for (String date : dates) {
+      Long legacy = null;
+      try {
+        legacy = format.parse(date).getTime();
+      } catch (ParseException pe) {
+        legacyFailures++;
+      }
+      try {
+        final long millis = EmailDateParser.parse(date);
+        if (null != legacy && legacy != millis) {
+          mismatches++;
+        }
+      } catch (IOException ioe) {
+        failures++;
+      }
+    }
+    System.out.println(String.format("%d dates: %d mismatches, %d unparseable (was %d)",
+        dates.size(), mismatches, failures, legacyFailures));
+
+    BenchmarkHarness.run("SimpleDateFormat", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String date : dates) {
+          try {
+            BenchmarkHarness.consume(format.parse(date).getTime());
+          } catch (ParseException pe) {
+            BenchmarkHarness.consume(pe);
+          }
+        }
+        return dates.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("EmailDateParser", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String date : dates) {
+          try {
+            BenchmarkHarness.consume(EmailDateParser.parse(date));
+          } catch (IOException ioe) {
+            BenchmarkHarness.consume(ioe);
+          }
+        }
+        return dates.size();
+      }
+    }, iterations, iterations);
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+import org.kiji.enronemail.gather.MinHashGatherer;
+import org.kiji.enronemail.reduce.DuplicateClusterReducer;
+import org.kiji.enronemail.text.LshBucket;
+import org.kiji.enronemail.text.MinHasher;
+import org.kiji.enronemail.thread.MessageIds;
+
+/**
+ * Measures the near-duplicate detection of {@link MinHashGatherer} and
+ * {@link DuplicateClusterReducer} on the messages of a Maildir, minus the table.
+ *
+ * <p>The benchmark times the signatures of the bodies, which should allocate nothing. It then
+ * runs the whole detection in memory on growing prefixes of the messages, sorting the band keys
+ * in place of the shuffle, to check the time per message stays flat as the corpus grows. It
+ * reports the duplicates found, and the pairs of messages with the same body, to check they are
+ * all found.</p>
+ *
+ * <p>Usage: <code>MinHashBenchmark &lt;maildir&gt; [max messages] [iterations]</code></p>
+ */
+public final class MinHashBenchmark {
+  /** A message read by the detection. */
+  private static final class Message {
+    private final String mFrom;
+    private final long mTimestamp;
+    private final long mMessageId;
+    private final String mBody;
+
+    /**
+     * @param from the sender of the message.
+     * @param timestamp the date of the message.
+     * @param messageId the Message-ID of the message.
+     * @param body the body of the message.
+     */
+    private Message(String from, long timestamp, String messageId, String body) {
+      mFrom = from;
+      mTimestamp = timestamp;
+      mMessageId = MessageIds.hash(messageId);
+      mBody = body;
+    }
+  }
+
+  /** Utility class cannot be instantiated. */
+  private MinHashBenchmark() {
+  }
+
+  /**
+   * Recursively parses the messages of a Maildir, skipping the messages the importer would reject.
+   *
+   * @param file the directory or message file to parse.
+   * @param max the maximum number of messages to parse.
+   * @param reader the reader of the message files.
+   * @param parser the parser of the messages.
+   * @param messages the list to add the messages to.
+   * @throws IOException if a message cannot be read.
+   */
+  private static void loadMessages(File file, int max, MessageReader reader, EmailParser parser,
+      List<Message> messages) throws IOException {
+    if (messages.size() >= max) {
+      return;
+    }
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null != files) {
+        for (File child : files) {
+          loadMessages(child, max, reader, parser, messages);
+        }
+      }
+      return;
+    }
+    final EmailMessage email = parser.parse(reader.read(file));
+    final String from = email.getHeader(EmailHeader.FROM);
+    final String date = email.getHeader(EmailHeader.DATE);
+    final String messageId = email.getHeader(EmailHeader.MESSAGE_ID);
+    if (null == from || null == date || null == messageId || null == email.getBody()) {
+      return;
+    }
+    try {
+      messages.add(new Message(from, EmailDateParser.parse(date), messageId, email.getBody()));
+    } catch (MalformedEmailException mee) {
+      // Skipped, like the importer does.
+    }
+  }
+
+  /**
+   * Finds the near-duplicates of some messages like the gatherer and the reducer do.
+   *
+   * @param messages the messages.
+   * @param count the number of messages to process, from the first one.
+   * @param hasher the hasher of the bodies.
+   * @param bands the number of bands of the signatures.
+   * @param minSimilarity the minimum estimated similarity of near-duplicates.
+   * @param duplicates receives whether each message duplicates an earlier one.
+   * @return the number of messages found to duplicate an earlier one.
+   */
+  private static int detect(List<Message> messages, int count, MinHasher hasher, int bands,
+      float minSimilarity, boolean[] duplicates) {
+    final int numHashes = hasher.getNumHashes();
+    final int rowsPerBand = numHashes / bands;
+    final int[] signatures = new int[count * numHashes];
+    final int[] signature = new int[numHashes];
+    final boolean[] signed = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      signed[i] = hasher.sign(messages.get(i).mBody, signature) > 0;
+      System.arraycopy(signature, 0, signatures, i * numHashes, numHashes);
+    }
+
+    // The shuffle: one (band key, message) pair per band of each message, sorted by key. The
+    // message index takes the low 24 bits, so the keys are truncated to their top 40 bits.
+    final long[] pairs = new long[count * bands];
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      if (signed[i]) {
+        System.arraycopy(signatures, i * numHashes, signature, 0, numHashes);
+        for (int band = 0; band < bands; band++) {
+          pairs[size++] = (MinHasher.bandKey(signature, band, rowsPerBand) & ~0xFFFFFFL) | i;
+        }
+      }
+    }
+    Arrays.sort(pairs, 0, size);
+
+    Arrays.fill(duplicates, 0, count, false);
+    final LshBucket bucket = new LshBucket(numHashes);
+    for (int start = 0, end; start < size; start = end) {
+      end = start + 1;
+      while (end < size && (pairs[end] & ~0xFFFFFFL) == (pairs[start] & ~0xFFFFFFL)) {
+        end++;
+      }
+      if (end - start < 2) {
+        continue;
+      }
+      bucket.clear();
+      for (int j = start; j < end; j++) {
+        final int i = (int) (pairs[j] & 0xFFFFFF);
+        final Message message = messages.get(i);
+        System.arraycopy(signatures, i * numHashes, signature, 0, numHashes);
+        bucket.add(message.mFrom, message.mTimestamp, message.mMessageId, signature);
+      }
+      final int representative = bucket.getRepresentative();
+      for (int j = 0; j < bucket.size(); j++) {
+        if (!bucket.isSameRow(j, representative)
+            && bucket.similarity(j, representative) >= minSimilarity) {
+          duplicates[(int) (pairs[start + j] & 0xFFFFFF)] = true;
+        }
+      }
+    }
+    int found = 0;
+    for (int i = 0; i < count; i++) {
+      if (duplicates[i]) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: MinHashBenchmark <maildir> [max messages] [iterations]");
+      System.exit(1);
+    }
+    final int max = Math.min((args.length > 1) ? Integer.parseInt(args[1]) : Integer.MAX_VALUE,
+        1 << 24);
+    final int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+    final List<Message> messages = Lists.newArrayList();
+    loadMessages(new File(args[0]), max, new MessageReader(), new EmailParser(), messages);
+    System.out.println(String.format("Loaded %d messages from %s", messages.size(), args[0]));
+
+    final int bands = MinHashGatherer.DEFAULT_BANDS;
+    final MinHasher hasher = new MinHasher(bands * MinHashGatherer.DEFAULT_ROWS_PER_BAND,
+        MinHasher.DEFAULT_SHINGLE_SIZE, MinHasher.DEFAULT_SEED);
+    final float minSimilarity = DuplicateClusterReducer.DEFAULT_MIN_SIMILARITY;
+    final boolean[] duplicates = new boolean[messages.size()];
+
+    // Messages with the same body as an earlier one, which the detection must all find.
+    final Map<String, Integer> firstByBody = Maps.newHashMap();
+    int exactCopies = 0;
+    int exactCopiesFound = 0;
+    final int found = detect(messages, messages.size(), hasher, bands, minSimilarity, duplicates);
+    for (int i = 0; i < messages.size(); i++) {
+      final Integer first = firstByBody.get(messages.get(i).mBody);
+      if (null == first) {
+        firstByBody.put(messages.get(i).mBody, i);
+      } else if (!messages.get(i).mBody.trim().isEmpty()) {
+        exactCopies++;
+        // Either copy may be the later one.
+        if (duplicates[i] || duplicates[first]) {
+          exactCopiesFound++;
+        }
+      }
+    }
+    System.out.println(String.format(
+        "%d near-duplicates found; %d of %d messages with the body of an earlier one found",
+        found, exactCopiesFound, exactCopies));
+
+    final int[] signature = new int[hasher.getNumHashes()];
+    BenchmarkHarness.run("MinHash signature", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (Message message : messages) {
+          BenchmarkHarness.consume(hasher.sign(message.mBody, signature));
+        }
+        return messages.size();
+      }
+    }, iterations, iterations);
+
+    for (int shift = 2; shift >= 0; shift--) {
+      final int count = messages.size() >> shift;
+      BenchmarkHarness.run("detection, " + count + " messages", new BenchmarkHarness.Workload() {
+        @Override
+        public long run() {
+          BenchmarkHarness.consume(detect(messages, count, hasher, bands, minSimilarity,
+              duplicates));
+          return count;
+        }
+      }, iterations, iterations);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+
+/**
+ * Compares {@link EmailParser} with the split and regex based parsing it replaced in
+ * <code>EmailBulkImporter.produceHelper</code>, on real Enron messages.
+ *
+ * <p>Usage: <code>ParserBenchmark &lt;maildir&gt; [max messages] [iterations]</code></p>
+ */
+public final class ParserBenchmark {
+  /** Utility class cannot be instantiated. */
+  private ParserBenchmark() {
+  }
+
+  /**
+   * The parsing formerly done by <code>produceHelper</code>, kept as the baseline.
+   *
+   * @param message the raw message.
+   * @return the headers and the normalized body, under the "body" key.
+   */
+  static Map<String, String> legacyParse(String message) {
+    final String[] lines = message.split("\n");
+    int progress = 0;
+    Map<String, String> headers = Maps.newHashMap();
+    Set<Character> headerContinueChars = Sets.newHashSet(' ', '\t');
+    while ((progress < lines.length) && (lines[progress].length() > 0)) {
+      String[] fields = lines[progress].split(":", 2);
+
+      if (fields.length == 2) {
+        String key = fields[0];
+        String value = fields[1].trim();
+
+        // Look ahead for multi-line headers
+        while ((progress + 1 < lines.length) && headerContinueChars.contains(lines[progress + 1])) {
+          value = value + lines[progress + 1];
+          progress++;
+        }
+
+        // Only use the first occurrence of a particular header.
+        if (value.length() > 0 && !headers.containsKey(key)) {
+          headers.put(key, value);
+        }
+      }
+      progress++;
+    }
+    StringBuilder sb = new StringBuilder();
+    while (progress < lines.length) {
+      sb.append(lines[progress]);
+      sb.append("\n");
+      progress++;
+    }
+
+    String body = sb.toString();
+    body = body.replaceAll("'", "");
+    body = body.replaceAll("\\W", " ");
+    body = body.replaceAll(" +", " ");
+    headers.put("body", body);
+    return headers;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: ParserBenchmark <maildir> [max messages] [iterations]");
+      System.exit(1);
+    }
+    final int max = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+    final int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+    final List<String> messages = BenchmarkHarness.loadMessages(new File(args[0]), max);
+
+    // Sanity check: both parsers must agree on the bodies.
+    final EmailParser parser = new EmailParser();
+    int mismatches = 0;
+    for (String message : messages) {
+      if (!legacyParse(message).get("body").equals(parser.parse(message).getBody())) {
+        mismatches++;
+      }
+    }
+    System.out.println("Body mismatches: " + mismatches);
+
+    BenchmarkHarness.run("legacy split/regex parse", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String message : messages) {
+          BenchmarkHarness.consume(legacyParse(message));
+        }
+        return messages.size();
+      }
+    }, iterations, iterations);
+
+    final List<ByteBuffer> rawMessages = Lists.newArrayList();
+    for (String message : messages) {
+      rawMessages.add(ByteBuffer.wrap(message.getBytes(Charsets.UTF_8)));
+    }
+
+    BenchmarkHarness.run("single-pass EmailParser", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String message : messages) {
+          final EmailMessage email = parser.parse(message);
+          BenchmarkHarness.consume(email.getHeader(EmailHeader.FROM));
+          BenchmarkHarness.consume(email.getBody());
+        }
+        return messages.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("single-pass EmailParser on bytes", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (ByteBuffer message : rawMessages) {
+          final EmailMessage email = parser.parse(message);
+          BenchmarkHarness.consume(email.getHeader(EmailHeader.FROM));
+          BenchmarkHarness.consume(email.getBody());
+        }
+        return rawMessages.size();
+      }
+    }, iterations, iterations);
+  }
+}
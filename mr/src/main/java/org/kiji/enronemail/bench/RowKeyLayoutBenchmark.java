@@ -0,0 +1,337 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.ParallelMaildirImporter;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiRegion;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Compares the region balance and the write throughput of the row key layouts of the emails
+ * table: <code>emails</code>, hashed through the sender, and <code>emails_salted</code>, hashed
+ * through the sender and the timestamp.
+ *
+ * <p>The messages of a Maildir are keyed in import order, which walks one mailbox at a time.
+ * For each layout, the benchmark reports how unevenly the rows spread over the regions (the
+ * rows of the fullest region over the mean), and how concentrated the writes are: the mean share
+ * of the busiest region over each window of consecutive writes, the inverse of which is the
+ * number of regions effectively written in parallel.</p>
+ *
+ * <p>Without table URIs, the keys are computed like Kiji hashes formatted row keys, and the key
+ * space is split evenly into <code>--regions</code> regions for both layouts. Given the URIs of
+ * an emails and an emails_salted table, the benchmark uses their actual row keys and regions,
+ * and also times an import of the Maildir into each of them.</p>
+ *
+ * <p>Usage: <code>RowKeyLayoutBenchmark [flags] &lt;maildir&gt; [&lt;emails table URI&gt;
+ * &lt;emails_salted table URI&gt;]</code></p>
+ */
+public final class RowKeyLayoutBenchmark {
+  @Flag(name = "regions", usage = "Number of regions of the simulated tables.")
+  private int mRegions = 16;
+
+  @Flag(name = "window", usage = "Number of consecutive writes over which hotspots are measured.")
+  private int mWindow = 1000;
+
+  @Flag(name = "max-messages", usage = "Maximum number of messages to load.")
+  private int mMaxMessages = 100000;
+
+  @Flag(name = "threads", usage = "Number of importer threads, when importing into tables.")
+  private int mThreads = 4;
+
+  /** Sender and timestamp of a message, in import order. */
+  private final List<String> mSenders = Lists.newArrayList();
+  private final List<Long> mTimestamps = Lists.newArrayList();
+
+  /** Computes the HBase row key of a message in a layout. */
+  private interface RowKeyFunction {
+    /**
+     * @param from the sender of the message.
+     * @param timestamp the date of the message.
+     * @return the HBase row key.
+     */
+    byte[] rowKey(String from, long timestamp);
+  }
+
+  /**
+   * Emulates the formatted row keys of Kiji: a prefix of the MD5 hash of the hashed components,
+   * followed by the components.
+   */
+  private static final class HashedRowKey implements RowKeyFunction {
+    private final boolean mHashTimestamp;
+    private final int mHashSize;
+    private final MessageDigest mDigest;
+
+    /**
+     * @param hashTimestamp whether the hash covers the timestamp, or only the sender.
+     * @param hashSize the number of bytes of the hash prefix.
+     */
+    private HashedRowKey(boolean hashTimestamp, int hashSize) {
+      mHashTimestamp = hashTimestamp;
+      mHashSize = hashSize;
+      try {
+        mDigest = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException nsae) {
+        throw new RuntimeException(nsae);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] rowKey(String from, long timestamp) {
+      final byte[] fromBytes = from.getBytes(Charsets.UTF_8);
+      // Strings are null-terminated, longs big-endian with the sign bit flipped.
+      final ByteBuffer components = ByteBuffer.allocate(fromBytes.length + 1 + 8);
+      components.put(fromBytes).put((byte) 0).putLong(timestamp ^ Long.MIN_VALUE);
+      mDigest.reset();
+      mDigest.update(components.array(), 0, mHashTimestamp ? components.capacity()
+          : fromBytes.length + 1);
+      final byte[] hash = mDigest.digest();
+      final byte[] key = new byte[mHashSize + components.capacity()];
+      System.arraycopy(hash, 0, key, 0, mHashSize);
+      System.arraycopy(components.array(), 0, key, mHashSize, components.capacity());
+      return key;
+    }
+  }
+
+  /** Computes the row keys of the messages in a Kiji table. */
+  private static final class TableRowKey implements RowKeyFunction {
+    private final KijiTable mTable;
+
+    /**
+     * @param table the table.
+     */
+    private TableRowKey(KijiTable table) {
+      mTable = table;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] rowKey(String from, long timestamp) {
+      return mTable.getEntityId(from, timestamp).getHBaseRowKey();
+    }
+  }
+
+  /**
+   * Splits the key space evenly on the first two bytes of the keys.
+   *
+   * @param regions the number of regions.
+   * @return the start key of each region but the first.
+   */
+  private static byte[][] evenSplits(int regions) {
+    final byte[][] splits = new byte[regions - 1][];
+    for (int i = 1; i < regions; i++) {
+      final int prefix = (int) (65536L * i / regions);
+      splits[i - 1] = new byte[] {(byte) (prefix >> 8), (byte) prefix};
+    }
+    return splits;
+  }
+
+  /**
+   * @param table a table.
+   * @return the start key of each region of the table but the first.
+   * @throws IOException if the regions cannot be listed.
+   */
+  private static byte[][] tableSplits(KijiTable table) throws IOException {
+    final List<byte[]> splits = Lists.newArrayList();
+    for (KijiRegion region : table.getRegions()) {
+      if (region.getStartKey().length > 0) {
+        splits.add(region.getStartKey());
+      }
+    }
+    final byte[][] sorted = splits.toArray(new byte[splits.size()][]);
+    Arrays.sort(sorted, UnsignedBytes.lexicographicalComparator());
+    return sorted;
+  }
+
+  /**
+   * @param splits the sorted start keys of the regions but the first.
+   * @param key a row key.
+   * @return the index of the region holding the key.
+   */
+  private static int regionOf(byte[][] splits, byte[] key) {
+    int low = 0;
+    int high = splits.length;
+    // Number of start keys lower than or equal to the key.
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (UnsignedBytes.lexicographicalComparator().compare(splits[middle], key) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Reports the balance of the writes of the messages over the regions of a layout.
+   *
+   * @param name the name of the layout.
+   * @param rowKeys the row key function of the layout.
+   * @param splits the sorted start keys of the regions but the first.
+   */
+  private void reportBalance(String name, RowKeyFunction rowKeys, byte[][] splits) {
+    final int regions = splits.length + 1;
+    final long[] rows = new long[regions];
+    final int[] windowRows = new int[regions];
+    double busiestShares = 0.0;
+    int windows = 0;
+    int windowSize = 0;
+    int windowMax = 0;
+    for (int i = 0; i < mSenders.size(); i++) {
+      final int region = regionOf(splits, rowKeys.rowKey(mSenders.get(i), mTimestamps.get(i)));
+      rows[region]++;
+      windowMax = Math.max(windowMax, ++windowRows[region]);
+      if (++windowSize == mWindow) {
+        busiestShares += (double) windowMax / windowSize;
+        windows++;
+        Arrays.fill(windowRows, 0);
+        windowSize = 0;
+        windowMax = 0;
+      }
+    }
+    long maxRows = 0;
+    for (long count : rows) {
+      maxRows = Math.max(maxRows, count);
+    }
+    final double meanRows = (double) mSenders.size() / regions;
+    final double busiestShare = (windows > 0) ? busiestShares / windows : 1.0;
+    System.out.println(String.format(
+        "%-40s %3d regions  fullest/mean %6.2f  busiest share %5.1f%%  ~%5.1f regions written",
+        name, regions, maxRows / meanRows, 100.0 * busiestShare, 1.0 / busiestShare));
+  }
+
+  /**
+   * Recursively loads the senders and dates of the messages.
+   *
+   * @param file the directory or message file to load.
+   * @param parser the parser of the messages.
+   * @throws IOException if a message cannot be read.
+   */
+  private void load(File file, EmailParser parser) throws IOException {
+    for (String message : BenchmarkHarness.loadMessages(file, mMaxMessages)) {
+      final EmailMessage email = parser.parse(message);
+      final String from = email.getHeader(EmailHeader.FROM);
+      final String date = email.getHeader(EmailHeader.DATE);
+      if (null == from || null == date) {
+        continue;
+      }
+      try {
+        mTimestamps.add(EmailDateParser.parse(date));
+        mSenders.add(from);
+      } catch (MalformedEmailException mee) {
+        continue;
+      }
+    }
+  }
+
+  /**
+   * Times an import of the Maildir into a table.
+   *
+   * @param table the table to import into.
+   * @param root the Maildir.
+   * @throws Exception on error.
+   */
+  private void reportImport(KijiTable table, File root) throws Exception {
+    final ParallelMaildirImporter importer = ParallelMaildirImporter.builder()
+        .withTable(table)
+        .withThreads(mThreads)
+        .build();
+    final long startNanos = System.nanoTime();
+    final long count = importer.run(root);
+    final long millis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+    System.out.println(String.format("%-40s %d messages in %d ms: %.0f msg/s",
+        "import into " + table.getName(), count, millis, count * 1000.0 / millis));
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(new RowKeyLayoutBenchmark().run(args));
+  }
+
+  private int run(String[] args) throws Exception {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    if (1 != nonFlagArgs.size() && 3 != nonFlagArgs.size()) {
+      System.err.println("Usage: RowKeyLayoutBenchmark [flags] <maildir> "
+          + "[<emails table URI> <emails_salted table URI>]");
+      return 1;
+    }
+    final File root = new File(nonFlagArgs.get(0));
+    load(root, new EmailParser());
+    System.out.println("Keyed " + mSenders.size() + " messages in import order.");
+
+    if (1 == nonFlagArgs.size()) {
+      final byte[][] splits = evenSplits(mRegions);
+      reportBalance("emails (hash of from, 2 bytes)", new HashedRowKey(false, 2), splits);
+      reportBalance("emails_salted (hash of from+ts, 4 bytes)", new HashedRowKey(true, 4),
+          splits);
+      return 0;
+    }
+
+    final List<Kiji> kijis = Lists.newArrayList();
+    final List<KijiTable> tables = Lists.newArrayList();
+    try {
+      for (String uri : nonFlagArgs.subList(1, 3)) {
+        final KijiURI tableURI = KijiURI.newBuilder(uri).build();
+        final Kiji kiji = Kiji.Factory.open(tableURI);
+        kijis.add(kiji);
+        tables.add(kiji.openTable(tableURI.getTable()));
+      }
+      for (KijiTable table : tables) {
+        reportBalance(table.getName(), new TableRowKey(table), tableSplits(table));
+      }
+      for (KijiTable table : tables) {
+        reportImport(table, root);
+      }
+    } finally {
+      for (KijiTable table : tables) {
+        table.release();
+      }
+      for (Kiji kiji : kijis) {
+        kiji.release();
+      }
+    }
+    return 0;
+  }
+}
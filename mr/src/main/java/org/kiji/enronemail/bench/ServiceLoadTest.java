@@ -0,0 +1,290 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.metrics.Counter;
+import org.kiji.enronemail.metrics.DefaultMetricsRegistry;
+import org.kiji.enronemail.metrics.Histogram;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+import org.kiji.enronemail.metrics.MetricsReporter;
+import org.kiji.enronemail.service.CachingEmailStore;
+import org.kiji.enronemail.service.EmailService;
+import org.kiji.enronemail.service.EmailStore;
+import org.kiji.enronemail.service.InMemoryEmailStore;
+import org.kiji.enronemail.service.StoredEmail;
+import org.kiji.enronemail.text.SentimentLexicon;
+
+/**
+ * Load test of {@link EmailService}.
+ *
+ * <p>Client threads send a mix of requests for the messages of a Maildir, as fast as the service
+ * answers them, and the test reports the throughput and the latency percentiles of each
+ * endpoint. With <code>--url</code>, the requests go to a running service, which should serve
+ * the same Maildir; otherwise the test starts a service in-process over an
+ * {@link InMemoryEmailStore} loaded from the Maildir, so it runs without any Kiji instance.</p>
+ *
+ * <p>Usage: <code>ServiceLoadTest [flags] &lt;maildir&gt; &lt;AFINN-111.txt&gt;</code></p>
+ */
+public final class ServiceLoadTest {
+  @Flag(name = "url", usage = "URL of the service to load (default: start one in-process).")
+  private String mUrl = "";
+
+  @Flag(name = "clients", usage = "Number of client threads.")
+  private int mClients = 16;
+
+  @Flag(name = "server-threads", usage = "Number of threads of the in-process service.")
+  private int mServerThreads = 32;
+
+  @Flag(name = "cache-mb",
+      usage = "Size of the message cache of the in-process service, in MB (0 to disable).")
+  private long mCacheMegabytes = 64;
+
+  @Flag(name = "duration-s", usage = "Duration of the measured load, in seconds.")
+  private int mDurationSeconds = 30;
+
+  @Flag(name = "warmup-s", usage = "Duration of the unmeasured warm-up load, in seconds.")
+  private int mWarmupSeconds = 5;
+
+  @Flag(name = "target-p99-ms",
+      usage = "Fail if the p99 latency of an endpoint exceeds this many ms (0 to disable).")
+  private long mTargetP99Millis = 0;
+
+  /** Percentage of the requests getting a message; the others list or score. */
+  private static final int MESSAGE_PERCENT = 70;
+  /** Percentage of the requests listing the latest messages of a sender. */
+  private static final int LATEST_PERCENT = 20;
+
+  /** Messages the requests are drawn from. */
+  private List<StoredEmail> mMessages;
+
+  private volatile MetricsRegistry mMetrics;
+  private volatile boolean mStopped;
+
+  /** Sends requests until stopped. */
+  private final class Client implements Runnable {
+    private final Random mRandom;
+
+    /**
+     * @param seed the seed of the random requests of this client.
+     */
+    private Client(long seed) {
+      mRandom = new Random(seed);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      while (!mStopped) {
+        final StoredEmail email = mMessages.get(mRandom.nextInt(mMessages.size()));
+        final int dice = mRandom.nextInt(100);
+        try {
+          if (dice < MESSAGE_PERCENT) {
+            request("message", "/message?from=" + encode(email.getFrom())
+                + "&ts=" + email.getTimestamp(), null);
+          } else if (dice < MESSAGE_PERCENT + LATEST_PERCENT) {
+            request("latest", "/latest?n=10&from=" + encode(email.getFrom()), null);
+          } else {
+            request("score", "/score", (null == email.getBody()) ? "" : email.getBody());
+          }
+        } catch (IOException ioe) {
+          mMetrics.counter("client.errors").increment(1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends one request and reads its response.
+   *
+   * @param endpoint the name of the endpoint, in the metrics.
+   * @param path the path and query of the request.
+   * @param body the body to post, or null to get.
+   * @throws IOException if the request fails.
+   */
+  private void request(String endpoint, String path, String body) throws IOException {
+    final MetricsRegistry metrics = mMetrics;
+    final long startNanos = System.nanoTime();
+    final HttpURLConnection connection =
+        (HttpURLConnection) new URL(mUrl + path).openConnection();
+    if (null != body) {
+      final byte[] bytes = body.getBytes(Charsets.UTF_8);
+      connection.setDoOutput(true);
+      connection.setRequestMethod("POST");
+      connection.setFixedLengthStreamingMode(bytes.length);
+      connection.getOutputStream().write(bytes);
+      connection.getOutputStream().close();
+    }
+    final int status = connection.getResponseCode();
+    final InputStream in = (status < 400)
+        ? connection.getInputStream()
+        : (null == connection.getErrorStream())
+            ? new ByteArrayInputStream(new byte[0]) : connection.getErrorStream();
+    try {
+      final byte[] buffer = new byte[8192];
+      while (in.read(buffer) >= 0) {
+        continue;
+      }
+    } finally {
+      in.close();
+    }
+    metrics.histogram("client." + endpoint + ".micros")
+        .update((System.nanoTime() - startNanos) / 1000);
+    metrics.counter("client." + endpoint + ".status." + status).increment(1);
+  }
+
+  /**
+   * @param value a query parameter.
+   * @return the parameter, URL-encoded.
+   */
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (java.io.UnsupportedEncodingException uee) {
+      throw new RuntimeException(uee);
+    }
+  }
+
+  /**
+   * Runs the clients for a while.
+   *
+   * @param seconds the duration of the load.
+   * @param metrics the registry of the latencies.
+   * @return the number of requests sent.
+   * @throws Exception if a client fails.
+   */
+  private long load(int seconds, MetricsRegistry metrics) throws Exception {
+    mMetrics = metrics;
+    mStopped = false;
+    final ExecutorService pool = Executors.newFixedThreadPool(mClients);
+    try {
+      final List<Future<?>> clients = Lists.newArrayList();
+      for (int i = 0; i < mClients; i++) {
+        clients.add(pool.submit(new Client(i)));
+      }
+      TimeUnit.SECONDS.sleep(seconds);
+      mStopped = true;
+      for (Future<?> client : clients) {
+        client.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    long requests = 0;
+    for (Histogram histogram : metrics.getHistograms().values()) {
+      requests += histogram.getCount();
+    }
+    return requests;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(new ServiceLoadTest().run(args));
+  }
+
+  private int run(String[] args) throws Exception {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    if (nonFlagArgs.size() != 2) {
+      System.err.println("Usage: ServiceLoadTest [flags] <maildir> <AFINN-111.txt>");
+      return 1;
+    }
+    final InMemoryEmailStore messages = InMemoryEmailStore.load(new File(nonFlagArgs.get(0)));
+    mMessages = messages.getMessages();
+    if (mMessages.isEmpty()) {
+      System.err.println("No message found in " + nonFlagArgs.get(0));
+      return 1;
+    }
+    System.out.println("Loaded " + mMessages.size() + " messages.");
+
+    EmailService service = null;
+    EmailStore store = null;
+    if (mUrl.isEmpty()) {
+      final SentimentLexicon lexicon;
+      final InputStream in = new java.io.FileInputStream(nonFlagArgs.get(1));
+      try {
+        lexicon = SentimentLexicon.load(in);
+      } finally {
+        in.close();
+      }
+      final MetricsRegistry serverMetrics = new DefaultMetricsRegistry();
+      store = (mCacheMegabytes > 0)
+          ? new CachingEmailStore(messages, mCacheMegabytes * 1024 * 1024, serverMetrics)
+          : messages;
+      service = new EmailService(store, lexicon, serverMetrics)
+          .start(new InetSocketAddress("localhost", 0), mServerThreads);
+      mUrl = "http://localhost:" + service.getPort();
+    }
+    try {
+      System.out.println("Warming up for " + mWarmupSeconds + " s...");
+      load(mWarmupSeconds, new DefaultMetricsRegistry());
+
+      System.out.println("Loading " + mUrl + " with " + mClients + " clients for "
+          + mDurationSeconds + " s...");
+      final MetricsRegistry metrics = new DefaultMetricsRegistry();
+      final long requests = load(mDurationSeconds, metrics);
+      System.out.println(String.format("%d requests, %.0f requests/s",
+          requests, (double) requests / Math.max(1, mDurationSeconds)));
+      new MetricsReporter(metrics, System.out).writeJson(System.out);
+
+      int status = 0;
+      for (String name : metrics.getHistograms().keySet()) {
+        final long p99Micros = metrics.histogram(name).getPercentile(99);
+        if (mTargetP99Millis > 0 && p99Micros > mTargetP99Millis * 1000) {
+          System.out.println(String.format("FAILED: %s p99 of %d us exceeds the target of %d ms",
+              name, p99Micros, mTargetP99Millis));
+          status = 1;
+        }
+      }
+      final Counter errors = metrics.getCounters().get("client.errors");
+      if (null != errors && errors.getCount() > 0) {
+        System.out.println("FAILED: " + errors.getCount() + " requests failed.");
+        status = 1;
+      }
+      return status;
+    } finally {
+      if (null != service) {
+        service.close();
+        store.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.kiji.enronemail.TopTerms;
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+import org.kiji.enronemail.gather.DocumentFrequencyGatherer;
+import org.kiji.enronemail.produce.TokenizedBody;
+import org.kiji.enronemail.produce.TopTermsFeature;
+import org.kiji.enronemail.text.SparseVector;
+import org.kiji.enronemail.text.StopWords;
+import org.kiji.enronemail.text.Tokenizer;
+import org.kiji.enronemail.text.Vocabulary;
+
+/**
+ * Compares the shuffle of the TF-IDF Express job, <code>EnronEmailTfIdfCompleted</code>, with the
+ * pipeline of {@link DocumentFrequencyGatherer} and {@link TopTermsFeature}, on the messages of a
+ * Maildir split among a number of map tasks.
+ *
+ * <p>The shuffle bytes are a model, without compression: each record costs its serialized key and
+ * value plus their lengths. The Express job shuffles its (row key string, term) matrix three times,
+ * to count the terms, to join them with the inverse document frequencies and to select the top
+ * terms of each row. Its document frequencies are combined per map task, and the vocabulary-sized
+ * vectors are shuffled three more times to normalize them and join them. The new pipeline only
+ * shuffles the document frequencies, combined per map task; scoring the messages is map-only, but
+ * each task reads the vocabulary, reported apart.</p>
+ *
+ * <p>The benchmark then times the scoring of each message with a vocabulary and sparse vectors,
+ * against String keyed maps, and checks they find the same scores.</p>
+ *
+ * <p>Usage: <code>TfIdfShuffleBenchmark &lt;maildir&gt; [max messages] [map tasks]
+ * [iterations]</code></p>
+ */
+public final class TfIdfShuffleBenchmark {
+  /** Number of terms selected per message. */
+  private static final int TOP_TERMS = 10;
+
+  /** A message read by the jobs. */
+  private static final class Document {
+    private final String mRowKey;
+    private final String mBody;
+
+    /**
+     * @param from the sender of the message.
+     * @param timestamp the date of the message.
+     * @param body the body of the message.
+     */
+    private Document(String from, long timestamp, String body) {
+      // EntityId.toString(), which keys the matrix of the Express job.
+      mRowKey = "EntityId(" + from + "," + timestamp + ")";
+      mBody = body;
+    }
+  }
+
+  /** Utility class cannot be instantiated. */
+  private TfIdfShuffleBenchmark() {
+  }
+
+  /**
+   * Recursively parses the messages of a Maildir, skipping the messages the importer would reject.
+   *
+   * @param file the directory or message file to parse.
+   * @param max the maximum number of messages to parse.
+   * @param reader the reader of the message files.
+   * @param parser the parser of the messages.
+   * @param documents the list to add the messages to.
+   * @throws IOException if a message cannot be read.
+   */
+  private static void loadDocuments(File file, int max, MessageReader reader, EmailParser parser,
+      List<Document> documents) throws IOException {
+    if (documents.size() >= max) {
+      return;
+    }
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null != files) {
+        for (File child : files) {
+          loadDocuments(child, max, reader, parser, documents);
+        }
+      }
+      return;
+    }
+    final EmailMessage email = parser.parse(reader.read(file));
+    final String from = email.getHeader(EmailHeader.FROM);
+    final String date = email.getHeader(EmailHeader.DATE);
+    if (null == from || null == date || null == email.getBody()) {
+      return;
+    }
+    try {
+      documents.add(new Document(from, EmailDateParser.parse(date), email.getBody()));
+    } catch (MalformedEmailException mee) {
+      // Skipped, like the importer does.
+    }
+  }
+
+  /**
+   * Lists the distinct terms of a body, like {@link DocumentFrequencyGatherer} and the Express job.
+   *
+   * @param body the body.
+   * @param tokenizer the tokenizer to split the body with.
+   * @return the distinct terms of the body.
+   */
+  private static Set<String> terms(String body, Tokenizer tokenizer) {
+    final Set<String> terms = Sets.newHashSet();
+    tokenizer.reset(body);
+    while (tokenizer.next()) {
+      if (tokenizer.length() >= DocumentFrequencyGatherer.MIN_TERM_LENGTH
+          && !StopWords.contains(tokenizer, 0, tokenizer.length())) {
+        terms.add(tokenizer.toString());
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * @param value a non-negative int.
+   * @return the size of the value as a Hadoop variable-length int.
+   */
+  private static int vintSize(long value) {
+    return (value < 128) ? 1 : 1 + (64 - Long.numberOfLeadingZeros(value) + 7) / 8;
+  }
+
+  /**
+   * @param s a string.
+   * @return the size of the string as a Hadoop Text.
+   */
+  private static int textSize(String s) {
+    final int length = s.getBytes(Charsets.UTF_8).length;
+    return vintSize(length) + length;
+  }
+
+  /**
+   * @param s a string.
+   * @return the size of the string as a field of a Cascading tuple: a type token, a length and
+   *     the UTF-8 bytes.
+   */
+  private static int tupleStringSize(String s) {
+    return 1 + 4 + s.getBytes(Charsets.UTF_8).length;
+  }
+
+  /** Size of a long or a double field of a Cascading tuple, with its type token. */
+  private static final int TUPLE_NUMBER_SIZE = 1 + 8;
+
+  /**
+   * @param keySize the size of the serialized key of a map output record.
+   * @param valueSize the size of the serialized value of the record.
+   * @return the size of the record in the map output, with the lengths of its key and value.
+   */
+  private static long recordSize(int keySize, int valueSize) {
+    return vintSize(keySize) + keySize + vintSize(valueSize) + valueSize;
+  }
+
+  /**
+   * Scores a body with String keyed maps, the way the Express job keys its matrix.
+   *
+   * @param body the body.
+   * @param tokenizer the tokenizer to split the body with.
+   * @param idfs the inverse document frequency of each term.
+   * @return the highest scores of the terms of the body, highest first.
+   */
+  private static float[] legacyScore(String body, Tokenizer tokenizer, Map<String, Float> idfs) {
+    final Map<String, int[]> counts = Maps.newHashMap();
+    tokenizer.reset(body);
+    while (tokenizer.next()) {
+      final String word = tokenizer.toString();
+      final Float idf = idfs.get(word);
+      if (null != idf) {
+        final int[] count = counts.get(word);
+        if (null == count) {
+          counts.put(word, new int[] {1});
+        } else {
+          count[0]++;
+        }
+      }
+    }
+    final List<Map.Entry<String, Float>> scores = Lists.newArrayList();
+    for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+      final float score = entry.getValue()[0] * idfs.get(entry.getKey());
+      scores.add(Maps.immutableEntry(entry.getKey(), score));
+    }
+    Collections.sort(scores, new Comparator<Map.Entry<String, Float>>() {
+      @Override
+      public int compare(Map.Entry<String, Float> left, Map.Entry<String, Float> right) {
+        return Float.compare(right.getValue(), left.getValue());
+      }
+    });
+    final float[] top = new float[Math.min(TOP_TERMS, scores.size())];
+    for (int i = 0; i < top.length; i++) {
+      top[i] = scores.get(i).getValue();
+    }
+    return top;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println(
+          "Usage: TfIdfShuffleBenchmark <maildir> [max messages] [map tasks] [iterations]");
+      System.exit(1);
+    }
+    final int max = (args.length > 1) ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+    final int mappers = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+    final int iterations = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+
+    final List<Document> documents = Lists.newArrayList();
+    loadDocuments(new File(args[0]), max, new MessageReader(), new EmailParser(), documents);
+    System.out.println(String.format("Loaded %d messages from %s, split among %d map tasks",
+        documents.size(), args[0], mappers));
+
+    // Walk the messages of each map task, counting the records each job emits.
+    final Tokenizer tokenizer = new Tokenizer();
+    final Map<String, long[]> documentFrequencies = Maps.newHashMap();
+    long legacyMatrixBytes = 0;
+    long legacyMatrixRecords = 0;
+    long legacyFrequencyBytes = 0;
+    long legacyFrequencyRecords = 0;
+    long gathererBytes = 0;
+    long gathererRecords = 0;
+    final int perMapper = (documents.size() + mappers - 1) / Math.max(1, mappers);
+    for (int start = 0; start < documents.size(); start += perMapper) {
+      final Map<String, long[]> taskFrequencies = Maps.newHashMap();
+      for (Document document : documents.subList(
+          start, Math.min(documents.size(), start + perMapper))) {
+        final int rowKeySize = tupleStringSize(document.mRowKey);
+        for (String term : terms(document.mBody, tokenizer)) {
+          // One (row key, term) -> count record per distinct term of the message.
+          legacyMatrixBytes += recordSize(
+              1 + rowKeySize + tupleStringSize(term), 1 + TUPLE_NUMBER_SIZE);
+          legacyMatrixRecords++;
+          final long[] count = taskFrequencies.get(term);
+          if (null == count) {
+            taskFrequencies.put(term, new long[] {1});
+          } else {
+            count[0]++;
+          }
+        }
+      }
+      for (Map.Entry<String, long[]> entry : taskFrequencies.entrySet()) {
+        final String term = entry.getKey();
+        legacyFrequencyBytes += recordSize(1 + tupleStringSize(term), 1 + TUPLE_NUMBER_SIZE);
+        legacyFrequencyRecords++;
+        gathererBytes += recordSize(textSize(term), 8);
+        gathererRecords++;
+        final long[] count = documentFrequencies.get(term);
+        if (null == count) {
+          documentFrequencies.put(term, new long[] {entry.getValue()[0]});
+        } else {
+          count[0] += entry.getValue()[0];
+        }
+      }
+      gathererBytes += recordSize(textSize(Vocabulary.DOCUMENT_COUNT_KEY), 8);
+      gathererRecords++;
+    }
+
+    // The (row, term) -> value vectors of the vocabulary: once normalized, once joined.
+    long legacyVectorBytes = 0;
+    long vocabularyBytes = 0;
+    final Vocabulary.Builder builder = Vocabulary.newBuilder();
+    for (Map.Entry<String, long[]> entry : documentFrequencies.entrySet()) {
+      final String term = entry.getKey();
+      legacyVectorBytes += 3 * recordSize(1 + TUPLE_NUMBER_SIZE,
+          1 + tupleStringSize(term) + TUPLE_NUMBER_SIZE);
+      vocabularyBytes += (term + "\t" + entry.getValue()[0] + "\n").getBytes(Charsets.UTF_8).length;
+      builder.addTerm(term, (int) entry.getValue()[0]);
+    }
+    builder.addDocuments(documents.size());
+    final Vocabulary vocabulary = builder.build();
+
+    final long legacyBytes = 3 * legacyMatrixBytes + legacyFrequencyBytes + legacyVectorBytes;
+    System.out.println(String.format("%d terms, %d distinct (message, term) pairs",
+        vocabulary.size(), legacyMatrixRecords));
+    System.out.println(String.format("%-40s %,15d records %,15d bytes shuffled",
+        "Express job (matrix, zip, topRowElems)",
+        3 * legacyMatrixRecords + legacyFrequencyRecords + 3L * vocabulary.size(),
+        legacyBytes));
+    System.out.println(String.format("%-40s %,15d records %,15d bytes shuffled (%.1fx less), "
+        + "%,d bytes of vocabulary read per task",
+        "document frequency gatherer + producer", gathererRecords, gathererBytes,
+        (double) legacyBytes / Math.max(1, gathererBytes), vocabularyBytes));
+
+    // Score the messages both ways, and check they agree.
+    final Map<String, Float> idfs = Maps.newHashMap();
+    for (int i = 0; i < vocabulary.size(); i++) {
+      idfs.put(vocabulary.getTerm(i), vocabulary.getIdf(i));
+    }
+    final TopTermsFeature feature = new TopTermsFeature(vocabulary, TOP_TERMS);
+    final TokenizedBody body = new TokenizedBody();
+    final SparseVector vector = new SparseVector();
+    final int[] top = new int[TOP_TERMS];
+    int mismatches = 0;
+    for (Document document : documents) {
+      feature.vectorize(body.reset(document.mBody), vector);
+      final float[] scores = new float[vector.top(top)];
+      for (int i = 0; i < scores.length; i++) {
+        scores[i] = vector.getValue(top[i]);
+      }
+      if (!Arrays.equals(scores, legacyScore(document.mBody, tokenizer, idfs))) {
+        mismatches++;
+      }
+    }
+    System.out.println("Messages whose top scores differ: " + mismatches);
+
+    BenchmarkHarness.run("top terms, String maps", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (Document document : documents) {
+          BenchmarkHarness.consume(legacyScore(document.mBody, tokenizer, idfs));
+        }
+        return documents.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("top terms, sparse vectors", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() throws Exception {
+        for (Document document : documents) {
+          final TopTerms terms = (TopTerms) feature.extract(body.reset(document.mBody));
+          BenchmarkHarness.consume(terms);
+        }
+        return documents.size();
+      }
+    }, iterations, iterations);
+  }
+}
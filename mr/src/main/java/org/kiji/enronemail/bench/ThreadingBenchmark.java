@@ -0,0 +1,198 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+import org.kiji.enronemail.thread.ReplyGraph;
+import org.kiji.enronemail.thread.ThreadBuilder;
+import org.kiji.enronemail.thread.ThreadReconstructor;
+
+/**
+ * Measures the reconstruction of the threads of a Maildir by {@link ThreadReconstructor}, minus
+ * the table: the headers of the messages are parsed once, then the reply graph is built and
+ * resolved over and over, with and without the subject fallback.
+ *
+ * <p>Besides the time per message, the benchmark reports the bytes held by the graph per message
+ * and the shape of the threads found, to check the memory stays bounded on the whole corpus.</p>
+ *
+ * <p>Usage: <code>ThreadingBenchmark &lt;maildir&gt; [max messages] [iterations]</code></p>
+ */
+public final class ThreadingBenchmark {
+  /** The headers of a message read by the reconstruction. */
+  private static final class Headers {
+    private final String mMessageId;
+    private final long mTimestamp;
+    private final String mReferences;
+    private final String mInReplyTo;
+    private final String mFrom;
+    private final String mTo;
+    private final String mSubject;
+
+    /**
+     * @param email the parsed message.
+     * @param timestamp the date of the message.
+     */
+    private Headers(EmailMessage email, long timestamp) {
+      mMessageId = email.getHeader(EmailHeader.MESSAGE_ID);
+      mTimestamp = timestamp;
+      mReferences = email.getHeader(EmailHeader.REFERENCES);
+      mInReplyTo = email.getHeader(EmailHeader.IN_REPLY_TO);
+      mFrom = email.getHeader(EmailHeader.FROM);
+      mTo = email.getHeader(EmailHeader.TO);
+      mSubject = email.getHeader(EmailHeader.SUBJECT);
+    }
+  }
+
+  /** Utility class cannot be instantiated. */
+  private ThreadingBenchmark() {
+  }
+
+  /**
+   * Recursively parses the headers of the messages of a Maildir, skipping the messages the
+   * importer would reject.
+   *
+   * @param file the directory or message file to parse.
+   * @param max the maximum number of messages to parse.
+   * @param reader the reader of the message files.
+   * @param parser the parser of the messages.
+   * @param headers the list to add the headers to.
+   * @throws IOException if a message cannot be read.
+   */
+  private static void loadHeaders(File file, int max, MessageReader reader, EmailParser parser,
+      List<Headers> headers) throws IOException {
+    if (headers.size() >= max) {
+      return;
+    }
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null != files) {
+        for (File child : files) {
+          loadHeaders(child, max, reader, parser, headers);
+        }
+      }
+      return;
+    }
+    final EmailMessage email = parser.parse(reader.read(file));
+    final String date = email.getHeader(EmailHeader.DATE);
+    if (null == date || null == email.getHeader(EmailHeader.MESSAGE_ID)) {
+      return;
+    }
+    try {
+      headers.add(new Headers(email, EmailDateParser.parse(date)));
+    } catch (MalformedEmailException mee) {
+      // Skipped, like the importer does.
+    }
+  }
+
+  /**
+   * Builds and resolves the reply graph of some messages.
+   *
+   * @param messages the headers of the messages.
+   * @param subjectFallback whether the messages without reply headers are threaded by subject.
+   * @param nodes the array to store the node of each message in.
+   * @return the builder of the resolved graph.
+   */
+  private static ThreadBuilder build(List<Headers> messages, boolean subjectFallback,
+      int[] nodes) {
+    final ThreadBuilder builder =
+        new ThreadBuilder(new ReplyGraph(messages.size()), subjectFallback);
+    int i = 0;
+    for (Headers message : messages) {
+      nodes[i++] = builder.add(message.mMessageId, message.mTimestamp, message.mReferences,
+          message.mInReplyTo, message.mFrom, message.mTo, message.mSubject);
+    }
+    builder.getGraph().resolve();
+    return builder;
+  }
+
+  /**
+   * Prints the shape of the threads of a resolved graph.
+   *
+   * @param name the name of the configuration.
+   * @param builder the builder of the resolved graph.
+   * @param nodes the node of each message.
+   */
+  private static void report(String name, ThreadBuilder builder, int[] nodes) {
+    final ReplyGraph graph = builder.getGraph();
+    int maxDepth = 0;
+    int largest = 0;
+    long threaded = 0;
+    for (int node : nodes) {
+      maxDepth = Math.max(maxDepth, graph.getDepth(node));
+      largest = Math.max(largest, graph.getThreadSize(node));
+      if (graph.getThreadSize(node) > 1) {
+        threaded++;
+      }
+    }
+    System.out.println(String.format(
+        "%-40s %d threads, %d messages in multi-message threads, largest thread %d, "
+        + "max depth %d; %d linked by headers, %d by subject; %d nodes, %.1f B/message",
+        name, graph.getThreadCount(), threaded, largest, maxDepth,
+        builder.getLinkedByHeaders(), builder.getLinkedBySubject(), graph.getNodeCount(),
+        (double) graph.getAllocatedBytes() / Math.max(1, nodes.length)));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: ThreadingBenchmark <maildir> [max messages] [iterations]");
+      System.exit(1);
+    }
+    final int max = (args.length > 1) ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+    final int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+    final List<Headers> messages = Lists.newArrayList();
+    final long loadNanos = System.nanoTime();
+    loadHeaders(new File(args[0]), max, new MessageReader(), new EmailParser(), messages);
+    System.out.println(String.format("Parsed the headers of %d messages from %s in %d ms",
+        messages.size(), args[0], (System.nanoTime() - loadNanos) / 1000000));
+    final int[] nodes = new int[messages.size()];
+
+    report("reply headers only", build(messages, false, nodes), nodes);
+    report("reply headers and subject fallback", build(messages, true, nodes), nodes);
+
+    BenchmarkHarness.run("thread graph, reply headers only", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        BenchmarkHarness.consume(build(messages, false, nodes).getGraph().getThreadCount());
+        return messages.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("thread graph, subject fallback", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        BenchmarkHarness.consume(build(messages, true, nodes).getGraph().getThreadCount());
+        return messages.size();
+      }
+    }, iterations, iterations);
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.text.SentimentLexicon;
+import org.kiji.enronemail.text.SentimentScorer;
+import org.kiji.enronemail.text.Tokenizer;
+
+/**
+ * Compares {@link Tokenizer} and {@link SentimentScorer} with the regex, split and key-value
+ * store lookups formerly done by <code>SentimentProducer.produce</code>, on the bodies of real
+ * Enron messages, scored one at a time and in batches.
+ *
+ * <p>Usage: <code>TokenizerBenchmark &lt;maildir&gt; &lt;AFINN-111.txt&gt; [max messages]
+ * [iterations]</code></p>
+ */
+public final class TokenizerBenchmark {
+  /** Number of bodies scored by each batch of the batch scoring workload. */
+  private static final int BATCH_SIZE = 1024;
+
+  /** Utility class cannot be instantiated. */
+  private TokenizerBenchmark() {
+  }
+
+  /**
+   * The tokenization formerly done by <code>SentimentProducer</code>, kept as the baseline.
+   *
+   * @param body a message body.
+   * @return the words of the body, some of which may be empty.
+   */
+  static String[] legacyTokenize(String body) {
+    return body.replaceAll("\\W", " ").toLowerCase().split(" ");
+  }
+
+  /**
+   * The scoring formerly done by <code>SentimentProducer</code>, with a map standing for the
+   * key-value store.
+   *
+   * @param body a message body.
+   * @param store the sentiment of each word, as strings.
+   * @return the mean sentiment of the words of the body found in the store, or 0.
+   */
+  static float legacyScore(String body, Map<String, String> store) {
+    float score = 0.0f;
+    float numWords = 0.0f;
+    for (String word : legacyTokenize(body)) {
+      word = word.trim();
+      if (store.containsKey(word)) {
+        numWords++;
+        score += Float.valueOf(store.get(word));
+      }
+    }
+    return (numWords > 0) ? score / numWords : 0.0f;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println(
+          "Usage: TokenizerBenchmark <maildir> <AFINN-111.txt> [max messages] [iterations]");
+      System.exit(1);
+    }
+    final int max = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+    final int iterations = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+    final EmailParser parser = new EmailParser();
+    final List<String> bodies = Lists.newArrayList();
+    for (String message : BenchmarkHarness.loadMessages(new File(args[0]), max)) {
+      bodies.add(parser.parse(message).getBody());
+    }
+
+    final File lexiconFile = new File(args[1]);
+    final Map<String, String> store = Maps.newHashMap();
+    for (String line : Files.readLines(lexiconFile, Charsets.UTF_8)) {
+      final int tab = line.lastIndexOf('\t');
+      store.put(line.substring(0, tab), line.substring(tab + 1));
+    }
+    final SentimentLexicon lexicon;
+    final InputStream in = new FileInputStream(lexiconFile);
+    try {
+      lexicon = SentimentLexicon.load(in);
+    } finally {
+      in.close();
+    }
+    final Tokenizer tokenizer = new Tokenizer();
+    final SentimentScorer scorer = new SentimentScorer(lexicon);
+
+    // Sanity check: both implementations must agree on the scores.
+    int mismatches = 0;
+    for (String body : bodies) {
+      if (legacyScore(body, store) != scorer.score(body)) {
+        mismatches++;
+      }
+    }
+    System.out.println("Score mismatches: " + mismatches);
+
+    BenchmarkHarness.run("legacy replaceAll/split tokenize", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String body : bodies) {
+          BenchmarkHarness.consume(legacyTokenize(body));
+        }
+        return bodies.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("Tokenizer", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String body : bodies) {
+          tokenizer.reset(body);
+          int words = 0;
+          while (tokenizer.next()) {
+            words++;
+          }
+          BenchmarkHarness.consume(words);
+        }
+        return bodies.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("legacy score with map lookups", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String body : bodies) {
+          BenchmarkHarness.consume(legacyScore(body, store));
+        }
+        return bodies.size();
+      }
+    }, iterations, iterations);
+
+    BenchmarkHarness.run("SentimentScorer score", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (String body : bodies) {
+          BenchmarkHarness.consume(scorer.score(body));
+        }
+        return bodies.size();
+      }
+    }, iterations, iterations);
+
+    final float[] scores = new float[BATCH_SIZE];
+    BenchmarkHarness.run("SentimentScorer scoreBatch", new BenchmarkHarness.Workload() {
+      @Override
+      public long run() {
+        for (int start = 0; start < bodies.size(); start += BATCH_SIZE) {
+          final List<String> batch =
+              bodies.subList(start, Math.min(bodies.size(), start + BATCH_SIZE));
+          scorer.scoreBatch(batch, scores);
+          BenchmarkHarness.consume(scores[batch.size() - 1]);
+        }
+        return bodies.size();
+      }
+    }, iterations, iterations);
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiPutter;
+import org.kiji.schema.KijiTable;
+
+/**
+ * Wraps one {@link KijiBufferedWriter} per table and flushes them in batches of messages.
+ *
+ * <p>The writers of every table are flushed together, so a batch is durable in all the tables
+ * once it has been flushed. A batch is flushed once it holds a given number of cells or bytes,
+ * or once it has been pending for a given time, whichever comes first. Every flush is timed and
+ * recorded into the shared {@link IngestMetrics}. Like the writers it wraps, a BatchingWriter
+ * must only be used from one thread.</p>
+ */
+public final class BatchingWriter implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(BatchingWriter.class);
+
+  /** Notified after every successful flush. */
+  public static interface FlushListener {
+    /**
+     * Called once the cells written since the previous flush are durable.
+     *
+     * @throws IOException on error.
+     */
+    void flushed() throws IOException;
+  }
+
+  /** Buffered writer of each table, in the order the tables were given. */
+  private final Map<KijiTable, KijiBufferedWriter> mWriters = Maps.newLinkedHashMap();
+  private final long mMaxCells;
+  private final long mMaxBytes;
+  private final long mFlushIntervalNanos;
+  private final IngestMetrics mMetrics;
+
+  /** Notified after every flush, or null. */
+  private FlushListener mFlushListener = null;
+
+  /** Cells and estimated bytes buffered since the last flush. */
+  private long mPendingCells = 0;
+  private long mPendingBytes = 0;
+  /** When the last flush completed, in System.nanoTime() units. */
+  private long mLastFlushNanos = System.nanoTime();
+
+  /**
+   * Opens a batching writer on several tables, with one buffered writer per table.
+   *
+   * @param tables the tables to write to.
+   * @param maxCells flush once this many cells are buffered, or 0 to not limit cells.
+   * @param maxBytes flush once about this many bytes are buffered, or 0 to not limit bytes.
+   * @param flushIntervalMillis flush buffered cells older than this, or 0 to not flush on time.
+   * @param metrics metrics to record every flush into.
+   * @throws IOException if a buffered writer cannot be opened.
+   */
+  public BatchingWriter(
+      Collection<KijiTable> tables,
+      long maxCells,
+      long maxBytes,
+      long flushIntervalMillis,
+      IngestMetrics metrics) throws IOException {
+    Preconditions.checkArgument(!tables.isEmpty(), "No table to write to.");
+    mMaxCells = maxCells;
+    mMaxBytes = maxBytes;
+    mFlushIntervalNanos = flushIntervalMillis * 1000000L;
+    mMetrics = metrics;
+    try {
+      for (KijiTable table : tables) {
+        final KijiBufferedWriter writer = table.getWriterFactory().openBufferedWriter();
+        mWriters.put(table, writer);
+        if (maxBytes > 0) {
+          // Our byte count is an estimate: leave room so the writer never flushes behind our back.
+          writer.setBufferSize(2 * maxBytes);
+        }
+      }
+    } catch (IOException ioe) {
+      closeWriters();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Sets the listener notified after every flush.
+   *
+   * @param listener the listener, or null to remove it.
+   */
+  public void setFlushListener(FlushListener listener) {
+    mFlushListener = listener;
+  }
+
+  /**
+   * @param table one of the tables this writer was opened on.
+   * @return the putter the cells of this table should be written through.
+   */
+  public KijiPutter getPutter(KijiTable table) {
+    final KijiPutter putter = mWriters.get(table);
+    Preconditions.checkArgument(null != putter, "Not writing to table %s.", table.getName());
+    return putter;
+  }
+
+  /**
+   * Accounts for the cells of one message written through {@link #getPutter(KijiTable)}, and
+   * flushes the batch if it is full.
+   *
+   * @param cells the number of cells written for the message, over all tables.
+   * @param bytes an estimate of the size of these cells, in bytes.
+   * @throws IOException if the flush fails.
+   */
+  public void messageWritten(int cells, long bytes) throws IOException {
+    mPendingCells += cells;
+    mPendingBytes += bytes;
+    if ((mMaxCells > 0 && mPendingCells >= mMaxCells)
+        || (mMaxBytes > 0 && mPendingBytes >= mMaxBytes)) {
+      flush();
+    } else {
+      flushIfStale();
+    }
+  }
+
+  /**
+   * Flushes the pending cells if they have been buffered longer than the flush interval.
+   * Idle writers should call this regularly so no batch waits indefinitely.
+   *
+   * @throws IOException if the flush fails.
+   */
+  public void flushIfStale() throws IOException {
+    if (mFlushIntervalNanos > 0 && mPendingCells > 0
+        && System.nanoTime() - mLastFlushNanos >= mFlushIntervalNanos) {
+      flush();
+    }
+  }
+
+  /**
+   * Flushes the pending cells and records the latency of the flush.
+   *
+   * @throws IOException if the flush fails.
+   */
+  public void flush() throws IOException {
+    final long startNanos = System.nanoTime();
+    for (KijiBufferedWriter writer : mWriters.values()) {
+      writer.flush();
+    }
+    mLastFlushNanos = System.nanoTime();
+    final long nanos = mLastFlushNanos - startNanos;
+    mMetrics.mFlushMicros.update(nanos / 1000);
+    mMetrics.mFlushCells.update(mPendingCells);
+    mMetrics.mCellsFlushed.increment(mPendingCells);
+    LOG.debug("Flushed {} cells ({} bytes) in {} us",
+        new Object[] {mPendingCells, mPendingBytes, nanos / 1000});
+    mPendingCells = 0;
+    mPendingBytes = 0;
+    if (null != mFlushListener) {
+      mFlushListener.flushed();
+    }
+  }
+
+  /**
+   * Flushes the pending cells and closes the underlying writers.
+   *
+   * @throws IOException if the flush or a close fails.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (mPendingCells > 0) {
+        flush();
+      }
+    } finally {
+      closeWriters();
+    }
+  }
+
+  /**
+   * Closes every underlying writer, even if some fail to close.
+   *
+   * @throws IOException if a writer fails to close, after attempting to close the others.
+   */
+  private void closeWriters() throws IOException {
+    IOException failure = null;
+    for (KijiBufferedWriter writer : mWriters.values()) {
+      try {
+        writer.close();
+      } catch (IOException ioe) {
+        failure = ioe;
+      }
+    }
+    if (null != failure) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Views the bytes of a buffer as characters, one byte per character, without decoding them.
+ *
+ * <p>ASCII bytes map to themselves and every other byte maps to a character above 0x7f, so
+ * delimiters and word characters are recognized exactly as in the decoded text. A view may be
+ * re-pointed at another buffer to avoid allocating one view per message.</p>
+ */
+final class ByteBufferCharSequence implements CharSequence {
+  private ByteBuffer mBuffer;
+  private int mOffset;
+  private int mLength;
+
+  /** Creates a view of nothing. Use {@link #reset(ByteBuffer)} to point it at a buffer. */
+  ByteBufferCharSequence() {
+    mBuffer = ByteBuffer.allocate(0);
+  }
+
+  /**
+   * @param buffer the buffer to view.
+   * @param offset the absolute index of the first viewed byte.
+   * @param length the number of viewed bytes.
+   */
+  private ByteBufferCharSequence(ByteBuffer buffer, int offset, int length) {
+    mBuffer = buffer;
+    mOffset = offset;
+    mLength = length;
+  }
+
+  /**
+   * Points this view at the remaining bytes of a buffer. The position of the buffer is unchanged.
+   *
+   * @param buffer the buffer to view.
+   * @return this view.
+   */
+  ByteBufferCharSequence reset(ByteBuffer buffer) {
+    mBuffer = buffer;
+    mOffset = buffer.position();
+    mLength = buffer.remaining();
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int length() {
+    return mLength;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= mLength) {
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+    }
+    return (char) (mBuffer.get(mOffset + index) & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > mLength || start > end) {
+      throw new IndexOutOfBoundsException(start + ", " + end);
+    }
+    return new ByteBufferCharSequence(mBuffer, mOffset + start, end - start);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    final char[] chars = new char[mLength];
+    for (int i = 0; i < mLength; i++) {
+      chars[i] = charAt(i);
+    }
+    return new String(chars);
+  }
+}
@@ -21,25 +21,30 @@ package org.kiji.enronemail.bulkimport;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.joda.time.format.ISODateTimeFormat;
 
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.metrics.DefaultMetricsRegistry;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+import org.kiji.enronemail.metrics.MetricsReporter;
 import org.kiji.schema.EntityId;
 import org.kiji.schema.Kiji;
-import org.kiji.schema.KijiPutter;
 import org.kiji.schema.KijiTable;
-import org.kiji.schema.KijiTableWriter;
 import org.kiji.schema.KijiURI;
 
 /**
@@ -50,11 +55,71 @@ import org.kiji.schema.KijiURI;
  * your results.
  */
 public class EmailBulkImporter {
-  private final static DateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z (z)");
+  // Parsers reuse their buffers, so every importer thread gets its own instance.
+  private final static ThreadLocal<EmailParser> PARSER = new ThreadLocal<EmailParser>() {
+    @Override
+    protected EmailParser initialValue() {
+      return new EmailParser();
+    }
+  };
 
   // Table names for supported tables.
   private static final String EMAILS_TABLE = "emails";
+  /** Same layout as the emails table, with row keys hashed through the timestamp. */
+  private static final String EMAILS_SALTED_TABLE = "emails_salted";
+  /** Index of the emails table by Message-ID. */
+  private static final String EMAILS_BY_MID_TABLE = "emails_by_mid";
+  /** Index of the emails table by recipient. */
+  private static final String EMAILS_BY_RECIPIENT_TABLE = "emails_by_recipient";
   private static final String EMPLOYEE_TABLE = "employee";
+  /** Tables the messages can be imported into. */
+  private static final List<String> SUPPORTED_TABLES = ImmutableList.of(EMAILS_TABLE,
+      EMAILS_SALTED_TABLE, EMPLOYEE_TABLE, EMAILS_BY_MID_TABLE, EMAILS_BY_RECIPIENT_TABLE);
+
+  @Flag(name = "threads", usage = "Number of threads reading, parsing and writing messages.")
+  private int mThreads = 1;
+
+  @Flag(name = "queue-size",
+      usage = "Maximum number of message files waiting for a thread (0 for 64 per thread).")
+  private int mQueueSize = 0;
+
+  @Flag(name = "batch-cells",
+      usage = "Flush a thread's buffered writes once it holds this many cells (0 for no limit).")
+  private long mBatchCells = 5000;
+
+  @Flag(name = "batch-bytes",
+      usage = "Flush a thread's buffered writes once it holds about this many bytes "
+          + "(0 for no limit).")
+  private long mBatchBytes = 4L * 1024 * 1024;
+
+  @Flag(name = "flush-interval-ms",
+      usage = "Flush buffered writes that have been pending this long, in ms (0 to disable).")
+  private long mFlushIntervalMillis = 5000;
+
+  @Flag(name = "manifest",
+      usage = "Local file recording the imported message files. Files recorded by a previous run "
+          + "and unchanged since are skipped, so an interrupted import can be resumed.")
+  private String mManifestPath = "";
+
+  @Flag(name = "since",
+      usage = "Only import message files modified at or after this ISO-8601 date or time, "
+          + "e.g. 2013-07-01 or 2013-07-01T06:00.")
+  private String mSince = "";
+
+  @Flag(name = "metrics-registry",
+      usage = "Class of the MetricsRegistry recording the import metrics.")
+  private String mMetricsRegistryClass = DefaultMetricsRegistry.class.getName();
+
+  @Flag(name = "metrics-interval-s",
+      usage = "Print the rates of the import counters every this many seconds (0 to disable).")
+  private int mMetricsIntervalSeconds = 10;
+
+  @Flag(name = "metrics-json",
+      usage = "File to write the JSON summary of the import metrics to (default: standard output).")
+  private String mMetricsJsonPath = "";
+
+  /** How long the shutdown hook waits for the workers to flush their buffered writes. */
+  private static final long SHUTDOWN_FLUSH_TIMEOUT_MILLIS = 30000;
 
   public final static class SystemFilenameFilter implements FilenameFilter {
     Set<String> ignoredFiles = new HashSet<String>();
@@ -69,169 +134,380 @@ public class EmailBulkImporter {
     }
   }
 
-  public static void produceHelper(String message, KijiTable kijiTable, KijiPutter putter) throws IOException {
-    final String[] lines = message.split("\n");
-    int progress = 0;
-    Map<String, String> headers = Maps.newHashMap();
-    Set<Character> headerContinueChars = Sets.newHashSet(' ', '\t');
-    while ((progress < lines.length) && (lines[progress].length() > 0)) {
-      String[] fields = lines[progress].split(":", 2);
-
-      if (fields.length == 2) {
-        String key = fields[0];
-        String value = fields[1].trim();
-
-        // Look ahead for multi-line headers
-        while ((progress + 1 < lines.length) && headerContinueChars.contains(lines[progress + 1])) {
-          value = value + lines[progress + 1];
-          progress++;
-        }
+  /**
+   * Parses one message and writes its cells to a sink.
+   *
+   * @param message the raw message, with '\n' line endings.
+   * @param putter the sink to write the cells to.
+   * @return the number of cells written.
+   * @throws IOException if the message cannot be parsed or written.
+   */
+  public static int produceHelper(String message, EmailCellSink putter) throws IOException {
+    return writeMessage(PARSER.get().parse(message), putter);
+  }
 
-        // Only use the first occurrence of a particular header.
-        if (value.length() > 0 && !headers.containsKey(key)) {
-          headers.put(key, value);
-        }
-      }
-      progress++;
-    }
-    StringBuilder sb = new StringBuilder();
-    while (progress < lines.length) {
-      sb.append(lines[progress]);
-      sb.append("\n");
-      progress++;
+  /**
+   * Writes the cells of a parsed message to a sink.
+   *
+   * @param email the parsed message.
+   * @param putter the sink to write the cells to.
+   * @return the number of cells written.
+   * @throws MalformedEmailException if the message misses its Message-ID or its sender, or if
+   *     its date is missing or unparseable.
+   * @throws IOException if the cells cannot be written.
+   */
+  public static int writeMessage(EmailMessage email, EmailCellSink putter) throws IOException {
+    String dateStr = email.getHeader(EmailHeader.DATE);
+    if (null == dateStr) {
+      throw new MalformedEmailException("Missing Date header.");
     }
+    long ts = EmailDateParser.parse(dateStr);
 
-    String dateStr = headers.get("Date");
-    Date date;
-    try {
-      date = DATE_FORMAT.parse(dateStr);
-    } catch (ParseException e) {
-      e.printStackTrace();
-      throw new IOException(e);
+    String messageId = email.getHeader(EmailHeader.MESSAGE_ID);
+    if (null == messageId) {
+      throw new MalformedEmailException("Missing Message-ID header.");
     }
-
-    String body = sb.toString();
-    // Contract contractions.
-    body = body.replaceAll("'", "");
-
-    // Filter out any non-textual characters
-    body = body.replaceAll("\\W", " ");
-
-    // Compress whitespace
-    body = body.replaceAll(" +", " ");
-
-    String messageId = headers.get("Message-ID");
     if (messageId.startsWith("<") && messageId.endsWith(">")) {
-      messageId = messageId.substring(1, messageId.length() - 2);
+      messageId = messageId.substring(1, messageId.length() - 1);
+    }
+
+    // The sender is part of the row key of the message.
+    String from = email.getHeader(EmailHeader.FROM);
+    if (null == from) {
+      throw new MalformedEmailException("Missing From header.");
     }
 
-    String from = headers.get("From");
-    long ts = date.getTime();
+    if (EMAILS_BY_MID_TABLE.equals(putter.getTableName())) {
+      return writeMessageIdIndex(messageId, from, ts, putter);
+    } else if (EMAILS_BY_RECIPIENT_TABLE.equals(putter.getTableName())) {
+      return writeRecipientIndex(email, messageId, from, ts, putter);
+    }
 
     EntityId eid;
     String family;
-    if(EMAILS_TABLE.equals(kijiTable.getName())) {
+    if(EMAILS_TABLE.equals(putter.getTableName())
+        || EMAILS_SALTED_TABLE.equals(putter.getTableName())) {
       // Use the from and the timestamp of the email as the rowkey
-      eid = kijiTable.getEntityId(from, ts);
+      eid = putter.getEntityId(from, ts);
       family = "info";
-    } else if(EMPLOYEE_TABLE.equals(kijiTable.getName())) {
+    } else if(EMPLOYEE_TABLE.equals(putter.getTableName())) {
       // Use the from and the timestamp of the email as the rowkey.
-      eid = kijiTable.getEntityId(from);
+      eid = putter.getEntityId(from);
       family = "sent_messages";
     } else {
-      throw new RuntimeException("Unsupported table type: " + kijiTable.getName());
+      throw new RuntimeException("Unsupported table type: " + putter.getTableName());
     }
 
+    int cells = 0;
     putter.put(eid, family, "mid", ts, messageId);
+    cells++;
 
-    putter.put(eid, family, "date", ts, date.getTime());
+    putter.put(eid, family, "date", ts, ts);
+    cells++;
 
-    if (null != from && !from.isEmpty()) {
-      putter.put(eid, family, "from", ts, from);
-    }
+    putter.put(eid, family, "from", ts, from);
+    cells++;
 
-    String to = headers.get("To");
+    String to = email.getHeader(EmailHeader.TO);
     if (null != to && !to.isEmpty()) {
       putter.put(eid, family, "to", ts, to);
+      cells++;
     }
 
-    String subject = headers.get("Subject");
+    String subject = email.getHeader(EmailHeader.SUBJECT);
     if (null != subject && !subject.isEmpty()) {
       putter.put(eid, family, "subject", ts, subject);
+      cells++;
     }
 
-    String cc = headers.get("X-cc");
+    String cc = email.getHeader(EmailHeader.CC);
     if (null != cc && !cc.isEmpty()) {
       putter.put(eid, family, "cc", ts, cc);
+      cells++;
     }
 
-    String bcc = headers.get("X-bcc");
+    String bcc = email.getHeader(EmailHeader.BCC);
     if (null != bcc && !bcc.isEmpty()) {
-      putter.put(eid, family, "cc", ts, bcc);
+      putter.put(eid, family, "bcc", ts, bcc);
+      cells++;
     }
 
-    putter.put(eid, family, "body", ts, body);
+    // X-cc and X-bcc only hold display names: the addresses come from Cc and Bcc.
+    String ccAddresses = email.getHeader(EmailHeader.CC_ADDRESSES);
+    if (null != ccAddresses && !ccAddresses.isEmpty()) {
+      putter.put(eid, family, "cc_addresses", ts, ccAddresses);
+      cells++;
+    }
+
+    String bccAddresses = email.getHeader(EmailHeader.BCC_ADDRESSES);
+    if (null != bccAddresses && !bccAddresses.isEmpty()) {
+      putter.put(eid, family, "bcc_addresses", ts, bccAddresses);
+      cells++;
+    }
+
+    String inReplyTo = email.getHeader(EmailHeader.IN_REPLY_TO);
+    if (null != inReplyTo && !inReplyTo.isEmpty()) {
+      putter.put(eid, family, "in_reply_to", ts, inReplyTo);
+      cells++;
+    }
+
+    String references = email.getHeader(EmailHeader.REFERENCES);
+    if (null != references && !references.isEmpty()) {
+      putter.put(eid, family, "references", ts, references);
+      cells++;
+    }
+
+    putter.put(eid, family, "body", ts, email.getBody());
+    cells++;
+
+    if (email.getQuoteStart() >= 0) {
+      putter.put(eid, family, "quote_start", ts, email.getQuoteStart());
+      cells++;
+    }
+    return cells;
   }
 
-  public static long processDirectory(KijiTable table, KijiPutter putter, File folder, String prefix) {
-    long count = 0;
-    if (folder.isDirectory()) {
-      System.out.println("Processing: " + prefix + ": " + folder.toString());
-      File[] files = folder.listFiles(new SystemFilenameFilter());
-      for (int c = 0; c < files.length; c++) {
-        File file = files[c];
-        count += processDirectory(table, putter, file, prefix + "(" + c + "/" + files.length + ")");
-      }
-    } else {
-      count++;
-      BufferedReader br = null;
-      // System.out.println("File: " + folder.toString());
+  /**
+   * Indexes a message by Message-ID: the row of the Message-ID points to the row of the message
+   * in the emails table.
+   *
+   * @param messageId the Message-ID of the message.
+   * @param from the sender of the message.
+   * @param ts the date of the message.
+   * @param putter the sink of the emails_by_mid table.
+   * @return the number of cells written.
+   * @throws IOException if the cells cannot be written.
+   */
+  private static int writeMessageIdIndex(String messageId, String from, long ts,
+      EmailCellSink putter) throws IOException {
+    final EntityId eid = putter.getEntityId(messageId);
+    putter.put(eid, "ref", "from", ts, from);
+    putter.put(eid, "ref", "timestamp", ts, ts);
+    return 2;
+  }
 
-      try {
-        StringBuilder sb = new StringBuilder();
-        String currentLine;
+  /**
+   * Indexes a message by recipient: the row of each recipient of the message holds its
+   * Message-ID, qualified by its sender and versioned by its date, the row key of the message in
+   * the emails table.
+   *
+   * @param email the parsed message.
+   * @param messageId the Message-ID of the message.
+   * @param from the sender of the message.
+   * @param ts the date of the message.
+   * @param putter the sink of the emails_by_recipient table.
+   * @return the number of cells written.
+   * @throws IOException if the cells cannot be written.
+   */
+  private static int writeRecipientIndex(EmailMessage email, String messageId, String from,
+      long ts, EmailCellSink putter) throws IOException {
+    int cells = 0;
+    // Not X-cc and X-bcc, which hold display names rather than addresses.
+    for (String recipient : Recipients.split(email.getHeader(EmailHeader.TO),
+        email.getHeader(EmailHeader.CC_ADDRESSES), email.getHeader(EmailHeader.BCC_ADDRESSES))) {
+      putter.put(putter.getEntityId(recipient), "received", from, ts, messageId);
+      cells++;
+    }
+    return cells;
+  }
 
-        br = new BufferedReader(new FileReader(folder));
+  /**
+   * Reads a whole message file, normalizing line endings to '\n'.
+   *
+   * @param file the message file to read.
+   * @return the contents of the message file.
+   * @throws IOException if the file cannot be read.
+   */
+  public static String readMessage(File file) throws IOException {
+    return readMessage(new FileReader(file));
+  }
 
-        while ((currentLine = br.readLine()) != null) {
-          sb.append(currentLine);
-          sb.append("\n");
-        }
-        String wholeFile = sb.toString();
-        produceHelper(wholeFile, table, putter);
-      } catch (IOException e) {
-        e.printStackTrace();
-      } finally {
-        try {
-          if (br != null) br.close();
-        } catch (IOException ex) {
-          ex.printStackTrace();
+  /**
+   * Reads a whole message, normalizing line endings to '\n'.
+   *
+   * @param reader the reader to read the message from. It is closed once read.
+   * @return the contents of the message.
+   * @throws IOException if the message cannot be read.
+   */
+  public static String readMessage(Reader reader) throws IOException {
+    BufferedReader br = null;
+    try {
+      StringBuilder sb = new StringBuilder();
+      String currentLine;
+
+      br = new BufferedReader(reader);
+
+      while ((currentLine = br.readLine()) != null) {
+        sb.append(currentLine);
+        sb.append("\n");
+      }
+      return sb.toString();
+    } finally {
+      try {
+        if (br != null) {
+          br.close();
+        } else {
+          reader.close();
         }
+      } catch (IOException ex) {
+        ex.printStackTrace();
       }
     }
-    return count;
   }
 
   public static void main(String[] args) {
+    System.exit(new EmailBulkImporter().run(args));
+  }
+
+  /**
+   * Writes the JSON summary of the import metrics to the --metrics-json file, or to the standard
+   * output.
+   *
+   * @param reporter the reporter of the import metrics.
+   * @throws IOException if the summary cannot be written.
+   */
+  private void writeMetrics(MetricsReporter reporter) throws IOException {
+    if (mMetricsJsonPath.isEmpty()) {
+      reporter.writeJson(System.out);
+      return;
+    }
+    final Writer writer = new OutputStreamWriter(
+        new FileOutputStream(mMetricsJsonPath), Charsets.UTF_8);
+    try {
+      reporter.writeJson(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private int run(String[] args) {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    args = nonFlagArgs.toArray(new String[nonFlagArgs.size()]);
+
     if (args.length < 2) {
-      System.err.println("Must pass in a Maildir directory");
-      System.exit(1);
+      System.err.println("Usage: EmailBulkImporter [flags] <table URI>... <Maildir directory>");
+      return 1;
+    }
+    // Every message is parsed once and written to each of the tables.
+    final List<KijiURI> tableURIs = Lists.newArrayList();
+    for (int i = 0; i < args.length - 1; i++) {
+      final KijiURI tableURI = KijiURI.newBuilder(args[i]).build();
+      if (!SUPPORTED_TABLES.contains(tableURI.getTable())) {
+        System.err.println("Unsupported table: " + tableURI + ". Expected one of the "
+            + SUPPORTED_TABLES + " tables.");
+        return 1;
+      }
+      tableURIs.add(tableURI);
     }
-    String kijiURIString = args[0];
-    String path = args[1];
-    KijiURI kijiURI = KijiURI.newBuilder(kijiURIString).build();
+    String path = args[args.length - 1];
 
+    long modifiedSince = 0;
+    if (!mSince.isEmpty()) {
+      try {
+        modifiedSince = ISODateTimeFormat.dateTimeParser().parseMillis(mSince);
+      } catch (IllegalArgumentException iae) {
+        System.err.println("Invalid --since date: " + mSince);
+        return 1;
+      }
+    }
+
+    final MetricsRegistry registry;
     try {
-      Kiji kiji = Kiji.Factory.open(kijiURI);
-      KijiTable kijiTable = kiji.openTable(kijiURI.getTable());
-      KijiTableWriter kijiTableWriter = kijiTable.openTableWriter();
+      registry = Class.forName(mMetricsRegistryClass).asSubclass(MetricsRegistry.class)
+          .newInstance();
+    } catch (Exception e) {
+      System.err.println("Unable to create metrics registry " + mMetricsRegistryClass + ": " + e);
+      return 1;
+    }
 
-      File folder = new File(path);
+    ImportManifest manifest = null;
+    try {
+      if (!mManifestPath.isEmpty()) {
+        manifest = new ImportManifest(new File(mManifestPath));
+        System.out.println("Skipping unchanged files among the " + manifest.size()
+            + " recorded in " + mManifestPath);
+      }
+      final List<Kiji> kijis = Lists.newArrayList();
+      final List<KijiTable> kijiTables = Lists.newArrayList();
+      try {
+        for (KijiURI tableURI : tableURIs) {
+          final Kiji kiji = Kiji.Factory.open(tableURI);
+          kijis.add(kiji);
+          kijiTables.add(kiji.openTable(tableURI.getTable()));
+        }
+        File folder = new File(path);
 
-      long count = processDirectory(kijiTable, kijiTableWriter, folder, "");
-      System.out.println("Count: " + count);
+        final ParallelMaildirImporter.Builder builder = ParallelMaildirImporter.builder();
+        for (KijiTable kijiTable : kijiTables) {
+          builder.withTable(kijiTable);
+        }
+        final ParallelMaildirImporter importer = builder
+            .withThreads(mThreads)
+            .withQueueCapacity(mQueueSize)
+            .withBatchCells(mBatchCells)
+            .withBatchBytes(mBatchBytes)
+            .withFlushIntervalMillis(mFlushIntervalMillis)
+            .withManifest(manifest)
+            .withModifiedSince(modifiedSince)
+            .withMetrics(registry)
+            .build();
+        // If the JVM is asked to exit mid-import, let the workers flush what they buffered.
+        final Thread flushOnShutdown = new Thread("importer-shutdown-flush") {
+          @Override
+          public void run() {
+            importer.requestStop();
+            try {
+              importer.awaitWorkers(SHUTDOWN_FLUSH_TIMEOUT_MILLIS);
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+        Runtime.getRuntime().addShutdownHook(flushOnShutdown);
+        final MetricsReporter reporter = new MetricsReporter(registry, System.out);
+        if (mMetricsIntervalSeconds > 0) {
+          reporter.start(mMetricsIntervalSeconds * 1000L);
+        }
+        try {
+          long count = importer.run(folder);
+          System.out.println("Count: " + count);
+        } finally {
+          reporter.close();
+          try {
+            Runtime.getRuntime().removeShutdownHook(flushOnShutdown);
+          } catch (IllegalStateException ise) {
+            // The JVM is already shutting down and the hook is running.
+          }
+          writeMetrics(reporter);
+        }
+      } finally {
+        for (KijiTable kijiTable : kijiTables) {
+          kijiTable.release();
+        }
+        for (Kiji kiji : kijis) {
+          kiji.release();
+        }
+      }
     } catch (IOException e) {
       e.printStackTrace();
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      e.printStackTrace();
+      return 1;
+    } finally {
+      if (null != manifest) {
+        try {
+          manifest.close();
+        } catch (IOException ioe) {
+          ioe.printStackTrace();
+        }
+      }
     }
+    return 0;
   }
 }
@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.IOException;
+
+import org.kiji.mapreduce.KijiTableContext;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiPutter;
+import org.kiji.schema.KijiTable;
+
+/**
+ * Destination of the cells of imported messages.
+ *
+ * <p>This lets the same row-building code write through a {@link KijiPutter}, from the command
+ * line importer, or through a {@link KijiTableContext}, from a MapReduce bulk importer.</p>
+ */
+public abstract class EmailCellSink {
+  /** @return the name of the table the cells are written to. */
+  public abstract String getTableName();
+
+  /**
+   * Builds an entity ID for the table the cells are written to.
+   *
+   * @param components the components of the row key.
+   * @return the entity ID.
+   */
+  public abstract EntityId getEntityId(Object... components);
+
+  /**
+   * Writes one cell.
+   *
+   * @param entityId the row to write to.
+   * @param family the column family.
+   * @param qualifier the column qualifier.
+   * @param timestamp the timestamp of the cell.
+   * @param value the value of the cell.
+   * @param <T> the type of the value.
+   * @throws IOException if the cell cannot be written.
+   */
+  public abstract <T> void put(
+      EntityId entityId, String family, String qualifier, long timestamp, T value)
+      throws IOException;
+
+  /**
+   * Creates a sink writing through a putter opened on a table.
+   *
+   * @param table the table the putter writes to.
+   * @param putter the putter to write with.
+   * @return a sink writing to the putter.
+   */
+  public static EmailCellSink forPutter(final KijiTable table, final KijiPutter putter) {
+    return new EmailCellSink() {
+      @Override
+      public String getTableName() {
+        return table.getName();
+      }
+
+      @Override
+      public EntityId getEntityId(Object... components) {
+        return table.getEntityId(components);
+      }
+
+      @Override
+      public <T> void put(
+          EntityId entityId, String family, String qualifier, long timestamp, T value)
+          throws IOException {
+        putter.put(entityId, family, qualifier, timestamp, value);
+      }
+    };
+  }
+
+  /**
+   * Creates a sink writing to the output of a bulk importer.
+   *
+   * @param tableName the name of the output table of the job.
+   * @param context the context of the bulk importer.
+   * @return a sink writing to the context.
+   */
+  public static EmailCellSink forContext(final String tableName, final KijiTableContext context) {
+    return new EmailCellSink() {
+      @Override
+      public String getTableName() {
+        return tableName;
+      }
+
+      @Override
+      public EntityId getEntityId(Object... components) {
+        return context.getEntityId(components);
+      }
+
+      @Override
+      public <T> void put(
+          EntityId entityId, String family, String qualifier, long timestamp, T value)
+          throws IOException {
+        context.put(entityId, family, qualifier, timestamp, value);
+      }
+    };
+  }
+}
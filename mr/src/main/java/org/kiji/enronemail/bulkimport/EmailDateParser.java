@@ -0,0 +1,310 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeFormatterBuilder;
+import org.joda.time.format.DateTimeParser;
+
+/**
+ * Thread-safe parser for the Date header of the messages.
+ *
+ * <p>Nearly every Enron message uses the exact layout
+ * <code>Mon, 14 May 2001 16:39:00 -0700 (PDT)</code>. That layout is parsed by hand without
+ * allocating, and the few distinct time zone suffixes (<code>-0700 (PDT)</code>,
+ * <code>-0800 (PST)</code>, ...) are resolved through a small cache. Anything else falls back to
+ * lenient Joda-Time formatters, which accept a missing day of the week, two-digit years, missing
+ * seconds, extra whitespace and named time zones.</p>
+ */
+public final class EmailDateParser {
+  /** Maximum number of distinct time zone suffixes cached. */
+  private static final int MAX_CACHED_SUFFIXES = 32;
+
+  private static final long MILLIS_PER_SECOND = TimeUnit.SECONDS.toMillis(1);
+  private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+  private static final long MILLIS_PER_HOUR = TimeUnit.HOURS.toMillis(1);
+  private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+  /** Offsets of the named time zones that appear without a numeric offset, in minutes. */
+  private static final ImmutableMap<String, Integer> ZONE_OFFSETS =
+      ImmutableMap.<String, Integer>builder()
+          .put("UT", 0).put("UTC", 0).put("GMT", 0)
+          .put("EST", -5 * 60).put("EDT", -4 * 60)
+          .put("CST", -6 * 60).put("CDT", -5 * 60)
+          .put("MST", -7 * 60).put("MDT", -6 * 60)
+          .put("PST", -8 * 60).put("PDT", -7 * 60)
+          .build();
+
+  /** Lenient fallback for the layouts that do not match the fast path. */
+  private static final DateTimeFormatter FALLBACK_FORMAT = new DateTimeFormatterBuilder()
+      .append(null, new DateTimeParser[] {
+          DateTimeFormat.forPattern("EEE, d MMM yy HH:mm:ss Z").getParser(),
+          DateTimeFormat.forPattern("EEE, d MMM yy HH:mm Z").getParser(),
+          DateTimeFormat.forPattern("EEE d MMM yy HH:mm:ss Z").getParser(),
+          DateTimeFormat.forPattern("d MMM yy HH:mm:ss Z").getParser(),
+          DateTimeFormat.forPattern("d MMM yy HH:mm Z").getParser(),
+      })
+      .toFormatter()
+      .withLocale(Locale.US)
+      .withPivotYear(2000);
+
+  /** A cached time zone suffix, with its offset. */
+  private static final class Suffix {
+    private final String mText;
+    private final long mOffsetMillis;
+
+    /**
+     * @param text the suffix, e.g. "-0700 (PDT)".
+     * @param offsetMillis the offset from UTC of the suffix.
+     */
+    private Suffix(String text, long offsetMillis) {
+      mText = text;
+      mOffsetMillis = offsetMillis;
+    }
+  }
+
+  /** Cached suffixes. The array is replaced, never modified, so it can be read without locks. */
+  private static volatile Suffix[] sSuffixes = new Suffix[0];
+
+  /** Utility class cannot be instantiated. */
+  private EmailDateParser() {
+  }
+
+  /**
+   * Parses the value of a Date header.
+   *
+   * @param date the value of the Date header.
+   * @return the date, in milliseconds since the epoch.
+   * @throws MalformedDateException if the date cannot be parsed by any supported layout.
+   */
+  public static long parse(String date) throws MalformedDateException {
+    final long millis = parseFast(date);
+    if (Long.MIN_VALUE != millis) {
+      return millis;
+    }
+    return parseFallback(date);
+  }
+
+  /**
+   * Parses the exact Enron layout, e.g. <code>Mon, 14 May 2001 16:39:00 -0700 (PDT)</code>.
+   *
+   * @param date the value of the Date header.
+   * @return the date in milliseconds since the epoch, or Long.MIN_VALUE if the date does not
+   *     follow the layout exactly.
+   */
+  static long parseFast(String date) {
+    // Skip the day of the week: "Mon, ".
+    if (date.length() < 5 || ',' != date.charAt(3) || ' ' != date.charAt(4)) {
+      return Long.MIN_VALUE;
+    }
+    int pos = 5;
+    // Day of the month, on one or two digits, each checked before they are combined.
+    final int dayDigits = (pos + 1 < date.length() && ' ' != date.charAt(pos + 1)) ? 2 : 1;
+    final int day = number(date, pos, dayDigits);
+    pos += dayDigits;
+    if (day < 1 || pos + 21 > date.length() || ' ' != date.charAt(pos)) {
+      return Long.MIN_VALUE;
+    }
+    final int month = month(date, pos + 1);
+    pos += 4;
+    if (month < 1 || ' ' != date.charAt(pos)) {
+      return Long.MIN_VALUE;
+    }
+    final int year = number(date, pos + 1, 4);
+    final int hour = number(date, pos + 6, 2);
+    final int minute = number(date, pos + 9, 2);
+    final int second = number(date, pos + 12, 2);
+    if (year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0
+        || second > 60 || day > 31
+        || ' ' != date.charAt(pos + 5) || ':' != date.charAt(pos + 8)
+        || ':' != date.charAt(pos + 11) || ' ' != date.charAt(pos + 14)) {
+      return Long.MIN_VALUE;
+    }
+    final Suffix suffix = suffix(date, pos + 15);
+    if (null == suffix) {
+      return Long.MIN_VALUE;
+    }
+    return daysSinceEpoch(year, month, day) * MILLIS_PER_DAY
+        + hour * MILLIS_PER_HOUR
+        + minute * MILLIS_PER_MINUTE
+        + second * MILLIS_PER_SECOND
+        - suffix.mOffsetMillis;
+  }
+
+  /**
+   * Parses the dates that do not follow the exact Enron layout.
+   *
+   * @param date the value of the Date header.
+   * @return the date, in milliseconds since the epoch.
+   * @throws MalformedDateException if the date cannot be parsed.
+   */
+  private static long parseFallback(String date) throws MalformedDateException {
+    // Drop the trailing comment, e.g. "(PDT)", and collapse whitespace.
+    String normalized = date.replaceAll("\\([^)]*\\)\\s*$", "").trim().replaceAll("\\s+", " ");
+    // Replace a named time zone with its numeric offset.
+    final int lastSpace = normalized.lastIndexOf(' ');
+    if (lastSpace > 0) {
+      final Integer minutes = ZONE_OFFSETS.get(normalized.substring(lastSpace + 1));
+      if (null != minutes) {
+        normalized = normalized.substring(0, lastSpace + 1) + formatOffset(minutes);
+      }
+    }
+    try {
+      return FALLBACK_FORMAT.parseMillis(normalized);
+    } catch (IllegalArgumentException iae) {
+      throw new MalformedDateException("Unparseable date: " + date, iae);
+    }
+  }
+
+  /**
+   * Resolves the time zone suffix of a date through the cache.
+   *
+   * @param date the value of the Date header.
+   * @param start where the time zone suffix starts.
+   * @return the suffix, or null if it cannot be resolved.
+   */
+  private static Suffix suffix(String date, int start) {
+    final int length = date.length() - start;
+    for (Suffix suffix : sSuffixes) {
+      if (suffix.mText.length() == length && date.regionMatches(start, suffix.mText, 0, length)) {
+        return suffix;
+      }
+    }
+    return cacheSuffix(date.substring(start));
+  }
+
+  /**
+   * Resolves a time zone suffix missing from the cache, and caches it.
+   *
+   * @param text the suffix, e.g. "-0700 (PDT)" or "-0700".
+   * @return the suffix, or null if it cannot be resolved.
+   */
+  private static synchronized Suffix cacheSuffix(String text) {
+    // "+HHMM" or "-HHMM", optionally followed by a comment.
+    if (text.length() < 5 || (text.length() > 5 && ' ' != text.charAt(5))) {
+      return null;
+    }
+    final char sign = text.charAt(0);
+    final int hours = number(text, 1, 2);
+    final int minutes = number(text, 3, 2);
+    if (('+' != sign && '-' != sign) || hours < 0 || minutes < 0 || minutes > 59) {
+      return null;
+    }
+    final long offset =
+        (('-' == sign) ? -1 : 1) * (hours * MILLIS_PER_HOUR + minutes * MILLIS_PER_MINUTE);
+    final Suffix suffix = new Suffix(text, offset);
+
+    final Suffix[] suffixes = sSuffixes;
+    if (suffixes.length < MAX_CACHED_SUFFIXES) {
+      final Suffix[] updated = new Suffix[suffixes.length + 1];
+      System.arraycopy(suffixes, 0, updated, 0, suffixes.length);
+      updated[suffixes.length] = suffix;
+      sSuffixes = updated;
+    }
+    return suffix;
+  }
+
+  /**
+   * @param minutes an offset from UTC, in minutes.
+   * @return the offset formatted as "+HHMM" or "-HHMM".
+   */
+  private static String formatOffset(int minutes) {
+    final int abs = Math.abs(minutes);
+    return String.format("%c%02d%02d", (minutes < 0) ? '-' : '+', abs / 60, abs % 60);
+  }
+
+  /**
+   * Computes the number of days between the epoch and a date of the proleptic Gregorian calendar.
+   *
+   * @param year the year.
+   * @param month the month, from 1 to 12.
+   * @param day the day of the month, from 1 to 31.
+   * @return the number of days since 1970-01-01.
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    // Count years from March, so the leap day is the last day of the year.
+    final int y = (month <= 2) ? year - 1 : year;
+    final int era = (y >= 0 ? y : y - 399) / 400;
+    final int yearOfEra = y - era * 400;
+    final int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  /**
+   * @param s a string.
+   * @param start where the month abbreviation starts.
+   * @return the month, from 1 to 12, or -1 if there is no English month abbreviation.
+   */
+  private static int month(String s, int start) {
+    final int key = (s.charAt(start) << 16) | (s.charAt(start + 1) << 8) | s.charAt(start + 2);
+    switch (key) {
+      case ('J' << 16) | ('a' << 8) | 'n': return 1;
+      case ('F' << 16) | ('e' << 8) | 'b': return 2;
+      case ('M' << 16) | ('a' << 8) | 'r': return 3;
+      case ('A' << 16) | ('p' << 8) | 'r': return 4;
+      case ('M' << 16) | ('a' << 8) | 'y': return 5;
+      case ('J' << 16) | ('u' << 8) | 'n': return 6;
+      case ('J' << 16) | ('u' << 8) | 'l': return 7;
+      case ('A' << 16) | ('u' << 8) | 'g': return 8;
+      case ('S' << 16) | ('e' << 8) | 'p': return 9;
+      case ('O' << 16) | ('c' << 8) | 't': return 10;
+      case ('N' << 16) | ('o' << 8) | 'v': return 11;
+      case ('D' << 16) | ('e' << 8) | 'c': return 12;
+      default: return -1;
+    }
+  }
+
+  /**
+   * @param s a string.
+   * @param start where the number starts.
+   * @param digits the number of digits of the number.
+   * @return the number, or a negative value if any character is not a digit.
+   */
+  private static int number(String s, int start, int digits) {
+    int value = 0;
+    for (int i = start; i < start + digits; i++) {
+      final int digit = digit(s, i);
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * @param s a string.
+   * @param index the index of a character.
+   * @return the value of the digit at the index, or a negative value if it is not a digit.
+   */
+  private static int digit(String s, int index) {
+    if (index >= s.length()) {
+      return -1;
+    }
+    final char c = s.charAt(index);
+    return (c >= '0' && c <= '9') ? c - '0' : -1;
+  }
+}
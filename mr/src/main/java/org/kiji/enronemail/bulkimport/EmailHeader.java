@@ -0,0 +1,75 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+/**
+ * The message headers the importer keeps. Every other header is skipped by {@link EmailParser}
+ * without being copied.
+ */
+public enum EmailHeader {
+  MESSAGE_ID("Message-ID"),
+  DATE("Date"),
+  FROM("From"),
+  TO("To"),
+  SUBJECT("Subject"),
+  /** Display names of the Cc recipients, such as <code>Shapiro, Richard</code>. */
+  CC("X-cc"),
+  /** Display names of the Bcc recipients. */
+  BCC("X-bcc"),
+  /** Addresses of the Cc recipients. */
+  CC_ADDRESSES("Cc"),
+  /** Addresses of the Bcc recipients. */
+  BCC_ADDRESSES("Bcc"),
+  IN_REPLY_TO("In-Reply-To"),
+  /** Some clients split the references over several headers, whose values are concatenated. */
+  REFERENCES("References", true);
+
+  /** Name of the header, as it appears in the message. Names are matched ignoring case. */
+  private final String mName;
+
+  /** Whether every occurrence of the header is kept, rather than only the first one. */
+  private final boolean mRepeated;
+
+  /**
+   * @param name the name of the header in the message.
+   */
+  private EmailHeader(String name) {
+    this(name, false);
+  }
+
+  /**
+   * @param name the name of the header in the message.
+   * @param repeated whether every occurrence of the header is kept, separated by a space.
+   */
+  private EmailHeader(String name, boolean repeated) {
+    mName = name;
+    mRepeated = repeated;
+  }
+
+  /** @return the name of the header, as it appears in the message. */
+  public String getName() {
+    return mName;
+  }
+
+  /** @return whether every occurrence of the header is kept, rather than only the first one. */
+  public boolean isRepeated() {
+    return mRepeated;
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+/**
+ * The headers and the normalized body of a parsed message, as produced by {@link EmailParser}.
+ */
+public final class EmailMessage {
+  /** Values of the kept headers, indexed by {@link EmailHeader#ordinal()}. */
+  private final String[] mHeaders;
+  private final String mBody;
+  /** Offset in the body of the first quoted or forwarded message, or -1. */
+  private final int mQuoteStart;
+
+  /**
+   * @param headers values of the kept headers, indexed by ordinal, or null when missing.
+   * @param body the normalized body.
+   * @param quoteStart the offset in the body of the first quoted message, or -1 if none.
+   */
+  EmailMessage(String[] headers, String body, int quoteStart) {
+    mHeaders = headers;
+    mBody = body;
+    mQuoteStart = quoteStart;
+  }
+
+  /**
+   * @param header the header to get.
+   * @return the value of the first non-empty occurrence of the header, or null if missing.
+   */
+  public String getHeader(EmailHeader header) {
+    return mHeaders[header.ordinal()];
+  }
+
+  /**
+   * @return the body, stripped of apostrophes and with every run of non-word characters
+   *     replaced by a single space.
+   */
+  public String getBody() {
+    return mBody;
+  }
+
+  /**
+   * @return the offset in the normalized body of the first quoted reply or forwarded message,
+   *     found through its separator line before normalization, or -1 if the body quotes nothing.
+   */
+  public int getQuoteStart() {
+    return mQuoteStart;
+  }
+}
@@ -0,0 +1,327 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+
+import org.kiji.enronemail.text.Tokenizer;
+
+/**
+ * Single-pass parser for the RFC-822 messages of the Maildir.
+ *
+ * <p>The parser walks the message once. Headers not listed in {@link EmailHeader} are skipped
+ * without being copied, folded header lines are unfolded, and only the first non-empty
+ * occurrence of each header is kept, except for repeated headers such as References whose
+ * occurrences are concatenated. The body is normalized on the fly: apostrophes are dropped and
+ * every run of non-word characters (as matched by the <code>\W</code> regular expression)
+ * collapses into a single space. As the line breaks and dashes are lost to the normalization,
+ * the parser also records where the first quoted or forwarded message starts in the normalized
+ * body: the first line starting, after optional blanks, with a separator inserted by Outlook
+ * ("-----Original Message-----") or Lotus Notes ("---------------------- Forwarded by").</p>
+ *
+ * <p>A parser reuses its buffers from one message to the next, so it must only be used from
+ * one thread.</p>
+ */
+public final class EmailParser {
+  private static final EmailHeader[] HEADERS = EmailHeader.values();
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+  /** Lines starting a quoted reply or a forwarded message, matched ignoring case. */
+  private static final String[] QUOTE_SEPARATORS = {
+    "-----Original Message-----",
+    "---------------------- Forwarded by",
+  };
+
+  /** Reused buffer for the value of the header being parsed. */
+  private final StringBuilder mValue = new StringBuilder();
+  /** Reused buffer for the normalized body. */
+  private final StringBuilder mBody = new StringBuilder();
+  /** Offset in the normalized body of the first quoted message, or -1, set with the body. */
+  private int mQuoteStart = -1;
+
+  /** Reused view of the bytes of the messages parsed from byte buffers. */
+  private final ByteBufferCharSequence mBytes = new ByteBufferCharSequence();
+  /** Whether the message being parsed holds raw UTF-8 bytes rather than decoded text. */
+  private boolean mUtf8Bytes = false;
+
+  /**
+   * Parses a message from its raw bytes, without decoding the parts that are not kept.
+   *
+   * <p>Only the values of the kept headers are decoded, as UTF-8. The body is normalized
+   * directly from the bytes: non-ASCII characters are not word characters, so every byte of a
+   * multi-byte character collapses into the same separator as in the decoded text.</p>
+   *
+   * @param message a buffer whose remaining bytes are the raw message. Its position is unchanged.
+   * @return the kept headers and normalized body of the message.
+   */
+  public EmailMessage parse(ByteBuffer message) {
+    mUtf8Bytes = true;
+    try {
+      return parse(mBytes.reset(message));
+    } finally {
+      mUtf8Bytes = false;
+      // Do not hold on to the buffer, which may be a memory mapping.
+      mBytes.reset(EMPTY);
+    }
+  }
+
+  /**
+   * Parses a message from its text.
+   *
+   * @param message the raw message. Lines may end with '\n' or "\r\n".
+   * @return the kept headers and normalized body of the message.
+   */
+  public EmailMessage parse(CharSequence message) {
+    final int length = message.length();
+    final String[] headers = new String[HEADERS.length];
+
+    // The header being accumulated, which may continue on the following folded lines.
+    EmailHeader current = null;
+    int pos = 0;
+    int bodyStart = length;
+    while (pos < length) {
+      final int eol = endOfLine(message, pos, length);
+      if (isBlank(message, pos, eol)) {
+        bodyStart = pos;
+        break;
+      }
+      final char first = message.charAt(pos);
+      if (' ' == first || '\t' == first) {
+        if (null != current) {
+          // Folded header: unfold the continuation line into the current value.
+          mValue.append(' ');
+          appendTrimmed(message, pos, eol, mValue);
+        }
+      } else {
+        store(current, headers);
+        current = null;
+        final int colon = indexOf(message, ':', pos, eol);
+        if (colon >= 0) {
+          final EmailHeader header = match(message, pos, colon);
+          if (null != header && (null == headers[header.ordinal()] || header.isRepeated())) {
+            current = header;
+            mValue.setLength(0);
+            appendTrimmed(message, colon + 1, eol, mValue);
+          }
+        }
+      }
+      pos = eol + 1;
+    }
+    store(current, headers);
+
+    final String body = normalizeBody(message, bodyStart, length);
+    return new EmailMessage(headers, body, mQuoteStart);
+  }
+
+  /**
+   * Normalizes a text like the body of a message, e.g. to score it like the imported bodies.
+   *
+   * @param text the text.
+   * @return the normalized text, or an empty string if the text only holds line breaks.
+   */
+  public String normalizeBody(CharSequence text) {
+    return normalizeBody(text, 0, text.length());
+  }
+
+  /**
+   * Stores the accumulated value of a header, unless it is empty. The value of a repeated header
+   * is appended to its previous occurrences.
+   *
+   * @param header the header being accumulated, or null.
+   * @param headers the header values of the message.
+   */
+  private void store(EmailHeader header, String[] headers) {
+    if (null != header && mValue.length() > 0) {
+      String value = mValue.toString();
+      if (mUtf8Bytes && !isAscii(mValue)) {
+        // Each character holds one raw byte: decode them now that the value is known.
+        value = new String(value.getBytes(Charsets.ISO_8859_1), Charsets.UTF_8);
+      }
+      final String previous = headers[header.ordinal()];
+      headers[header.ordinal()] = (null == previous) ? value : previous + ' ' + value;
+    }
+  }
+
+  /**
+   * Normalizes the body in one pass: drops apostrophes and collapses every run of non-word
+   * characters into one space. Sets {@link #mQuoteStart} to the offset in the normalized body of
+   * the first line starting with one of {@link #QUOTE_SEPARATORS}, or to -1.
+   *
+   * @param message the message.
+   * @param start the start of the blank line separating the headers from the body.
+   * @param end the end of the message.
+   * @return the normalized body, or an empty string if the body only holds empty lines.
+   */
+  private String normalizeBody(CharSequence message, int start, int end) {
+    mBody.setLength(0);
+    mQuoteStart = -1;
+    boolean inSeparator = false;
+    boolean hasContent = false;
+    // Whether only blanks precede the current character on its line.
+    boolean lineStart = true;
+    for (int i = start; i < end; i++) {
+      final char c = message.charAt(i);
+      if (lineStart && mQuoteStart < 0 && isQuoteSeparator(message, i, end)) {
+        mQuoteStart = mBody.length();
+      }
+      lineStart = ('\n' == c) || (lineStart && (' ' == c || '\t' == c));
+      if (Tokenizer.isWordChar(c)) {
+        mBody.append(c);
+        inSeparator = false;
+        hasContent = true;
+      } else {
+        if ('\'' != c && !inSeparator) {
+          mBody.append(' ');
+          inSeparator = true;
+        }
+        hasContent |= ('\n' != c && '\r' != c);
+      }
+    }
+    if (!hasContent) {
+      mQuoteStart = -1;
+      return "";
+    }
+    if (!inSeparator) {
+      // Each line of the body ends with a separator, including an unterminated last line.
+      mBody.append(' ');
+    }
+    return mBody.toString();
+  }
+
+  /**
+   * @param message the message.
+   * @param pos a position in the body, at the start of a line or after its leading blanks.
+   * @param end the end of the message.
+   * @return whether the line goes on with one of {@link #QUOTE_SEPARATORS}.
+   */
+  private static boolean isQuoteSeparator(CharSequence message, int pos, int end) {
+    for (String separator : QUOTE_SEPARATORS) {
+      if (end - pos >= separator.length() && regionMatchesIgnoreCase(message, pos, separator)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param value some text.
+   * @return whether every character of the text is ASCII.
+   */
+  private static boolean isAscii(CharSequence value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > 0x7f) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Matches a header name against the headers the importer keeps.
+   *
+   * @param message the message.
+   * @param start the start of the header name.
+   * @param end the end of the header name, i.e. the position of the colon.
+   * @return the matching header, or null if the header is not kept.
+   */
+  private static EmailHeader match(CharSequence message, int start, int end) {
+    final int length = end - start;
+    for (EmailHeader header : HEADERS) {
+      final String name = header.getName();
+      if (name.length() == length && regionMatchesIgnoreCase(message, start, name)) {
+        return header;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param message the message.
+   * @param start where the region starts in the message.
+   * @param name the name to compare with, whose length is the length of the region.
+   * @return whether the region equals the name, ignoring case.
+   */
+  private static boolean regionMatchesIgnoreCase(CharSequence message, int start, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      final char a = message.charAt(start + i);
+      final char b = name.charAt(i);
+      if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends a region of the message, trimmed of leading and trailing whitespace.
+   *
+   * @param message the message.
+   * @param start the start of the region.
+   * @param end the end of the region.
+   * @param out the buffer to append to.
+   */
+  private static void appendTrimmed(CharSequence message, int start, int end, StringBuilder out) {
+    while (start < end && message.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && message.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    out.append(message, start, end);
+  }
+
+  /**
+   * @param message the message.
+   * @param start the start of a line.
+   * @param length the length of the message.
+   * @return the position of the '\n' ending the line, or the length of the message.
+   */
+  private static int endOfLine(CharSequence message, int start, int length) {
+    final int eol = indexOf(message, '\n', start, length);
+    return eol < 0 ? length : eol;
+  }
+
+  /**
+   * @param message the message.
+   * @param start the start of a line.
+   * @param end the end of the line.
+   * @return whether the line is empty, ignoring a trailing carriage return.
+   */
+  private static boolean isBlank(CharSequence message, int start, int end) {
+    return start == end || (start + 1 == end && '\r' == message.charAt(start));
+  }
+
+  /**
+   * @param message the message.
+   * @param c the character to look for.
+   * @param start where to start looking.
+   * @param end where to stop looking.
+   * @return the position of the first occurrence of the character, or -1.
+   */
+  private static int indexOf(CharSequence message, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (c == message.charAt(i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checkpoint of the message files already imported, so an interrupted or incremental import
+ * only processes new or changed files.
+ *
+ * <p>The manifest is a local text file with one <code>size TAB mtime TAB path</code> line per
+ * imported file. Lines are only appended, once the cells of the files they describe have been
+ * flushed to the table, so a crash can at worst cause a few files to be imported twice; since
+ * rows are keyed by sender and date, re-importing a file rewrites the same cells. Later lines
+ * override earlier ones for the same path. The size and modification time recorded are those of
+ * the file before it was read, so a file changed while being imported is imported again.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public final class ImportManifest implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(ImportManifest.class);
+
+  /** The size and modification time of a message file, taken before it is read. */
+  public static final class Entry {
+    private final String mPath;
+    private final long mSize;
+    private final long mModified;
+
+    /**
+     * Takes the size and modification time of a file.
+     *
+     * @param file a message file, about to be read.
+     */
+    public Entry(File file) {
+      mPath = file.getAbsolutePath();
+      mSize = file.length();
+      mModified = file.lastModified();
+    }
+  }
+
+  /** Size and modification time of each imported file, keyed by absolute path. */
+  private final Map<String, long[]> mEntries = Maps.newHashMap();
+  private final Writer mWriter;
+
+  /**
+   * Opens a manifest, loading its entries if the file exists.
+   *
+   * @param file the manifest file. It is created if missing.
+   * @throws IOException if the manifest cannot be read or opened for appending.
+   */
+  public ImportManifest(File file) throws IOException {
+    if (file.exists()) {
+      load(file);
+    }
+    mWriter = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8));
+  }
+
+  /**
+   * Loads the entries of an existing manifest.
+   *
+   * @param file the manifest file.
+   * @throws IOException if the manifest cannot be read.
+   */
+  private void load(File file) throws IOException {
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.split("\t", 3);
+        if (fields.length != 3) {
+          // Most likely a line truncated by a crash.
+          LOG.warn("Ignoring malformed manifest line: {}", line);
+          continue;
+        }
+        try {
+          mEntries.put(fields[2],
+              new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+        } catch (NumberFormatException nfe) {
+          LOG.warn("Ignoring malformed manifest line: {}", line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    LOG.info("Loaded {} entries from manifest {}", mEntries.size(), file);
+  }
+
+  /** @return the number of files recorded in the manifest. */
+  public synchronized int size() {
+    return mEntries.size();
+  }
+
+  /**
+   * @param file a message file.
+   * @return whether the file was imported, and has not changed since.
+   */
+  public synchronized boolean contains(File file) {
+    final long[] entry = mEntries.get(file.getAbsolutePath());
+    return (null != entry) && (entry[0] == file.length()) && (entry[1] == file.lastModified());
+  }
+
+  /**
+   * Records files whose cells have been flushed to the table.
+   *
+   * @param files the imported files, as they were before being read.
+   * @throws IOException if the manifest cannot be written.
+   */
+  public synchronized void record(Collection<Entry> files) throws IOException {
+    for (Entry file : files) {
+      mEntries.put(file.mPath, new long[] {file.mSize, file.mModified});
+      mWriter.write(file.mSize + "\t" + file.mModified + "\t" + file.mPath + "\n");
+    }
+    mWriter.flush();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void close() throws IOException {
+    mWriter.close();
+  }
+}
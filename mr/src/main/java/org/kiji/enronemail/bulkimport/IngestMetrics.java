@@ -0,0 +1,77 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import org.kiji.enronemail.metrics.Counter;
+import org.kiji.enronemail.metrics.Histogram;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+
+/**
+ * Metrics of the hot path of the importer, looked up once from a registry.
+ *
+ * <p>Comparing the read, parse, write and flush latencies tells whether the disk, the parser or
+ * the table writes limit the import. Latencies are in microseconds.</p>
+ */
+public final class IngestMetrics {
+  /** Message files read, and their total size in bytes. */
+  final Counter mFilesRead;
+  final Counter mBytesRead;
+  /** Message files skipped by the walk, as already imported or too old. */
+  final Counter mFilesSkipped;
+  /** Messages written to the tables, and message files that could not be imported. */
+  final Counter mMessagesImported;
+  final Counter mFilesFailed;
+  /** Messages whose Date header could not be parsed, included in the failed files. */
+  final Counter mDateParseFailures;
+  /** Cells written to the tables, and cells flushed. */
+  final Counter mCellsWritten;
+  final Counter mCellsFlushed;
+
+  /** Time to read one message file. */
+  final Histogram mReadMicros;
+  /** Time to parse one message. */
+  final Histogram mParseMicros;
+  /** Time to build and buffer the cells of one message, for every table. */
+  final Histogram mWriteMicros;
+  /** Time to flush a batch of buffered cells, and number of cells per flush. */
+  final Histogram mFlushMicros;
+  final Histogram mFlushCells;
+
+  /**
+   * Looks up the importer metrics in a registry.
+   *
+   * @param registry the registry holding the metrics.
+   */
+  public IngestMetrics(MetricsRegistry registry) {
+    mFilesRead = registry.counter("import.files_read");
+    mBytesRead = registry.counter("import.bytes_read");
+    mFilesSkipped = registry.counter("import.files_skipped");
+    mMessagesImported = registry.counter("import.messages_imported");
+    mFilesFailed = registry.counter("import.files_failed");
+    mDateParseFailures = registry.counter("import.date_parse_failures");
+    mCellsWritten = registry.counter("import.cells_written");
+    mCellsFlushed = registry.counter("import.cells_flushed");
+    mReadMicros = registry.histogram("import.read_us");
+    mParseMicros = registry.histogram("import.parse_us");
+    mWriteMicros = registry.histogram("import.write_us");
+    mFlushMicros = registry.histogram("import.flush_us");
+    mFlushCells = registry.histogram("import.flush_cells");
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+
+/**
+ * Packs a Maildir tree into a few large SequenceFiles of (relative path, raw message bytes).
+ *
+ * <p>HDFS copes badly with the ~500k small files of the Maildir, so this tool rolls them into
+ * block-compressed SequenceFiles of a configurable size. These files are the input of
+ * {@link MaildirSequenceFileBulkImporter}.</p>
+ */
+public class MaildirPacker {
+  @Flag(name = "target-file-size",
+      usage = "Start a new SequenceFile once the current one reaches this many bytes.")
+  private long mTargetFileSize = 256L * 1024 * 1024;
+
+  private Configuration mConf;
+  private FileSystem mFileSystem;
+  private Path mOutputDir;
+
+  /** Writer of the SequenceFile being filled, or null before the first message. */
+  private SequenceFile.Writer mWriter = null;
+  /** Index of the SequenceFile being filled. */
+  private int mFileIndex = 0;
+
+  /** Reused key and value, to avoid allocating a pair of Writables per message. */
+  private final Text mKey = new Text();
+  private final BytesWritable mValue = new BytesWritable();
+
+  /**
+   * Packs every message below a directory.
+   *
+   * @param root the Maildir root, used to relativize the paths of the messages.
+   * @param file the directory or message file to pack.
+   * @return the number of messages packed.
+   * @throws IOException if a message cannot be read or written.
+   */
+  private long pack(File root, File file) throws IOException {
+    long count = 0;
+    if (file.isDirectory()) {
+      System.out.println("Packing: " + file.toString());
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null == files) {
+        throw new IOException("Unable to list directory " + file);
+      }
+      for (File child : files) {
+        count += pack(root, child);
+      }
+    } else {
+      final byte[] bytes = Files.toByteArray(file);
+      mKey.set(root.toURI().relativize(file.toURI()).getPath());
+      mValue.set(bytes, 0, bytes.length);
+      currentWriter().append(mKey, mValue);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the writer to append the next message to, rolling to a new file when the current one
+   * reached the target size.
+   *
+   * @return the writer to append the next message to.
+   * @throws IOException if the SequenceFile cannot be created.
+   */
+  private SequenceFile.Writer currentWriter() throws IOException {
+    if (null != mWriter && mWriter.getLength() >= mTargetFileSize) {
+      mWriter.close();
+      mWriter = null;
+    }
+    if (null == mWriter) {
+      final Path path = new Path(mOutputDir, String.format("maildir-%05d.seq", mFileIndex++));
+      System.out.println("Writing: " + path);
+      mWriter = SequenceFile.createWriter(mFileSystem, mConf, path,
+          Text.class, BytesWritable.class, SequenceFile.CompressionType.BLOCK);
+    }
+    return mWriter;
+  }
+
+  public static void main(String[] args) {
+    System.exit(new MaildirPacker().run(args));
+  }
+
+  private int run(String[] args) {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    if (nonFlagArgs.size() < 2) {
+      System.err.println("Usage: MaildirPacker [--target-file-size=bytes] <maildir> <output dir>");
+      return 1;
+    }
+    final File root = new File(nonFlagArgs.get(0));
+
+    try {
+      mConf = new Configuration();
+      mOutputDir = new Path(nonFlagArgs.get(1));
+      mFileSystem = mOutputDir.getFileSystem(mConf);
+      try {
+        final long count = pack(root, root);
+        System.out.println("Packed " + count + " messages into " + mFileIndex + " files.");
+      } finally {
+        if (null != mWriter) {
+          mWriter.close();
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.mapreduce.KijiTableContext;
+import org.kiji.mapreduce.bulkimport.KijiBulkImporter;
+import org.kiji.mapreduce.framework.KijiConfKeys;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Bulk importer for Maildir messages packed into SequenceFiles by {@link MaildirPacker}.
+ *
+ * <p>Each record is a (path, raw message bytes) pair. Messages are parsed and laid out exactly
+ * like {@link EmailBulkImporter} does, so this importer can target either the emails or the
+ * employee table. Combined with the hfile output format and <code>kiji bulk-load</code>, it loads
+ * the corpus in parallel without going through the region servers.</p>
+ */
+public class MaildirSequenceFileBulkImporter extends KijiBulkImporter<Text, BytesWritable> {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(MaildirSequenceFileBulkImporter.class);
+
+  /** Counters of the imported messages. */
+  public static enum Counters {
+    MESSAGES_IMPORTED,
+    MESSAGES_FAILED,
+    /** Messages whose Date header could not be parsed, included in MESSAGES_FAILED. */
+    DATE_PARSE_FAILURES
+  }
+
+  /** Name of the output table, which selects the layout of the rows. */
+  private String mTableName;
+
+  /** Parses the raw bytes of the messages, reusing its buffers across messages. */
+  private final EmailParser mParser = new EmailParser();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setup(KijiTableContext context) throws IOException {
+    super.setup(context);
+    mTableName = KijiURI.newBuilder(getConf().get(KijiConfKeys.KIJI_OUTPUT_TABLE_URI))
+        .build().getTable();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void produce(Text path, BytesWritable bytes, KijiTableContext context)
+      throws IOException {
+    final ByteBuffer message = ByteBuffer.wrap(bytes.getBytes(), 0, bytes.getLength());
+    try {
+      EmailBulkImporter.writeMessage(
+          mParser.parse(message), EmailCellSink.forContext(mTableName, context));
+      context.incrementCounter(Counters.MESSAGES_IMPORTED);
+    } catch (MalformedDateException mde) {
+      LOG.warn("Unable to import {}: {}", path, mde.getMessage());
+      context.incrementCounter(Counters.MESSAGES_FAILED);
+      context.incrementCounter(Counters.DATE_PARSE_FAILURES);
+    } catch (MalformedEmailException mee) {
+      // One malformed message should not fail the whole task.
+      LOG.warn("Unable to import {}: {}", path, mee.getMessage());
+      context.incrementCounter(Counters.MESSAGES_FAILED);
+    }
+  }
+}
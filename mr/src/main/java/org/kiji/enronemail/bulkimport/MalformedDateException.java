@@ -0,0 +1,36 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+/**
+ * Thrown when the Date header of a message cannot be parsed. Importers count these apart from
+ * other malformed messages, to spot date formats the parser does not handle.
+ */
+public class MalformedDateException extends MalformedEmailException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message description of the unparseable date.
+   * @param cause the underlying parse error.
+   */
+  public MalformedDateException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
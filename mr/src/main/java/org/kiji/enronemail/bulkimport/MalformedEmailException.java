@@ -0,0 +1,45 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a message cannot be imported because of its contents, as opposed to an I/O error
+ * while reading or writing it. Importers skip such messages instead of failing.
+ */
+public class MalformedEmailException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message description of what is wrong with the email.
+   */
+  public MalformedEmailException(String message) {
+    super(message);
+  }
+
+  /**
+   * @param message description of what is wrong with the email.
+   * @param cause the underlying parse error.
+   */
+  public MalformedEmailException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads message files into byte buffers through NIO, without decoding or copying them to the
+ * heap.
+ *
+ * <p>Small files, i.e. nearly every message, are read into a direct buffer owned by the reader
+ * and reused from one file to the next. Files larger than a threshold are memory-mapped instead.
+ * A reader must only be used from one thread, and the buffer returned by {@link #read(File)} is
+ * only valid until the next call.</p>
+ */
+public final class MessageReader {
+  /** Files at least this large are memory-mapped, by default. */
+  public static final int DEFAULT_MMAP_THRESHOLD = 1024 * 1024;
+
+  /** Initial capacity of the reused direct buffer. */
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+
+  private final int mMmapThreshold;
+
+  /** Direct buffer reused for small files, grown as needed. */
+  private ByteBuffer mBuffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+  /** Creates a reader memory-mapping files of at least {@link #DEFAULT_MMAP_THRESHOLD} bytes. */
+  public MessageReader() {
+    this(DEFAULT_MMAP_THRESHOLD);
+  }
+
+  /**
+   * @param mmapThreshold the size from which files are memory-mapped, in bytes.
+   */
+  public MessageReader(int mmapThreshold) {
+    mMmapThreshold = mmapThreshold;
+  }
+
+  /**
+   * Reads a whole message file.
+   *
+   * @param file the file to read.
+   * @return a buffer whose remaining bytes are the contents of the file. It is only valid until
+   *     the next call to this method.
+   * @throws IOException if the file cannot be read.
+   */
+  public ByteBuffer read(File file) throws IOException {
+    final FileInputStream stream = new FileInputStream(file);
+    try {
+      final FileChannel channel = stream.getChannel();
+      final long size = channel.size();
+      if (size >= mMmapThreshold) {
+        // The mapping stays valid after the channel is closed.
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      final ByteBuffer buffer = buffer((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        continue;
+      }
+      buffer.flip();
+      return buffer;
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Returns the reused buffer, cleared and limited to a size, growing it if needed.
+   *
+   * @param size the number of bytes to read.
+   * @return the reused buffer.
+   */
+  private ByteBuffer buffer(int size) {
+    if (mBuffer.capacity() < size) {
+      mBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+    }
+    mBuffer.clear();
+    mBuffer.limit(size);
+    return mBuffer;
+  }
+}
@@ -0,0 +1,503 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.enronemail.metrics.DefaultMetricsRegistry;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+import org.kiji.schema.KijiTable;
+
+/**
+ * Imports a Maildir tree into one or more Kiji tables using a pool of worker threads.
+ *
+ * <p>The calling thread walks the Maildir and feeds message files into a bounded queue, so the
+ * walker can never run far ahead of the workers. Each worker reads, parses and writes the
+ * messages it dequeues through its own {@link BatchingWriter}, since writers are not meant to be
+ * shared between threads. Each message is parsed once and written to every table, with the row
+ * layout of that table (see {@link EmailBulkImporter#writeMessage}). Unreadable files and
+ * malformed messages are counted as failed and skipped, while a failure to write the cells
+ * aborts the import.</p>
+ *
+ * <p>With an {@link ImportManifest}, files imported by a previous run are skipped, and the files
+ * of each batch are recorded into the manifest once the batch has been flushed. Files can also
+ * be restricted to those modified after a given time, to import daily mailbox deliveries.</p>
+ *
+ * <p>Every stage of the import records into the {@link IngestMetrics} of a
+ * {@link MetricsRegistry}.</p>
+ *
+ * <p>Use {@link #builder()} to create instances.</p>
+ */
+public final class ParallelMaildirImporter {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelMaildirImporter.class);
+
+  /** Marker enqueued once per worker to signal the end of the walk. */
+  private static final File END_OF_WALK = new File("");
+
+  /** Number of queued files per worker thread when no queue capacity is given. */
+  private static final int QUEUED_FILES_PER_THREAD = 64;
+
+  /** How long the walker and idle workers wait on the queue before checking their state. */
+  private static final long QUEUE_POLL_MILLIS = 1000;
+
+  private final List<KijiTable> mTables;
+  private final int mThreads;
+  private final BlockingQueue<File> mQueue;
+  private final long mBatchCells;
+  private final long mBatchBytes;
+  private final long mFlushIntervalMillis;
+  /** Manifest of the files already imported, or null. */
+  private final ImportManifest mManifest;
+  /** Only files modified at or after this time, in milliseconds since the epoch, are imported. */
+  private final long mModifiedSince;
+
+  /** Counts down as workers exit, after they flushed and closed their writers. */
+  private final CountDownLatch mLiveWorkers;
+  /** The workers, once started by {@link #run(File)}. Only used by the walking thread. */
+  private final List<Future<Void>> mWorkers = Lists.newArrayList();
+  /** Set when the import should stop early, e.g. because the JVM is shutting down. */
+  private volatile boolean mStopRequested = false;
+
+  /** Registry holding the metrics of the import. */
+  private final MetricsRegistry mRegistry;
+  /** Metrics of every stage of the import, shared by the walker and the workers. */
+  private final IngestMetrics mMetrics;
+
+  /** Builds {@link ParallelMaildirImporter} instances. */
+  public static final class Builder {
+    private final List<KijiTable> mTables = Lists.newArrayList();
+    private int mThreads = 1;
+    private int mQueueCapacity = 0;
+    private long mBatchCells = 5000;
+    private long mBatchBytes = 4L * 1024 * 1024;
+    private long mFlushIntervalMillis = 5000;
+    private ImportManifest mManifest = null;
+    private long mModifiedSince = 0;
+    private MetricsRegistry mRegistry = null;
+
+    /** Use {@link ParallelMaildirImporter#builder()}. */
+    private Builder() {
+    }
+
+    /**
+     * Adds a table to import into. Messages are written to every table added.
+     *
+     * @param table a table to import into.
+     * @return this builder.
+     */
+    public Builder withTable(KijiTable table) {
+      mTables.add(Preconditions.checkNotNull(table));
+      return this;
+    }
+
+    /**
+     * @param threads the number of worker threads.
+     * @return this builder.
+     */
+    public Builder withThreads(int threads) {
+      Preconditions.checkArgument(threads > 0, "Thread count must be positive: %s", threads);
+      mThreads = threads;
+      return this;
+    }
+
+    /**
+     * @param queueCapacity the maximum number of files waiting for a worker, or 0 for a default
+     *     based on the number of threads.
+     * @return this builder.
+     */
+    public Builder withQueueCapacity(int queueCapacity) {
+      mQueueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * @param batchCells number of buffered cells that triggers a flush, or 0 for no limit.
+     * @return this builder.
+     */
+    public Builder withBatchCells(long batchCells) {
+      mBatchCells = batchCells;
+      return this;
+    }
+
+    /**
+     * @param batchBytes estimated buffered bytes that trigger a flush, or 0 for no limit.
+     * @return this builder.
+     */
+    public Builder withBatchBytes(long batchBytes) {
+      mBatchBytes = batchBytes;
+      return this;
+    }
+
+    /**
+     * @param flushIntervalMillis age of buffered cells that triggers a flush, or 0 to disable.
+     * @return this builder.
+     */
+    public Builder withFlushIntervalMillis(long flushIntervalMillis) {
+      mFlushIntervalMillis = flushIntervalMillis;
+      return this;
+    }
+
+    /**
+     * @param manifest manifest of the files to skip and to record imported files into, or null.
+     * @return this builder.
+     */
+    public Builder withManifest(ImportManifest manifest) {
+      mManifest = manifest;
+      return this;
+    }
+
+    /**
+     * @param modifiedSince only import files modified at or after this time, in milliseconds
+     *     since the epoch, or 0 to import every file.
+     * @return this builder.
+     */
+    public Builder withModifiedSince(long modifiedSince) {
+      mModifiedSince = modifiedSince;
+      return this;
+    }
+
+    /**
+     * @param registry the registry to record the metrics of the import into, or null for a
+     *     private registry.
+     * @return this builder.
+     */
+    public Builder withMetrics(MetricsRegistry registry) {
+      mRegistry = registry;
+      return this;
+    }
+
+    /** @return a new importer with the configured settings. */
+    public ParallelMaildirImporter build() {
+      Preconditions.checkState(!mTables.isEmpty(), "No table specified.");
+      return new ParallelMaildirImporter(this);
+    }
+  }
+
+  /** @return a new builder for a parallel importer. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates an importer from a builder.
+   *
+   * @param builder the builder holding the settings of the importer.
+   */
+  private ParallelMaildirImporter(Builder builder) {
+    mTables = ImmutableList.copyOf(builder.mTables);
+    mThreads = builder.mThreads;
+    mQueue = new ArrayBlockingQueue<File>(builder.mQueueCapacity > 0
+        ? builder.mQueueCapacity
+        : builder.mThreads * QUEUED_FILES_PER_THREAD);
+    mBatchCells = builder.mBatchCells;
+    mBatchBytes = builder.mBatchBytes;
+    mFlushIntervalMillis = builder.mFlushIntervalMillis;
+    mManifest = builder.mManifest;
+    mModifiedSince = builder.mModifiedSince;
+    mRegistry = (null != builder.mRegistry) ? builder.mRegistry : new DefaultMetricsRegistry();
+    mMetrics = new IngestMetrics(mRegistry);
+    mLiveWorkers = new CountDownLatch(mThreads);
+  }
+
+  /** @return the number of messages successfully written so far. */
+  public long getImportedCount() {
+    return mMetrics.mMessagesImported.getCount();
+  }
+
+  /** @return the number of message files that failed to import so far. */
+  public long getFailedCount() {
+    return mMetrics.mFilesFailed.getCount();
+  }
+
+  /** @return the registry holding the metrics of the import. */
+  public MetricsRegistry getMetrics() {
+    return mRegistry;
+  }
+
+  /**
+   * Asks the walker and the workers to stop after the messages they are processing. Workers
+   * still flush and close their writers. May be called from any thread.
+   */
+  public void requestStop() {
+    mStopRequested = true;
+  }
+
+  /**
+   * Waits for every worker to flush its writes and exit.
+   *
+   * @param timeoutMillis the maximum time to wait, in milliseconds.
+   * @return whether every worker exited within the timeout.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean awaitWorkers(long timeoutMillis) throws InterruptedException {
+    return mLiveWorkers.await(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Imports every message below a Maildir root and reports the overall throughput.
+   * An importer may only be run once.
+   *
+   * @param root the Maildir root directory, or a single message file.
+   * @return the number of messages successfully written.
+   * @throws IOException if a worker fails to open, flush or close its writer, or to write a
+   *     message. The failure of the first worker is rethrown.
+   * @throws InterruptedException if interrupted while waiting for the workers.
+   */
+  public long run(File root) throws IOException, InterruptedException {
+    final long startNanos = System.nanoTime();
+    final ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+    boolean walked = false;
+    try {
+      for (int i = 0; i < mThreads; i++) {
+        mWorkers.add(pool.submit(new Worker()));
+      }
+      walk(root, "");
+      for (int i = 0; i < mThreads; i++) {
+        enqueue(END_OF_WALK);
+      }
+      walked = true;
+    } finally {
+      if (walked) {
+        pool.shutdown();
+      } else {
+        // Workers blocked on an empty queue would otherwise never see the end of the walk.
+        pool.shutdownNow();
+      }
+    }
+
+    for (Future<Void> worker : mWorkers) {
+      awaitWorker(worker);
+    }
+
+    final double seconds = (System.nanoTime() - startNanos) / 1e9;
+    final long imported = getImportedCount();
+    System.out.println(String.format(
+        "Imported %d messages (%d failed, %d skipped) with %d threads in %.1f s: %.1f msg/s",
+        imported, getFailedCount(), mMetrics.mFilesSkipped.getCount(), mThreads, seconds,
+        seconds > 0 ? imported / seconds : 0.0));
+    return imported;
+  }
+
+  /**
+   * Recursively enqueues the message files below a directory.
+   *
+   * @param file the directory or message file to enqueue.
+   * @param prefix progress prefix describing the position of this directory in its parents.
+   * @throws IOException if every worker exited before the walk completed.
+   * @throws InterruptedException if interrupted while waiting for room in the queue.
+   */
+  private void walk(File file, String prefix) throws IOException, InterruptedException {
+    if (mStopRequested) {
+      return;
+    }
+    if (file.isDirectory()) {
+      System.out.println("Processing: " + prefix + ": " + file.toString());
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null == files) {
+        LOG.warn("Unable to list directory {}", file);
+        return;
+      }
+      for (int c = 0; c < files.length; c++) {
+        walk(files[c], prefix + "(" + c + "/" + files.length + ")");
+      }
+    } else if (file.lastModified() < mModifiedSince
+        || (null != mManifest && mManifest.contains(file))) {
+      mMetrics.mFilesSkipped.increment(1);
+    } else {
+      enqueue(file);
+    }
+  }
+
+  /**
+   * Waits for room in the queue and enqueues a file, giving up if the import is stopping or if
+   * no worker is left to drain the queue.
+   *
+   * @param file the file to enqueue.
+   * @throws IOException if every worker has exited: the failure of the first worker, if any.
+   * @throws InterruptedException if interrupted while waiting for room in the queue.
+   */
+  private void enqueue(File file) throws IOException, InterruptedException {
+    while (!mQueue.offer(file, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (mStopRequested) {
+        // Workers stop on their own and will not drain the queue anymore.
+        return;
+      }
+      if (0 == mLiveWorkers.getCount()) {
+        // Workers only exit early when they fail: report why rather than the symptom.
+        for (Future<Void> worker : mWorkers) {
+          awaitWorker(worker);
+        }
+        throw new IOException("All import workers exited before the Maildir walk completed.");
+      }
+    }
+  }
+
+  /**
+   * Waits for a worker to exit and rethrows its failure, if any.
+   *
+   * @param worker the worker.
+   * @throws IOException if the worker failed with an I/O error.
+   * @throws InterruptedException if interrupted while waiting for the worker.
+   */
+  private static void awaitWorker(Future<Void> worker) throws IOException, InterruptedException {
+    try {
+      worker.get();
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      }
+      throw new RuntimeException(ee.getCause());
+    }
+  }
+
+  /**
+   * Reads, parses and writes message files until the end of the walk. Messages are read and
+   * parsed as bytes, and only the fields written to the table are decoded.
+   */
+  private final class Worker implements Callable<Void> {
+    /** {@inheritDoc} */
+    @Override
+    public Void call() throws IOException, InterruptedException {
+      try {
+        process();
+        return null;
+      } catch (IOException ioe) {
+        // Logged here too, in case the walk ends before the failure is rethrown.
+        LOG.error("Import worker failed", ioe);
+        throw ioe;
+      } catch (RuntimeException re) {
+        LOG.error("Import worker failed", re);
+        throw re;
+      } finally {
+        mLiveWorkers.countDown();
+      }
+    }
+
+    /**
+     * Drains the queue through a dedicated batching writer.
+     *
+     * @throws IOException if the writer cannot be opened, flushed or closed.
+     * @throws InterruptedException if interrupted while waiting for a file.
+     */
+    private void process() throws IOException, InterruptedException {
+      final MessageReader reader = new MessageReader();
+      final EmailParser parser = new EmailParser();
+      final BatchingWriter writer = new BatchingWriter(
+          mTables, mBatchCells, mBatchBytes, mFlushIntervalMillis, mMetrics);
+      final EmailCellSink[] sinks = new EmailCellSink[mTables.size()];
+      for (int i = 0; i < sinks.length; i++) {
+        sinks[i] = EmailCellSink.forPutter(mTables.get(i), writer.getPutter(mTables.get(i)));
+      }
+      // Files written since the last flush, recorded into the manifest once they are durable.
+      final List<ImportManifest.Entry> unflushed = Lists.newArrayList();
+      if (null != mManifest) {
+        writer.setFlushListener(new BatchingWriter.FlushListener() {
+          @Override
+          public void flushed() throws IOException {
+            mManifest.record(unflushed);
+            unflushed.clear();
+          }
+        });
+      }
+      try {
+        while (!mStopRequested) {
+          final File file = mQueue.poll(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (null == file) {
+            // Nothing to do: make sure buffered cells do not wait for the next message.
+            writer.flushIfStale();
+            continue;
+          }
+          if (END_OF_WALK == file) {
+            return;
+          }
+          // Taken before reading, so that a file changed meanwhile does not look imported.
+          final ImportManifest.Entry entry =
+              (null == mManifest) ? null : new ImportManifest.Entry(file);
+          final long readNanos = System.nanoTime();
+          final ByteBuffer message;
+          try {
+            message = reader.read(file);
+          } catch (IOException ioe) {
+            // An unreadable file is specific to this message: skip it.
+            mMetrics.mFilesFailed.increment(1);
+            LOG.warn("Unable to read {}: {}", file, ioe.getMessage());
+            continue;
+          }
+          long bytes = message.remaining();
+          final long parseNanos = System.nanoTime();
+          mMetrics.mFilesRead.increment(1);
+          mMetrics.mBytesRead.increment(bytes);
+          mMetrics.mReadMicros.update((parseNanos - readNanos) / 1000);
+
+          final EmailMessage email = parser.parse(message);
+          final long writeNanos = System.nanoTime();
+          mMetrics.mParseMicros.update((writeNanos - parseNanos) / 1000);
+
+          int cells = 0;
+          try {
+            for (EmailCellSink sink : sinks) {
+              cells += EmailBulkImporter.writeMessage(email, sink);
+            }
+          } catch (MalformedDateException mde) {
+            mMetrics.mDateParseFailures.increment(1);
+            mMetrics.mFilesFailed.increment(1);
+            LOG.warn("Unable to import {}: {}", file, mde.getMessage());
+            continue;
+          } catch (MalformedEmailException mee) {
+            // Thrown before the first cell is written to any sink.
+            mMetrics.mFilesFailed.increment(1);
+            LOG.warn("Unable to import {}: {}", file, mee.getMessage());
+            continue;
+          }
+          // Other write failures are not specific to this message: let them abort the worker.
+          bytes *= sinks.length;
+          mMetrics.mWriteMicros.update((System.nanoTime() - writeNanos) / 1000);
+          mMetrics.mMessagesImported.increment(1);
+          mMetrics.mCellsWritten.increment(cells);
+          if (null != entry) {
+            unflushed.add(entry);
+          }
+          // Flush failures are not specific to this message: let them abort the worker.
+          writer.messageWritten(cells, bytes);
+        }
+      } finally {
+        writer.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+
+/**
+ * Splits the recipient headers of the messages into normalized addresses, as indexed in the
+ * emails_by_recipient table.
+ */
+public final class Recipients {
+  private static final Splitter SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  /** Utility class cannot be instantiated. */
+  private Recipients() {
+  }
+
+  /**
+   * Splits recipient headers.
+   *
+   * @param headers the values of To, Cc or Bcc headers, any of which may be null.
+   * @return the distinct normalized addresses of the headers, in order of appearance.
+   */
+  public static Set<String> split(String... headers) {
+    final Set<String> recipients = Sets.newLinkedHashSet();
+    for (String header : headers) {
+      if (null == header) {
+        continue;
+      }
+      for (String address : SPLITTER.split(header)) {
+        recipients.add(normalize(address));
+      }
+    }
+    return recipients;
+  }
+
+  /**
+   * Normalizes an address, so that lookups match the indexed addresses.
+   *
+   * @param address an email address.
+   * @return the address, trimmed and lower-cased.
+   */
+  public static String normalize(String address) {
+    return address.trim().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.gather;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+import org.kiji.enronemail.text.StopWords;
+import org.kiji.enronemail.text.Tokenizer;
+import org.kiji.enronemail.text.Vocabulary;
+import org.kiji.mapreduce.gather.GathererContext;
+import org.kiji.mapreduce.gather.KijiGatherer;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+/**
+ * Counts the number of documents holding each term of the latest "info:body" of the emails, to
+ * build the {@link Vocabulary} of the corpus with
+ * {@link org.kiji.enronemail.reduce.DocumentFrequencyReducer}.
+ *
+ * <p>Terms are the lower-cased words of at least 3 characters which are not {@link StopWords},
+ * like in the TF-IDF Express job. Rather than one record per term of each document, the gatherer
+ * sums the counts of each term in memory and emits them when the task ends, so the shuffle carries
+ * one record per distinct term of each task. When the map holds
+ * {@link #CONF_MAX_BUFFERED_TERMS} terms, it is emitted and cleared early, which bounds the memory
+ * of the task. The number of documents is emitted under {@link Vocabulary#DOCUMENT_COUNT_KEY}.</p>
+ *
+ * <p>With {@link #CONF_SKIP_DUPLICATES}, the messages marked as near-duplicates of an earlier
+ * message by {@link org.kiji.enronemail.reduce.DuplicateClusterReducer} are not counted, so the
+ * copies of a forwarded message do not lower the weight of its terms.</p>
+ */
+public class DocumentFrequencyGatherer extends KijiGatherer<Text, LongWritable> {
+  /** Configuration key of the maximum number of distinct terms counted before emitting them. */
+  public static final String CONF_MAX_BUFFERED_TERMS =
+      "org.kiji.enronemail.tfidf.max.buffered.terms";
+
+  /** Default maximum number of distinct terms counted before emitting them. */
+  public static final int DEFAULT_MAX_BUFFERED_TERMS = 200000;
+
+  /** Configuration key of whether to skip the rows holding "features:dup_cluster". */
+  public static final String CONF_SKIP_DUPLICATES = "org.kiji.enronemail.tfidf.skip.duplicates";
+
+  /** Minimum length of a term. */
+  public static final int MIN_TERM_LENGTH = 3;
+
+  /** Counters of the documents processed. */
+  public static enum Counters {
+    /** Bodies whose terms were counted. */
+    DOCUMENTS,
+    /** Rows skipped because they have no body. */
+    ROWS_WITHOUT_BODY,
+    /** Rows skipped because they are near-duplicates of an earlier message. */
+    DUPLICATES_SKIPPED,
+    /** Times the counts were emitted before the end of the task. */
+    EARLY_FLUSHES
+  }
+
+  private static final String INPUT_FAMILY = "info";
+  private static final String INPUT_QUALIFIER = "body";
+
+  /** Number of documents holding each term, since the counts were last emitted. */
+  private final Map<String, long[]> mCounts = Maps.newHashMap();
+  /** Distinct terms of the current document. */
+  private final Set<String> mTerms = Sets.newHashSet();
+  /** Splits the bodies into words, reused across rows. */
+  private final Tokenizer mTokenizer = new Tokenizer();
+  /** Number of documents counted by the task. */
+  private long mDocumentCount = 0;
+  private int mMaxBufferedTerms;
+  private boolean mSkipDuplicates;
+
+  /** Output key and value, reused across records. */
+  private final Text mTerm = new Text();
+  private final LongWritable mCount = new LongWritable();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return Text.class;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputValueClass() {
+    return LongWritable.class;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setup(GathererContext<Text, LongWritable> context) throws IOException {
+    super.setup(context);
+    mMaxBufferedTerms = getConf().getInt(CONF_MAX_BUFFERED_TERMS, DEFAULT_MAX_BUFFERED_TERMS);
+    mSkipDuplicates = getConf().getBoolean(CONF_SKIP_DUPLICATES, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public KijiDataRequest getDataRequest() {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1).add(INPUT_FAMILY, INPUT_QUALIFIER);
+    if (getConf().getBoolean(CONF_SKIP_DUPLICATES, false)) {
+      builder.newColumnsDef().withMaxVersions(1).add("features", "dup_cluster");
+    }
+    return builder.build();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void gather(KijiRowData row, GathererContext<Text, LongWritable> context)
+      throws IOException {
+    if (!row.containsColumn(INPUT_FAMILY, INPUT_QUALIFIER)) {
+      context.incrementCounter(Counters.ROWS_WITHOUT_BODY);
+      return;
+    }
+    if (mSkipDuplicates && row.containsColumn("features", "dup_cluster")) {
+      context.incrementCounter(Counters.DUPLICATES_SKIPPED);
+      return;
+    }
+    final CharSequence body = row.getMostRecentValue(INPUT_FAMILY, INPUT_QUALIFIER);
+    mTokenizer.reset(body);
+    while (mTokenizer.next()) {
+      if (mTokenizer.length() >= MIN_TERM_LENGTH
+          && !StopWords.contains(mTokenizer, 0, mTokenizer.length())) {
+        mTerms.add(mTokenizer.toString());
+      }
+    }
+    for (String term : mTerms) {
+      final long[] count = mCounts.get(term);
+      if (null == count) {
+        mCounts.put(term, new long[] {1});
+      } else {
+        count[0]++;
+      }
+    }
+    mTerms.clear();
+    mDocumentCount++;
+    context.incrementCounter(Counters.DOCUMENTS);
+
+    if (mCounts.size() >= mMaxBufferedTerms) {
+      flush(context);
+      context.incrementCounter(Counters.EARLY_FLUSHES);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void cleanup(GathererContext<Text, LongWritable> context) throws IOException {
+    flush(context);
+    write(Vocabulary.DOCUMENT_COUNT_KEY, mDocumentCount, context);
+    super.cleanup(context);
+  }
+
+  /**
+   * Emits the counts of the terms and clears them.
+   *
+   * @param context the context to emit the counts to.
+   * @throws IOException on error.
+   */
+  private void flush(GathererContext<Text, LongWritable> context) throws IOException {
+    for (Map.Entry<String, long[]> entry : mCounts.entrySet()) {
+      write(entry.getKey(), entry.getValue()[0], context);
+    }
+    mCounts.clear();
+  }
+
+  /**
+   * Emits a count.
+   *
+   * @param term the term counted.
+   * @param count the count.
+   * @param context the context to emit the count to.
+   * @throws IOException on error.
+   */
+  private void write(String term, long count, GathererContext<Text, LongWritable> context)
+      throws IOException {
+    mTerm.set(term);
+    mCount.set(count);
+    context.write(mTerm, mCount);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.gather;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import com.google.common.base.Preconditions;
+import org.apache.avro.Schema;
+import org.apache.avro.mapred.AvroValue;
+import org.apache.hadoop.io.LongWritable;
+
+import org.kiji.enronemail.MinHashCandidate;
+import org.kiji.enronemail.text.MinHasher;
+import org.kiji.enronemail.thread.MessageIds;
+import org.kiji.mapreduce.avro.AvroValueWriter;
+import org.kiji.mapreduce.gather.GathererContext;
+import org.kiji.mapreduce.gather.KijiGatherer;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+/**
+ * Buckets the emails by the bands of the MinHash signatures of their latest "info:body", to find
+ * their near-duplicates with {@link org.kiji.enronemail.reduce.DuplicateClusterReducer}.
+ *
+ * <p>The signature of {@link #CONF_BANDS} bands of {@link #CONF_ROWS_PER_BAND} values is computed
+ * over the shingles of {@link #CONF_SHINGLE_SIZE} consecutive words of the body, without
+ * allocating. For each band, the gatherer emits the key of the band as a long, with the row key,
+ * the Message-ID hash and the signature of the message, so messages sharing any band meet in
+ * the same reducer. Two messages of Jaccard similarity s share a band with probability
+ * <code>1 - (1 - s^rows)^bands</code>: about 0.9998 for s = 0.8 and 0.64 for s = 0.5 with the
+ * defaults. Each message is emitted a fixed number of times, so the job scales linearly with the
+ * corpus.</p>
+ */
+public class MinHashGatherer extends KijiGatherer<LongWritable, AvroValue<MinHashCandidate>>
+    implements AvroValueWriter {
+  /** Configuration key of the number of bands of the signatures. */
+  public static final String CONF_BANDS = "org.kiji.enronemail.dedup.bands";
+
+  /** Default number of bands of the signatures. */
+  public static final int DEFAULT_BANDS = 16;
+
+  /** Configuration key of the number of values of each band. */
+  public static final String CONF_ROWS_PER_BAND = "org.kiji.enronemail.dedup.rows.per.band";
+
+  /** Default number of values of each band. */
+  public static final int DEFAULT_ROWS_PER_BAND = 4;
+
+  /** Configuration key of the number of consecutive words of a shingle. */
+  public static final String CONF_SHINGLE_SIZE = "org.kiji.enronemail.dedup.shingle.size";
+
+  /** Counters of the rows processed. */
+  public static enum Counters {
+    /** Messages whose bands were emitted. */
+    MESSAGES_SIGNED,
+    /** Rows skipped because they have no body, no word in their body, or no Message-ID. */
+    ROWS_SKIPPED
+  }
+
+  private int mBands;
+  private int mRowsPerBand;
+  private MinHasher mHasher;
+  /** Signature of the current body. */
+  private int[] mSignature;
+
+  /** Output key and value, reused across records. */
+  private final LongWritable mBandKey = new LongWritable();
+  private final MinHashCandidate mCandidate = new MinHashCandidate();
+  private final AvroValue<MinHashCandidate> mValue = new AvroValue<MinHashCandidate>(mCandidate);
+  /** Serialized signature of the candidate, and an int view of it. */
+  private ByteBuffer mSignatureBytes;
+  private IntBuffer mSignatureInts;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return LongWritable.class;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputValueClass() {
+    return AvroValue.class;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Schema getAvroValueWriterSchema() {
+    return MinHashCandidate.SCHEMA$;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setup(GathererContext<LongWritable, AvroValue<MinHashCandidate>> context)
+      throws IOException {
+    super.setup(context);
+    mBands = getConf().getInt(CONF_BANDS, DEFAULT_BANDS);
+    mRowsPerBand = getConf().getInt(CONF_ROWS_PER_BAND, DEFAULT_ROWS_PER_BAND);
+    // The band index takes the top 8 bits of the keys.
+    Preconditions.checkArgument(mBands > 0 && mBands <= 256, "Invalid number of bands: %s",
+        mBands);
+    final int numHashes = mBands * mRowsPerBand;
+    mHasher = new MinHasher(numHashes,
+        getConf().getInt(CONF_SHINGLE_SIZE, MinHasher.DEFAULT_SHINGLE_SIZE),
+        MinHasher.DEFAULT_SEED);
+    mSignature = new int[numHashes];
+    mSignatureBytes = ByteBuffer.allocate(4 * numHashes);
+    mSignatureInts = mSignatureBytes.asIntBuffer();
+    mCandidate.setSignature(mSignatureBytes);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public KijiDataRequest getDataRequest() {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1).add("info", "body").add("info", "mid");
+    return builder.build();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void gather(KijiRowData row, GathererContext<LongWritable, AvroValue<MinHashCandidate>>
+      context) throws IOException {
+    if (!row.containsColumn("info", "body") || !row.containsColumn("info", "mid")) {
+      context.incrementCounter(Counters.ROWS_SKIPPED);
+      return;
+    }
+    final CharSequence body = row.getMostRecentValue("info", "body");
+    if (0 == mHasher.sign(body, mSignature)) {
+      context.incrementCounter(Counters.ROWS_SKIPPED);
+      return;
+    }
+    // Rows are keyed by (from, timestamp): the reducer rebuilds the entity id from them.
+    final EntityId eid = row.getEntityId();
+    final String from = eid.getComponentByIndex(0);
+    final Long timestamp = eid.getComponentByIndex(1);
+    final CharSequence messageId = row.getMostRecentValue("info", "mid");
+    mCandidate.setFrom(from);
+    mCandidate.setTimestamp(timestamp);
+    mCandidate.setMessageId(MessageIds.hash(messageId));
+    mSignatureInts.clear();
+    mSignatureInts.put(mSignature);
+
+    for (int band = 0; band < mBands; band++) {
+      mBandKey.set(MinHasher.bandKey(mSignature, band, mRowsPerBand));
+      context.write(mBandKey, mValue);
+    }
+    context.incrementCounter(Counters.MESSAGES_SIGNED);
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.graph;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Interns email addresses to dense ints, the node ids of a {@link CsrGraph}.
+ *
+ * <p>Dictionaries are not thread-safe.</p>
+ */
+public final class AddressDictionary {
+  /** Id of each address. */
+  private final Map<String, Integer> mIds = Maps.newHashMap();
+  /** Address of each id. */
+  private final List<String> mAddresses = Lists.newArrayList();
+
+  /**
+   * @param address a normalized address.
+   * @return the id of the address, assigned on first use.
+   */
+  public int intern(String address) {
+    final Integer id = mIds.get(address);
+    if (null != id) {
+      return id;
+    }
+    final int newId = mAddresses.size();
+    mAddresses.add(address);
+    mIds.put(address, newId);
+    return newId;
+  }
+
+  /**
+   * @param address a normalized address.
+   * @return the id of the address, or -1 if it was never interned.
+   */
+  public int getId(String address) {
+    final Integer id = mIds.get(address);
+    return (null == id) ? -1 : id;
+  }
+
+  /**
+   * @param id the id of an address.
+   * @return the address.
+   */
+  public String getAddress(int id) {
+    return mAddresses.get(id);
+  }
+
+  /** @return the number of interned addresses. */
+  public int size() {
+    return mAddresses.size();
+  }
+}
@@ -0,0 +1,423 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.graph;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+import org.kiji.enronemail.bulkimport.Recipients;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiRowScanner;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Builds the graph of who emails whom, and writes the centrality of each sender to the
+ * "features" family of the employee table.
+ *
+ * <p>Each message adds an edge from its sender to each of its To and Cc recipients, weighted by
+ * the number of messages. Cc recipients come from "info:cc_addresses", since "info:cc" holds the
+ * display names of the X-cc header; rows imported before that column existed only contribute
+ * their To edges. The addresses are normalized like {@link Recipients} does and
+ * interned to ints, and the edges are packed into a {@link CsrGraph}, so the whole Enron graph
+ * takes a few tens of MB. {@link GraphAnalytics} then computes on every core:</p>
+ * <ul>
+ *   <li>features:pagerank, the weighted PageRank of the sender;</li>
+ *   <li>features:in_degree and features:out_degree, the number of distinct addresses the sender
+ *       received messages from and sent messages to;</li>
+ *   <li>features:degree_centrality, the fraction of the addresses the sender exchanged messages
+ *       with;</li>
+ *   <li>features:component and features:component_size, the smallest address of the weakly
+ *       connected component of the sender and its number of addresses.</li>
+ * </ul>
+ *
+ * <p>The rows of the employee table are keyed by the From header, so only the addresses that
+ * sent messages get features, with the timestamp of their latest message like
+ * {@link org.kiji.enronemail.produce.EmployeeSentimentProducer} does. The graph is read from
+ * the emails table, or parsed from a Maildir with <code>--maildir</code>; without an employee
+ * table, the features of every address are written as tab-separated lines.</p>
+ */
+public class CommunicationGraph {
+  private static final Logger LOG = LoggerFactory.getLogger(CommunicationGraph.class);
+
+  @Flag(name = "threads", usage = "Number of analytics threads (0 for one per core).")
+  private int mThreads = 0;
+
+  @Flag(name = "damping", usage = "Probability of following an edge in the PageRank walk.")
+  private double mDamping = 0.85;
+
+  @Flag(name = "max-iterations", usage = "Maximum number of PageRank iterations.")
+  private int mMaxIterations = 100;
+
+  @Flag(name = "tolerance", usage = "L1 change of the ranks under which PageRank stops.")
+  private double mTolerance = 1e-9;
+
+  @Flag(name = "maildir", usage = "Build the graph from this Maildir instead of the table.")
+  private String mMaildir = "";
+
+  @Flag(name = "output",
+      usage = "Without an employee table, file to write the features to (default: standard "
+      + "output).")
+  private String mOutputPath = "";
+
+  @Flag(name = "dry-run", usage = "Compute the features without writing them.")
+  private boolean mDryRun = false;
+
+  /** Node of each normalized address. */
+  private final AddressDictionary mAddresses = new AddressDictionary();
+  /** Edges of the graph being built. */
+  private final CsrGraph.Builder mEdges = new CsrGraph.Builder();
+  /** From header of each node that sent messages, by node, or null. */
+  private final List<String> mSenders = Lists.newArrayList();
+  /** Timestamp of the latest message sent by each node. */
+  private long[] mLatest = new long[1024];
+
+  private long mMessages = 0;
+  private long mMessagesFailed = 0;
+
+  /**
+   * Adds the edges of a message.
+   *
+   * @param from the From header of the message.
+   * @param timestamp the date of the message.
+   * @param to the To header of the message, or null.
+   * @param cc the Cc addresses of the message, or null.
+   */
+  private void addMessage(String from, long timestamp, String to, String cc) {
+    final int sender = intern(Recipients.normalize(from));
+    if (null == mSenders.get(sender)) {
+      mSenders.set(sender, from);
+    }
+    mLatest[sender] = Math.max(mLatest[sender], timestamp);
+    for (String recipient : Recipients.split(to, cc)) {
+      mEdges.addEdge(sender, intern(recipient));
+    }
+    mMessages++;
+  }
+
+  /**
+   * @param address a normalized address.
+   * @return the node of the address.
+   */
+  private int intern(String address) {
+    final int node = mAddresses.intern(address);
+    if (node == mSenders.size()) {
+      mSenders.add(null);
+      if (node == mLatest.length) {
+        mLatest = Arrays.copyOf(mLatest, node + (node >> 1));
+      }
+      mLatest[node] = Long.MIN_VALUE;
+    }
+    return node;
+  }
+
+  /**
+   * Reads the edges of the emails table.
+   *
+   * @param table the emails table.
+   * @throws IOException on error.
+   */
+  private void scanTable(KijiTable table) throws IOException {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1).add("info", "to")
+        .add("info", "cc_addresses");
+    final KijiTableReader reader = table.getReaderFactory().openTableReader();
+    try {
+      final KijiRowScanner scanner = reader.getScanner(builder.build());
+      try {
+        for (KijiRowData row : scanner) {
+          // Rows are keyed by (from, timestamp).
+          final EntityId eid = row.getEntityId();
+          final String from = eid.getComponentByIndex(0);
+          final Long timestamp = eid.getComponentByIndex(1);
+          addMessage(from, timestamp, getString(row, "to"), getString(row, "cc_addresses"));
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @param row a row of the scan.
+   * @param qualifier the qualifier of a string column of the info family.
+   * @return the latest value of the column, or null.
+   * @throws IOException on error.
+   */
+  private static String getString(KijiRowData row, String qualifier) throws IOException {
+    if (!row.containsColumn("info", qualifier)) {
+      return null;
+    }
+    final CharSequence value = row.getMostRecentValue("info", qualifier);
+    return value.toString();
+  }
+
+  /**
+   * Recursively reads the edges of the messages of a Maildir.
+   *
+   * @param file the directory or message file to read.
+   * @param reader the reader of the message files.
+   * @param parser the parser of the messages.
+   * @throws IOException if a directory cannot be listed.
+   */
+  private void scanMaildir(File file, MessageReader reader, EmailParser parser)
+      throws IOException {
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null == files) {
+        throw new IOException("Unable to list directory " + file);
+      }
+      for (File child : files) {
+        scanMaildir(child, reader, parser);
+      }
+      return;
+    }
+    try {
+      final EmailMessage email = parser.parse(reader.read(file));
+      final String date = email.getHeader(EmailHeader.DATE);
+      final String from = email.getHeader(EmailHeader.FROM);
+      if (null == date || null == from) {
+        throw new MalformedEmailException("Missing Date or From header.");
+      }
+      addMessage(from, EmailDateParser.parse(date),
+          email.getHeader(EmailHeader.TO), email.getHeader(EmailHeader.CC_ADDRESSES));
+    } catch (MalformedEmailException mee) {
+      LOG.warn("Unable to read {}: {}", file, mee.getMessage());
+      mMessagesFailed++;
+    } catch (IOException ioe) {
+      LOG.warn("Unable to read {}: {}", file, ioe.getMessage());
+      mMessagesFailed++;
+    }
+  }
+
+  /**
+   * Writes the features of the senders to the employee table.
+   *
+   * @param table the employee table.
+   * @param graph the graph.
+   * @param ranks the PageRank of each node.
+   * @param centrality the degree centrality of each node.
+   * @param componentNames the name of the component of each node.
+   * @param componentSizes the size of the component of each node.
+   * @return the number of rows written.
+   * @throws IOException on error.
+   */
+  private int writeTable(KijiTable table, CsrGraph graph, double[] ranks, double[] centrality,
+      String[] componentNames, int[] componentSizes) throws IOException {
+    int rows = 0;
+    final KijiBufferedWriter writer = table.getWriterFactory().openBufferedWriter();
+    try {
+      for (int v = 0; v < graph.getNodeCount(); v++) {
+        final String from = mSenders.get(v);
+        if (null == from) {
+          continue;
+        }
+        final EntityId eid = table.getEntityId(from);
+        final long timestamp = mLatest[v];
+        writer.put(eid, "features", "pagerank", timestamp, ranks[v]);
+        writer.put(eid, "features", "in_degree", timestamp, graph.getInDegree(v));
+        writer.put(eid, "features", "out_degree", timestamp, graph.getOutDegree(v));
+        writer.put(eid, "features", "degree_centrality", timestamp, centrality[v]);
+        writer.put(eid, "features", "component", timestamp, componentNames[v]);
+        writer.put(eid, "features", "component_size", timestamp, componentSizes[v]);
+        rows++;
+      }
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+    return rows;
+  }
+
+  /**
+   * Writes the features of every address as tab-separated lines.
+   *
+   * @param output the writer of the lines.
+   * @param graph the graph.
+   * @param ranks the PageRank of each node.
+   * @param centrality the degree centrality of each node.
+   * @param componentNames the name of the component of each node.
+   * @param componentSizes the size of the component of each node.
+   */
+  private void writeTsv(PrintWriter output, CsrGraph graph, double[] ranks, double[] centrality,
+      String[] componentNames, int[] componentSizes) {
+    output.println("address\tpagerank\tin_degree\tout_degree\tdegree_centrality\tcomponent"
+        + "\tcomponent_size");
+    for (int v = 0; v < graph.getNodeCount(); v++) {
+      output.println(mAddresses.getAddress(v) + "\t" + ranks[v] + "\t" + graph.getInDegree(v)
+          + "\t" + graph.getOutDegree(v) + "\t" + centrality[v] + "\t" + componentNames[v]
+          + "\t" + componentSizes[v]);
+    }
+    output.flush();
+  }
+
+  public static void main(String[] args) {
+    System.exit(new CommunicationGraph().run(args));
+  }
+
+  private int run(String[] args) {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    final boolean fromMaildir = !mMaildir.isEmpty();
+    if (nonFlagArgs.size() > (fromMaildir ? 1 : 2) || (!fromMaildir && nonFlagArgs.isEmpty())) {
+      System.err.println(
+          "Usage: CommunicationGraph [flags] <emails table URI> [<employee table URI>]");
+      System.err.println(
+          "       CommunicationGraph [flags] --maildir=<dir> [<employee table URI>]");
+      return 1;
+    }
+    if (mThreads <= 0) {
+      mThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    final ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+    try {
+      long startNanos = System.nanoTime();
+      if (fromMaildir) {
+        scanMaildir(new File(mMaildir), new MessageReader(), new EmailParser());
+      } else {
+        final KijiURI emailsURI = KijiURI.newBuilder(nonFlagArgs.get(0)).build();
+        final Kiji kiji = Kiji.Factory.open(emailsURI);
+        try {
+          final KijiTable emails = kiji.openTable(emailsURI.getTable());
+          try {
+            scanTable(emails);
+          } finally {
+            emails.release();
+          }
+        } finally {
+          kiji.release();
+        }
+      }
+      final int parallelEdges = mEdges.size();
+      final CsrGraph graph = mEdges.build(mAddresses.size());
+      final long buildMillis = (System.nanoTime() - startNanos) / 1000000;
+      System.err.println(String.format(
+          "Built a graph of %d addresses and %d edges (%d messages, %d parallel edges, %d "
+          + "failed) in %d ms; %d KB.",
+          graph.getNodeCount(), graph.getEdgeCount(), mMessages, parallelEdges, mMessagesFailed,
+          buildMillis, graph.getAllocatedBytes() / 1024));
+
+      startNanos = System.nanoTime();
+      final GraphAnalytics analytics = new GraphAnalytics(graph, pool, mThreads);
+      final double[] ranks = analytics.pageRank(mDamping, mMaxIterations, mTolerance);
+      final double[] centrality = analytics.degreeCentrality();
+      final int[] labels = analytics.components();
+
+      // Name each component after its smallest address, which is stable across runs.
+      final Map<Integer, String> names = Maps.newHashMap();
+      final int[] sizes = new int[graph.getNodeCount()];
+      for (int v = 0; v < graph.getNodeCount(); v++) {
+        final String address = mAddresses.getAddress(v);
+        final String name = names.get(labels[v]);
+        if (null == name || address.compareTo(name) < 0) {
+          names.put(labels[v], address);
+        }
+        sizes[labels[v]]++;
+      }
+      final String[] componentNames = new String[graph.getNodeCount()];
+      final int[] componentSizes = new int[graph.getNodeCount()];
+      for (int v = 0; v < graph.getNodeCount(); v++) {
+        componentNames[v] = names.get(labels[v]);
+        componentSizes[v] = sizes[labels[v]];
+      }
+      System.err.println(String.format(
+          "Computed PageRank (%d iterations), degree centrality and %d components "
+          + "(%d iterations) with %d threads in %d ms.",
+          analytics.getPageRankIterations(), names.size(), analytics.getComponentIterations(),
+          mThreads, (System.nanoTime() - startNanos) / 1000000));
+
+      if (mDryRun) {
+        return 0;
+      }
+      final int employeeArg = fromMaildir ? 0 : 1;
+      if (nonFlagArgs.size() > employeeArg) {
+        final KijiURI employeeURI = KijiURI.newBuilder(nonFlagArgs.get(employeeArg)).build();
+        final Kiji kiji = Kiji.Factory.open(employeeURI);
+        try {
+          final KijiTable employee = kiji.openTable(employeeURI.getTable());
+          try {
+            final int rows =
+                writeTable(employee, graph, ranks, centrality, componentNames, componentSizes);
+            System.err.println("Wrote the features of " + rows + " senders.");
+          } finally {
+            employee.release();
+          }
+        } finally {
+          kiji.release();
+        }
+      } else {
+        final Writer output = mOutputPath.isEmpty()
+            ? new OutputStreamWriter(System.out, Charsets.UTF_8)
+            : new OutputStreamWriter(new FileOutputStream(mOutputPath), Charsets.UTF_8);
+        final PrintWriter tsv = new PrintWriter(output);
+        writeTsv(tsv, graph, ranks, centrality, componentNames, componentSizes);
+        if (!mOutputPath.isEmpty()) {
+          tsv.close();
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      e.printStackTrace();
+      return 1;
+    } finally {
+      pool.shutdownNow();
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.graph;
+
+import java.util.Arrays;
+
+/**
+ * Directed, weighted graph stored as compressed sparse rows.
+ *
+ * <p>The out-edges of node v are the targets from <code>outOffsets[v]</code> to
+ * <code>outOffsets[v + 1]</code>, with their weights at the same positions. The in-edges are
+ * stored the same way, so the algorithms can pull from the in-neighbours of a node without
+ * synchronizing. Both lists of a node are sorted by neighbour. Parallel edges are merged into one
+ * edge whose weight counts them, and self-loops are dropped.</p>
+ *
+ * <p>The graph takes 8 bytes per node and 16 bytes per distinct edge, for both directions.
+ * Graphs are immutable, so they can be shared by threads.</p>
+ */
+public final class CsrGraph {
+  /** Number of nodes. */
+  private final int mNodeCount;
+
+  /** Out-edges: offsets by node, targets and weights by edge. */
+  private final int[] mOutOffsets;
+  private final int[] mOutTargets;
+  private final int[] mOutWeights;
+
+  /** In-edges: offsets by node, sources and weights by edge. */
+  private final int[] mInOffsets;
+  private final int[] mInSources;
+  private final int[] mInWeights;
+
+  /**
+   * Collects the edges of a graph, one message at a time.
+   *
+   * <p>Each edge is packed into a long, the source in the high half, so sorting the longs groups
+   * the edges by source and then by target. That takes 8 bytes per edge added, parallel edges
+   * included, until the graph is built.</p>
+   */
+  public static final class Builder {
+    /** The edges added, packed. */
+    private long[] mEdges = new long[1024];
+    /** Number of edges added. */
+    private int mSize = 0;
+
+    /**
+     * Adds an edge of weight one, merged with the previous edges between the same nodes.
+     *
+     * @param source the source node, a non-negative int.
+     * @param target the target node, a non-negative int.
+     */
+    public void addEdge(int source, int target) {
+      if (source == target) {
+        return;
+      }
+      if (mSize == mEdges.length) {
+        mEdges = Arrays.copyOf(mEdges, mSize + (mSize >> 1));
+      }
+      mEdges[mSize++] = ((long) source << 32) | target;
+    }
+
+    /** @return the number of edges added, parallel edges included. */
+    public int size() {
+      return mSize;
+    }
+
+    /**
+     * Builds the graph. The builder must not be used afterwards.
+     *
+     * @param nodeCount the number of nodes, greater than every node added.
+     * @return the graph.
+     */
+    public CsrGraph build(int nodeCount) {
+      final long[] edges = mEdges;
+      mEdges = null;
+      Arrays.sort(edges, 0, mSize);
+
+      // Merge the parallel edges in place.
+      int distinct = 0;
+      final int[] weights = new int[mSize];
+      for (int i = 0; i < mSize; i++) {
+        if (distinct > 0 && edges[distinct - 1] == edges[i]) {
+          weights[distinct - 1]++;
+        } else {
+          edges[distinct] = edges[i];
+          weights[distinct] = 1;
+          distinct++;
+        }
+      }
+
+      final int[] outOffsets = new int[nodeCount + 1];
+      final int[] outTargets = new int[distinct];
+      final int[] inOffsets = new int[nodeCount + 1];
+      for (int i = 0; i < distinct; i++) {
+        outOffsets[(int) (edges[i] >>> 32) + 1]++;
+        outTargets[i] = (int) edges[i];
+        inOffsets[outTargets[i] + 1]++;
+      }
+      for (int v = 0; v < nodeCount; v++) {
+        outOffsets[v + 1] += outOffsets[v];
+        inOffsets[v + 1] += inOffsets[v];
+      }
+
+      // Counting sort by target. The edges are sorted by source, so the sources of each node
+      // come out sorted too.
+      final int[] inSources = new int[distinct];
+      final int[] inWeights = new int[distinct];
+      final int[] next = Arrays.copyOf(inOffsets, nodeCount);
+      for (int i = 0; i < distinct; i++) {
+        final int position = next[outTargets[i]]++;
+        inSources[position] = (int) (edges[i] >>> 32);
+        inWeights[position] = weights[i];
+      }
+      mSize = 0;
+      return new CsrGraph(nodeCount, outOffsets, outTargets, Arrays.copyOf(weights, distinct),
+          inOffsets, inSources, inWeights);
+    }
+  }
+
+  /**
+   * @param nodeCount the number of nodes.
+   * @param outOffsets the offsets of the out-edges of each node.
+   * @param outTargets the targets of the out-edges.
+   * @param outWeights the weights of the out-edges.
+   * @param inOffsets the offsets of the in-edges of each node.
+   * @param inSources the sources of the in-edges.
+   * @param inWeights the weights of the in-edges.
+   */
+  private CsrGraph(int nodeCount, int[] outOffsets, int[] outTargets, int[] outWeights,
+      int[] inOffsets, int[] inSources, int[] inWeights) {
+    mNodeCount = nodeCount;
+    mOutOffsets = outOffsets;
+    mOutTargets = outTargets;
+    mOutWeights = outWeights;
+    mInOffsets = inOffsets;
+    mInSources = inSources;
+    mInWeights = inWeights;
+  }
+
+  /** @return the number of nodes. */
+  public int getNodeCount() {
+    return mNodeCount;
+  }
+
+  /** @return the number of distinct edges. */
+  public int getEdgeCount() {
+    return mOutTargets.length;
+  }
+
+  /**
+   * @param node a node.
+   * @return the number of distinct nodes the node sent messages to.
+   */
+  public int getOutDegree(int node) {
+    return mOutOffsets[node + 1] - mOutOffsets[node];
+  }
+
+  /**
+   * @param node a node.
+   * @return the number of distinct nodes the node received messages from.
+   */
+  public int getInDegree(int node) {
+    return mInOffsets[node + 1] - mInOffsets[node];
+  }
+
+  /** @return an estimate of the bytes held by the arrays of the graph. */
+  public long getAllocatedBytes() {
+    return 4L * (mOutOffsets.length + mInOffsets.length)
+        + 4L * (mOutTargets.length + mOutWeights.length + mInSources.length + mInWeights.length);
+  }
+
+  /** @return the offsets of the out-edges of each node, not to be modified. */
+  int[] getOutOffsets() {
+    return mOutOffsets;
+  }
+
+  /** @return the targets of the out-edges, not to be modified. */
+  int[] getOutTargets() {
+    return mOutTargets;
+  }
+
+  /** @return the weights of the out-edges, not to be modified. */
+  int[] getOutWeights() {
+    return mOutWeights;
+  }
+
+  /** @return the offsets of the in-edges of each node, not to be modified. */
+  int[] getInOffsets() {
+    return mInOffsets;
+  }
+
+  /** @return the sources of the in-edges, not to be modified. */
+  int[] getInSources() {
+    return mInSources;
+  }
+
+  /** @return the weights of the in-edges, not to be modified. */
+  int[] getInWeights() {
+    return mInWeights;
+  }
+}
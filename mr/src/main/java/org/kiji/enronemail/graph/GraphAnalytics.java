@@ -0,0 +1,329 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Parallel algorithms over a {@link CsrGraph}: weighted PageRank, degree centrality and weakly
+ * connected components.
+ *
+ * <p>Every algorithm pulls from the neighbours of each node and writes only the entries of the
+ * node, so the nodes are simply split into ranges run by the threads of a pool, without locks.
+ * The degrees of a communication graph are very skewed, so the ranges hold about the same number
+ * of edges rather than the same number of nodes. Each parallel step reads the result of the
+ * previous one, which the futures of the pool publish.</p>
+ */
+public final class GraphAnalytics {
+  /** The graph analyzed. */
+  private final CsrGraph mGraph;
+  /** The pool running the ranges. */
+  private final ExecutorService mPool;
+  /** Start of each range of nodes, followed by the node count. */
+  private final int[] mRanges;
+
+  /** Number of iterations run by the last call to {@link #pageRank(double, int, double)}. */
+  private int mPageRankIterations = 0;
+  /** Number of iterations run by the last call to {@link #components()}. */
+  private int mComponentIterations = 0;
+
+  /** A step of an algorithm, run on every range of nodes. */
+  private abstract static class RangeTask {
+    /**
+     * Runs the step on a range of nodes.
+     *
+     * @param start the first node of the range.
+     * @param end the end of the range, exclusive.
+     * @return a partial result of the step, summed over the ranges.
+     */
+    abstract double run(int start, int end);
+  }
+
+  /**
+   * @param graph the graph to analyze.
+   * @param pool the pool running the algorithms.
+   * @param parallelism the number of threads of the pool.
+   */
+  public GraphAnalytics(CsrGraph graph, ExecutorService pool, int parallelism) {
+    mGraph = graph;
+    mPool = pool;
+    mRanges = split(graph, Math.max(1, 4 * parallelism));
+  }
+
+  /**
+   * Splits the nodes into ranges with about the same number of edges, in and out.
+   *
+   * @param graph the graph.
+   * @param count the number of ranges; more ranges than threads smooth out the imbalance.
+   * @return the start of each range, followed by the node count.
+   */
+  private static int[] split(CsrGraph graph, int count) {
+    final int nodes = graph.getNodeCount();
+    final int[] outOffsets = graph.getOutOffsets();
+    final int[] inOffsets = graph.getInOffsets();
+    // Count each node as one edge, so ranges of isolated nodes are split too.
+    final long total = (long) outOffsets[nodes] + inOffsets[nodes] + nodes;
+    final int[] ranges = new int[count + 1];
+    int node = 0;
+    for (int range = 1; range < count; range++) {
+      final long target = total * range / count;
+      while (node < nodes && (long) outOffsets[node] + inOffsets[node] + node < target) {
+        node++;
+      }
+      ranges[range] = node;
+    }
+    ranges[count] = nodes;
+    return ranges;
+  }
+
+  /**
+   * Runs a step on every range of nodes, and waits for it.
+   *
+   * @param task the step.
+   * @return the sum of the partial results of the ranges.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private double runRanges(final RangeTask task) throws InterruptedException {
+    final List<Future<Double>> futures = Lists.newArrayList();
+    for (int i = 0; i + 1 < mRanges.length; i++) {
+      final int start = mRanges[i];
+      final int end = mRanges[i + 1];
+      if (start == end) {
+        continue;
+      }
+      futures.add(mPool.submit(new Callable<Double>() {
+        @Override
+        public Double call() {
+          return task.run(start, end);
+        }
+      }));
+    }
+    double sum = 0.0;
+    for (Future<Double> future : futures) {
+      try {
+        sum += future.get();
+      } catch (ExecutionException ee) {
+        throw new RuntimeException("Graph step failed.", ee.getCause());
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Computes the PageRank of the nodes, following the out-edges in proportion to their weights.
+   * The rank of the nodes without out-edges is spread over every node.
+   *
+   * @param damping the probability of following an edge rather than jumping anywhere.
+   * @param maxIterations the maximum number of power iterations.
+   * @param tolerance the L1 change of the ranks under which the iterations stop.
+   * @return the rank of each node; the ranks sum to one.
+   * @throws InterruptedException if interrupted while waiting for the pool.
+   */
+  public double[] pageRank(final double damping, int maxIterations, double tolerance)
+      throws InterruptedException {
+    final int nodes = mGraph.getNodeCount();
+    final int[] outOffsets = mGraph.getOutOffsets();
+    final int[] outWeights = mGraph.getOutWeights();
+    final int[] inOffsets = mGraph.getInOffsets();
+    final int[] inSources = mGraph.getInSources();
+    final int[] inWeights = mGraph.getInWeights();
+
+    // Total weight of the out-edges of each node, 0 for the dangling nodes.
+    final double[] outWeight = new double[nodes];
+    runRanges(new RangeTask() {
+      @Override
+      double run(int start, int end) {
+        for (int v = start; v < end; v++) {
+          long sum = 0;
+          for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+            sum += outWeights[e];
+          }
+          outWeight[v] = sum;
+        }
+        return 0.0;
+      }
+    });
+
+    final double[][] ranks = {new double[nodes], new double[nodes]};
+    Arrays.fill(ranks[0], 1.0 / nodes);
+    // Rank of each node divided by its out weight, which its out-edges pull in proportion to
+    // their own weight.
+    final double[] share = new double[nodes];
+    mPageRankIterations = 0;
+    int current = 0;
+    while (mPageRankIterations < maxIterations) {
+      final double[] rank = ranks[current];
+      final double[] next = ranks[1 - current];
+      final double dangling = runRanges(new RangeTask() {
+        @Override
+        double run(int start, int end) {
+          double danglingRank = 0.0;
+          for (int v = start; v < end; v++) {
+            if (0.0 == outWeight[v]) {
+              share[v] = 0.0;
+              danglingRank += rank[v];
+            } else {
+              share[v] = rank[v] / outWeight[v];
+            }
+          }
+          return danglingRank;
+        }
+      });
+      final double base = (1.0 - damping + damping * dangling) / nodes;
+      final double delta = runRanges(new RangeTask() {
+        @Override
+        double run(int start, int end) {
+          double change = 0.0;
+          for (int v = start; v < end; v++) {
+            double sum = 0.0;
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+              sum += share[inSources[e]] * inWeights[e];
+            }
+            next[v] = base + damping * sum;
+            change += Math.abs(next[v] - rank[v]);
+          }
+          return change;
+        }
+      });
+      current = 1 - current;
+      mPageRankIterations++;
+      if (delta < tolerance) {
+        break;
+      }
+    }
+    return ranks[current];
+  }
+
+  /**
+   * Computes the degree centrality of the nodes: the fraction of the other nodes a node
+   * exchanged messages with, in either direction.
+   *
+   * @return the degree centrality of each node.
+   * @throws InterruptedException if interrupted while waiting for the pool.
+   */
+  public double[] degreeCentrality() throws InterruptedException {
+    final int nodes = mGraph.getNodeCount();
+    final int[] outOffsets = mGraph.getOutOffsets();
+    final int[] outTargets = mGraph.getOutTargets();
+    final int[] inOffsets = mGraph.getInOffsets();
+    final int[] inSources = mGraph.getInSources();
+    final double[] centrality = new double[nodes];
+    final double others = Math.max(1, nodes - 1);
+    runRanges(new RangeTask() {
+      @Override
+      double run(int start, int end) {
+        for (int v = start; v < end; v++) {
+          // Both neighbour lists are sorted: count their union by merging them.
+          int out = outOffsets[v];
+          int in = inOffsets[v];
+          final int outEnd = outOffsets[v + 1];
+          final int inEnd = inOffsets[v + 1];
+          int neighbours = 0;
+          while (out < outEnd && in < inEnd) {
+            final int target = outTargets[out];
+            final int source = inSources[in];
+            if (target <= source) {
+              out++;
+            }
+            if (source <= target) {
+              in++;
+            }
+            neighbours++;
+          }
+          neighbours += (outEnd - out) + (inEnd - in);
+          centrality[v] = neighbours / others;
+        }
+        return 0.0;
+      }
+    });
+    return centrality;
+  }
+
+  /**
+   * Labels the weakly connected components of the graph, by propagating the smallest node of
+   * each component along the edges in both directions until no label changes. The number of
+   * iterations is bounded by the diameter of the components, which is small for a
+   * communication graph.
+   *
+   * @return the label of each node: the smallest node of its component.
+   * @throws InterruptedException if interrupted while waiting for the pool.
+   */
+  public int[] components() throws InterruptedException {
+    final int nodes = mGraph.getNodeCount();
+    final int[] outOffsets = mGraph.getOutOffsets();
+    final int[] outTargets = mGraph.getOutTargets();
+    final int[] inOffsets = mGraph.getInOffsets();
+    final int[] inSources = mGraph.getInSources();
+    final int[][] labels = {new int[nodes], new int[nodes]};
+    for (int v = 0; v < nodes; v++) {
+      labels[0][v] = v;
+    }
+    mComponentIterations = 0;
+    int current = 0;
+    while (true) {
+      final int[] label = labels[current];
+      final int[] next = labels[1 - current];
+      final double changed = runRanges(new RangeTask() {
+        @Override
+        double run(int start, int end) {
+          int changes = 0;
+          for (int v = start; v < end; v++) {
+            int min = label[v];
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+              min = Math.min(min, label[outTargets[e]]);
+            }
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+              min = Math.min(min, label[inSources[e]]);
+            }
+            // Jump to the label of the label, which halves the iterations on long paths.
+            min = Math.min(min, label[min]);
+            next[v] = min;
+            if (min != label[v]) {
+              changes++;
+            }
+          }
+          return changes;
+        }
+      });
+      current = 1 - current;
+      mComponentIterations++;
+      if (0.0 == changed) {
+        return labels[current];
+      }
+    }
+  }
+
+  /** @return the number of iterations run by the last PageRank computation. */
+  public int getPageRankIterations() {
+    return mPageRankIterations;
+  }
+
+  /** @return the number of iterations run by the last components computation. */
+  public int getComponentIterations() {
+    return mComponentIterations;
+  }
+}
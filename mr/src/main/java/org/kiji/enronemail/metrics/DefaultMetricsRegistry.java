@@ -0,0 +1,154 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.metrics;
+
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory metrics registry.
+ *
+ * <p>Counters are atomic longs. Histograms record values into power-of-two buckets, so their
+ * percentiles are upper bounds within a factor of two, which is enough to tell which stage of a
+ * pipeline dominates without keeping every sample.</p>
+ */
+public final class DefaultMetricsRegistry implements MetricsRegistry {
+  private final ConcurrentMap<String, Counter> mCounters = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Histogram> mHistograms = Maps.newConcurrentMap();
+
+  /** {@inheritDoc} */
+  @Override
+  public Counter counter(String name) {
+    final Counter counter = mCounters.get(name);
+    if (null != counter) {
+      return counter;
+    }
+    final Counter created = new AtomicCounter();
+    final Counter existing = mCounters.putIfAbsent(name, created);
+    return (null != existing) ? existing : created;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Histogram histogram(String name) {
+    final Histogram histogram = mHistograms.get(name);
+    if (null != histogram) {
+      return histogram;
+    }
+    final Histogram created = new PowerOfTwoHistogram();
+    final Histogram existing = mHistograms.putIfAbsent(name, created);
+    return (null != existing) ? existing : created;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public SortedMap<String, Counter> getCounters() {
+    return ImmutableSortedMap.copyOf(mCounters);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public SortedMap<String, Histogram> getHistograms() {
+    return ImmutableSortedMap.copyOf(mHistograms);
+  }
+
+  /** Counter backed by an atomic long. */
+  private static final class AtomicCounter implements Counter {
+    private final AtomicLong mCount = new AtomicLong();
+
+    /** {@inheritDoc} */
+    @Override
+    public void increment(long delta) {
+      mCount.addAndGet(delta);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCount() {
+      return mCount.get();
+    }
+  }
+
+  /** Histogram counting values into power-of-two buckets. */
+  private static final class PowerOfTwoHistogram implements Histogram {
+    /** Bucket i counts the values v such that 2^(i-1) <= v < 2^i; bucket 0 counts zeros. */
+    private static final int NUM_BUCKETS = 65;
+
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MAX = 2;
+
+    /** Count, sum and maximum of the values, in that order. */
+    private final AtomicLongArray mTotals = new AtomicLongArray(3);
+    private final AtomicLongArray mBuckets = new AtomicLongArray(NUM_BUCKETS);
+
+    /** {@inheritDoc} */
+    @Override
+    public void update(long value) {
+      final long clamped = Math.max(0, value);
+      mTotals.incrementAndGet(COUNT);
+      mTotals.addAndGet(SUM, clamped);
+      long max = mTotals.get(MAX);
+      while (clamped > max && !mTotals.compareAndSet(MAX, max, clamped)) {
+        max = mTotals.get(MAX);
+      }
+      mBuckets.incrementAndGet(64 - Long.numberOfLeadingZeros(clamped));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCount() {
+      return mTotals.get(COUNT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSum() {
+      return mTotals.get(SUM);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMax() {
+      return mTotals.get(MAX);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPercentile(double percentile) {
+      final long rank = (long) Math.ceil(mTotals.get(COUNT) * percentile / 100.0);
+      final long max = mTotals.get(MAX);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS - 1; i++) {
+        seen += mBuckets.get(i);
+        if (seen >= rank && seen > 0) {
+          // Largest value of the bucket, which the maximum may undercut.
+          return Math.min((1L << i) - 1, max);
+        }
+      }
+      return max;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.metrics;
+
+/**
+ * Thread-safe distribution of non-negative values, such as latencies.
+ *
+ * <p>Implementations may approximate percentiles rather than keep every sample.</p>
+ */
+public interface Histogram {
+  /**
+   * Records one value.
+   *
+   * @param value the value, which should not be negative.
+   */
+  void update(long value);
+
+  /** @return the number of values recorded. */
+  long getCount();
+
+  /** @return the sum of the values recorded. */
+  long getSum();
+
+  /** @return the largest value recorded, or 0 if none was. */
+  long getMax();
+
+  /**
+   * Returns an upper bound of a percentile of the values recorded.
+   *
+   * @param percentile the percentile, between 0 and 100.
+   * @return a value at least as large as the percentile, or 0 if no value was recorded.
+   */
+  long getPercentile(double percentile);
+}
@@ -0,0 +1,50 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.metrics;
+
+import java.util.SortedMap;
+
+/**
+ * Named counters and histograms.
+ *
+ * <p>Metrics are created on first use, and the same instance is returned for every later use of
+ * a name, so callers should look metrics up once and keep them. Implementations must be
+ * thread-safe and have a public no-argument constructor, so they can be selected by class
+ * name.</p>
+ */
+public interface MetricsRegistry {
+  /**
+   * @param name the name of the counter.
+   * @return the counter with this name, created if needed.
+   */
+  Counter counter(String name);
+
+  /**
+   * @param name the name of the histogram.
+   * @return the histogram with this name, created if needed.
+   */
+  Histogram histogram(String name);
+
+  /** @return a snapshot of the counters, sorted by name. */
+  SortedMap<String, Counter> getCounters();
+
+  /** @return a snapshot of the histograms, sorted by name. */
+  SortedMap<String, Histogram> getHistograms();
+}
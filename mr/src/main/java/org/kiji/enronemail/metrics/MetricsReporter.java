@@ -0,0 +1,152 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Reports the metrics of a registry: periodically prints the rate of every counter, and writes a
+ * JSON summary of every metric on demand.
+ */
+public final class MetricsReporter implements Closeable {
+  private final MetricsRegistry mRegistry;
+  private final PrintStream mOut;
+
+  /** Prints the reports, or null until {@link #start(long)}. */
+  private ScheduledExecutorService mExecutor = null;
+
+  /** Counts at the previous report, to compute rates. Reporter thread only. */
+  private final Map<String, Long> mLastCounts = Maps.newHashMap();
+  private long mLastReportNanos = System.nanoTime();
+
+  /**
+   * Creates a reporter.
+   *
+   * @param registry the registry to report the metrics of.
+   * @param out the stream to print the periodic reports to.
+   */
+  public MetricsReporter(MetricsRegistry registry, PrintStream out) {
+    mRegistry = registry;
+    mOut = out;
+  }
+
+  /**
+   * Starts printing the rate of every counter at a fixed period, from a daemon thread.
+   *
+   * @param periodMillis the period between reports, in milliseconds.
+   * @return this reporter.
+   */
+  public synchronized MetricsReporter start(long periodMillis) {
+    if (null == mExecutor) {
+      mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "metrics-reporter");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      mExecutor.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          report();
+        }
+      }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  /** Prints the count and the rate since the previous report of every counter. */
+  private void report() {
+    final long nowNanos = System.nanoTime();
+    final double seconds = (nowNanos - mLastReportNanos) / 1e9;
+    mLastReportNanos = nowNanos;
+    final StringBuilder line = new StringBuilder("Metrics:");
+    for (Map.Entry<String, Counter> entry : mRegistry.getCounters().entrySet()) {
+      final long count = entry.getValue().getCount();
+      final Long last = mLastCounts.put(entry.getKey(), count);
+      final long delta = count - ((null != last) ? last : 0);
+      line.append(String.format(" %s=%d (%.1f/s)",
+          entry.getKey(), count, (seconds > 0) ? delta / seconds : 0.0));
+    }
+    mOut.println(line);
+  }
+
+  /**
+   * Writes a JSON object holding the counts of the counters, and the count, mean, percentiles
+   * and maximum of the histograms.
+   *
+   * @param out the destination of the JSON summary.
+   * @throws IOException if the summary cannot be written.
+   */
+  public void writeJson(Appendable out) throws IOException {
+    out.append("{\n  \"counters\": {");
+    String separator = "\n";
+    for (Map.Entry<String, Counter> entry : mRegistry.getCounters().entrySet()) {
+      out.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+          .append(Long.toString(entry.getValue().getCount()));
+      separator = ",\n";
+    }
+    out.append("\n  },\n  \"histograms\": {");
+    separator = "\n";
+    for (Map.Entry<String, Histogram> entry : mRegistry.getHistograms().entrySet()) {
+      final Histogram histogram = entry.getValue();
+      final long count = histogram.getCount();
+      out.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+          .append(String.format(
+              "{\"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, "
+              + "\"max\": %d}",
+              count,
+              (count > 0) ? (double) histogram.getSum() / count : 0.0,
+              histogram.getPercentile(50),
+              histogram.getPercentile(90),
+              histogram.getPercentile(99),
+              histogram.getMax()));
+      separator = ",\n";
+    }
+    out.append("\n  }\n}\n");
+  }
+
+  /**
+   * @param name a metric name.
+   * @return the name as a JSON string.
+   */
+  private static String quote(String name) {
+    return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  /** Stops the periodic reports. */
+  @Override
+  public synchronized void close() {
+    if (null != mExecutor) {
+      mExecutor.shutdownNow();
+      mExecutor = null;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Lightweight counters and histograms, used to instrument the hot paths of the importer and
+ * of the other tools of this project.
+ *
+ * <p>Code records into a {@link org.kiji.enronemail.metrics.MetricsRegistry}, which can be
+ * swapped for an implementation backed by another metrics library.
+ * {@link org.kiji.enronemail.metrics.MetricsReporter} periodically logs the rates of the counters
+ * and dumps a JSON summary of every metric.</p>
+ */
+package org.kiji.enronemail.metrics;
@@ -0,0 +1,74 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.enronemail.AfinnHistogram;
+import org.kiji.enronemail.text.SentimentLexicon;
+
+/**
+ * Counts the words of a body with each AFINN score, from -5 to 5, into
+ * "features:afinn_histogram". Unlike the mean sentiment, the histogram tells a neutral message
+ * from one mixing strong positive and negative words.
+ */
+public final class AfinnHistogramFeature implements FeatureExtractor {
+  /** Lowest and highest AFINN scores. */
+  private static final int MIN_SCORE = -5;
+  private static final int MAX_SCORE = 5;
+
+  private SentimentLexicon mLexicon;
+  private final int[] mCounts = new int[MAX_SCORE - MIN_SCORE + 1];
+
+  /** {@inheritDoc} */
+  @Override
+  public String getQualifier() {
+    return "afinn_histogram";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setup(FeatureResources resources) throws IOException {
+    mLexicon = resources.getLexicon();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object extract(TokenizedBody body) {
+    final String text = body.getBody();
+    Arrays.fill(mCounts, 0);
+    for (int i = 0; i < body.getWordCount(); i++) {
+      final int word = mLexicon.indexOf(text, body.getStart(i), body.getEnd(i));
+      if (word >= 0) {
+        final int score = Math.round(mLexicon.getScore(word));
+        mCounts[Math.min(MAX_SCORE, Math.max(MIN_SCORE, score)) - MIN_SCORE]++;
+      }
+    }
+    final List<Integer> counts = Lists.newArrayListWithCapacity(mCounts.length);
+    for (int count : mCounts) {
+      counts.add(count);
+    }
+    return AfinnHistogram.newBuilder().setCounts(counts).build();
+  }
+}
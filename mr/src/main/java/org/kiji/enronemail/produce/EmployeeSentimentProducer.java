@@ -0,0 +1,128 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+
+import org.kiji.enronemail.text.SentimentScorer;
+import org.kiji.enronemail.util.VersionPager;
+import org.kiji.mapreduce.KijiContext;
+import org.kiji.mapreduce.produce.KijiProducer;
+import org.kiji.mapreduce.produce.ProducerContext;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+/**
+ * Scores the overall sentiment of each sender of the employee table, as the mean sentiment of
+ * the bodies of its sent messages, and writes it to the column "features:sentiment".
+ *
+ * <p>Every message of a sender is a version of "sent_messages:body", so the bodies are streamed
+ * through a {@link VersionPager}: the memory of a task stays flat however much mail a sender
+ * sent. Set {@link VersionPager#CONF_PAGE_SIZE} and {@link VersionPager#CONF_MAX_PAGE_BYTES} to
+ * size the pages. Bodies are scored like {@link SentimentProducer} scores them, and the score of
+ * a sender is written with the timestamp of its latest message.</p>
+ */
+public class EmployeeSentimentProducer extends KijiProducer {
+  /** Counters of the senders and messages processed. */
+  public static enum Counters {
+    /** Senders whose messages were scored. */
+    SENDERS_SCORED,
+    /** Senders skipped because they have no message. */
+    SENDERS_WITHOUT_MESSAGES,
+    /** Messages scored. */
+    MESSAGES_SCORED,
+    /** Pages of messages read. */
+    PAGES_READ
+  }
+
+  private static final String INPUT_FAMILY = "sent_messages";
+  private static final String INPUT_QUALIFIER = "body";
+
+  /** Number of messages scored between two reports of progress. */
+  private static final int PROGRESS_INTERVAL = 1000;
+
+  /** Scores the bodies with the sentiment lexicon, loaded once per task. */
+  private SentimentScorer mScorer;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setup(KijiContext context) throws IOException {
+    mScorer = new SentimentScorer(SentimentProducer.loadLexicon(getConf()));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public KijiDataRequest getDataRequest() {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    VersionPager.addPagedColumn(builder, INPUT_FAMILY, INPUT_QUALIFIER, getConf());
+    return builder.build();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getOutputColumn() {
+    return "features:sentiment";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void produce(KijiRowData input, ProducerContext context) throws IOException {
+    if (!input.containsColumn(INPUT_FAMILY, INPUT_QUALIFIER)) {
+      context.incrementCounter(Counters.SENDERS_WITHOUT_MESSAGES);
+      return;
+    }
+    double sum = 0.0;
+    long messages = 0;
+    long latestTimestamp = Long.MIN_VALUE;
+    final VersionPager<CharSequence> pager =
+        VersionPager.open(input, INPUT_FAMILY, INPUT_QUALIFIER, getConf());
+    try {
+      while (pager.next()) {
+        // Utf8 decodes itself on every charAt(), so decode each body once.
+        sum += mScorer.score(pager.getValue().toString());
+        messages++;
+        latestTimestamp = Math.max(latestTimestamp, pager.getTimestamp());
+        if (0 == messages % PROGRESS_INTERVAL) {
+          // Very wide rows take a while: keep the task alive.
+          context.progress();
+        }
+      }
+    } finally {
+      pager.close();
+    }
+    context.incrementCounter(Counters.PAGES_READ, pager.getPagesRead());
+    if (0 == messages) {
+      context.incrementCounter(Counters.SENDERS_WITHOUT_MESSAGES);
+      return;
+    }
+    context.incrementCounter(Counters.MESSAGES_SCORED, messages);
+    context.incrementCounter(Counters.SENDERS_SCORED);
+    context.put(latestTimestamp, (float) (sum / messages));
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+
+/**
+ * Computes one feature of an email body, for {@link FeatureProducer}.
+ *
+ * <p>Extractors share the tokens of the body, computed once per row by the producer. They are
+ * instantiated by class name, so implementations must have a public no-argument constructor.
+ * An extractor is used by a single thread.</p>
+ */
+public interface FeatureExtractor {
+  /** @return the qualifier of the column of the "features" family this extractor writes. */
+  String getQualifier();
+
+  /**
+   * Prepares the extractor, e.g. loads its resources. Called once per task.
+   *
+   * @param resources the configuration of the job and the resources shared by the extractors.
+   * @throws IOException on error.
+   */
+  void setup(FeatureResources resources) throws IOException;
+
+  /**
+   * Computes the feature of a body.
+   *
+   * @param body the tokenized body.
+   * @return the value of the feature, or null to write nothing for this body.
+   * @throws IOException on error.
+   */
+  Object extract(TokenizedBody body) throws IOException;
+}
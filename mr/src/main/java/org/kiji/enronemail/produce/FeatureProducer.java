@@ -0,0 +1,151 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.mapreduce.KijiContext;
+import org.kiji.mapreduce.produce.KijiProducer;
+import org.kiji.mapreduce.produce.ProducerContext;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+/**
+ * Computes several features of the body of each email in a single scan of the table.
+ *
+ * <p>The latest version of "info:body" is tokenized once, along with the offset of its quoted
+ * part in "info:quote_start" if any, then every configured
+ * {@link FeatureExtractor} computes its feature from the shared tokens and writes it to its own
+ * column of the "features" family. Features carry the timestamp of the body they were computed
+ * from, so running the producer again overwrites them.</p>
+ *
+ * <p>The extractors are the comma-separated class names set by {@link #CONF_EXTRACTORS}, by
+ * default every extractor of this package.</p>
+ */
+public class FeatureProducer extends KijiProducer {
+  private static final Logger LOG = LoggerFactory.getLogger(FeatureProducer.class);
+
+  /** Configuration key of the comma-separated class names of the feature extractors to run. */
+  public static final String CONF_EXTRACTORS = "org.kiji.enronemail.features.extractors";
+
+  /** Extractors run by default. */
+  public static final String DEFAULT_EXTRACTORS = Joiner.on(',').join(
+      SentimentFeature.class.getName(),
+      WordCountFeature.class.getName(),
+      AfinnHistogramFeature.class.getName(),
+      LanguageFeature.class.getName(),
+      OwnTextFeature.class.getName());
+
+  /** Counters of the rows processed. */
+  public static enum Counters {
+    /** Rows whose features were computed. */
+    ROWS_PROCESSED,
+    /** Rows skipped because they have no body. */
+    ROWS_WITHOUT_BODY
+  }
+
+  private KijiColumnName mInputColumn = new KijiColumnName("info:body");
+  /** Qualifier of the offset of the quoted part of the body, in the family of the body. */
+  private static final String QUOTE_START = "quote_start";
+  private String mOutputFamily = "features";
+
+  /** The feature extractors, in the configured order. */
+  private final List<FeatureExtractor> mExtractors = Lists.newArrayList();
+
+  /** The tokens of the current body, reused across rows. */
+  private final TokenizedBody mBody = new TokenizedBody();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setup(KijiContext context) throws IOException {
+    final FeatureResources resources = new FeatureResources(getConf());
+    for (String className : Splitter.on(',').trimResults().omitEmptyStrings()
+        .split(getConf().get(CONF_EXTRACTORS, DEFAULT_EXTRACTORS))) {
+      final FeatureExtractor extractor;
+      try {
+        extractor = Class.forName(className).asSubclass(FeatureExtractor.class).newInstance();
+      } catch (Exception e) {
+        throw new IOException("Unable to create feature extractor " + className, e);
+      }
+      extractor.setup(resources);
+      mExtractors.add(extractor);
+      LOG.info("Extracting features:{} with {}", extractor.getQualifier(), className);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public KijiDataRequest getDataRequest() {
+    KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1)
+        .add(mInputColumn.getFamily(), mInputColumn.getQualifier())
+        .add(mInputColumn.getFamily(), QUOTE_START);
+    return builder.build();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getOutputColumn() {
+    return mOutputFamily;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void produce(KijiRowData input, ProducerContext context)
+      throws IOException {
+    if (!input.containsColumn(mInputColumn.getFamily(), mInputColumn.getQualifier())) {
+      context.incrementCounter(Counters.ROWS_WITHOUT_BODY);
+      return;
+    }
+    final KijiCell<CharSequence> bodyCell =
+        input.getMostRecentCell(mInputColumn.getFamily(), mInputColumn.getQualifier());
+    final long timestamp = bodyCell.getTimestamp();
+    // The offset is written with the body, at the same timestamp.
+    final Integer quoteStart = input.containsColumn(mInputColumn.getFamily(), QUOTE_START)
+        ? input.<Integer>getValue(mInputColumn.getFamily(), QUOTE_START, timestamp)
+        : null;
+    mBody.reset(bodyCell.getData().toString(), (null == quoteStart) ? -1 : quoteStart);
+    for (FeatureExtractor extractor : mExtractors) {
+      final Object feature = extractor.extract(mBody);
+      if (null != feature) {
+        context.put(extractor.getQualifier(), timestamp, feature);
+      }
+    }
+    context.incrementCounter(Counters.ROWS_PROCESSED);
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.kiji.enronemail.text.SentimentLexicon;
+
+/**
+ * The configuration and resources shared by the feature extractors of a {@link FeatureProducer}
+ * task.
+ *
+ * <p>Resources are loaded on first use, once per task, so that extractors needing the same
+ * resource share a single copy of it. Like the extractors, this object is used by a single
+ * thread.</p>
+ */
+public final class FeatureResources {
+  private final Configuration mConf;
+  /** The sentiment lexicon, or null until first requested. */
+  private SentimentLexicon mLexicon;
+
+  /**
+   * Creates the resources of a task.
+   *
+   * @param conf the configuration of the job.
+   */
+  public FeatureResources(Configuration conf) {
+    mConf = conf;
+  }
+
+  /** @return the configuration of the job. */
+  public Configuration getConf() {
+    return mConf;
+  }
+
+  /**
+   * Gets the sentiment lexicon, loading it on first use.
+   *
+   * @return the lexicon set by {@link SentimentProducer#CONF_LEXICON_PATH}.
+   * @throws IOException if the word list cannot be read.
+   */
+  public SentimentLexicon getLexicon() throws IOException {
+    if (null == mLexicon) {
+      mLexicon = SentimentProducer.loadLexicon(mConf);
+    }
+    return mLexicon;
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Guesses the language of a body from its most frequent function words, into
+ * "features:language".
+ *
+ * <p>The guess is the language with the most stop words among the first words of the body, or
+ * "unknown" if none was found. This is crude, but enough to set apart the few non-English
+ * messages of the corpus.</p>
+ */
+public final class LanguageFeature implements FeatureExtractor {
+  /** Number of words of a body considered. */
+  private static final int MAX_WORDS = 200;
+
+  /** Longest stop word, to skip longer words without materializing them. */
+  private static final int MAX_STOP_WORD_LENGTH = 5;
+
+  /** Languages, in the order ties are broken. */
+  private static final String[] LANGUAGES = {"en", "es", "fr", "de"};
+
+  /** Index in LANGUAGES of the language of each stop word. */
+  private static final Map<String, Integer> STOP_WORDS;
+  static {
+    final String[][] stopWords = {
+      {"the", "and", "of", "to", "is", "that", "for", "you", "with", "this", "are", "have",
+       "will", "not"},
+      {"el", "los", "las", "que", "por", "para", "con", "una", "del", "esta", "y"},
+      {"le", "les", "des", "une", "est", "pour", "avec", "pas", "sur", "et", "vous", "nous"},
+      {"der", "die", "und", "das", "ist", "nicht", "mit", "ein", "eine", "ich", "sie", "auf"},
+    };
+    final ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+    for (int language = 0; language < stopWords.length; language++) {
+      for (String word : stopWords[language]) {
+        builder.put(word, language);
+      }
+    }
+    STOP_WORDS = builder.build();
+  }
+
+  private final int[] mCounts = new int[LANGUAGES.length];
+
+  /** {@inheritDoc} */
+  @Override
+  public String getQualifier() {
+    return "language";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setup(FeatureResources resources) {
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object extract(TokenizedBody body) {
+    Arrays.fill(mCounts, 0);
+    final int words = Math.min(body.getWordCount(), MAX_WORDS);
+    for (int i = 0; i < words; i++) {
+      if (body.getLength(i) <= MAX_STOP_WORD_LENGTH) {
+        final Integer language = STOP_WORDS.get(body.getWord(i));
+        if (null != language) {
+          mCounts[language]++;
+        }
+      }
+    }
+    int best = -1;
+    for (int language = 0; language < LANGUAGES.length; language++) {
+      if (mCounts[language] > 0 && (best < 0 || mCounts[language] > mCounts[best])) {
+        best = language;
+      }
+    }
+    return (best >= 0) ? LANGUAGES[best] : "unknown";
+  }
+}
@@ -0,0 +1,464 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+import org.kiji.enronemail.text.SentimentLexicon;
+import org.kiji.enronemail.text.SentimentScorer;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiRowScanner;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Runs the scoring of {@link SentimentProducer} on the local machine, without MapReduce.
+ *
+ * <p>The scorer either scans the emails table, with the data request and the incremental checks
+ * of the producer, or parses a Maildir directly, keying the messages like
+ * {@link EmailBulkImporter} does. The rows are cut into batches scored by a pool of threads
+ * sized to the cores, and the scores are written back in order by a single buffered writer, to
+ * "features:sentiment" with the timestamp of the body, exactly like the producer. Without a
+ * table, the scores of a Maildir are written as tab-separated (from, timestamp, score) lines.</p>
+ */
+public class LocalSentimentScorer {
+  private static final Logger LOG = LoggerFactory.getLogger(LocalSentimentScorer.class);
+
+  @Flag(name = "threads", usage = "Number of scoring threads (0 for one per core).")
+  private int mThreads = 0;
+
+  @Flag(name = "batch-size", usage = "Number of rows or messages scored by a thread at once.")
+  private int mBatchSize = 256;
+
+  @Flag(name = "lexicon",
+      usage = "Path of the sentiment word list, on any Hadoop file system.")
+  private String mLexiconPath = SentimentProducer.DEFAULT_LEXICON_PATH;
+
+  @Flag(name = "incremental",
+      usage = "Skip the rows of the table whose latest body was already scored.")
+  private boolean mIncremental = true;
+
+  @Flag(name = "maildir",
+      usage = "Score the messages of this Maildir instead of scanning the table.")
+  private String mMaildir = "";
+
+  @Flag(name = "output",
+      usage = "Without a table, file to write the Maildir scores to (default: standard output).")
+  private String mOutputPath = "";
+
+  @Flag(name = "dry-run", usage = "Score the rows without writing the scores.")
+  private boolean mDryRun = false;
+
+  /** A row, or a message file, and its score. */
+  private static final class ScoredRow {
+    /** The message file to parse, or null when scoring a row of the table. */
+    private final File mFile;
+    /** Row of the email in the table, or null until a message file is parsed. */
+    private EntityId mEntityId;
+    /** Sender of the email, only known when parsing a message file. */
+    private String mFrom;
+    /** Timestamp of the body. */
+    private long mTimestamp;
+    /** Body to score, released once scored. */
+    private String mBody;
+    /** Score of the body, valid once the batch is scored unless mFailed is set. */
+    private float mScore;
+    /** Whether the message file could not be read or parsed. */
+    private boolean mFailed = false;
+
+    /**
+     * @param file the message file to parse.
+     */
+    private ScoredRow(File file) {
+      mFile = file;
+    }
+
+    /**
+     * @param entityId the row of the email.
+     * @param timestamp the timestamp of the body.
+     * @param body the body to score.
+     */
+    private ScoredRow(EntityId entityId, long timestamp, String body) {
+      mFile = null;
+      mEntityId = entityId;
+      mTimestamp = timestamp;
+      mBody = body;
+    }
+  }
+
+  /** Per-thread state of the scoring threads, none of which is thread-safe. */
+  private static final class ScoringState {
+    private final MessageReader mReader = new MessageReader();
+    private final EmailParser mParser = new EmailParser();
+    private final SentimentScorer mScorer;
+    /** Bodies of the batch being scored. */
+    private final List<String> mBodies = Lists.newArrayList();
+    /** Scores of the batch being scored, grown to the largest batch. */
+    private float[] mScores = new float[0];
+
+    /**
+     * @param lexicon the lexicon shared by the threads.
+     */
+    private ScoringState(SentimentLexicon lexicon) {
+      mScorer = new SentimentScorer(lexicon);
+    }
+  }
+
+  /** Loaded once, shared read-only by the scoring threads. */
+  private SentimentLexicon mLexicon;
+
+  /** State of each scoring thread. */
+  private final ThreadLocal<ScoringState> mState = new ThreadLocal<ScoringState>() {
+    @Override
+    protected ScoringState initialValue() {
+      return new ScoringState(mLexicon);
+    }
+  };
+
+  /** Table the scores are written to, or null. */
+  private KijiTable mTable = null;
+  /** Writer of the scores to the table, or null. */
+  private KijiBufferedWriter mWriter = null;
+  /** Writer of the scores of a Maildir without a table, or null. */
+  private PrintWriter mTsvWriter = null;
+
+  /** Scoring pool, and the batches it is scoring, oldest first. */
+  private ExecutorService mPool;
+  private final LinkedList<Future<List<ScoredRow>>> mPending = Lists.newLinkedList();
+  private List<ScoredRow> mBatch = Lists.newArrayList();
+
+  private final AtomicLong mRowsFailed = new AtomicLong();
+  private long mRowsScored = 0;
+  private long mRowsUpToDate = 0;
+  private long mRowsWithoutBody = 0;
+
+  /** Scores one batch, on a thread of the pool. */
+  private final class ScoringTask implements Callable<List<ScoredRow>> {
+    private final List<ScoredRow> mRows;
+
+    /**
+     * @param rows the rows to score.
+     */
+    private ScoringTask(List<ScoredRow> rows) {
+      mRows = rows;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<ScoredRow> call() {
+      final ScoringState state = mState.get();
+      state.mBodies.clear();
+      for (ScoredRow row : mRows) {
+        if (null != row.mFile && !parse(state, row)) {
+          row.mFailed = true;
+          mRowsFailed.incrementAndGet();
+          continue;
+        }
+        state.mBodies.add(row.mBody);
+        row.mBody = null;
+      }
+      if (state.mScores.length < state.mBodies.size()) {
+        state.mScores = new float[state.mBodies.size()];
+      }
+      state.mScorer.scoreBatch(state.mBodies, state.mScores);
+      state.mBodies.clear();
+      int scored = 0;
+      for (ScoredRow row : mRows) {
+        if (!row.mFailed) {
+          row.mScore = state.mScores[scored++];
+        }
+      }
+      return mRows;
+    }
+  }
+
+  /**
+   * Reads and parses a message file, keying it like the importer does.
+   *
+   * @param state the state of the current thread.
+   * @param row the row of the message file.
+   * @return whether the message could be read and parsed.
+   */
+  private boolean parse(ScoringState state, ScoredRow row) {
+    try {
+      final EmailMessage email = state.mParser.parse(state.mReader.read(row.mFile));
+      final String date = email.getHeader(EmailHeader.DATE);
+      if (null == date) {
+        throw new MalformedEmailException("Missing Date header.");
+      }
+      row.mTimestamp = EmailDateParser.parse(date);
+      row.mFrom = email.getHeader(EmailHeader.FROM);
+      if (null == row.mFrom) {
+        // The importer rejects such messages: they have no row to score.
+        throw new MalformedEmailException("Missing From header.");
+      }
+      row.mBody = email.getBody();
+      if (null != mTable) {
+        row.mEntityId = mTable.getEntityId(row.mFrom, row.mTimestamp);
+      }
+      return true;
+    } catch (MalformedEmailException mee) {
+      LOG.warn("Unable to score {}: {}", row.mFile, mee.getMessage());
+    } catch (IOException ioe) {
+      LOG.warn("Unable to read {}: {}", row.mFile, ioe.getMessage());
+    }
+    return false;
+  }
+
+  /**
+   * Adds a row to the current batch, submitting the batch once full.
+   *
+   * @param row the row to score.
+   * @throws IOException if the scores cannot be written.
+   * @throws InterruptedException if interrupted while waiting for the scores.
+   */
+  private void add(ScoredRow row) throws IOException, InterruptedException {
+    mBatch.add(row);
+    if (mBatch.size() >= mBatchSize) {
+      submit();
+    }
+  }
+
+  /**
+   * Submits the current batch. Bounds the batches in flight to two per thread, so the threads
+   * stay busy while the scan is not read further ahead than needed.
+   *
+   * @throws IOException if the scores cannot be written.
+   * @throws InterruptedException if interrupted while waiting for the scores.
+   */
+  private void submit() throws IOException, InterruptedException {
+    if (mBatch.isEmpty()) {
+      return;
+    }
+    while (mPending.size() >= 2 * mThreads) {
+      write(mPending.removeFirst());
+    }
+    mPending.add(mPool.submit(new ScoringTask(mBatch)));
+    mBatch = Lists.newArrayList();
+  }
+
+  /**
+   * Writes the scores of a batch, in the order its rows were read.
+   *
+   * @param batch the batch being scored.
+   * @throws IOException if the scores cannot be written.
+   * @throws InterruptedException if interrupted while waiting for the scores.
+   */
+  private void write(Future<List<ScoredRow>> batch) throws IOException, InterruptedException {
+    final List<ScoredRow> rows;
+    try {
+      rows = batch.get();
+    } catch (ExecutionException ee) {
+      throw new IOException("Scoring failed.", ee.getCause());
+    }
+    for (ScoredRow row : rows) {
+      if (row.mFailed) {
+        continue;
+      }
+      mRowsScored++;
+      if (mDryRun) {
+        continue;
+      }
+      if (null != mWriter) {
+        mWriter.put(row.mEntityId, "features", "sentiment", row.mTimestamp, row.mScore);
+      } else {
+        mTsvWriter.println(row.mFrom + "\t" + row.mTimestamp + "\t" + row.mScore);
+      }
+    }
+  }
+
+  /**
+   * Scores the rows of the table, skipping them like the producer does.
+   *
+   * @throws IOException on error.
+   * @throws InterruptedException if interrupted while waiting for the scores.
+   */
+  private void scoreTable() throws IOException, InterruptedException {
+    final KijiTableReader reader = mTable.getReaderFactory().openTableReader();
+    try {
+      final KijiRowScanner scanner =
+          reader.getScanner(SentimentProducer.buildDataRequest(mIncremental));
+      try {
+        for (KijiRowData row : scanner) {
+          final SentimentProducer.Counters skipped =
+              SentimentProducer.checkRow(row, mIncremental);
+          if (SentimentProducer.Counters.ROWS_UP_TO_DATE == skipped) {
+            mRowsUpToDate++;
+          } else if (SentimentProducer.Counters.ROWS_WITHOUT_BODY == skipped) {
+            mRowsWithoutBody++;
+          } else {
+            final KijiCell<CharSequence> body = SentimentProducer.getLatestBody(row);
+            add(new ScoredRow(
+                row.getEntityId(), body.getTimestamp(), body.getData().toString()));
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Recursively scores the messages of a Maildir.
+   *
+   * @param file the directory or message file to score.
+   * @throws IOException on error.
+   * @throws InterruptedException if interrupted while waiting for the scores.
+   */
+  private void scoreMaildir(File file) throws IOException, InterruptedException {
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null == files) {
+        throw new IOException("Unable to list directory " + file);
+      }
+      for (File child : files) {
+        scoreMaildir(child);
+      }
+    } else {
+      add(new ScoredRow(file));
+    }
+  }
+
+  public static void main(String[] args) {
+    System.exit(new LocalSentimentScorer().run(args));
+  }
+
+  private int run(String[] args) {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    if (nonFlagArgs.size() > 1 || (nonFlagArgs.isEmpty() && mMaildir.isEmpty())) {
+      System.err.println("Usage: LocalSentimentScorer [flags] <emails table URI>");
+      System.err.println(
+          "       LocalSentimentScorer [flags] --maildir=<dir> [<emails table URI>]");
+      return 1;
+    }
+    if (mThreads <= 0) {
+      mThreads = Runtime.getRuntime().availableProcessors();
+    }
+    mBatchSize = Math.max(1, mBatchSize);
+
+    try {
+      final Configuration conf = new Configuration();
+      conf.set(SentimentProducer.CONF_LEXICON_PATH, mLexiconPath);
+      mLexicon = SentimentProducer.loadLexicon(conf);
+
+      Kiji kiji = null;
+      mPool = Executors.newFixedThreadPool(mThreads);
+      try {
+        if (!nonFlagArgs.isEmpty()) {
+          final KijiURI tableURI = KijiURI.newBuilder(nonFlagArgs.get(0)).build();
+          kiji = Kiji.Factory.open(tableURI);
+          mTable = kiji.openTable(tableURI.getTable());
+          if (!mDryRun) {
+            mWriter = mTable.getWriterFactory().openBufferedWriter();
+          }
+        } else if (!mDryRun) {
+          final Writer output = mOutputPath.isEmpty()
+              ? new OutputStreamWriter(System.out, Charsets.UTF_8)
+              : new OutputStreamWriter(new FileOutputStream(mOutputPath), Charsets.UTF_8);
+          mTsvWriter = new PrintWriter(output);
+        }
+
+        final long startNanos = System.nanoTime();
+        if (mMaildir.isEmpty()) {
+          scoreTable();
+        } else {
+          scoreMaildir(new File(mMaildir));
+        }
+        submit();
+        while (!mPending.isEmpty()) {
+          write(mPending.removeFirst());
+        }
+        if (null != mWriter) {
+          mWriter.flush();
+        }
+        if (null != mTsvWriter) {
+          mTsvWriter.flush();
+        }
+        final long millis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+        System.err.println(String.format(
+            "Scored %d rows in %d ms with %d threads (%.0f rows/s); "
+            + "%d up to date, %d without body, %d failed.",
+            mRowsScored, millis, mThreads, mRowsScored * 1000.0 / millis,
+            mRowsUpToDate, mRowsWithoutBody, mRowsFailed.get()));
+      } finally {
+        mPool.shutdownNow();
+        if (null != mWriter) {
+          mWriter.close();
+        }
+        if (null != mTsvWriter && !mOutputPath.isEmpty()) {
+          mTsvWriter.close();
+        }
+        if (null != mTable) {
+          mTable.release();
+        }
+        if (null != kiji) {
+          kiji.release();
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      e.printStackTrace();
+      return 1;
+    }
+    return 0;
+  }
+}
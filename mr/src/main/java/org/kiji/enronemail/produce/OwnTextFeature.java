@@ -0,0 +1,52 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+
+/**
+ * Strips the quoted reply or forwarded message from a body, keeping the text written by its
+ * sender, into "features:own_text".
+ *
+ * <p>Bodies are normalized by the importer, which drops the line breaks and the dashes of the
+ * separator lines Outlook and Lotus Notes insert before a quoted message, so the importer finds
+ * these lines before normalizing the body and records where the quoted part starts in
+ * "info:quote_start". Everything from there on is dropped. A body without that column, e.g.
+ * imported before it existed, is kept whole.</p>
+ */
+public final class OwnTextFeature implements FeatureExtractor {
+  /** {@inheritDoc} */
+  @Override
+  public String getQualifier() {
+    return "own_text";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setup(FeatureResources resources) {
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object extract(TokenizedBody body) {
+    final int quoteStart = body.getQuoteStart();
+    final String text = (quoteStart < 0) ? body.getBody() : body.getBody().substring(0, quoteStart);
+    return text.trim();
+  }
+}
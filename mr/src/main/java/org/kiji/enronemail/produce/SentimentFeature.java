@@ -0,0 +1,52 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+
+import org.kiji.enronemail.text.SentimentScorer;
+
+/**
+ * Scores the sentiment of a body like {@link SentimentProducer}, into "features:sentiment".
+ *
+ * <p>The body is scored by a {@link SentimentScorer}, which tokenizes it again rather than
+ * reading the shared tokens, so that the scores are exactly those of the producer.</p>
+ */
+public final class SentimentFeature implements FeatureExtractor {
+  private SentimentScorer mScorer;
+
+  /** {@inheritDoc} */
+  @Override
+  public String getQualifier() {
+    return "sentiment";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setup(FeatureResources resources) throws IOException {
+    mScorer = new SentimentScorer(resources.getLexicon());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object extract(TokenizedBody body) {
+    return mScorer.score(body.getBody());
+  }
+}
@@ -20,51 +20,95 @@
 package org.kiji.enronemail.produce;
 
 import java.io.IOException;
-import java.util.Map;
+import java.io.InputStream;
 
 import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.enronemail.text.SentimentLexicon;
+import org.kiji.enronemail.text.SentimentScorer;
 import org.kiji.mapreduce.KijiContext;
-import org.kiji.mapreduce.kvstore.KeyValueStore;
-import org.kiji.mapreduce.kvstore.KeyValueStoreReader;
-import org.kiji.mapreduce.kvstore.RequiredStores;
-import org.kiji.mapreduce.kvstore.lib.TextFileKeyValueStore;
 import org.kiji.mapreduce.produce.KijiProducer;
 import org.kiji.mapreduce.produce.ProducerContext;
+import org.kiji.schema.KijiCell;
 import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiDataRequestBuilder;
 import org.kiji.schema.KijiRowData;
 
 /**
- * This producer copies data from the column "family:qualifier" to the column
- * "family:outputqualifier" without modification, assuming both are encoded as bytes.
+ * Scores the sentiment of the body of each email as the mean AFINN score of its words, and
+ * writes it to the column "features:sentiment".
+ *
+ * <p>The word list is read from the path set by {@link #CONF_LEXICON_PATH}, once per task.</p>
+ *
+ * <p>Only the latest version of each body is scored, and its score is written with the
+ * timestamp of that version, so scoring a body again overwrites its score instead of adding a
+ * version. In incremental mode (see {@link #CONF_INCREMENTAL}, on by default), rows whose latest
+ * score is at least as recent as their latest body are skipped, so re-runs only score new
+ * mail.</p>
  */
 public class SentimentProducer extends KijiProducer {
   private static final Logger LOG = LoggerFactory.getLogger(SentimentProducer.class);
 
-  private KijiColumnName mInputColumn = new KijiColumnName("info:body");
-  private KijiColumnName mOutputColumn = new KijiColumnName("features:sentiment");
+  /** Configuration key of the path of the sentiment word list, on any Hadoop file system. */
+  public static final String CONF_LEXICON_PATH = "org.kiji.enronemail.sentiment.lexicon";
+
+  /** Default path of the sentiment word list. */
+  public static final String DEFAULT_LEXICON_PATH = "/tmp/AFINN-111.txt";
+
+  /** Configuration key enabling the incremental mode, true by default. */
+  public static final String CONF_INCREMENTAL = "org.kiji.enronemail.sentiment.incremental";
+
+  /** Counters of the rows processed. */
+  public static enum Counters {
+    /** Rows whose body was scored. */
+    ROWS_SCORED,
+    /** Rows skipped because their latest body was already scored. */
+    ROWS_UP_TO_DATE,
+    /** Rows skipped because they have no body. */
+    ROWS_WITHOUT_BODY
+  }
+
+  private static final KijiColumnName INPUT_COLUMN = new KijiColumnName("info:body");
+  private static final KijiColumnName OUTPUT_COLUMN = new KijiColumnName("features:sentiment");
   private Schema schema = Schema.create(Schema.Type.FLOAT);
 
+  /** Scores the bodies with the sentiment lexicon, loaded once per task. */
+  private SentimentScorer mScorer;
+
+  /** Whether rows whose latest body is already scored are skipped. */
+  private boolean mIncremental;
+
   /**
    * {@inheritDoc}
    */
   @Override
-  public void setup(KijiContext context) {
+  public void setup(KijiContext context) throws IOException {
+    mIncremental = isIncremental();
+    mScorer = new SentimentScorer(loadLexicon(getConf()));
   }
 
-  @Override
-  public Map<String, KeyValueStore<?, ?>> getRequiredStores() {
-    // Note that it's ok to specify a path to an HDFS dir, not just one file.
-    return RequiredStores.just("sentiment", TextFileKeyValueStore.builder()
-        .withDelimiter("\t")
-        .withInputPath(new Path("/tmp/AFINN-111.txt"))
-        .withDistributedCache(false)
-        .build());
+  /**
+   * Loads the sentiment word list set by {@link #CONF_LEXICON_PATH}.
+   *
+   * @param conf the configuration of the job.
+   * @return the sentiment lexicon.
+   * @throws IOException if the word list cannot be read.
+   */
+  public static SentimentLexicon loadLexicon(Configuration conf) throws IOException {
+    final Path path = new Path(conf.get(CONF_LEXICON_PATH, DEFAULT_LEXICON_PATH));
+    final InputStream in = path.getFileSystem(conf).open(path);
+    try {
+      final SentimentLexicon lexicon = SentimentLexicon.load(in);
+      LOG.info("Loaded {} sentiment words from {}", lexicon.size(), path);
+      return lexicon;
+    } finally {
+      in.close();
+    }
   }
 
   /**
@@ -72,18 +116,72 @@ public class SentimentProducer extends KijiProducer {
    */
   @Override
   public KijiDataRequest getDataRequest() {
+    return buildDataRequest(isIncremental());
+  }
+
+  /**
+   * Builds the data request of the producer.
+   *
+   * @param incremental whether the incremental mode is enabled.
+   * @return the columns the producer reads.
+   */
+  public static KijiDataRequest buildDataRequest(boolean incremental) {
     KijiDataRequestBuilder builder = KijiDataRequest.builder();
-    builder.newColumnsDef().withMaxVersions(Integer.MAX_VALUE)
-        .add(mInputColumn.getFamily(), mInputColumn.getQualifier());
+    // Only the latest body is scored.
+    builder.newColumnsDef().withMaxVersions(1)
+        .add(INPUT_COLUMN.getFamily(), INPUT_COLUMN.getQualifier());
+    if (incremental) {
+      // The latest score tells whether the latest body was already scored.
+      builder.newColumnsDef().withMaxVersions(1)
+          .add(OUTPUT_COLUMN.getFamily(), OUTPUT_COLUMN.getQualifier());
+    }
     return builder.build();
   }
 
+  /**
+   * Tells whether a row must be scored.
+   *
+   * @param input a row read with {@link #buildDataRequest(boolean)}.
+   * @param incremental whether the incremental mode is enabled.
+   * @return null if the latest body of the row must be scored, or the counter of the reason it
+   *     is skipped.
+   * @throws IOException on error.
+   */
+  public static Counters checkRow(KijiRowData input, boolean incremental) throws IOException {
+    if (!input.containsColumn(INPUT_COLUMN.getFamily(), INPUT_COLUMN.getQualifier())) {
+      return Counters.ROWS_WITHOUT_BODY;
+    }
+    if (incremental
+        && input.containsColumn(OUTPUT_COLUMN.getFamily(), OUTPUT_COLUMN.getQualifier())) {
+      final long scoredTimestamp = input.getMostRecentCell(
+          OUTPUT_COLUMN.getFamily(), OUTPUT_COLUMN.getQualifier()).getTimestamp();
+      if (scoredTimestamp >= getLatestBody(input).getTimestamp()) {
+        return Counters.ROWS_UP_TO_DATE;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param input a row holding a body, read with {@link #buildDataRequest(boolean)}.
+   * @return the latest body of the row.
+   * @throws IOException on error.
+   */
+  public static KijiCell<CharSequence> getLatestBody(KijiRowData input) throws IOException {
+    return input.getMostRecentCell(INPUT_COLUMN.getFamily(), INPUT_COLUMN.getQualifier());
+  }
+
+  /** @return whether the incremental mode is enabled in the configuration. */
+  private boolean isIncremental() {
+    return getConf().getBoolean(CONF_INCREMENTAL, true);
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public String getOutputColumn() {
-    return mOutputColumn.toString();
+    return OUTPUT_COLUMN.toString();
   }
 
   /**
@@ -92,28 +190,16 @@ public class SentimentProducer extends KijiProducer {
   @Override
   public void produce(KijiRowData input, ProducerContext context)
       throws IOException {
-    KeyValueStoreReader<String, String> sentimentStore = context.getStore("sentiment");
-    String body = input.getMostRecentValue(mInputColumn.getFamily(), mInputColumn.getQualifier()).toString();
-    // replace all non word characters with spaces
-    body = body.replaceAll("\\W", " ");
-    body = body.toLowerCase();
-    String[] words = body.split(" ");
-    float score = 0.0f;
-    float numWords = 0.0f;
-    for (String word : words) {
-      word = word.trim();
-      if (sentimentStore.containsKey(word)) {
-        numWords++;
-        score += Float.valueOf(sentimentStore.get(word));
-      }
-    }
-    long timestamp = System.currentTimeMillis();
-    if (numWords > 0) {
-      score = score / numWords;
-      context.put(timestamp, score);
-    } else {
-      context.put(timestamp, 0.0f);
+    final Counters skipped = checkRow(input, mIncremental);
+    if (null != skipped) {
+      context.incrementCounter(skipped);
+      return;
     }
+    final KijiCell<CharSequence> bodyCell = getLatestBody(input);
+    final float score = mScorer.score(bodyCell.getData().toString());
+    // Tie the score to the version of the body it was computed from.
+    context.put(bodyCell.getTimestamp(), score);
+    context.incrementCounter(Counters.ROWS_SCORED);
   }
 
   public static void main(String[] args) {
@@ -0,0 +1,153 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.util.Arrays;
+
+import org.kiji.enronemail.text.Tokenizer;
+
+/**
+ * An email body and the spans of its words, computed once and shared by the feature extractors
+ * of {@link FeatureProducer}.
+ *
+ * <p>The span arrays are reused from one body to the next, so tokenizing a body allocates
+ * nothing once they have grown to fit the largest bodies.</p>
+ */
+public final class TokenizedBody {
+  /** Number of word spans the arrays can hold initially. */
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final Tokenizer mTokenizer = new Tokenizer();
+  private String mBody = "";
+  /** Offset in the body of the first quoted message, or -1. */
+  private int mQuoteStart = -1;
+  /** Word i spans mBody[mStarts[i]] to mBody[mEnds[i]] excluded. */
+  private int[] mStarts = new int[INITIAL_CAPACITY];
+  private int[] mEnds = new int[INITIAL_CAPACITY];
+  private int mCount = 0;
+
+  /**
+   * Tokenizes a new body, which quotes nothing.
+   *
+   * @param body the body.
+   * @return this object.
+   */
+  public TokenizedBody reset(String body) {
+    return reset(body, -1);
+  }
+
+  /**
+   * Tokenizes a new body.
+   *
+   * @param body the body.
+   * @param quoteStart the offset in the body of the first quoted message, or -1 if none.
+   * @return this object.
+   */
+  public TokenizedBody reset(String body, int quoteStart) {
+    mBody = body;
+    mQuoteStart = quoteStart;
+    mCount = 0;
+    mTokenizer.reset(body);
+    while (mTokenizer.next()) {
+      if (mCount == mStarts.length) {
+        mStarts = Arrays.copyOf(mStarts, mCount * 2);
+        mEnds = Arrays.copyOf(mEnds, mCount * 2);
+      }
+      mStarts[mCount] = mTokenizer.start();
+      mEnds[mCount] = mTokenizer.end();
+      mCount++;
+    }
+    return this;
+  }
+
+  /** @return the body. */
+  public String getBody() {
+    return mBody;
+  }
+
+  /**
+   * @return the offset in the body of the first quoted reply or forwarded message, as found by
+   *     the importer, or -1 if the body quotes nothing.
+   */
+  public int getQuoteStart() {
+    return mQuoteStart;
+  }
+
+  /** @return the number of words in the body. */
+  public int getWordCount() {
+    return mCount;
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the index of the first character of the word in the body.
+   */
+  public int getStart(int index) {
+    return mStarts[index];
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the index after the last character of the word in the body.
+   */
+  public int getEnd(int index) {
+    return mEnds[index];
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the length of the word.
+   */
+  public int getLength(int index) {
+    return mEnds[index] - mStarts[index];
+  }
+
+  /**
+   * Compares a word of the body with a lower-case word, ignoring the case of the body.
+   *
+   * @param index the index of a word.
+   * @param word a lower-case word.
+   * @return whether the words are equal.
+   */
+  public boolean wordEquals(int index, String word) {
+    final int start = mStarts[index];
+    if (mEnds[index] - start != word.length()) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (Tokenizer.toLowerCase(mBody.charAt(start + i)) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return a lower-case copy of the word.
+   */
+  public String getWord(int index) {
+    final char[] chars = new char[mEnds[index] - mStarts[index]];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Tokenizer.toLowerCase(mBody.charAt(mStarts[index] + i));
+    }
+    return new String(chars);
+  }
+}
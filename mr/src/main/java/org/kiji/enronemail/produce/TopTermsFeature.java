@@ -0,0 +1,162 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.produce;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.enronemail.TopTerms;
+import org.kiji.enronemail.text.SparseVector;
+import org.kiji.enronemail.text.Vocabulary;
+
+/**
+ * Writes the highest scoring TF-IDF terms of a body into "features:top_terms".
+ *
+ * <p>The body is encoded as a sparse vector of term ids, looked up in the vocabulary built by
+ * {@link org.kiji.enronemail.gather.DocumentFrequencyGatherer}. Tokens missing from the
+ * vocabulary, such as stop words, are skipped. The score of a term is its number of occurrences in
+ * the body times its inverse document frequency. Only the terms themselves are materialized as
+ * Strings, for the record written.</p>
+ *
+ * <p>The vocabulary is read once per task from {@link #CONF_VOCABULARY_PATH}, a file or a
+ * directory of part files. It is not a default extractor of {@link FeatureProducer}, since it
+ * needs the vocabulary to be built first.</p>
+ */
+public final class TopTermsFeature implements FeatureExtractor {
+  private static final Logger LOG = LoggerFactory.getLogger(TopTermsFeature.class);
+
+  /** Configuration key of the path of the vocabulary. */
+  public static final String CONF_VOCABULARY_PATH = "org.kiji.enronemail.tfidf.vocabulary";
+
+  /** Default path of the vocabulary. */
+  public static final String DEFAULT_VOCABULARY_PATH = "/tmp/enron-vocabulary";
+
+  /** Configuration key of the number of terms written per body. */
+  public static final String CONF_TOP_TERMS = "org.kiji.enronemail.tfidf.top.terms";
+
+  /** Default number of terms written per body. */
+  public static final int DEFAULT_TOP_TERMS = 10;
+
+  private Vocabulary mVocabulary;
+  /** Term counts, then weights, of the current body. */
+  private final SparseVector mVector = new SparseVector();
+  /** Positions in the vector of the highest scoring terms. */
+  private int[] mTop;
+
+  /** Creates an extractor, set up from the job configuration by {@link #setup}. */
+  public TopTermsFeature() {
+  }
+
+  /**
+   * Creates an extractor set up with a vocabulary, e.g. to score messages locally.
+   *
+   * @param vocabulary the vocabulary of the corpus.
+   * @param numTerms the number of terms to output per body.
+   */
+  public TopTermsFeature(Vocabulary vocabulary, int numTerms) {
+    mVocabulary = vocabulary;
+    mTop = new int[numTerms];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getQualifier() {
+    return "top_terms";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setup(FeatureResources resources) throws IOException {
+    mVocabulary = loadVocabulary(resources.getConf());
+    mTop = new int[resources.getConf().getInt(CONF_TOP_TERMS, DEFAULT_TOP_TERMS)];
+  }
+
+  /**
+   * Loads the vocabulary set by {@link #CONF_VOCABULARY_PATH}.
+   *
+   * @param conf the configuration of the job.
+   * @return the vocabulary.
+   * @throws IOException if the vocabulary cannot be read.
+   */
+  public static Vocabulary loadVocabulary(Configuration conf) throws IOException {
+    final Path path = new Path(conf.get(CONF_VOCABULARY_PATH, DEFAULT_VOCABULARY_PATH));
+    final FileSystem fs = path.getFileSystem(conf);
+    final FileStatus[] files = fs.getFileStatus(path).isDir()
+        ? fs.globStatus(new Path(path, "part-*"))
+        : new FileStatus[] {fs.getFileStatus(path)};
+    final Vocabulary.Builder builder = Vocabulary.newBuilder();
+    for (FileStatus file : files) {
+      final InputStream in = fs.open(file.getPath());
+      try {
+        builder.read(in);
+      } finally {
+        in.close();
+      }
+    }
+    final Vocabulary vocabulary = builder.build();
+    LOG.info("Loaded {} terms of {} documents from {}",
+        vocabulary.size(), vocabulary.getDocumentCount(), path);
+    return vocabulary;
+  }
+
+  /**
+   * Encodes a body as the TF-IDF weights of its terms.
+   *
+   * @param body the tokenized body.
+   * @param vector receives the weights, by term id.
+   */
+  public void vectorize(TokenizedBody body, SparseVector vector) {
+    final String text = body.getBody();
+    vector.clear();
+    for (int i = 0; i < body.getWordCount(); i++) {
+      final int term = mVocabulary.indexOf(text, body.getStart(i), body.getEnd(i));
+      if (term >= 0) {
+        vector.append(term, 1.0f);
+      }
+    }
+    vector.sumDuplicates();
+    for (int i = 0; i < vector.size(); i++) {
+      vector.setValue(i, vector.getValue(i) * mVocabulary.getIdf(vector.getIndex(i)));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object extract(TokenizedBody body) {
+    vectorize(body, mVector);
+    final int count = mVector.top(mTop);
+    final List<CharSequence> terms = Lists.newArrayListWithCapacity(count);
+    final List<Float> scores = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; i++) {
+      terms.add(mVocabulary.getTerm(mVector.getIndex(mTop[i])));
+      scores.add(mVector.getValue(mTop[i]));
+    }
+    return TopTerms.newBuilder().setTerms(terms).setScores(scores).build();
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.reduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+import org.kiji.enronemail.text.Vocabulary;
+import org.kiji.mapreduce.KijiReducer;
+
+/**
+ * Sums the document frequencies of each term emitted by
+ * {@link org.kiji.enronemail.gather.DocumentFrequencyGatherer}, into the
+ * <code>term TAB df</code> lines of a {@link Vocabulary}.
+ *
+ * <p>Terms held by fewer than {@link #CONF_MIN_DOCUMENT_FREQUENCY} documents are dropped, which
+ * shrinks the vocabulary every producer task loads. The number of documents is always kept.</p>
+ */
+public final class DocumentFrequencyReducer
+    extends KijiReducer<Text, LongWritable, Text, LongWritable> {
+  /** Configuration key of the minimum document frequency of the terms kept. */
+  public static final String CONF_MIN_DOCUMENT_FREQUENCY = "org.kiji.enronemail.tfidf.min.df";
+
+  /** By default, every term is kept. */
+  public static final int DEFAULT_MIN_DOCUMENT_FREQUENCY = 1;
+
+  /** Counters of the terms reduced. */
+  public static enum Counters {
+    TERMS_KEPT,
+    /** Terms dropped for being held by too few documents. */
+    TERMS_DROPPED
+  }
+
+  private long mMinDocumentFrequency;
+
+  /** Output value, reused across terms. */
+  private final LongWritable mCount = new LongWritable();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    mMinDocumentFrequency = context.getConfiguration()
+        .getInt(CONF_MIN_DOCUMENT_FREQUENCY, DEFAULT_MIN_DOCUMENT_FREQUENCY);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void reduce(Text term, Iterable<LongWritable> counts, Context context)
+      throws IOException, InterruptedException {
+    long sum = 0;
+    for (LongWritable count : counts) {
+      sum += count.get();
+    }
+    final boolean isDocumentCount = Vocabulary.DOCUMENT_COUNT_KEY.equals(term.toString());
+    if (sum < mMinDocumentFrequency && !isDocumentCount) {
+      context.getCounter(Counters.TERMS_DROPPED).increment(1);
+      return;
+    }
+    if (!isDocumentCount) {
+      context.getCounter(Counters.TERMS_KEPT).increment(1);
+    }
+    mCount.set(sum);
+    context.write(term, mCount);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return Text.class;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<?> getOutputValueClass() {
+    return LongWritable.class;
+  }
+}
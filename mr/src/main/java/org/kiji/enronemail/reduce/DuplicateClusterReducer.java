@@ -0,0 +1,128 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.reduce;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.mapred.AvroValue;
+import org.apache.hadoop.io.LongWritable;
+
+import org.kiji.enronemail.MinHashCandidate;
+import org.kiji.enronemail.gather.MinHashGatherer;
+import org.kiji.enronemail.text.LshBucket;
+import org.kiji.mapreduce.KijiTableContext;
+import org.kiji.mapreduce.KijiTableReducer;
+import org.kiji.mapreduce.avro.AvroValueReader;
+
+/**
+ * Writes "features:dup_cluster" for the near-duplicates found in the buckets of
+ * {@link MinHashGatherer}.
+ *
+ * <p>In each bucket, every message whose signature agrees with the one of the earliest message on
+ * at least {@link #CONF_MIN_SIMILARITY} of its values is a near-duplicate of it. It gets the
+ * Message-ID hash of the earliest message in its "features:dup_cluster" column, at the timestamp
+ * of its row. The earliest message of a bucket gets nothing from that bucket, so a message
+ * without the column is an original, and downstream jobs can skip the rows holding it. A message
+ * may duplicate messages of several buckets: each write names an earlier message, but which one
+ * is kept is unspecified.</p>
+ *
+ * <p>Comparing with the earliest message only keeps each bucket linear in its size. A bucket is
+ * buffered in flat arrays, about 4 bytes per signature value and message.</p>
+ */
+public final class DuplicateClusterReducer
+    extends KijiTableReducer<LongWritable, AvroValue<MinHashCandidate>>
+    implements AvroValueReader {
+  /** Configuration key of the minimum estimated Jaccard similarity of near-duplicates. */
+  public static final String CONF_MIN_SIMILARITY = "org.kiji.enronemail.dedup.min.similarity";
+
+  /** Default minimum estimated Jaccard similarity of near-duplicates. */
+  public static final float DEFAULT_MIN_SIMILARITY = 0.8f;
+
+  /** Counters of the buckets reduced. */
+  public static enum Counters {
+    /** Buckets holding at least two messages. */
+    SHARED_BUCKETS,
+    /** Messages found to duplicate the earliest message of a bucket. */
+    DUPLICATES_WRITTEN,
+    /** Messages sharing a bucket with, but not similar enough to, its earliest message. */
+    CANDIDATES_REJECTED
+  }
+
+  private float mMinSimilarity;
+  /** The messages of the current bucket. */
+  private LshBucket mBucket;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void setup(KijiTableContext context) throws IOException {
+    super.setup(context);
+    mMinSimilarity = getConf().getFloat(CONF_MIN_SIMILARITY, DEFAULT_MIN_SIMILARITY);
+    mBucket = new LshBucket(
+        getConf().getInt(MinHashGatherer.CONF_BANDS, MinHashGatherer.DEFAULT_BANDS)
+        * getConf().getInt(
+            MinHashGatherer.CONF_ROWS_PER_BAND, MinHashGatherer.DEFAULT_ROWS_PER_BAND));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Schema getAvroValueReaderSchema() {
+    return MinHashCandidate.SCHEMA$;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void reduce(LongWritable bandKey, Iterable<AvroValue<MinHashCandidate>> values,
+      KijiTableContext context) throws IOException {
+    mBucket.clear();
+    for (AvroValue<MinHashCandidate> value : values) {
+      // The framework reuses the records: the bucket copies their fields.
+      final MinHashCandidate candidate = value.datum();
+      mBucket.add(candidate.getFrom().toString(), candidate.getTimestamp(),
+          candidate.getMessageId(), candidate.getSignature());
+    }
+    if (mBucket.size() < 2) {
+      return;
+    }
+    context.incrementCounter(Counters.SHARED_BUCKETS);
+
+    final int representative = mBucket.getRepresentative();
+    final long clusterId = mBucket.getMessageId(representative);
+    for (int i = 0; i < mBucket.size(); i++) {
+      if (mBucket.isSameRow(i, representative)) {
+        continue;
+      }
+      if (mBucket.similarity(i, representative) >= mMinSimilarity) {
+        final long timestamp = mBucket.getTimestamp(i);
+        context.put(context.getEntityId(mBucket.getFrom(i), timestamp),
+            "features", "dup_cluster", timestamp, clusterId);
+        context.incrementCounter(Counters.DUPLICATES_WRITTEN);
+      } else {
+        context.incrementCounter(Counters.CANDIDATES_REJECTED);
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import org.kiji.enronemail.metrics.Counter;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+
+/**
+ * Caches the messages of another store in a least-recently-used cache bounded by the size of
+ * the messages.
+ *
+ * <p>A message never changes once imported, so cached messages are never stale. The latest
+ * messages of a sender do change as mail is imported: they are always read from the underlying
+ * store, but the messages read are added to the cache, where the lookups that typically follow
+ * a listing find them. Messages missing from the underlying store are not cached.</p>
+ */
+public final class CachingEmailStore implements EmailStore {
+  /** Key of a message in the cache. */
+  private static final class MessageKey {
+    private final String mFrom;
+    private final long mTimestamp;
+
+    /**
+     * @param from the sender of the message.
+     * @param timestamp the date of the message.
+     */
+    private MessageKey(String from, long timestamp) {
+      mFrom = from;
+      mTimestamp = timestamp;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof MessageKey)) {
+        return false;
+      }
+      final MessageKey key = (MessageKey) other;
+      return mTimestamp == key.mTimestamp && mFrom.equals(key.mFrom);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+      return 31 * mFrom.hashCode() + (int) (mTimestamp ^ (mTimestamp >>> 32));
+    }
+  }
+
+  private final EmailStore mDelegate;
+  private final Cache<MessageKey, StoredEmail> mCache;
+  private final Counter mHits;
+  private final Counter mMisses;
+
+  /**
+   * Creates a cache.
+   *
+   * @param delegate the store to cache the messages of.
+   * @param maxBytes the approximate maximum size of the cached messages, in bytes.
+   * @param metrics the registry of the "service.cache.hits" and "service.cache.misses" counters.
+   */
+  public CachingEmailStore(EmailStore delegate, long maxBytes, MetricsRegistry metrics) {
+    mDelegate = delegate;
+    mCache = CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<MessageKey, StoredEmail>() {
+          @Override
+          public int weigh(MessageKey key, StoredEmail email) {
+            return email.getWeight();
+          }
+        })
+        .build();
+    mHits = metrics.counter("service.cache.hits");
+    mMisses = metrics.counter("service.cache.misses");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public StoredEmail getMessage(String from, long timestamp) throws IOException {
+    final MessageKey key = new MessageKey(from, timestamp);
+    StoredEmail email = mCache.getIfPresent(key);
+    if (null != email) {
+      mHits.increment(1);
+      return email;
+    }
+    mMisses.increment(1);
+    email = mDelegate.getMessage(from, timestamp);
+    if (null != email) {
+      mCache.put(key, email);
+    }
+    return email;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<StoredEmail> getLatestMessages(String from, int count) throws IOException {
+    final List<StoredEmail> emails = mDelegate.getLatestMessages(from, count);
+    for (StoredEmail email : emails) {
+      mCache.put(new MessageKey(email.getFrom(), email.getTimestamp()), email);
+    }
+    return emails;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    mCache.invalidateAll();
+    mDelegate.close();
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.enronemail.bulkimport.Recipients;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+
+/**
+ * Finds messages through the index tables of <code>ddl/email_index.ddl</code>, filled by the
+ * importer, instead of scanning the emails table.
+ *
+ * <p>A Message-ID is one get on emails_by_mid. The messages received by an address are one get
+ * on its row of emails_by_recipient, which holds the Message-ID of each message qualified by
+ * sender and versioned by date; only the latest versions needed are read. Either table is
+ * optional.</p>
+ */
+public final class EmailIndex implements Closeable {
+  /** Orders references by decreasing date. */
+  private static final Comparator<MessageRef> LATEST_FIRST = new Comparator<MessageRef>() {
+    @Override
+    public int compare(MessageRef left, MessageRef right) {
+      return (left.getTimestamp() < right.getTimestamp()) ? 1
+          : (left.getTimestamp() > right.getTimestamp()) ? -1
+          : left.getFrom().compareTo(right.getFrom());
+    }
+  };
+
+  private static final KijiDataRequest MESSAGE_ID_REQUEST = KijiDataRequest.create("ref");
+
+  private final KijiTable mByMessageId;
+  private final TableReaderPool mByMessageIdReaders;
+  private final KijiTable mByRecipient;
+  private final TableReaderPool mByRecipientReaders;
+
+  /**
+   * Opens the index tables.
+   *
+   * @param byMessageId the emails_by_mid table, or null.
+   * @param byRecipient the emails_by_recipient table, or null.
+   * @param readers the number of readers opened on each table.
+   * @throws IOException if the readers cannot be opened.
+   */
+  public EmailIndex(KijiTable byMessageId, KijiTable byRecipient, int readers)
+      throws IOException {
+    mByMessageId = byMessageId;
+    mByRecipient = byRecipient;
+    mByMessageIdReaders =
+        (null == byMessageId) ? null : new TableReaderPool(byMessageId, readers);
+    try {
+      mByRecipientReaders =
+          (null == byRecipient) ? null : new TableReaderPool(byRecipient, readers);
+    } catch (IOException ioe) {
+      if (null != mByMessageIdReaders) {
+        mByMessageIdReaders.close();
+      }
+      throw ioe;
+    }
+  }
+
+  /**
+   * Finds a message by Message-ID.
+   *
+   * @param messageId the Message-ID, without angle brackets.
+   * @return the message, or null if not indexed.
+   * @throws UnsupportedLookupException without emails_by_mid table.
+   * @throws IOException on error.
+   */
+  public MessageRef findByMessageId(String messageId) throws IOException {
+    if (null == mByMessageIdReaders) {
+      throw new UnsupportedLookupException("No emails_by_mid table to look Message-IDs up.");
+    }
+    final KijiRowData row;
+    final KijiTableReader reader = mByMessageIdReaders.borrow();
+    try {
+      row = reader.get(mByMessageId.getEntityId(messageId), MESSAGE_ID_REQUEST);
+    } finally {
+      mByMessageIdReaders.release(reader);
+    }
+    if (!row.containsColumn("ref", "from") || !row.containsColumn("ref", "timestamp")) {
+      return null;
+    }
+    final CharSequence from = row.getMostRecentValue("ref", "from");
+    final Long timestamp = row.getMostRecentValue("ref", "timestamp");
+    return new MessageRef(from.toString(), timestamp, messageId);
+  }
+
+  /**
+   * Finds the latest messages received by an address, as To, Cc or Bcc.
+   *
+   * @param recipient the address.
+   * @param count the maximum number of messages to find.
+   * @return the latest messages received by the address, most recent first.
+   * @throws UnsupportedLookupException without emails_by_recipient table.
+   * @throws IOException on error.
+   */
+  public List<MessageRef> findByRecipient(String recipient, int count) throws IOException {
+    if (null == mByRecipientReaders) {
+      throw new UnsupportedLookupException(
+          "No emails_by_recipient table to look recipients up.");
+    }
+    // The latest messages overall are among the latest of each sender.
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(count).addFamily("received");
+    final KijiRowData row;
+    final KijiTableReader reader = mByRecipientReaders.borrow();
+    try {
+      row = reader.get(
+          mByRecipient.getEntityId(Recipients.normalize(recipient)), builder.build());
+    } finally {
+      mByRecipientReaders.release(reader);
+    }
+    final List<MessageRef> refs = Lists.newArrayList();
+    if (!row.containsColumn("received")) {
+      return refs;
+    }
+    final NavigableMap<String, NavigableMap<Long, CharSequence>> senders =
+        row.getValues("received");
+    for (Map.Entry<String, NavigableMap<Long, CharSequence>> sender : senders.entrySet()) {
+      for (Map.Entry<Long, CharSequence> message : sender.getValue().entrySet()) {
+        refs.add(new MessageRef(sender.getKey(), message.getKey(),
+            (null == message.getValue()) ? null : message.getValue().toString()));
+      }
+    }
+    Collections.sort(refs, LATEST_FIRST);
+    return Lists.newArrayList(refs.subList(0, Math.min(count, refs.size())));
+  }
+
+  /** Closes the readers of the index tables. */
+  @Override
+  public void close() {
+    if (null != mByMessageIdReaders) {
+      mByMessageIdReaders.close();
+    }
+    if (null != mByRecipientReaders) {
+      mByRecipientReaders.close();
+    }
+  }
+}
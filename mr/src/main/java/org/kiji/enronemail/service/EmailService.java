@@ -0,0 +1,689 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.metrics.Counter;
+import org.kiji.enronemail.metrics.DefaultMetricsRegistry;
+import org.kiji.enronemail.metrics.Histogram;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+import org.kiji.enronemail.metrics.MetricsReporter;
+import org.kiji.enronemail.produce.SentimentProducer;
+import org.kiji.enronemail.text.SentimentLexicon;
+import org.kiji.enronemail.text.SentimentScorer;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Embedded HTTP service scoring texts and looking up emails.
+ *
+ * <p>Endpoints, all answering JSON:</p>
+ * <ul>
+ *   <li><code>GET /score?text=...</code> scores one text like <code>SentimentProducer</code>
+ *       does, normalized like the imported bodies; <code>POST /score</code> scores each line of
+ *       the request body, in one batch.</li>
+ *   <li><code>GET /message?from=...&amp;ts=...</code> gets a message by sender and timestamp.</li>
+ *   <li><code>GET /latest?from=...&amp;n=10</code> gets the latest messages of a sender.</li>
+ *   <li><code>GET /by-mid?mid=...</code> gets a message by Message-ID, through the
+ *       emails_by_mid index.</li>
+ *   <li><code>GET /inbox?to=...&amp;n=10</code> gets the latest messages received by an address,
+ *       through the emails_by_recipient index.</li>
+ *   <li><code>GET /metrics</code> dumps the request counters and latency histograms, in
+ *       microseconds, of each endpoint.</li>
+ * </ul>
+ */
+public final class EmailService implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(EmailService.class);
+
+  /** System property disabling Nagle's algorithm on the connections of the JDK HTTP server. */
+  private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+  static {
+    // Otherwise small responses wait for the delayed ACK of the client, about 40ms each. The
+    // server reads the property once, when first used.
+    if (null == System.getProperty(NODELAY_PROPERTY)) {
+      System.setProperty(NODELAY_PROPERTY, "true");
+    }
+  }
+
+  /** Largest request body accepted by <code>POST /score</code>, in bytes. */
+  private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+  /** Default number of messages returned by <code>/latest</code>. */
+  private static final int DEFAULT_LATEST_COUNT = 10;
+  /** Largest number of messages returned by <code>/latest</code>. */
+  private static final int MAX_LATEST_COUNT = 1000;
+
+  private final EmailStore mStore;
+  /** Index of the messages, or null. */
+  private final EmailIndex mIndex;
+  private final SentimentLexicon mLexicon;
+  private final MetricsRegistry mMetrics;
+
+  /** Parser of each request thread, normalizing the texts to score. */
+  private final ThreadLocal<EmailParser> mParser = new ThreadLocal<EmailParser>() {
+    @Override
+    protected EmailParser initialValue() {
+      return new EmailParser();
+    }
+  };
+
+  /** Scorer of each request thread, sharing the lexicon. */
+  private final ThreadLocal<SentimentScorer> mScorer = new ThreadLocal<SentimentScorer>() {
+    @Override
+    protected SentimentScorer initialValue() {
+      return new SentimentScorer(mLexicon);
+    }
+  };
+
+  private HttpServer mServer = null;
+  private ExecutorService mExecutor = null;
+
+  /**
+   * Creates a service, started by {@link #start(InetSocketAddress, int)}.
+   *
+   * @param store the source of the emails.
+   * @param lexicon the sentiment lexicon to score texts with.
+   * @param metrics the registry recording the requests, under "service.*".
+   */
+  public EmailService(EmailStore store, SentimentLexicon lexicon, MetricsRegistry metrics) {
+    this(store, null, lexicon, metrics);
+  }
+
+  /**
+   * Creates a service finding messages through index tables, started by
+   * {@link #start(InetSocketAddress, int)}.
+   *
+   * @param store the source of the emails.
+   * @param index the index of the emails, or null to disable the index lookups.
+   * @param lexicon the sentiment lexicon to score texts with.
+   * @param metrics the registry recording the requests, under "service.*".
+   */
+  public EmailService(EmailStore store, EmailIndex index, SentimentLexicon lexicon,
+      MetricsRegistry metrics) {
+    mStore = store;
+    mIndex = index;
+    mLexicon = lexicon;
+    mMetrics = metrics;
+  }
+
+  /**
+   * Starts serving requests.
+   *
+   * @param address the address to listen on; port 0 picks a free port.
+   * @param threads the number of threads serving requests.
+   * @return this service.
+   * @throws IOException if the server cannot listen on the address.
+   */
+  public synchronized EmailService start(InetSocketAddress address, int threads)
+      throws IOException {
+    mServer = HttpServer.create(address, 0);
+    mServer.createContext("/score", new ScoreEndpoint());
+    mServer.createContext("/message", new MessageEndpoint());
+    mServer.createContext("/latest", new LatestEndpoint());
+    mServer.createContext("/by-mid", new MessageIdEndpoint());
+    mServer.createContext("/inbox", new InboxEndpoint());
+    mServer.createContext("/metrics", new MetricsEndpoint());
+    mExecutor = Executors.newFixedThreadPool(threads);
+    mServer.setExecutor(mExecutor);
+    mServer.start();
+    LOG.info("Serving on port {} with {} threads.", getPort(), threads);
+    return this;
+  }
+
+  /** @return the port the service listens on. */
+  public synchronized int getPort() {
+    return mServer.getAddress().getPort();
+  }
+
+  /** Stops serving requests. The store is not closed. */
+  @Override
+  public synchronized void close() {
+    if (null != mServer) {
+      mServer.stop(0);
+      mServer = null;
+    }
+    if (null != mExecutor) {
+      mExecutor.shutdownNow();
+      mExecutor = null;
+    }
+  }
+
+  /** Thrown when a request is invalid, and answered with a 400 status. */
+  private static final class BadRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message the reason the request is invalid.
+     */
+    private BadRequestException(String message) {
+      super(message);
+    }
+  }
+
+  /** An endpoint, recording the count, failures and latency of its requests. */
+  private abstract class Endpoint implements HttpHandler {
+    private final Counter mRequests;
+    private final Counter mErrors;
+    private final Histogram mMicros;
+
+    /**
+     * @param name the name of the endpoint in the metrics.
+     */
+    protected Endpoint(String name) {
+      mRequests = mMetrics.counter("service." + name + ".requests");
+      mErrors = mMetrics.counter("service." + name + ".errors");
+      mMicros = mMetrics.histogram("service." + name + ".micros");
+    }
+
+    /**
+     * Answers a request.
+     *
+     * @param exchange the request.
+     * @param params the parameters of the query string.
+     * @return the JSON response.
+     * @throws BadRequestException if the request is invalid.
+     * @throws IOException on error.
+     */
+    protected abstract String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException;
+
+    /** {@inheritDoc} */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      final long startNanos = System.nanoTime();
+      mRequests.increment(1);
+      try {
+        int status = 200;
+        String response;
+        try {
+          response = respond(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+          if (null == response) {
+            status = 404;
+            response = error("Not found.");
+          }
+        } catch (BadRequestException bre) {
+          status = 400;
+          response = error(bre.getMessage());
+        } catch (UnsupportedLookupException ule) {
+          status = 501;
+          response = error(ule.getMessage());
+        } catch (IOException ioe) {
+          LOG.warn("Unable to answer {}: {}", exchange.getRequestURI(), ioe.getMessage());
+          status = 500;
+          response = error(ioe.getMessage());
+        } catch (RuntimeException re) {
+          // A bug must not leave the client without an answer, nor go unnoticed in the metrics.
+          LOG.error("Unable to answer " + exchange.getRequestURI(), re);
+          status = 500;
+          response = error(re.toString());
+        }
+        if (status >= 500) {
+          mErrors.increment(1);
+        }
+        send(exchange, status, response);
+      } finally {
+        exchange.close();
+        mMicros.update((System.nanoTime() - startNanos) / 1000);
+      }
+    }
+  }
+
+  /** Scores one text, or each line of the request body. */
+  private final class ScoreEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private ScoreEndpoint() {
+      super("score");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException {
+      final SentimentScorer scorer = mScorer.get();
+      // The bodies are scored once normalized by the importer: so are the texts.
+      final EmailParser parser = mParser.get();
+      if ("POST".equals(exchange.getRequestMethod())) {
+        String body = readBody(exchange);
+        if (body.endsWith("\n")) {
+          // The line break ends the last line rather than starting an empty one.
+          body = body.substring(0, body.length() - 1);
+        }
+        final List<String> texts = Lists.newArrayList();
+        for (String line : Splitter.on('\n').split(body)) {
+          texts.add(parser.normalizeBody(line));
+        }
+        final float[] scores = scorer.scoreBatch(texts);
+        final StringBuilder out = new StringBuilder("{\"scores\": [");
+        for (int i = 0; i < scores.length; i++) {
+          out.append((i > 0) ? ", " : "").append(scores[i]);
+        }
+        return out.append("]}").toString();
+      }
+      return "{\"score\": " + scorer.score(parser.normalizeBody(getParam(params, "text"))) + "}";
+    }
+  }
+
+  /** Gets a message by sender and timestamp. */
+  private final class MessageEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private MessageEndpoint() {
+      super("message");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException {
+      final StoredEmail email =
+          mStore.getMessage(getParam(params, "from"), getLong(params, "ts", null));
+      return (null == email) ? null : email.appendJson(new StringBuilder()).toString();
+    }
+  }
+
+  /** Gets the latest messages of a sender. */
+  private final class LatestEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private LatestEndpoint() {
+      super("latest");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException {
+      final long count = getLong(params, "n", (long) DEFAULT_LATEST_COUNT);
+      if (count < 1 || count > MAX_LATEST_COUNT) {
+        throw new BadRequestException("n must be between 1 and " + MAX_LATEST_COUNT + ".");
+      }
+      final StringBuilder out = new StringBuilder("{\"messages\": [");
+      String separator = "";
+      for (StoredEmail email : mStore.getLatestMessages(getParam(params, "from"), (int) count)) {
+        email.appendJson(out.append(separator));
+        separator = ", ";
+      }
+      return out.append("]}").toString();
+    }
+  }
+
+  /** Gets a message by Message-ID. */
+  private final class MessageIdEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private MessageIdEndpoint() {
+      super("by-mid");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException {
+      final MessageRef ref = getIndex().findByMessageId(getParam(params, "mid"));
+      if (null == ref) {
+        return null;
+      }
+      final StoredEmail email = mStore.getMessage(ref.getFrom(), ref.getTimestamp());
+      return (null == email) ? null : email.appendJson(new StringBuilder()).toString();
+    }
+  }
+
+  /** Gets the latest messages received by an address. */
+  private final class InboxEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private InboxEndpoint() {
+      super("inbox");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws BadRequestException, IOException {
+      final long count = getLong(params, "n", (long) DEFAULT_LATEST_COUNT);
+      if (count < 1 || count > MAX_LATEST_COUNT) {
+        throw new BadRequestException("n must be between 1 and " + MAX_LATEST_COUNT + ".");
+      }
+      final StringBuilder out = new StringBuilder("{\"messages\": [");
+      String separator = "";
+      for (MessageRef ref : getIndex().findByRecipient(getParam(params, "to"), (int) count)) {
+        final StoredEmail email = mStore.getMessage(ref.getFrom(), ref.getTimestamp());
+        if (null != email) {
+          email.appendJson(out.append(separator));
+          separator = ", ";
+        }
+      }
+      return out.append("]}").toString();
+    }
+  }
+
+  /**
+   * @return the index of the messages.
+   * @throws UnsupportedLookupException if the service has no index.
+   */
+  private EmailIndex getIndex() throws UnsupportedLookupException {
+    if (null == mIndex) {
+      throw new UnsupportedLookupException("No index tables to look messages up.");
+    }
+    return mIndex;
+  }
+
+  /** Dumps the metrics of the service. */
+  private final class MetricsEndpoint extends Endpoint {
+    /** Creates the endpoint. */
+    private MetricsEndpoint() {
+      super("metrics");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String respond(HttpExchange exchange, Map<String, String> params)
+        throws IOException {
+      final StringBuilder out = new StringBuilder();
+      new MetricsReporter(mMetrics, System.out).writeJson(out);
+      return out.toString();
+    }
+  }
+
+  /**
+   * @param message an error message.
+   * @return the JSON response reporting the error.
+   */
+  private static String error(String message) {
+    return Json.appendString(message, new StringBuilder("{\"error\": ")).append('}').toString();
+  }
+
+  /**
+   * Sends a JSON response.
+   *
+   * @param exchange the request to answer.
+   * @param status the HTTP status.
+   * @param json the JSON response.
+   * @throws IOException if the response cannot be sent.
+   */
+  private static void send(HttpExchange exchange, int status, String json) throws IOException {
+    final byte[] bytes = json.getBytes(Charsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    final OutputStream out = exchange.getResponseBody();
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the body of a request as UTF-8 text.
+   *
+   * @param exchange the request.
+   * @return the body of the request.
+   * @throws BadRequestException if the body is too large.
+   * @throws IOException if the body cannot be read.
+   */
+  private static String readBody(HttpExchange exchange) throws BadRequestException, IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    final InputStream in = exchange.getRequestBody();
+    try {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, read);
+        if (bytes.size() > MAX_REQUEST_BYTES) {
+          throw new BadRequestException("Request body larger than " + MAX_REQUEST_BYTES + ".");
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return new String(bytes.toByteArray(), Charsets.UTF_8);
+  }
+
+  /**
+   * Parses a query string.
+   *
+   * @param query the raw query string, or null.
+   * @return the decoded value of each parameter.
+   * @throws BadRequestException if the query cannot be decoded.
+   */
+  private static Map<String, String> parseQuery(String query) throws BadRequestException {
+    final Map<String, String> params = Maps.newHashMap();
+    if (null == query) {
+      return params;
+    }
+    try {
+      for (String param : Splitter.on('&').omitEmptyStrings().split(query)) {
+        final int equals = param.indexOf('=');
+        if (equals < 0) {
+          params.put(URLDecoder.decode(param, "UTF-8"), "");
+        } else {
+          params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+              URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+        }
+      }
+    } catch (UnsupportedEncodingException uee) {
+      throw new RuntimeException(uee);
+    } catch (IllegalArgumentException iae) {
+      throw new BadRequestException("Invalid query string: " + iae.getMessage());
+    }
+    return params;
+  }
+
+  /**
+   * @param params the parameters of a request.
+   * @param name the name of a required parameter.
+   * @return the value of the parameter.
+   * @throws BadRequestException if the parameter is missing.
+   */
+  private static String getParam(Map<String, String> params, String name)
+      throws BadRequestException {
+    final String value = params.get(name);
+    if (null == value) {
+      throw new BadRequestException("Missing parameter: " + name);
+    }
+    return value;
+  }
+
+  /**
+   * @param params the parameters of a request.
+   * @param name the name of a numeric parameter.
+   * @param defaultValue the value of the parameter when missing, or null if it is required.
+   * @return the value of the parameter.
+   * @throws BadRequestException if the parameter is missing and required, or not a number.
+   */
+  private static long getLong(Map<String, String> params, String name, Long defaultValue)
+      throws BadRequestException {
+    final String value = params.get(name);
+    if (null == value && null != defaultValue) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(getParam(params, name));
+    } catch (NumberFormatException nfe) {
+      throw new BadRequestException("Invalid " + name + ": " + value);
+    }
+  }
+
+  /** Command line entry point, serving the Kiji tables. */
+  private static final class Main {
+    @Flag(name = "port", usage = "Port to listen on.")
+    private int mPort = 8080;
+
+    @Flag(name = "threads", usage = "Number of threads serving requests.")
+    private int mThreads = 32;
+
+    @Flag(name = "readers", usage = "Number of pooled readers opened on each table.")
+    private int mReaders = 16;
+
+    @Flag(name = "cache-mb", usage = "Size of the cache of messages, in MB (0 to disable).")
+    private long mCacheMegabytes = 256;
+
+    @Flag(name = "employee-cache-mb",
+        usage = "Size of the cache of the employee rows, in MB (0 to read the rows every time).")
+    private long mEmployeeCacheMegabytes = 256;
+
+    @Flag(name = "employee-cache-ttl-s",
+        usage = "Seconds after which a cached employee row is read again (0 for never).")
+    private long mEmployeeCacheTtlSeconds = 300;
+
+    @Flag(name = "page-size",
+        usage = "Number of versions of an employee column read at a time.")
+    private int mPageSize = 1000;
+
+    @Flag(name = "employee-cache-versions",
+        usage = "Number of the latest messages of a sender kept in the employee cache.")
+    private int mEmployeeCacheVersions = 1000;
+
+    @Flag(name = "by-mid-table", usage = "URI of the emails_by_mid index table, if any.")
+    private String mByMessageIdTable = "";
+
+    @Flag(name = "by-recipient-table",
+        usage = "URI of the emails_by_recipient index table, if any.")
+    private String mByRecipientTable = "";
+
+    @Flag(name = "lexicon",
+        usage = "Path of the sentiment word list, on any Hadoop file system.")
+    private String mLexiconPath = SentimentProducer.DEFAULT_LEXICON_PATH;
+
+    private int run(String[] args) {
+      final List<String> nonFlagArgs = FlagParser.init(this, args);
+      if (null == nonFlagArgs) {
+        // The user asked for --help.
+        return 0;
+      }
+      if (nonFlagArgs.isEmpty() || nonFlagArgs.size() > 2) {
+        System.err.println(
+            "Usage: EmailService [flags] <emails table URI> [<employee table URI>]");
+        return 1;
+      }
+      final List<Kiji> kijis = Lists.newArrayList();
+      final List<KijiTable> tables = Lists.newArrayList();
+      try {
+        final Configuration conf = new Configuration();
+        conf.set(SentimentProducer.CONF_LEXICON_PATH, mLexiconPath);
+        final SentimentLexicon lexicon = SentimentProducer.loadLexicon(conf);
+        final KijiTable emails = openTable(nonFlagArgs.get(0), kijis, tables);
+        final KijiTable employee =
+            (nonFlagArgs.size() > 1) ? openTable(nonFlagArgs.get(1), kijis, tables) : null;
+        final KijiTable byMessageId = openTable(mByMessageIdTable, kijis, tables);
+        final KijiTable byRecipient = openTable(mByRecipientTable, kijis, tables);
+
+        final MetricsRegistry metrics = new DefaultMetricsRegistry();
+        EmailStore store;
+        if (null != employee && mEmployeeCacheMegabytes > 0) {
+          store = new KijiEmailStore(emails, new EmployeeRowCache(employee, mReaders,
+              mEmployeeCacheMegabytes * 1024 * 1024, mEmployeeCacheTtlSeconds, mPageSize,
+              mEmployeeCacheVersions, metrics), mReaders);
+        } else {
+          store = new KijiEmailStore(emails, employee, mReaders);
+        }
+        if (mCacheMegabytes > 0) {
+          store = new CachingEmailStore(store, mCacheMegabytes * 1024 * 1024, metrics);
+        }
+        final EmailIndex index = (null == byMessageId && null == byRecipient)
+            ? null : new EmailIndex(byMessageId, byRecipient, mReaders);
+        final EmailService service = new EmailService(store, index, lexicon, metrics)
+            .start(new InetSocketAddress(mPort), mThreads);
+        try {
+          // Serve until the JVM is killed.
+          Thread.currentThread().join();
+        } finally {
+          service.close();
+          store.close();
+          if (null != index) {
+            index.close();
+          }
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+        return 1;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 0;
+      } finally {
+        for (KijiTable table : tables) {
+          try {
+            table.release();
+          } catch (IOException ioe) {
+            ioe.printStackTrace();
+          }
+        }
+        for (Kiji kiji : kijis) {
+          try {
+            kiji.release();
+          } catch (IOException ioe) {
+            ioe.printStackTrace();
+          }
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Opens a table.
+     *
+     * @param uri the URI of the table, or an empty string.
+     * @param kijis the Kiji instances to add the instance of the table to, for release.
+     * @param tables the tables to add the table to, for release.
+     * @return the table, or null if the URI is empty.
+     * @throws IOException if the table cannot be opened.
+     */
+    private static KijiTable openTable(String uri, List<Kiji> kijis, List<KijiTable> tables)
+        throws IOException {
+      if (uri.isEmpty()) {
+        return null;
+      }
+      final KijiURI tableURI = KijiURI.newBuilder(uri).build();
+      final Kiji kiji = Kiji.Factory.open(tableURI);
+      kijis.add(kiji);
+      final KijiTable table = kiji.openTable(tableURI.getTable());
+      tables.add(table);
+      return table;
+    }
+  }
+
+  public static void main(String[] args) {
+    System.exit(new Main().run(args));
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Source of the emails served by {@link EmailService}.
+ *
+ * <p>Implementations must be thread-safe: the service calls them from all its threads.</p>
+ */
+public interface EmailStore extends Closeable {
+  /**
+   * Gets one message.
+   *
+   * @param from the sender of the message.
+   * @param timestamp the date of the message, in milliseconds since the epoch.
+   * @return the message, or null if there is none.
+   * @throws IOException on error.
+   */
+  StoredEmail getMessage(String from, long timestamp) throws IOException;
+
+  /**
+   * Gets the latest messages of a sender.
+   *
+   * @param from the sender.
+   * @param count the maximum number of messages to get.
+   * @return the latest messages of the sender, most recent first.
+   * @throws UnsupportedLookupException if the store cannot list the messages of a sender.
+   * @throws IOException on error.
+   */
+  List<StoredEmail> getLatestMessages(String from, int count) throws IOException;
+}
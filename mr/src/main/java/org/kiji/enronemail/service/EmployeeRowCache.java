@@ -0,0 +1,305 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+
+import org.kiji.enronemail.metrics.Counter;
+import org.kiji.enronemail.metrics.Histogram;
+import org.kiji.enronemail.metrics.MetricsRegistry;
+import org.kiji.enronemail.util.VersionPager;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+
+/**
+ * Caches the sent messages of each sender, read from the employee table.
+ *
+ * <p>Every message of a sender is a version of the "sent_messages" columns of its row, so the
+ * row of a heavy sender is very wide. Only the latest versions of a row, up to a configurable
+ * number, are read, page by page through a {@link VersionPager} so that no single read fetches
+ * megabytes, and then kept in a cache bounded by the total size of the cached messages, evicting
+ * the least recently used senders first. Longer lists of messages are read from the table on
+ * every request. A row heavier than the share of the cache it would land in is not cached at
+ * all, since the cache would evict it right away. Rows expire after a configurable time, after
+ * which newly imported mail shows up.</p>
+ *
+ * <p>The cache records into the metrics registry: "employee.cache.hits" and
+ * "employee.cache.misses" count the lookups, "employee.cache.evictions" and
+ * "employee.cache.uncached" the evicted rows and the rows too heavy to cache,
+ * "employee.cache.pages" the pages read, and the "employee.cache.load.micros" histogram the time
+ * to read a row.</p>
+ */
+public final class EmployeeRowCache implements Closeable {
+  /** Family of the messages in the employee table. */
+  private static final String FAMILY = "sent_messages";
+  /** Columns of a message, paged one at a time. */
+  private static final String[] QUALIFIERS = {"mid", "to", "cc", "subject", "body"};
+  /** Index of the Message-ID in {@link #QUALIFIERS}, present in every message. */
+  private static final int MID = 0;
+  /** Number of segments of the cache, each holding an equal share of its maximum weight. */
+  private static final int CONCURRENCY_LEVEL = 4;
+  /** Number of locks serializing the reads of the rows, shared by hashing the senders. */
+  private static final int LOAD_LOCKS = 64;
+
+  private final KijiTable mTable;
+  private final TableReaderPool mReaders;
+  /** Largest number of versions of a column read at a time. */
+  private final int mPageSize;
+  /** Largest number of the latest messages of a sender cached. */
+  private final int mMaxVersions;
+  /** Reads the latest {@link #mMaxVersions} versions of each column of a message. */
+  private final KijiDataRequest mRequest;
+  /** Weight of the heaviest row cached, the share of the cache of one segment. */
+  private final long mMaxRowWeight;
+  private final Cache<String, List<StoredEmail>> mCache;
+  /** Locks taken while reading a row, so that concurrent lookups of a sender read it once. */
+  private final Striped<Lock> mLoadLocks = Striped.lock(LOAD_LOCKS);
+
+  private final Counter mHits;
+  private final Counter mMisses;
+  private final Counter mUncached;
+  private final Counter mPages;
+  private final Histogram mLoadMicros;
+
+  /**
+   * Creates a cache.
+   *
+   * @param table the employee table.
+   * @param readers the number of readers opened on the table.
+   * @param maxBytes the approximate maximum size of the cached messages, in bytes.
+   * @param expireSeconds the time after which a cached row is read again, or 0 to never expire.
+   * @param pageSize the number of versions of a column read at a time.
+   * @param maxVersions the number of the latest messages of a sender cached.
+   * @param metrics the registry of the cache metrics.
+   * @throws IOException if the readers cannot be opened.
+   */
+  public EmployeeRowCache(KijiTable table, int readers, long maxBytes, long expireSeconds,
+      int pageSize, int maxVersions, MetricsRegistry metrics) throws IOException {
+    Preconditions.checkArgument(pageSize > 0, "Invalid page size: %s", pageSize);
+    Preconditions.checkArgument(maxVersions > 0, "Invalid number of versions: %s", maxVersions);
+    mTable = table;
+    mPageSize = pageSize;
+    mMaxVersions = maxVersions;
+    mRequest = buildRequest(maxVersions);
+    mMaxRowWeight = maxBytes / CONCURRENCY_LEVEL;
+    mReaders = new TableReaderPool(table, readers);
+
+    mHits = metrics.counter("employee.cache.hits");
+    mMisses = metrics.counter("employee.cache.misses");
+    mUncached = metrics.counter("employee.cache.uncached");
+    mPages = metrics.counter("employee.cache.pages");
+    mLoadMicros = metrics.histogram("employee.cache.load.micros");
+    final Counter evictions = metrics.counter("employee.cache.evictions");
+
+    final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+    if (expireSeconds > 0) {
+      cacheBuilder.expireAfterWrite(expireSeconds, TimeUnit.SECONDS);
+    }
+    mCache = cacheBuilder
+        .concurrencyLevel(CONCURRENCY_LEVEL)
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<String, List<StoredEmail>>() {
+          @Override
+          public int weigh(String sender, List<StoredEmail> messages) {
+            return (int) Math.min(Integer.MAX_VALUE, getWeight(sender, messages));
+          }
+        })
+        .removalListener(new RemovalListener<String, List<StoredEmail>>() {
+          @Override
+          public void onRemoval(RemovalNotification<String, List<StoredEmail>> notification) {
+            if (RemovalCause.SIZE == notification.getCause()) {
+              evictions.increment(1);
+            }
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Gets the cached messages of a sender, reading its row unless cached.
+   *
+   * @param sender the sender.
+   * @return the latest messages of the sender, at most the configured number, most recent first.
+   * @throws IOException if the row cannot be read.
+   */
+  public List<StoredEmail> getMessages(String sender) throws IOException {
+    List<StoredEmail> messages = mCache.getIfPresent(sender);
+    if (null != messages) {
+      mHits.increment(1);
+      return messages;
+    }
+    mMisses.increment(1);
+    // Concurrent lookups of the same sender wait for a single read of its row.
+    final Lock lock = mLoadLocks.get(sender);
+    lock.lock();
+    try {
+      messages = mCache.getIfPresent(sender);
+      if (null == messages) {
+        messages = load(sender, mRequest);
+        if (getWeight(sender, messages) <= mMaxRowWeight) {
+          mCache.put(sender, messages);
+        } else {
+          mUncached.increment(1);
+        }
+      }
+      return messages;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the latest messages of a sender, from the cache unless more messages are requested than
+   * it holds.
+   *
+   * @param sender the sender.
+   * @param count the maximum number of messages to get.
+   * @return the latest messages of the sender, most recent first.
+   * @throws IOException if the row cannot be read.
+   */
+  public List<StoredEmail> getLatestMessages(String sender, int count) throws IOException {
+    if (count > mMaxVersions) {
+      return load(sender, buildRequest(count));
+    }
+    final List<StoredEmail> messages = getMessages(sender);
+    return messages.subList(0, Math.min(count, messages.size()));
+  }
+
+  /**
+   * Drops the cached row of a sender, so the next lookup reads it again.
+   *
+   * @param sender the sender.
+   */
+  public void invalidate(String sender) {
+    mCache.invalidate(sender);
+  }
+
+  /**
+   * Builds the request of the latest messages of a sender, paging the versions of each column.
+   *
+   * @param maxVersions the number of versions of each column to read.
+   * @return the request.
+   */
+  private KijiDataRequest buildRequest(int maxVersions) {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    final KijiDataRequestBuilder.ColumnsDef columns =
+        builder.newColumnsDef().withMaxVersions(maxVersions).withPageSize(mPageSize);
+    for (String qualifier : QUALIFIERS) {
+      columns.add(FAMILY, qualifier);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Computes the weight of the cached messages of a sender.
+   *
+   * @param sender the sender.
+   * @param messages the messages of the sender.
+   * @return the approximate size of the messages in memory, in bytes.
+   */
+  private static long getWeight(String sender, List<StoredEmail> messages) {
+    long weight = 2L * sender.length();
+    for (StoredEmail message : messages) {
+      weight += message.getWeight();
+    }
+    return weight;
+  }
+
+  /**
+   * Reads the latest messages of a sender, one page of versions of a column at a time.
+   *
+   * @param sender the sender.
+   * @param request the request of the versions to read, from {@link #buildRequest(int)}.
+   * @return the messages of the sender, most recent first.
+   * @throws IOException if the row cannot be read.
+   */
+  private List<StoredEmail> load(String sender, KijiDataRequest request) throws IOException {
+    final long startNanos = System.nanoTime();
+    final KijiRowData row;
+    final KijiTableReader reader = mReaders.borrow();
+    try {
+      row = reader.get(mTable.getEntityId(sender), request);
+    } finally {
+      mReaders.release(reader);
+    }
+
+    // Values of each column by timestamp, the timestamp of a message being its date.
+    final List<Map<Long, String>> columns = Lists.newArrayList();
+    for (String qualifier : QUALIFIERS) {
+      final Map<Long, String> values = Maps.newHashMap();
+      if (row.containsColumn(FAMILY, qualifier)) {
+        final VersionPager<CharSequence> pager = new VersionPager<CharSequence>(
+            row, FAMILY, qualifier, mPageSize, VersionPager.DEFAULT_MAX_PAGE_BYTES);
+        try {
+          while (pager.next()) {
+            final CharSequence value = pager.getValue();
+            values.put(pager.getTimestamp(), (null == value) ? null : value.toString());
+          }
+        } finally {
+          pager.close();
+        }
+        mPages.increment(pager.getPagesRead());
+      }
+      columns.add(values);
+    }
+
+    final List<Long> timestamps = Lists.newArrayList(columns.get(MID).keySet());
+    Collections.sort(timestamps, Collections.reverseOrder());
+    final ImmutableList.Builder<StoredEmail> messages = ImmutableList.builder();
+    for (long timestamp : timestamps) {
+      messages.add(new StoredEmail(sender, timestamp,
+          columns.get(0).get(timestamp),
+          columns.get(1).get(timestamp),
+          columns.get(2).get(timestamp),
+          columns.get(3).get(timestamp),
+          columns.get(4).get(timestamp)));
+    }
+    mLoadMicros.update((System.nanoTime() - startNanos) / 1000);
+    return messages.build();
+  }
+
+  /** Drops every cached row and closes the readers. */
+  @Override
+  public void close() {
+    mCache.invalidateAll();
+    mReaders.close();
+  }
+}
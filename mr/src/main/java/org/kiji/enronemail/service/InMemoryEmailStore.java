@@ -0,0 +1,157 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.enronemail.bulkimport.EmailBulkImporter;
+import org.kiji.enronemail.bulkimport.EmailDateParser;
+import org.kiji.enronemail.bulkimport.EmailHeader;
+import org.kiji.enronemail.bulkimport.EmailMessage;
+import org.kiji.enronemail.bulkimport.EmailParser;
+import org.kiji.enronemail.bulkimport.MalformedEmailException;
+import org.kiji.enronemail.bulkimport.MessageReader;
+
+/**
+ * Read-only store of the messages of a Maildir, held in memory.
+ *
+ * <p>The messages are keyed like the importer keys them in the emails table, so this store
+ * stands for the Kiji tables in load tests of {@link EmailService} run without a Kiji
+ * instance.</p>
+ */
+public final class InMemoryEmailStore implements EmailStore {
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryEmailStore.class);
+
+  /** Messages of each sender, by timestamp. */
+  private final Map<String, NavigableMap<Long, StoredEmail>> mSenders = Maps.newHashMap();
+  /** Every message, in loading order. */
+  private final List<StoredEmail> mMessages = Lists.newArrayList();
+
+  /** Creates an empty store, filled by {@link #load(File)}. */
+  private InMemoryEmailStore() {
+  }
+
+  /**
+   * Loads the messages of a Maildir. Messages which cannot be parsed are skipped.
+   *
+   * @param root the Maildir root, or any directory below it.
+   * @return the store holding the messages.
+   * @throws IOException if a message cannot be read.
+   */
+  public static InMemoryEmailStore load(File root) throws IOException {
+    final InMemoryEmailStore store = new InMemoryEmailStore();
+    store.load(root, new MessageReader(), new EmailParser());
+    return store;
+  }
+
+  /**
+   * Recursively loads messages.
+   *
+   * @param file the directory or message file to load.
+   * @param reader the reader of the message files.
+   * @param parser the parser of the messages.
+   * @throws IOException if a message cannot be read.
+   */
+  private void load(File file, MessageReader reader, EmailParser parser) throws IOException {
+    if (file.isDirectory()) {
+      final File[] files = file.listFiles(new EmailBulkImporter.SystemFilenameFilter());
+      if (null == files) {
+        throw new IOException("Unable to list directory " + file);
+      }
+      for (File child : files) {
+        load(child, reader, parser);
+      }
+      return;
+    }
+    final EmailMessage email = parser.parse(reader.read(file));
+    final String from = email.getHeader(EmailHeader.FROM);
+    final String date = email.getHeader(EmailHeader.DATE);
+    if (null == from || null == date) {
+      LOG.warn("Skipping {}: missing From or Date header.", file);
+      return;
+    }
+    final long timestamp;
+    try {
+      timestamp = EmailDateParser.parse(date);
+    } catch (MalformedEmailException mee) {
+      LOG.warn("Skipping {}: {}", file, mee.getMessage());
+      return;
+    }
+    String messageId = email.getHeader(EmailHeader.MESSAGE_ID);
+    if (null != messageId && messageId.startsWith("<") && messageId.endsWith(">")) {
+      messageId = messageId.substring(1, messageId.length() - 1);
+    }
+    final StoredEmail stored = new StoredEmail(from, timestamp, messageId,
+        email.getHeader(EmailHeader.TO), email.getHeader(EmailHeader.CC),
+        email.getHeader(EmailHeader.SUBJECT), email.getBody());
+    NavigableMap<Long, StoredEmail> messages = mSenders.get(from);
+    if (null == messages) {
+      messages = Maps.newTreeMap();
+      mSenders.put(from, messages);
+    }
+    messages.put(timestamp, stored);
+    mMessages.add(stored);
+  }
+
+  /** @return every message of the store, in loading order. */
+  public List<StoredEmail> getMessages() {
+    return Collections.unmodifiableList(mMessages);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public StoredEmail getMessage(String from, long timestamp) {
+    final NavigableMap<Long, StoredEmail> messages = mSenders.get(from);
+    return (null == messages) ? null : messages.get(timestamp);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<StoredEmail> getLatestMessages(String from, int count) {
+    final NavigableMap<Long, StoredEmail> messages = mSenders.get(from);
+    if (null == messages) {
+      return ImmutableList.of();
+    }
+    final List<StoredEmail> latest = Lists.newArrayList();
+    for (StoredEmail email : messages.descendingMap().values()) {
+      if (latest.size() >= count) {
+        break;
+      }
+      latest.add(email);
+    }
+    return latest;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+  }
+}
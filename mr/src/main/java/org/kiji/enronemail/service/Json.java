@@ -0,0 +1,73 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+/**
+ * Minimal JSON encoding of the responses of {@link EmailService}.
+ */
+final class Json {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** Utility class cannot be instantiated. */
+  private Json() {
+  }
+
+  /**
+   * Appends a string as a JSON string, or null.
+   *
+   * @param value the string, or null.
+   * @param out the builder to append to.
+   * @return the builder.
+   */
+  static StringBuilder appendString(CharSequence value, StringBuilder out) {
+    if (null == value) {
+      return out.append("null");
+    }
+    out.append('"');
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    return out.append('"');
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+
+/**
+ * Reads the emails from the Kiji tables laid out by <code>ddl/email_schema.ddl</code>.
+ *
+ * <p>Single messages are read from the emails table, keyed by (from, timestamp). The latest
+ * messages of a sender are the latest versions of the "sent_messages" family of its row in the
+ * employee table, which is optional, either read on every request or cached row by row by an
+ * {@link EmployeeRowCache}. The tables are read through pools of readers.</p>
+ */
+public final class KijiEmailStore implements EmailStore {
+  /** Family of the messages in the emails table. */
+  private static final String EMAILS_FAMILY = "info";
+  /** Family of the messages in the employee table. */
+  private static final String EMPLOYEE_FAMILY = "sent_messages";
+
+  /** Reads the latest version of each column of a message. */
+  private static final KijiDataRequest MESSAGE_REQUEST = KijiDataRequest.create(EMAILS_FAMILY);
+
+  private final KijiTable mEmails;
+  private final TableReaderPool mEmailReaders;
+  /** The employee table, or null. */
+  private final KijiTable mEmployee;
+  /** Cache of the rows of the employee table, or null. */
+  private final EmployeeRowCache mEmployeeCache;
+  /** Pool of readers of the employee table, or null without employee table. */
+  private final TableReaderPool mEmployeeReaders;
+
+  /**
+   * Opens a store.
+   *
+   * @param emails the emails table.
+   * @param employee the employee table, or null to disable the latest messages of a sender.
+   * @param readers the number of readers opened on each table.
+   * @throws IOException if the readers cannot be opened.
+   */
+  public KijiEmailStore(KijiTable emails, KijiTable employee, int readers) throws IOException {
+    mEmails = emails;
+    mEmployee = employee;
+    mEmployeeCache = null;
+    mEmailReaders = new TableReaderPool(emails, readers);
+    try {
+      mEmployeeReaders = (null == employee) ? null : new TableReaderPool(employee, readers);
+    } catch (IOException ioe) {
+      mEmailReaders.close();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Opens a store reading the latest messages of the senders from a cache of the employee rows.
+   *
+   * @param emails the emails table.
+   * @param employeeCache the cache of the employee rows, closed with the store.
+   * @param readers the number of readers opened on the emails table.
+   * @throws IOException if the readers cannot be opened.
+   */
+  public KijiEmailStore(KijiTable emails, EmployeeRowCache employeeCache, int readers)
+      throws IOException {
+    mEmails = emails;
+    mEmailReaders = new TableReaderPool(emails, readers);
+    mEmployee = null;
+    mEmployeeReaders = null;
+    mEmployeeCache = employeeCache;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public StoredEmail getMessage(String from, long timestamp) throws IOException {
+    final KijiRowData row;
+    final KijiTableReader reader = mEmailReaders.borrow();
+    try {
+      row = reader.get(mEmails.getEntityId(from, timestamp), MESSAGE_REQUEST);
+    } finally {
+      mEmailReaders.release(reader);
+    }
+    if (!row.containsColumn(EMAILS_FAMILY)) {
+      return null;
+    }
+    return new StoredEmail(from, timestamp,
+        getString(row, EMAILS_FAMILY, "mid", null),
+        getString(row, EMAILS_FAMILY, "to", null),
+        getString(row, EMAILS_FAMILY, "cc", null),
+        getString(row, EMAILS_FAMILY, "subject", null),
+        getString(row, EMAILS_FAMILY, "body", null));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<StoredEmail> getLatestMessages(String from, int count) throws IOException {
+    if (null != mEmployeeCache) {
+      return mEmployeeCache.getLatestMessages(from, count);
+    }
+    if (null == mEmployeeReaders) {
+      throw new UnsupportedLookupException("No employee table to list the messages from.");
+    }
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(count).addFamily(EMPLOYEE_FAMILY);
+    final KijiRowData row;
+    final KijiTableReader reader = mEmployeeReaders.borrow();
+    try {
+      row = reader.get(mEmployee.getEntityId(from), builder.build());
+    } finally {
+      mEmployeeReaders.release(reader);
+    }
+    final List<StoredEmail> emails = Lists.newArrayList();
+    if (!row.containsColumn(EMPLOYEE_FAMILY, "mid")) {
+      return emails;
+    }
+    // Every column of a message carries the date of the message as timestamp.
+    final List<Long> timestamps = Lists.newArrayList(row.getTimestamps(EMPLOYEE_FAMILY, "mid"));
+    Collections.sort(timestamps, Collections.reverseOrder());
+    for (long timestamp : timestamps.subList(0, Math.min(count, timestamps.size()))) {
+      emails.add(new StoredEmail(from, timestamp,
+          getString(row, EMPLOYEE_FAMILY, "mid", timestamp),
+          getString(row, EMPLOYEE_FAMILY, "to", timestamp),
+          getString(row, EMPLOYEE_FAMILY, "cc", timestamp),
+          getString(row, EMPLOYEE_FAMILY, "subject", timestamp),
+          getString(row, EMPLOYEE_FAMILY, "body", timestamp)));
+    }
+    return emails;
+  }
+
+  /**
+   * Reads a string column.
+   *
+   * @param row the row to read.
+   * @param family the column family.
+   * @param qualifier the column qualifier.
+   * @param timestamp the version to read, or null for the latest one.
+   * @return the value of the column, or null if missing.
+   * @throws IOException on error.
+   */
+  private static String getString(KijiRowData row, String family, String qualifier,
+      Long timestamp) throws IOException {
+    if (!row.containsColumn(family, qualifier)) {
+      return null;
+    }
+    final CharSequence value = (null == timestamp)
+        ? row.<CharSequence>getMostRecentValue(family, qualifier)
+        : row.<CharSequence>getValue(family, qualifier, timestamp);
+    return (null == value) ? null : value.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    mEmailReaders.close();
+    if (null != mEmployeeReaders) {
+      mEmployeeReaders.close();
+    }
+    if (null != mEmployeeCache) {
+      mEmployeeCache.close();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+/**
+ * Reference to the row of a message in the emails table, as found in the index tables.
+ */
+public final class MessageRef {
+  private final String mFrom;
+  private final long mTimestamp;
+  private final String mMessageId;
+
+  /**
+   * @param from the sender of the message.
+   * @param timestamp the date of the message, in milliseconds since the epoch.
+   * @param messageId the Message-ID of the message, or null if unknown.
+   */
+  public MessageRef(String from, long timestamp, String messageId) {
+    mFrom = from;
+    mTimestamp = timestamp;
+    mMessageId = messageId;
+  }
+
+  /** @return the sender of the message. */
+  public String getFrom() {
+    return mFrom;
+  }
+
+  /** @return the date of the message, in milliseconds since the epoch. */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  /** @return the Message-ID of the message, or null if unknown. */
+  public String getMessageId() {
+    return mMessageId;
+  }
+}
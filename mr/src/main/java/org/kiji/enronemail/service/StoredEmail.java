@@ -0,0 +1,131 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+/**
+ * An email as served by {@link EmailService}: the columns written by the importer for one
+ * message.
+ */
+public final class StoredEmail {
+  /** Approximate fixed size of an email in memory, in bytes, excluding its strings. */
+  private static final int BASE_WEIGHT = 96;
+
+  private final String mFrom;
+  private final long mTimestamp;
+  private final String mMessageId;
+  private final String mTo;
+  private final String mCc;
+  private final String mSubject;
+  private final String mBody;
+
+  /**
+   * Creates an email. Any column but the sender and the timestamp may be null.
+   *
+   * @param from the sender.
+   * @param timestamp the date of the message, in milliseconds since the epoch.
+   * @param messageId the Message-ID.
+   * @param to the recipients.
+   * @param cc the carbon-copied recipients.
+   * @param subject the subject.
+   * @param body the normalized body.
+   */
+  public StoredEmail(String from, long timestamp, String messageId, String to, String cc,
+      String subject, String body) {
+    mFrom = from;
+    mTimestamp = timestamp;
+    mMessageId = messageId;
+    mTo = to;
+    mCc = cc;
+    mSubject = subject;
+    mBody = body;
+  }
+
+  /** @return the sender. */
+  public String getFrom() {
+    return mFrom;
+  }
+
+  /** @return the date of the message, in milliseconds since the epoch. */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  /** @return the Message-ID, or null. */
+  public String getMessageId() {
+    return mMessageId;
+  }
+
+  /** @return the recipients, or null. */
+  public String getTo() {
+    return mTo;
+  }
+
+  /** @return the carbon-copied recipients, or null. */
+  public String getCc() {
+    return mCc;
+  }
+
+  /** @return the subject, or null. */
+  public String getSubject() {
+    return mSubject;
+  }
+
+  /** @return the normalized body, or null. */
+  public String getBody() {
+    return mBody;
+  }
+
+  /** @return the approximate size of the email in memory, in bytes. */
+  public int getWeight() {
+    return BASE_WEIGHT + 2 * (length(mFrom) + length(mMessageId) + length(mTo) + length(mCc)
+        + length(mSubject) + length(mBody));
+  }
+
+  /**
+   * Appends the email as a JSON object.
+   *
+   * @param out the builder to append to.
+   * @return the builder.
+   */
+  public StringBuilder appendJson(StringBuilder out) {
+    out.append("{\"from\": ");
+    Json.appendString(mFrom, out);
+    out.append(", \"timestamp\": ").append(mTimestamp);
+    out.append(", \"mid\": ");
+    Json.appendString(mMessageId, out);
+    out.append(", \"to\": ");
+    Json.appendString(mTo, out);
+    out.append(", \"cc\": ");
+    Json.appendString(mCc, out);
+    out.append(", \"subject\": ");
+    Json.appendString(mSubject, out);
+    out.append(", \"body\": ");
+    Json.appendString(mBody, out);
+    return out.append('}');
+  }
+
+  /**
+   * @param value a string, or null.
+   * @return the length of the string, or 0 if null.
+   */
+  private static int length(String value) {
+    return (null == value) ? 0 : value.length();
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+
+/**
+ * Fixed-size pool of readers opened on one table.
+ *
+ * <p>Opening a reader is expensive, so the readers are opened once and lent to one request at a
+ * time. Callers must give back every reader they borrow:</p>
+ * <pre>
+ *   final KijiTableReader reader = pool.borrow();
+ *   try {
+ *     ...
+ *   } finally {
+ *     pool.release(reader);
+ *   }
+ * </pre>
+ */
+public final class TableReaderPool implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(TableReaderPool.class);
+
+  /** Every reader of the pool, to close them. */
+  private final List<KijiTableReader> mReaders = Lists.newArrayList();
+  /** Readers not lent. */
+  private final BlockingQueue<KijiTableReader> mIdle;
+
+  /**
+   * Opens the readers of a pool.
+   *
+   * @param table the table to read.
+   * @param size the number of readers.
+   * @throws IOException if a reader cannot be opened.
+   */
+  public TableReaderPool(KijiTable table, int size) throws IOException {
+    Preconditions.checkArgument(size > 0, "Invalid reader pool size: %s", size);
+    mIdle = new ArrayBlockingQueue<KijiTableReader>(size);
+    try {
+      for (int i = 0; i < size; i++) {
+        final KijiTableReader reader = table.getReaderFactory().openTableReader();
+        mReaders.add(reader);
+        mIdle.add(reader);
+      }
+    } catch (IOException ioe) {
+      close();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Borrows a reader, waiting for one to be released if they are all lent.
+   *
+   * @return the borrowed reader.
+   * @throws InterruptedIOException if interrupted while waiting.
+   */
+  public KijiTableReader borrow() throws InterruptedIOException {
+    try {
+      return mIdle.take();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a table reader.");
+    }
+  }
+
+  /**
+   * Gives back a borrowed reader.
+   *
+   * @param reader the reader returned by {@link #borrow()}.
+   */
+  public void release(KijiTableReader reader) {
+    mIdle.add(reader);
+  }
+
+  /** Closes every reader, lent or not. */
+  @Override
+  public void close() {
+    for (KijiTableReader reader : mReaders) {
+      try {
+        reader.close();
+      } catch (IOException ioe) {
+        LOG.warn("Unable to close table reader: {}", ioe.getMessage());
+      }
+    }
+    mReaders.clear();
+  }
+}
@@ -0,0 +1,38 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a lookup needs a table the service was not given, e.g. the latest messages of a
+ * sender without employee table, as opposed to an I/O error while reading. Answered with a 501
+ * status.
+ */
+public class UnsupportedLookupException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message description of the missing table.
+   */
+  public UnsupportedLookupException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Embedded HTTP service answering online lookups and sentiment scoring over the emails and
+ * employee tables.
+ *
+ * <p>{@link org.kiji.enronemail.service.EmailService} serves the requests from an
+ * {@link org.kiji.enronemail.service.EmailStore}: the Kiji tables, read through a pool of table
+ * readers, behind a size-bounded LRU cache of messages, or an in-memory store loaded from a
+ * Maildir for load tests.</p>
+ */
+package org.kiji.enronemail.service;
@@ -0,0 +1,198 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * The messages whose {@link MinHasher} signatures share a band, buffered to find their
+ * near-duplicates.
+ *
+ * <p>The representative of a bucket is its earliest message, ties going to the lowest Message-ID
+ * hash and then to the lowest sender. Each other message is compared with the representative
+ * only, so resolving a bucket takes time linear in its size. Messages are held in flat arrays,
+ * reused across buckets through {@link #clear()}.</p>
+ */
+public final class LshBucket {
+  /** Number of values of the signatures. */
+  private final int mNumHashes;
+  /** Row key and Message-ID hash of each message. */
+  private final List<String> mSenders = Lists.newArrayList();
+  private long[] mTimestamps = new long[16];
+  private long[] mMessageIds = new long[16];
+  /** Signature of message i, from mSignatures[i * mNumHashes]. */
+  private int[] mSignatures;
+
+  /**
+   * Creates an empty bucket.
+   *
+   * @param numHashes the number of values of the signatures.
+   */
+  public LshBucket(int numHashes) {
+    mNumHashes = numHashes;
+    mSignatures = new int[16 * numHashes];
+  }
+
+  /** Removes every message. */
+  public void clear() {
+    mSenders.clear();
+  }
+
+  /** @return the number of messages in the bucket. */
+  public int size() {
+    return mSenders.size();
+  }
+
+  /**
+   * Adds a message whose signature is stored as big-endian ints.
+   *
+   * @param from the sender of the message.
+   * @param timestamp the date of the message.
+   * @param messageId the hash of the Message-ID of the message.
+   * @param signature the signature, from its position to its limit. The position is unchanged.
+   */
+  public void add(String from, long timestamp, long messageId, ByteBuffer signature) {
+    Preconditions.checkArgument(signature.remaining() == 4 * mNumHashes,
+        "Expected a signature of %s bytes, got %s.", 4 * mNumHashes, signature.remaining());
+    final int offset = grow() * mNumHashes;
+    for (int i = 0; i < mNumHashes; i++) {
+      mSignatures[offset + i] = signature.getInt(signature.position() + 4 * i);
+    }
+    append(from, timestamp, messageId);
+  }
+
+  /**
+   * Adds a message.
+   *
+   * @param from the sender of the message.
+   * @param timestamp the date of the message.
+   * @param messageId the hash of the Message-ID of the message.
+   * @param signature the signature, copied.
+   */
+  public void add(String from, long timestamp, long messageId, int[] signature) {
+    System.arraycopy(signature, 0, mSignatures, grow() * mNumHashes, mNumHashes);
+    append(from, timestamp, messageId);
+  }
+
+  /**
+   * Makes room for one more message.
+   *
+   * @return the index of the next message.
+   */
+  private int grow() {
+    final int index = mSenders.size();
+    if (index == mTimestamps.length) {
+      mTimestamps = Arrays.copyOf(mTimestamps, 2 * index);
+      mMessageIds = Arrays.copyOf(mMessageIds, 2 * index);
+      mSignatures = Arrays.copyOf(mSignatures, 2 * index * mNumHashes);
+    }
+    return index;
+  }
+
+  /**
+   * Stores the key of the next message, whose signature is already stored.
+   *
+   * @param from the sender of the message.
+   * @param timestamp the date of the message.
+   * @param messageId the hash of the Message-ID of the message.
+   */
+  private void append(String from, long timestamp, long messageId) {
+    final int index = mSenders.size();
+    mTimestamps[index] = timestamp;
+    mMessageIds[index] = messageId;
+    mSenders.add(from);
+  }
+
+  /**
+   * @param index the index of a message, from 0 to {@link #size()} excluded.
+   * @return the sender of the message.
+   */
+  public String getFrom(int index) {
+    return mSenders.get(index);
+  }
+
+  /**
+   * @param index the index of a message, from 0 to {@link #size()} excluded.
+   * @return the date of the message.
+   */
+  public long getTimestamp(int index) {
+    return mTimestamps[index];
+  }
+
+  /**
+   * @param index the index of a message, from 0 to {@link #size()} excluded.
+   * @return the hash of the Message-ID of the message.
+   */
+  public long getMessageId(int index) {
+    return mMessageIds[index];
+  }
+
+  /** @return the index of the representative of the bucket, or -1 if the bucket is empty. */
+  public int getRepresentative() {
+    int representative = -1;
+    for (int i = 0; i < mSenders.size(); i++) {
+      if (representative < 0 || isBefore(i, representative)) {
+        representative = i;
+      }
+    }
+    return representative;
+  }
+
+  /**
+   * @param index the index of a message.
+   * @param other the index of another message.
+   * @return whether the first message precedes the other as a representative.
+   */
+  private boolean isBefore(int index, int other) {
+    if (mTimestamps[index] != mTimestamps[other]) {
+      return mTimestamps[index] < mTimestamps[other];
+    }
+    if (mMessageIds[index] != mMessageIds[other]) {
+      return mMessageIds[index] < mMessageIds[other];
+    }
+    return mSenders.get(index).compareTo(mSenders.get(other)) < 0;
+  }
+
+  /**
+   * @param index the index of a message.
+   * @param other the index of another message.
+   * @return whether both are the same row of the emails table.
+   */
+  public boolean isSameRow(int index, int other) {
+    return mTimestamps[index] == mTimestamps[other]
+        && mSenders.get(index).equals(mSenders.get(other));
+  }
+
+  /**
+   * @param index the index of a message.
+   * @param other the index of another message.
+   * @return the Jaccard similarity of the shingles of the messages, estimated from their
+   *     signatures.
+   */
+  public float similarity(int index, int other) {
+    return MinHasher.similarity(
+        mSignatures, index * mNumHashes, mSignatures, other * mNumHashes, mNumHashes);
+  }
+}
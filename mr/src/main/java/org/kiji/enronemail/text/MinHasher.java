@@ -0,0 +1,208 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Computes MinHash signatures of texts, over their shingles of consecutive words.
+ *
+ * <p>The fraction of the positions where the signatures of two texts agree estimates the Jaccard
+ * similarity of their sets of shingles. A shingle is the hash of a window of
+ * {@link #getShingleSize()} consecutive lower-cased words, and each of the
+ * {@link #getNumHashes()} values of a signature is the minimum of a multiply-shift hash of the
+ * shingles. Texts of fewer words than a shingle are one shingle of all their words.</p>
+ *
+ * <p>Signatures are written into a caller-supplied array, so signing a text allocates nothing.
+ * The hash functions only depend on the seed, so hashers built with the same parameters in
+ * different tasks compute the same signatures. A hasher is reusable but not thread-safe.</p>
+ */
+public final class MinHasher {
+  /** Default number of consecutive words of a shingle. */
+  public static final int DEFAULT_SHINGLE_SIZE = 5;
+
+  /** Default seed of the hash functions. */
+  public static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+  /** Multiplier of the 64-bit FNV-1a hash of the words. */
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  /** Odd multiplier and increment of each hash function. */
+  private final long[] mMultipliers;
+  private final long[] mIncrements;
+  /** Number of consecutive words of a shingle. */
+  private final int mShingleSize;
+  /** Hashes of the last words, a circular buffer. */
+  private final long[] mWindow;
+  /** Splits the texts into words, reused across texts. */
+  private final Tokenizer mTokenizer = new Tokenizer();
+
+  /**
+   * Creates a hasher.
+   *
+   * @param numHashes the number of values of a signature.
+   * @param shingleSize the number of consecutive words of a shingle.
+   * @param seed the seed of the hash functions.
+   */
+  public MinHasher(int numHashes, int shingleSize, long seed) {
+    Preconditions.checkArgument(numHashes > 0, "Invalid number of hashes: %s", numHashes);
+    Preconditions.checkArgument(shingleSize > 0, "Invalid shingle size: %s", shingleSize);
+    mMultipliers = new long[numHashes];
+    mIncrements = new long[numHashes];
+    long state = seed;
+    for (int i = 0; i < numHashes; i++) {
+      state += 0x9E3779B97F4A7C15L;
+      mMultipliers[i] = mix(state) | 1L;
+      state += 0x9E3779B97F4A7C15L;
+      mIncrements[i] = mix(state);
+    }
+    mShingleSize = shingleSize;
+    mWindow = new long[shingleSize];
+  }
+
+  /** @return the number of values of a signature. */
+  public int getNumHashes() {
+    return mMultipliers.length;
+  }
+
+  /** @return the number of consecutive words of a shingle. */
+  public int getShingleSize() {
+    return mShingleSize;
+  }
+
+  /**
+   * Computes the signature of a text.
+   *
+   * @param text the text.
+   * @param signature receives the signature, {@link #getNumHashes()} ints.
+   * @return the number of shingles of the text, 0 if it has no word. The signature of a text
+   *     without shingles is meaningless.
+   */
+  public int sign(CharSequence text, int[] signature) {
+    Arrays.fill(signature, 0, mMultipliers.length, Integer.MAX_VALUE);
+    mTokenizer.reset(text);
+    long words = 0;
+    while (mTokenizer.next()) {
+      long hash = FNV_OFFSET_BASIS;
+      for (int i = 0; i < mTokenizer.length(); i++) {
+        hash = (hash ^ mTokenizer.charAt(i)) * FNV_PRIME;
+      }
+      mWindow[(int) (words % mShingleSize)] = hash;
+      words++;
+      if (words >= mShingleSize) {
+        update(shingle(words, mShingleSize), signature);
+      }
+    }
+    if (words > 0 && words < mShingleSize) {
+      update(shingle(words, (int) words), signature);
+    }
+    if (words >= mShingleSize) {
+      return (int) (words - mShingleSize + 1);
+    }
+    return (words > 0) ? 1 : 0;
+  }
+
+  /**
+   * Hashes the last words, oldest first.
+   *
+   * @param words the number of words seen so far.
+   * @param length the number of words to hash, at most the shingle size.
+   * @return the hash of the shingle.
+   */
+  private long shingle(long words, int length) {
+    long hash = FNV_OFFSET_BASIS;
+    for (long i = words - length; i < words; i++) {
+      hash = (hash ^ mWindow[(int) (i % mShingleSize)]) * FNV_PRIME;
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Lowers the values of a signature with the hashes of a shingle.
+   *
+   * @param shingle the hash of the shingle.
+   * @param signature the signature to update.
+   */
+  private void update(long shingle, int[] signature) {
+    for (int i = 0; i < mMultipliers.length; i++) {
+      // The high bits of a multiply-add are the well-mixed ones.
+      final int value = (int) ((mMultipliers[i] * shingle + mIncrements[i]) >>> 32);
+      if (value < signature[i]) {
+        signature[i] = value;
+      }
+    }
+  }
+
+  /**
+   * Hashes a band of a signature into a bucket key for locality-sensitive hashing. Texts whose
+   * signatures agree on every row of a band share the key of the band.
+   *
+   * @param signature the signature.
+   * @param band the index of the band, from 0 to 255.
+   * @param rowsPerBand the number of values of each band.
+   * @return the key of the bucket, the band in the top 8 bits and the hash of its rows below.
+   */
+  public static long bandKey(int[] signature, int band, int rowsPerBand) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = band * rowsPerBand; i < (band + 1) * rowsPerBand; i++) {
+      hash = (hash ^ (signature[i] & 0xFFFFFFFFL)) * FNV_PRIME;
+    }
+    return ((long) band << 56) | (mix(hash) >>> 8);
+  }
+
+  /**
+   * Estimates the Jaccard similarity of the shingles of two texts from their signatures.
+   *
+   * @param signatures the array holding the first signature.
+   * @param offset the index of the first signature in its array.
+   * @param otherSignatures the array holding the second signature.
+   * @param otherOffset the index of the second signature in its array.
+   * @param length the number of values of the signatures.
+   * @return the fraction of the values the signatures agree on.
+   */
+  public static float similarity(int[] signatures, int offset, int[] otherSignatures,
+      int otherOffset, int length) {
+    int equal = 0;
+    for (int i = 0; i < length; i++) {
+      if (signatures[offset + i] == otherSignatures[otherOffset + i]) {
+        equal++;
+      }
+    }
+    return (float) equal / length;
+  }
+
+  /**
+   * Finalizes a 64-bit hash, as MurmurHash3 does.
+   *
+   * @param hash the hash to mix.
+   * @return the mixed hash.
+   */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
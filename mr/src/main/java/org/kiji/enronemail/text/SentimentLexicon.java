@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Immutable map from words to sentiment scores, such as the AFINN word list.
+ *
+ * <p>Words are looked up as slices of a {@link CharSequence}, ignoring ASCII case, so that
+ * scoring a message allocates neither a substring nor a lower-cased copy per token. The words are
+ * packed into a {@link WordTable}; scores are primitive floats.</p>
+ */
+public final class SentimentLexicon {
+  /** The words. */
+  private final WordTable mWords;
+  /** Score of word i. */
+  private final float[] mScores;
+
+  /**
+   * Builds a lexicon.
+   *
+   * @param words the words, lower-cased and without duplicates.
+   * @param scores the score of each word.
+   */
+  private SentimentLexicon(String[] words, float[] scores) {
+    mWords = new WordTable(words);
+    mScores = scores;
+  }
+
+  /**
+   * Loads a lexicon of <code>word TAB score</code> lines, in UTF-8. Words are lower-cased; if a
+   * word appears on several lines, the last score wins.
+   *
+   * @param in the stream to read the lexicon from. It is not closed.
+   * @return the lexicon.
+   * @throws IOException if the lexicon cannot be read or holds a malformed line.
+   */
+  public static SentimentLexicon load(InputStream in) throws IOException {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+    final Map<String, Float> entries = Maps.newLinkedHashMap();
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      // Entries may be phrases holding spaces, but never tabs.
+      final int tab = line.lastIndexOf('\t');
+      if (tab <= 0) {
+        throw new IOException("Malformed lexicon line " + lineNumber + ": " + line);
+      }
+      try {
+        entries.put(WordTable.toLowerCase(line.substring(0, tab)),
+            Float.parseFloat(line.substring(tab + 1).trim()));
+      } catch (NumberFormatException nfe) {
+        throw new IOException("Malformed lexicon line " + lineNumber + ": " + line, nfe);
+      }
+    }
+    final String[] words = entries.keySet().toArray(new String[entries.size()]);
+    final float[] scores = new float[words.length];
+    for (int i = 0; i < words.length; i++) {
+      scores[i] = entries.get(words[i]);
+    }
+    return new SentimentLexicon(words, scores);
+  }
+
+  /** @return the number of words in the lexicon. */
+  public int size() {
+    return mScores.length;
+  }
+
+  /**
+   * Looks up a word, ignoring ASCII case.
+   *
+   * @param text the text holding the word.
+   * @param start the index of the first character of the word.
+   * @param end the index after the last character of the word.
+   * @return the index of the word in the lexicon, or -1 if it is not in the lexicon.
+   */
+  public int indexOf(CharSequence text, int start, int end) {
+    return mWords.indexOf(text, start, end);
+  }
+
+  /**
+   * @param index the index of a word, as returned by {@link #indexOf}.
+   * @return the score of the word.
+   */
+  public float getScore(int index) {
+    return mScores[index];
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Scores the sentiment of a text as the mean score of its words found in a lexicon, or 0 if none
+ * is found.
+ *
+ * <p>This is the scoring of <code>SentimentProducer</code>, shared with the tools that must
+ * produce the exact same scores. Texts can be scored one at a time or in batches; batches reuse
+ * the same tokenizer and lexicon for every text and write their scores into a primitive array,
+ * so scoring thousands of bodies allocates nothing per body. A scorer reuses its tokenizer, so it
+ * is not thread-safe; the lexicon can be shared by the scorers of several threads.</p>
+ */
+public final class SentimentScorer {
+  private final SentimentLexicon mLexicon;
+  private final Tokenizer mTokenizer = new Tokenizer();
+
+  /**
+   * Creates a scorer.
+   *
+   * @param lexicon the score of each word.
+   */
+  public SentimentScorer(SentimentLexicon lexicon) {
+    mLexicon = lexicon;
+  }
+
+  /**
+   * Scores a text.
+   *
+   * @param text the text to score, typically a normalized message body.
+   * @return the mean score of the words of the text found in the lexicon, or 0 if none is found.
+   */
+  public float score(CharSequence text) {
+    return score(mLexicon, mTokenizer, text);
+  }
+
+  /**
+   * Scores a batch of texts.
+   *
+   * @param texts the texts to score.
+   * @return the score of each text, as computed by {@link #score(CharSequence)}.
+   */
+  public float[] scoreBatch(List<? extends CharSequence> texts) {
+    final float[] scores = new float[texts.size()];
+    scoreBatch(texts, scores);
+    return scores;
+  }
+
+  /**
+   * Scores a batch of texts into an array, which callers scoring many batches can reuse.
+   *
+   * @param texts the texts to score.
+   * @param scores the array receiving the score of the i-th text at index i. Must hold at least
+   *     as many scores as there are texts; the scores past the texts are left untouched.
+   */
+  public void scoreBatch(List<? extends CharSequence> texts, float[] scores) {
+    Preconditions.checkArgument(scores.length >= texts.size(),
+        "Cannot store %s scores into an array of %s.", texts.size(), scores.length);
+    final SentimentLexicon lexicon = mLexicon;
+    final Tokenizer tokenizer = mTokenizer;
+    final int size = texts.size();
+    for (int i = 0; i < size; i++) {
+      scores[i] = score(lexicon, tokenizer, texts.get(i));
+    }
+  }
+
+  /**
+   * Scores a text.
+   *
+   * @param lexicon the score of each word.
+   * @param tokenizer the tokenizer to split the text with.
+   * @param text the text to score.
+   * @return the mean score of the words of the text found in the lexicon, or 0 if none is found.
+   */
+  private static float score(SentimentLexicon lexicon, Tokenizer tokenizer, CharSequence text) {
+    float score = 0.0f;
+    float numWords = 0.0f;
+    // Words are looked up in place, without creating a String per word.
+    tokenizer.reset(text);
+    while (tokenizer.next()) {
+      final int word = lexicon.indexOf(text, tokenizer.start(), tokenizer.end());
+      if (word >= 0) {
+        numWords++;
+        score += lexicon.getScore(word);
+      }
+    }
+    return (numWords > 0) ? score / numWords : 0.0f;
+  }
+}
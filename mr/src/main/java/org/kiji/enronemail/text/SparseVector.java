@@ -0,0 +1,152 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.util.Arrays;
+
+/**
+ * Sparse vector of floats indexed by non-negative ints, such as the term weights of a document.
+ *
+ * <p>Entries are appended in any order, possibly several times per index, then
+ * {@link #sumDuplicates()} sorts them by index and sums the values of each index. A document is
+ * thus encoded by appending (term id, 1) for each of its tokens. Vectors are reused across
+ * documents through {@link #clear()}, so encoding a document allocates nothing once the arrays
+ * have grown to the longest document.</p>
+ */
+public final class SparseVector {
+  /** The entries, each packed into a long: the index in the high half, the float bits below. */
+  private long[] mEntries = new long[256];
+  /** Number of entries. */
+  private int mSize = 0;
+
+  /** Removes every entry. */
+  public void clear() {
+    mSize = 0;
+  }
+
+  /** @return the number of entries. */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Appends an entry, without merging it with the entries of the same index.
+   *
+   * @param index the index of the entry, a non-negative int.
+   * @param value the value of the entry.
+   */
+  public void append(int index, float value) {
+    if (mSize == mEntries.length) {
+      mEntries = Arrays.copyOf(mEntries, mSize * 2);
+    }
+    mEntries[mSize++] = pack(index, value);
+  }
+
+  /**
+   * Sorts the entries by index and replaces the entries of each index with a single entry holding
+   * the sum of their values.
+   */
+  public void sumDuplicates() {
+    // Indexes are non-negative, so the packed longs sort by index first.
+    Arrays.sort(mEntries, 0, mSize);
+    int size = 0;
+    for (int i = 0; i < mSize; i++) {
+      final int index = getIndex(i);
+      if (size > 0 && getIndex(size - 1) == index) {
+        mEntries[size - 1] = pack(index, getValue(size - 1) + getValue(i));
+      } else {
+        mEntries[size++] = mEntries[i];
+      }
+    }
+    mSize = size;
+  }
+
+  /**
+   * @param position the position of an entry, from 0 to {@link #size()} excluded.
+   * @return the index of the entry.
+   */
+  public int getIndex(int position) {
+    return (int) (mEntries[position] >>> 32);
+  }
+
+  /**
+   * @param position the position of an entry, from 0 to {@link #size()} excluded.
+   * @return the value of the entry.
+   */
+  public float getValue(int position) {
+    return Float.intBitsToFloat((int) mEntries[position]);
+  }
+
+  /**
+   * Changes the value of an entry.
+   *
+   * @param position the position of an entry, from 0 to {@link #size()} excluded.
+   * @param value the new value of the entry.
+   */
+  public void setValue(int position, float value) {
+    mEntries[position] = pack(getIndex(position), value);
+  }
+
+  /**
+   * Selects the entries of the highest values, ties going to the lowest index.
+   *
+   * @param positions receives the positions of the selected entries, highest value first. Its
+   *     length is the number of entries to select.
+   * @return the number of entries selected, the smallest of the length of the array and the size
+   *     of the vector.
+   */
+  public int top(int[] positions) {
+    int count = 0;
+    for (int i = 0; i < mSize; i++) {
+      // Insertion into the selection, which stays short.
+      int slot = count;
+      while (slot > 0 && ranksBefore(i, positions[slot - 1])) {
+        slot--;
+      }
+      if (slot < positions.length) {
+        final int last = Math.min(count, positions.length - 1);
+        System.arraycopy(positions, slot, positions, slot + 1, last - slot);
+        positions[slot] = i;
+        count = Math.min(count + 1, positions.length);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param position the position of an entry.
+   * @param other the position of another entry.
+   * @return whether the first entry has a higher value, or the same value and a lower index.
+   */
+  private boolean ranksBefore(int position, int other) {
+    final float value = getValue(position);
+    final float otherValue = getValue(other);
+    return value > otherValue || (value == otherValue && getIndex(position) < getIndex(other));
+  }
+
+  /**
+   * @param index the index of an entry.
+   * @param value the value of the entry.
+   * @return the entry packed into a long.
+   */
+  private static long pack(int index, float value) {
+    return ((long) index << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+  }
+}
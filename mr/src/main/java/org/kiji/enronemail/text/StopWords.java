@@ -0,0 +1,103 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+/**
+ * English stop words, skipped when indexing the terms of a body.
+ *
+ * <p>This is the list of the Express jobs, without the contractions spelled with a typographic
+ * apostrophe, which the {@link Tokenizer} splits into separate words anyway. Lookups ignore ASCII
+ * case and allocate nothing.</p>
+ */
+public final class StopWords {
+  /** The stop words. */
+  private static final WordTable WORDS = new WordTable(new String[] {
+      "a", "able", "about", "above", "according", "accordingly", "across", "actually", "after",
+      "afterwards", "again", "against", "aint", "all", "allow", "allows", "almost", "alone",
+      "along", "already", "also", "although", "always", "am", "among", "amongst", "an", "and",
+      "another", "any", "anybody", "anyhow", "anyone", "anything", "anyway", "anyways", "anywhere",
+      "apart", "appear", "appreciate", "appropriate", "are", "arent", "around", "as", "aside",
+      "ask", "asking", "associated", "at", "available", "away", "awfully", "be", "became",
+      "because", "become", "becomes", "becoming", "been", "before", "beforehand", "behind", "being",
+      "believe", "below", "beside", "besides", "best", "better", "between", "beyond", "both",
+      "brief", "but", "by", "came", "can", "cant", "cannot", "cause", "causes", "certain",
+      "certainly", "changes", "clearly", "co", "com", "come", "comes", "concerning", "consequently",
+      "consider", "considering", "contain", "containing", "contains", "corresponding", "could",
+      "couldnt", "course", "currently", "definitely", "described", "despite", "did", "didnt",
+      "different", "do", "does", "doesnt", "doing", "dont", "done", "down", "downwards", "during",
+      "each", "edu", "eg", "eight", "either", "else", "elsewhere", "enough", "entirely",
+      "especially", "et", "etc", "even", "ever", "every", "everybody", "everyone", "everything",
+      "everywhere", "ex", "exactly", "example", "except", "far", "few", "fifth", "first", "five",
+      "followed", "following", "follows", "for", "former", "formerly", "forth", "four", "from",
+      "further", "furthermore", "get", "gets", "getting", "given", "gives", "go", "goes", "going",
+      "gone", "got", "gotten", "greetings", "had", "hadnt", "happens", "hardly", "has", "hasnt",
+      "have", "havent", "having", "he", "hello", "help", "hence", "her", "here", "hereafter",
+      "hereby", "herein", "hereupon", "hers", "herself", "hi", "him", "himself", "his", "hither",
+      "hopefully", "how", "howbeit", "however", "i", "im", "ie", "if", "ignored", "immediate", "in",
+      "inasmuch", "inc", "indeed", "indicate", "indicated", "indicates", "inner", "insofar",
+      "instead", "into", "inward", "is", "isnt", "it", "its", "itself", "just", "keep", "keeps",
+      "kept", "know", "knows", "known", "last", "lately", "later", "latter", "latterly", "least",
+      "less", "lest", "let", "like", "liked", "likely", "little", "look", "looking", "looks", "ltd",
+      "mainly", "many", "may", "maybe", "me", "mean", "meanwhile", "merely", "might", "more",
+      "moreover", "most", "mostly", "much", "must", "my", "myself", "name", "namely", "nd", "near",
+      "nearly", "necessary", "need", "needs", "neither", "never", "nevertheless", "new", "next",
+      "nine", "no", "nobody", "non", "none", "noone", "nor", "normally", "not", "nothing", "novel",
+      "now", "nowhere", "obviously", "of", "off", "often", "oh", "ok", "okay", "old", "on", "once",
+      "one", "ones", "only", "onto", "or", "other", "others", "otherwise", "ought", "our", "ours",
+      "ourselves", "out", "outside", "over", "overall", "own", "particular", "particularly", "per",
+      "perhaps", "placed", "please", "plus", "possible", "presumably", "probably", "provides",
+      "que", "quite", "qv", "rather", "rd", "re", "really", "reasonably", "regarding", "regardless",
+      "regards", "relatively", "respectively", "right", "said", "same", "saw", "say", "saying",
+      "says", "second", "secondly", "see", "seeing", "seem", "seemed", "seeming", "seems", "seen",
+      "self", "selves", "sensible", "sent", "serious", "seriously", "seven", "several", "shall",
+      "she", "should", "shouldnt", "since", "six", "so", "some", "somebody", "somehow", "someone",
+      "something", "sometime", "sometimes", "somewhat", "somewhere", "soon", "sorry", "specified",
+      "specify", "specifying", "still", "sub", "such", "sup", "sure", "take", "taken", "tell",
+      "tends", "th", "than", "thank", "thanks", "thanx", "that", "thats", "the", "their", "theirs",
+      "them", "themselves", "then", "thence", "there", "thereafter", "thereby", "therefore",
+      "therein", "theres", "thereupon", "these", "they", "think", "third", "this", "thorough",
+      "thoroughly", "those", "though", "three", "through", "throughout", "thru", "thus", "to",
+      "together", "too", "took", "toward", "towards", "tried", "tries", "truly", "try", "trying",
+      "twice", "two", "un", "under", "unfortunately", "unless", "unlikely", "until", "unto", "up",
+      "upon", "us", "use", "used", "useful", "uses", "using", "usually", "value", "various", "very",
+      "via", "viz", "vs", "want", "wants", "was", "wasnt", "way", "we", "welcome", "well", "went",
+      "were", "werent", "what", "whatever", "when", "whence", "whenever", "where", "whereafter",
+      "whereas", "whereby", "wherein", "whereupon", "wherever", "whether", "which", "while",
+      "whither", "who", "whoever", "whole", "whom", "whose", "why", "will", "willing", "wish",
+      "with", "within", "without", "wont", "wonder", "would", "wouldnt", "yes", "yet", "you",
+      "youd", "youre", "youve", "your", "yours", "yourself", "yourselves", "zero"
+  });
+
+  /** Utility class cannot be instantiated. */
+  private StopWords() {
+  }
+
+  /**
+   * Tells whether a word is a stop word, ignoring ASCII case.
+   *
+   * @param text the text holding the word.
+   * @param start the index of the first character of the word.
+   * @param end the index after the last character of the word.
+   * @return whether the word is a stop word.
+   */
+  public static boolean contains(CharSequence text, int start, int end) {
+    return WORDS.indexOf(text, start, end) >= 0;
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+/**
+ * Splits text into words without allocating.
+ *
+ * <p>Words are the maximal runs of <code>\w</code> characters, i.e. ASCII letters, digits and
+ * underscores, which matches splitting the text on <code>\W</code>. A tokenizer iterates over
+ * the words of a text in place: after {@link #next()} returns true, the tokenizer itself is a
+ * {@link CharSequence} view of the current word with ASCII letters lower-cased, which can be
+ * passed to lookups such as {@link SentimentLexicon#indexOf} without creating a String. Call
+ * {@link #toString()} to materialize a word that must outlive the next call to {@link #next()}.
+ * </p>
+ *
+ * <p>A tokenizer is reusable through {@link #reset(CharSequence)}, but not thread-safe.</p>
+ *
+ * <pre>
+ *   final Tokenizer tokenizer = new Tokenizer();
+ *   tokenizer.reset(body);
+ *   while (tokenizer.next()) {
+ *     final int word = lexicon.indexOf(tokenizer, 0, tokenizer.length());
+ *     ...
+ *   }
+ * </pre>
+ */
+public final class Tokenizer implements CharSequence {
+  /** The text being tokenized. */
+  private CharSequence mText = "";
+  /** Index of the end of the text. */
+  private int mTextEnd = 0;
+  /** Bounds of the current word in the text, or of the last word once the text is exhausted. */
+  private int mStart = 0;
+  private int mEnd = 0;
+
+  /**
+   * Starts tokenizing a new text.
+   *
+   * @param text the text to tokenize. It must not change while it is tokenized.
+   * @return this tokenizer.
+   */
+  public Tokenizer reset(CharSequence text) {
+    return reset(text, 0, text.length());
+  }
+
+  /**
+   * Starts tokenizing a range of a text.
+   *
+   * @param text the text holding the range to tokenize. It must not change while it is tokenized.
+   * @param start the index of the first character to tokenize.
+   * @param end the index after the last character to tokenize.
+   * @return this tokenizer.
+   */
+  public Tokenizer reset(CharSequence text, int start, int end) {
+    mText = text;
+    mTextEnd = end;
+    mStart = start;
+    mEnd = start;
+    return this;
+  }
+
+  /**
+   * Advances to the next word.
+   *
+   * @return whether there is a next word, which this tokenizer now represents.
+   */
+  public boolean next() {
+    int start = mEnd;
+    while (start < mTextEnd && !isWordChar(mText.charAt(start))) {
+      start++;
+    }
+    if (start == mTextEnd) {
+      mStart = start;
+      mEnd = start;
+      return false;
+    }
+    int end = start + 1;
+    while (end < mTextEnd && isWordChar(mText.charAt(end))) {
+      end++;
+    }
+    mStart = start;
+    mEnd = end;
+    return true;
+  }
+
+  /** @return the index of the first character of the current word in the text. */
+  public int start() {
+    return mStart;
+  }
+
+  /** @return the index after the last character of the current word in the text. */
+  public int end() {
+    return mEnd;
+  }
+
+  /** @return the length of the current word. */
+  @Override
+  public int length() {
+    return mEnd - mStart;
+  }
+
+  /**
+   * @param index the index of a character in the current word.
+   * @return the character, lower-cased if it is an ASCII letter.
+   */
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= mEnd - mStart) {
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+    }
+    return toLowerCase(mText.charAt(mStart + index));
+  }
+
+  /**
+   * Copies a part of the current word.
+   *
+   * @param start the index of the first character of the part in the word.
+   * @param end the index after the last character of the part in the word.
+   * @return the lower-cased part of the word.
+   */
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > mEnd - mStart || start > end) {
+      throw new IndexOutOfBoundsException(start + ", " + end);
+    }
+    final char[] chars = new char[end - start];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = toLowerCase(mText.charAt(mStart + start + i));
+    }
+    return new String(chars);
+  }
+
+  /** @return a copy of the current word, lower-cased. */
+  @Override
+  public String toString() {
+    return subSequence(0, mEnd - mStart).toString();
+  }
+
+  /**
+   * @param c a character.
+   * @return whether the character is matched by the <code>\w</code> regular expression.
+   */
+  public static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')
+        || '_' == c;
+  }
+
+  /**
+   * @param c a character.
+   * @return the character, lower-cased if it is an ASCII upper-case letter.
+   */
+  public static char toLowerCase(char c) {
+    return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+  }
+}
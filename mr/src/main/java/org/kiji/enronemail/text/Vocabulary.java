@@ -0,0 +1,235 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Immutable dictionary of the terms of a corpus, with their document frequencies.
+ *
+ * <p>Each term gets a dense int id, so a document can be encoded as a {@link SparseVector} of term
+ * ids without creating a String per token: {@link #indexOf} looks up slices of a
+ * {@link CharSequence} ignoring ASCII case, like {@link SentimentLexicon}. The inverse document
+ * frequency of each term, <code>log2(N / df)</code> for a corpus of N documents, is computed once
+ * when the vocabulary is built.</p>
+ *
+ * <p>Vocabularies are read from the <code>term TAB df</code> lines written by the document
+ * frequency job. The number of documents of the corpus is on the line of the reserved term
+ * {@link #DOCUMENT_COUNT_KEY}, which the tokenizer never produces.</p>
+ */
+public final class Vocabulary {
+  /** Term of the line holding the number of documents of the corpus. */
+  public static final String DOCUMENT_COUNT_KEY = "#documents";
+
+  /** Natural logarithm of 2, to compute base 2 logarithms. */
+  private static final double LN_2 = Math.log(2.0);
+
+  /** The terms. */
+  private final WordTable mTerms;
+  /** Number of documents holding term i. */
+  private final int[] mDocumentFrequencies;
+  /** Inverse document frequency of term i. */
+  private final float[] mIdfs;
+  /** Number of documents of the corpus. */
+  private final long mDocumentCount;
+
+  /**
+   * Collects the terms of a vocabulary and their document frequencies.
+   *
+   * <p>The terms are kept in flat arrays rather than a map, since a vocabulary may hold millions of
+   * terms: a term added twice is only merged when the vocabulary is built.</p>
+   */
+  public static final class Builder {
+    /** The terms added, lower-cased. */
+    private final List<String> mTerms = Lists.newArrayList();
+    /** Document frequency of each term added. */
+    private int[] mDocumentFrequencies = new int[1024];
+    /** Number of documents of the corpus. */
+    private long mDocumentCount = 0;
+
+    /**
+     * Adds a term.
+     *
+     * @param term the term.
+     * @param documentFrequency the number of documents holding the term.
+     * @return this builder.
+     */
+    public Builder addTerm(String term, int documentFrequency) {
+      Preconditions.checkArgument(documentFrequency > 0,
+          "Invalid document frequency of %s: %s", term, documentFrequency);
+      final int index = mTerms.size();
+      if (index == mDocumentFrequencies.length) {
+        mDocumentFrequencies = Arrays.copyOf(mDocumentFrequencies, index + (index >> 1));
+      }
+      mTerms.add(WordTable.toLowerCase(term));
+      mDocumentFrequencies[index] = documentFrequency;
+      return this;
+    }
+
+    /**
+     * Adds documents to the corpus.
+     *
+     * @param count the number of documents to add.
+     * @return this builder.
+     */
+    public Builder addDocuments(long count) {
+      mDocumentCount += count;
+      return this;
+    }
+
+    /**
+     * Reads <code>term TAB df</code> lines, in UTF-8, such as one part of the output of the
+     * document frequency job.
+     *
+     * @param in the stream to read the terms from. It is not closed.
+     * @return this builder.
+     * @throws IOException if the terms cannot be read or a line is malformed.
+     */
+    public Builder read(InputStream in) throws IOException {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isEmpty()) {
+          continue;
+        }
+        final int tab = line.indexOf('\t');
+        if (tab <= 0) {
+          throw new IOException("Malformed vocabulary line " + lineNumber + ": " + line);
+        }
+        final String term = line.substring(0, tab);
+        try {
+          final long count = Long.parseLong(line.substring(tab + 1).trim());
+          if (DOCUMENT_COUNT_KEY.equals(term)) {
+            addDocuments(count);
+          } else if (count > 0 && count <= Integer.MAX_VALUE) {
+            addTerm(term, (int) count);
+          } else {
+            throw new IOException("Malformed vocabulary line " + lineNumber + ": " + line);
+          }
+        } catch (NumberFormatException nfe) {
+          throw new IOException("Malformed vocabulary line " + lineNumber + ": " + line, nfe);
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Builds the vocabulary. The document frequencies of a term added several times are summed.
+     *
+     * @return the vocabulary.
+     */
+    public Vocabulary build() {
+      Preconditions.checkState(mDocumentCount > 0, "The vocabulary has no document count.");
+      final String[] terms = mTerms.toArray(new String[mTerms.size()]);
+      final WordTable table = new WordTable(terms);
+      final int[] documentFrequencies = Arrays.copyOf(mDocumentFrequencies, terms.length);
+      for (int i = 0; i < terms.length; i++) {
+        // Lookups only ever return the first copy of a term.
+        final int first = table.indexOf(terms[i], 0, terms[i].length());
+        if (first != i) {
+          documentFrequencies[first] += documentFrequencies[i];
+          documentFrequencies[i] = 0;
+        }
+      }
+      return new Vocabulary(table, documentFrequencies, mDocumentCount);
+    }
+  }
+
+  /**
+   * Builds a vocabulary.
+   *
+   * @param terms the terms.
+   * @param documentFrequencies the number of documents holding each term.
+   * @param documentCount the number of documents of the corpus.
+   */
+  private Vocabulary(WordTable terms, int[] documentFrequencies, long documentCount) {
+    mTerms = terms;
+    mDocumentFrequencies = documentFrequencies;
+    mDocumentCount = documentCount;
+    mIdfs = new float[documentFrequencies.length];
+    for (int i = 0; i < mIdfs.length; i++) {
+      if (documentFrequencies[i] > 0) {
+        mIdfs[i] = (float) (Math.log((double) documentCount / documentFrequencies[i]) / LN_2);
+      }
+    }
+  }
+
+  /** @return a new vocabulary builder. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** @return the number of term ids, including the ids of merged duplicates. */
+  public int size() {
+    return mTerms.size();
+  }
+
+  /** @return the number of documents of the corpus. */
+  public long getDocumentCount() {
+    return mDocumentCount;
+  }
+
+  /**
+   * Looks up a term, ignoring ASCII case.
+   *
+   * @param text the text holding the term.
+   * @param start the index of the first character of the term.
+   * @param end the index after the last character of the term.
+   * @return the id of the term, or -1 if it is not in the vocabulary.
+   */
+  public int indexOf(CharSequence text, int start, int end) {
+    return mTerms.indexOf(text, start, end);
+  }
+
+  /**
+   * @param index the id of a term, as returned by {@link #indexOf}.
+   * @return the term.
+   */
+  public String getTerm(int index) {
+    return mTerms.getWord(index);
+  }
+
+  /**
+   * @param index the id of a term, as returned by {@link #indexOf}.
+   * @return the number of documents holding the term.
+   */
+  public int getDocumentFrequency(int index) {
+    return mDocumentFrequencies[index];
+  }
+
+  /**
+   * @param index the id of a term, as returned by {@link #indexOf}.
+   * @return the inverse document frequency of the term, <code>log2(N / df)</code>.
+   */
+  public float getIdf(int index) {
+    return mIdfs[index];
+  }
+}
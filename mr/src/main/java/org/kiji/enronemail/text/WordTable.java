@@ -0,0 +1,178 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.text;
+
+/**
+ * Immutable set of lower-case words, each with a dense index, looked up as slices of a
+ * {@link CharSequence} ignoring ASCII case.
+ *
+ * <p>Lookups allocate neither a substring nor a lower-cased copy per token. The words are packed
+ * into a single char array and indexed by an open-addressing hash table with linear probing.
+ * This is the storage of the lexicons of this package, which add their own per-word values in
+ * primitive arrays indexed like the words.</p>
+ */
+final class WordTable {
+  /** Every word, lower-cased and concatenated. */
+  private final char[] mChars;
+  /** Word i spans mChars[mOffsets[i]] to mChars[mOffsets[i + 1]] excluded. */
+  private final int[] mOffsets;
+  /** Hash table of word indexes plus one, 0 marking an empty slot. Its size is a power of 2. */
+  private final int[] mSlots;
+
+  /**
+   * Builds a table.
+   *
+   * @param words the words, lower-cased and without duplicates. Word i gets the index i.
+   */
+  WordTable(String[] words) {
+    int length = 0;
+    for (String word : words) {
+      length += word.length();
+    }
+    mChars = new char[length];
+    mOffsets = new int[words.length + 1];
+    for (int i = 0, offset = 0; i < words.length; i++) {
+      words[i].getChars(0, words[i].length(), mChars, offset);
+      offset += words[i].length();
+      mOffsets[i + 1] = offset;
+    }
+    // Keep the load factor at or below 1/2 so probe sequences stay short.
+    mSlots = new int[Integer.highestOneBit(Math.max(words.length, 1) * 2) << 1];
+    final int mask = mSlots.length - 1;
+    for (int i = 0; i < words.length; i++) {
+      int slot = hash(mChars, mOffsets[i], mOffsets[i + 1]) & mask;
+      while (0 != mSlots[slot]) {
+        slot = (slot + 1) & mask;
+      }
+      mSlots[slot] = i + 1;
+    }
+  }
+
+  /** @return the number of words in the table. */
+  int size() {
+    return mOffsets.length - 1;
+  }
+
+  /**
+   * Looks up a word, ignoring ASCII case.
+   *
+   * @param text the text holding the word.
+   * @param start the index of the first character of the word.
+   * @param end the index after the last character of the word.
+   * @return the index of the word in the table, or -1 if it is not in the table.
+   */
+  int indexOf(CharSequence text, int start, int end) {
+    final int mask = mSlots.length - 1;
+    int slot = hash(text, start, end) & mask;
+    int entry;
+    while (0 != (entry = mSlots[slot])) {
+      if (matches(entry - 1, text, start, end)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the word.
+   */
+  String getWord(int index) {
+    return new String(mChars, mOffsets[index], mOffsets[index + 1] - mOffsets[index]);
+  }
+
+  /**
+   * @param index the index of a word in the table.
+   * @param text the text holding the word to compare.
+   * @param start the index of the first character of the word to compare.
+   * @param end the index after the last character of the word to compare.
+   * @return whether the words are equal, ignoring the ASCII case of the compared word.
+   */
+  private boolean matches(int index, CharSequence text, int start, int end) {
+    final int offset = mOffsets[index];
+    if (mOffsets[index + 1] - offset != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (mChars[offset + i - start] != Tokenizer.toLowerCase(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hashes a word, ignoring ASCII case.
+   *
+   * @param text the text holding the word.
+   * @param start the index of the first character of the word.
+   * @param end the index after the last character of the word.
+   * @return the hash of the word.
+   */
+  private static int hash(CharSequence text, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + Tokenizer.toLowerCase(text.charAt(i));
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Hashes a word of a char array, like {@link #hash(CharSequence, int, int)}.
+   *
+   * @param chars the chars holding the word, already lower-cased.
+   * @param start the index of the first character of the word.
+   * @param end the index after the last character of the word.
+   * @return the hash of the word.
+   */
+  private static int hash(char[] chars, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + chars[i];
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Spreads the bits of a polynomial hash, whose low bits alone are poorly distributed.
+   *
+   * @param hash the hash to mix.
+   * @return the mixed hash.
+   */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+
+  /**
+   * @param word a word.
+   * @return the word with its ASCII letters lower-cased.
+   */
+  static String toLowerCase(String word) {
+    final char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Tokenizer.toLowerCase(chars[i]);
+    }
+    return new String(chars);
+  }
+}
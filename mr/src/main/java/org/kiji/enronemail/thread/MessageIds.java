@@ -0,0 +1,248 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.thread;
+
+import org.kiji.enronemail.bulkimport.Recipients;
+
+/**
+ * Parses and hashes the message identifiers of the Message-ID, In-Reply-To and References
+ * headers.
+ *
+ * <p>Identifiers are hashed to 64 bits with FNV-1a, so the reply graph holds primitive longs
+ * rather than strings. With half a million messages, the odds of two identifiers colliding are
+ * about one in 10^8.</p>
+ */
+public final class MessageIds {
+  /** Offset basis of the 64-bit FNV-1a hash. */
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  /** Prime of the 64-bit FNV-1a hash. */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /** Seeds the hashes of the subjects, so they never equal the hash of an identifier. */
+  private static final long SUBJECT_SEED = 0x5ab1ec75ab1ec75aL;
+
+  /** Reply and forward prefixes of the subjects, matched ignoring case. */
+  private static final String[] PREFIXES = {"re:", "fw:", "fwd:"};
+
+  /** Maximum number of identifiers kept from a References header, the most recent ones. */
+  public static final int MAX_REFERENCES = 64;
+
+  /** Utility class cannot be instantiated. */
+  private MessageIds() {
+  }
+
+  /**
+   * Hashes a message identifier, with or without its angle brackets.
+   *
+   * @param messageId the identifier, as stored in the info:mid column or in a header.
+   * @return the 64-bit hash of the identifier.
+   */
+  public static long hash(CharSequence messageId) {
+    int start = 0;
+    int end = messageId.length();
+    while (start < end && (Character.isWhitespace(messageId.charAt(start))
+        || '<' == messageId.charAt(start))) {
+      start++;
+    }
+    while (end > start && (Character.isWhitespace(messageId.charAt(end - 1))
+        || '>' == messageId.charAt(end - 1))) {
+      end--;
+    }
+    return hash(FNV_OFFSET_BASIS, messageId, start, end);
+  }
+
+  /**
+   * @param seed the initial value of the hash.
+   * @param text the text to hash.
+   * @param start the start of the region to hash.
+   * @param end the end of the region to hash.
+   * @return the FNV-1a hash of the UTF-16 code units of the region.
+   */
+  private static long hash(long seed, CharSequence text, int start, int end) {
+    long h = seed;
+    for (int i = start; i < end; i++) {
+      final char c = text.charAt(i);
+      h = (h ^ (c & 0xff)) * FNV_PRIME;
+      h = (h ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+  /**
+   * Hashes the ancestors of a message: the identifiers of its References header, oldest first,
+   * followed by the identifier of its In-Reply-To header unless it is the last reference.
+   *
+   * <p>Only the identifiers between angle brackets are kept, which skips the comments and the
+   * quoted addresses some clients add to In-Reply-To. Past {@link #MAX_REFERENCES}, the oldest
+   * references are dropped.</p>
+   *
+   * @param references the References header of the message, or null.
+   * @param inReplyTo the In-Reply-To header of the message, or null.
+   * @param ancestors the array to store the hashes in, of at least MAX_REFERENCES + 1 entries.
+   * @return the number of hashes stored.
+   */
+  public static int parseAncestors(String references, String inReplyTo, long[] ancestors) {
+    int count = 0;
+    if (null != references) {
+      count = parseIds(references, ancestors, 0, MAX_REFERENCES);
+    }
+    if (null != inReplyTo) {
+      final int parents = parseIds(inReplyTo, ancestors, count, 1);
+      if (1 == parents && count > 0 && ancestors[count] == ancestors[count - 1]) {
+        return count;
+      }
+      count += parents;
+    }
+    return count;
+  }
+
+  /**
+   * Hashes the identifiers between angle brackets of a header.
+   *
+   * @param header the header.
+   * @param ids the array to store the hashes in.
+   * @param offset the index of the first hash in the array.
+   * @param max the maximum number of hashes to store; past it, the oldest are dropped.
+   * @return the number of hashes stored.
+   */
+  private static int parseIds(String header, long[] ids, int offset, int max) {
+    int count = 0;
+    int pos = header.indexOf('<');
+    while (pos >= 0) {
+      final int end = header.indexOf('>', pos + 1);
+      if (end < 0) {
+        break;
+      }
+      if (end > pos + 1) {
+        if (count == max) {
+          System.arraycopy(ids, offset + 1, ids, offset, max - 1);
+          count--;
+        }
+        ids[offset + count] = hash(FNV_OFFSET_BASIS, header, pos + 1, end);
+        count++;
+      }
+      pos = header.indexOf('<', end + 1);
+    }
+    return count;
+  }
+
+  /**
+   * @param subject the subject of a message, or null.
+   * @return whether the subject starts with a reply or forward prefix such as "Re:".
+   */
+  public static boolean isReply(String subject) {
+    return null != subject && skipPrefixes(subject) > 0;
+  }
+
+  /**
+   * Hashes the subject of a message, without its reply and forward prefixes and ignoring case
+   * and runs of whitespace, so a reply hashes like the message it replies to.
+   *
+   * @param subject the subject of a message, or null.
+   * @return the hash of the normalized subject, or 0 if the subject is empty once normalized.
+   */
+  public static long hashSubject(String subject) {
+    if (null == subject) {
+      return 0L;
+    }
+    long h = SUBJECT_SEED;
+    boolean empty = true;
+    boolean space = false;
+    for (int i = skipPrefixes(subject); i < subject.length(); i++) {
+      final char c = subject.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = !empty;
+        continue;
+      }
+      if (space) {
+        h = (h ^ ' ') * FNV_PRIME;
+        space = false;
+      }
+      final char lower = Character.toLowerCase(c);
+      h = (h ^ (lower & 0xff)) * FNV_PRIME;
+      h = (h ^ (lower >>> 8)) * FNV_PRIME;
+      empty = false;
+    }
+    return empty ? 0L : h;
+  }
+
+  /**
+   * Hashes the conversation of a message: its normalized subject, and the unordered pair of its
+   * sender and first recipient, so a reply from the recipient hashes like the message it
+   * replies to while unrelated messages with a common subject, such as "Meeting", do not.
+   *
+   * @param subject the subject of the message, or null.
+   * @param from the sender of the message, or null.
+   * @param to the To header of the message, or null.
+   * @return the hash of the conversation, or 0 if the subject is empty once normalized.
+   */
+  public static long hashConversation(String subject, String from, String to) {
+    final long subjectHash = hashSubject(subject);
+    if (0L == subjectHash) {
+      return 0L;
+    }
+    String firstRecipient = "";
+    if (null != to) {
+      final int comma = to.indexOf(',');
+      firstRecipient = Recipients.normalize((comma < 0) ? to : to.substring(0, comma));
+    }
+    final String sender = (null == from) ? "" : Recipients.normalize(from);
+    // The xor makes the pair unordered.
+    final long participants = hash(FNV_OFFSET_BASIS, sender, 0, sender.length())
+        ^ hash(FNV_OFFSET_BASIS, firstRecipient, 0, firstRecipient.length());
+    final long h = (subjectHash ^ participants) * FNV_PRIME;
+    return (0L == h) ? SUBJECT_SEED : h;
+  }
+
+  /**
+   * @param subject the subject of a message.
+   * @return the position of the subject past its leading reply and forward prefixes, such as
+   *     "Re: Fw: ", or 0 if it has none.
+   */
+  private static int skipPrefixes(String subject) {
+    int pos = 0;
+    int stripped = 0;
+    while (true) {
+      while (pos < subject.length() && Character.isWhitespace(subject.charAt(pos))) {
+        pos++;
+      }
+      final int prefixEnd = endOfPrefix(subject, pos);
+      if (prefixEnd < 0) {
+        return (0 == stripped) ? 0 : pos;
+      }
+      pos = prefixEnd;
+      stripped++;
+    }
+  }
+
+  /**
+   * @param subject the subject of a message.
+   * @param pos a position in the subject.
+   * @return the position past the "Re:", "Fw:" or "Fwd:" prefix at the position, or -1.
+   */
+  private static int endOfPrefix(String subject, int pos) {
+    for (String prefix : PREFIXES) {
+      if (subject.regionMatches(true, pos, prefix, 0, prefix.length())) {
+        return pos + prefix.length();
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,351 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.thread;
+
+import java.util.Arrays;
+
+import org.kiji.enronemail.util.LongIntHashMap;
+
+/**
+ * In-memory graph of the replies between messages, keyed by the hashes of their identifiers.
+ *
+ * <p>Every message, and every message it refers to, is a node. The nodes of a thread are
+ * merged by a union-find with path halving and union by rank, and each node also remembers the
+ * message it replies to, which gives its depth in the thread. Messages referred to but missing
+ * from the corpus stay in the graph as placeholders, so two replies to a missing message still
+ * share a thread.</p>
+ *
+ * <p>The graph is made of primitive arrays indexed by node, plus a {@link LongIntHashMap} from
+ * hashes to nodes, about 60 bytes per node once resolved, whatever the size of the headers. Once
+ * every message is added, {@link #resolve()} computes the thread and depth of each node.</p>
+ *
+ * <p>Graphs are not thread-safe.</p>
+ */
+public final class ReplyGraph {
+  /** Parent of the nodes without a known parent message. */
+  private static final int NO_PARENT = -1;
+
+  /** Timestamp of the placeholders of the messages missing from the corpus. */
+  private static final long MISSING = Long.MAX_VALUE;
+
+  /** Node of each hash. */
+  private final LongIntHashMap mNodes;
+  /** Number of nodes. */
+  private int mSize = 0;
+  /** Number of nodes that are messages of the corpus rather than placeholders. */
+  private int mMessages = 0;
+
+  /** Hash of each node. */
+  private long[] mIds;
+  /** Date of each message, or MISSING for the placeholders. */
+  private long[] mTimestamps;
+  /** Message each node replies to, or NO_PARENT. */
+  private int[] mReplyTo;
+  /** Union-find parent of each node, itself for the representative of a thread. */
+  private int[] mUnion;
+  /** Union-find rank of each representative. */
+  private byte[] mRanks;
+
+  /** Whether {@link #resolve()} was called since the last change. */
+  private boolean mResolved = false;
+  /** Once resolved, the first message of each thread, indexed by representative. */
+  private int[] mFirst;
+  /** Once resolved, the depth of each node. */
+  private int[] mDepths;
+  /** Once resolved, the number of messages of each thread, indexed by representative. */
+  private int[] mThreadSizes;
+  /** Once resolved, the number of threads. */
+  private int mThreads = 0;
+
+  /**
+   * Creates an empty graph.
+   *
+   * @param expectedNodes the number of nodes the graph is expected to hold, which only sizes the
+   *     initial arrays.
+   */
+  public ReplyGraph(int expectedNodes) {
+    final int capacity = Math.max(16, expectedNodes);
+    mNodes = new LongIntHashMap(capacity);
+    mIds = new long[capacity];
+    mTimestamps = new long[capacity];
+    mReplyTo = new int[capacity];
+    mUnion = new int[capacity];
+    mRanks = new byte[capacity];
+  }
+
+  /**
+   * Adds a message of the corpus. A message added twice keeps its earliest date.
+   *
+   * @param id the hash of the Message-ID of the message.
+   * @param timestamp the date of the message.
+   * @return the node of the message.
+   */
+  public int addMessage(long id, long timestamp) {
+    final int node = getOrCreate(id);
+    if (MISSING == mTimestamps[node]) {
+      mMessages++;
+    }
+    mTimestamps[node] = Math.min(mTimestamps[node], timestamp);
+    return node;
+  }
+
+  /**
+   * Links a message to its ancestors: each ancestor without a known parent replies to the one
+   * before it, the message replies to the last one, and they all join the thread of the message.
+   *
+   * <p>The headers of a message are more reliable than the references of the replies to it, so
+   * the parent of a message is replaced by the one its own headers name, whereas the parents of
+   * its ancestors are only filled in when unknown.</p>
+   *
+   * @param node the node of the message.
+   * @param ancestors the hashes of the ancestors of the message, oldest first.
+   * @param count the number of ancestors.
+   */
+  public void addAncestors(int node, long[] ancestors, int count) {
+    int previous = NO_PARENT;
+    for (int i = 0; i < count; i++) {
+      final int ancestor = getOrCreate(ancestors[i]);
+      if (ancestor == node) {
+        // A message cannot be its own ancestor; drop the references up to it.
+        previous = NO_PARENT;
+        continue;
+      }
+      if (NO_PARENT != previous && NO_PARENT == mReplyTo[ancestor] && previous != ancestor) {
+        mReplyTo[ancestor] = previous;
+      }
+      union(node, ancestor);
+      previous = ancestor;
+    }
+    if (NO_PARENT != previous) {
+      mReplyTo[node] = previous;
+    }
+  }
+
+  /**
+   * Makes a message reply to a key, such as the hash of a subject, without an actual message.
+   *
+   * @param node the node of the message.
+   * @param key the key, which gets a placeholder node.
+   */
+  public void addReplyTo(int node, long key) {
+    final int parent = getOrCreate(key);
+    if (parent != node) {
+      mReplyTo[node] = parent;
+      union(node, parent);
+    }
+  }
+
+  /**
+   * Merges the thread of a message with the one of a key, such as the hash of a subject, without
+   * changing the depth of the message.
+   *
+   * @param node the node of the message.
+   * @param key the key, which gets a placeholder node.
+   */
+  public void join(int node, long key) {
+    union(node, getOrCreate(key));
+  }
+
+  /**
+   * @param id the hash of an identifier.
+   * @return the node of the identifier, created as a placeholder if needed.
+   */
+  private int getOrCreate(long id) {
+    final int existing = mNodes.get(id, -1);
+    if (existing >= 0) {
+      return existing;
+    }
+    if (mSize == mIds.length) {
+      grow();
+    }
+    final int node = mSize++;
+    mNodes.put(id, node);
+    mIds[node] = id;
+    mTimestamps[node] = MISSING;
+    mReplyTo[node] = NO_PARENT;
+    mUnion[node] = node;
+    mRanks[node] = 0;
+    mResolved = false;
+    return node;
+  }
+
+  /** Grows the arrays of the nodes by half. */
+  private void grow() {
+    final int capacity = mIds.length + (mIds.length >> 1) + 1;
+    mIds = Arrays.copyOf(mIds, capacity);
+    mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+    mReplyTo = Arrays.copyOf(mReplyTo, capacity);
+    mUnion = Arrays.copyOf(mUnion, capacity);
+    mRanks = Arrays.copyOf(mRanks, capacity);
+  }
+
+  /**
+   * @param node a node.
+   * @return the representative of the thread of the node.
+   */
+  private int find(int node) {
+    int current = node;
+    while (mUnion[current] != current) {
+      // Path halving: point every other node of the path to its grandparent.
+      mUnion[current] = mUnion[mUnion[current]];
+      current = mUnion[current];
+    }
+    return current;
+  }
+
+  /**
+   * Merges the threads of two nodes.
+   *
+   * @param a a node.
+   * @param b another node.
+   */
+  private void union(int a, int b) {
+    final int rootA = find(a);
+    final int rootB = find(b);
+    if (rootA == rootB) {
+      return;
+    }
+    mResolved = false;
+    if (mRanks[rootA] < mRanks[rootB]) {
+      mUnion[rootA] = rootB;
+    } else if (mRanks[rootA] > mRanks[rootB]) {
+      mUnion[rootB] = rootA;
+    } else {
+      mUnion[rootB] = rootA;
+      mRanks[rootA]++;
+    }
+  }
+
+  /**
+   * Computes the first message, size and depths of every thread, in time linear in the number
+   * of nodes. Cycles of the reply links, from malformed headers, are cut where they are found.
+   */
+  public void resolve() {
+    mFirst = new int[mSize];
+    mThreadSizes = new int[mSize];
+    Arrays.fill(mFirst, NO_PARENT);
+    mThreads = 0;
+    for (int node = 0; node < mSize; node++) {
+      final int root = find(node);
+      // Fully compress the path, so the lookups after resolving are constant time.
+      mUnion[node] = root;
+      if (MISSING == mTimestamps[node]) {
+        continue;
+      }
+      if (0 == mThreadSizes[root]) {
+        mThreads++;
+      }
+      mThreadSizes[root]++;
+      final int first = mFirst[root];
+      if (NO_PARENT == first || mTimestamps[node] < mTimestamps[first]
+          || (mTimestamps[node] == mTimestamps[first] && mIds[node] < mIds[first])) {
+        mFirst[root] = node;
+      }
+    }
+
+    // Depths: -1 is not yet computed, -2 is on the path being computed.
+    mDepths = new int[mSize];
+    Arrays.fill(mDepths, -1);
+    final int[] path = new int[mSize];
+    for (int node = 0; node < mSize; node++) {
+      int length = 0;
+      int current = node;
+      while (mDepths[current] < 0) {
+        if (-2 == mDepths[current]) {
+          // Cycle: make the last node of the path, which closes it, a root.
+          mReplyTo[path[length - 1]] = NO_PARENT;
+          break;
+        }
+        mDepths[current] = -2;
+        path[length++] = current;
+        if (NO_PARENT == mReplyTo[current]) {
+          break;
+        }
+        current = mReplyTo[current];
+      }
+      while (length > 0) {
+        final int pathNode = path[--length];
+        final int parent = mReplyTo[pathNode];
+        mDepths[pathNode] = (NO_PARENT == parent) ? 0 : mDepths[parent] + 1;
+      }
+    }
+    mResolved = true;
+  }
+
+  /**
+   * @param node the node of a message.
+   * @return the hash of the Message-ID of the first message of the thread of the node.
+   */
+  public long getThreadId(int node) {
+    checkResolved();
+    return mIds[mFirst[mUnion[node]]];
+  }
+
+  /**
+   * @param node the node of a message.
+   * @return the number of reply links between the node and the root of its thread, counting
+   *     the messages missing from the corpus.
+   */
+  public int getDepth(int node) {
+    checkResolved();
+    return mDepths[node];
+  }
+
+  /**
+   * @param node the node of a message.
+   * @return the number of messages of the corpus in the thread of the node.
+   */
+  public int getThreadSize(int node) {
+    checkResolved();
+    return mThreadSizes[mUnion[node]];
+  }
+
+  /** @return the number of threads with at least one message of the corpus, once resolved. */
+  public int getThreadCount() {
+    checkResolved();
+    return mThreads;
+  }
+
+  /** @return the number of messages of the corpus. */
+  public int getMessageCount() {
+    return mMessages;
+  }
+
+  /** @return the number of nodes, including the placeholders of the missing messages. */
+  public int getNodeCount() {
+    return mSize;
+  }
+
+  /** @return an estimate of the bytes held by the arrays of the graph. */
+  public long getAllocatedBytes() {
+    long perNode = 8 + 8 + 4 + 4 + 1;
+    if (mResolved) {
+      perNode += 4 + 4 + 4;
+    }
+    return mNodes.getAllocatedBytes() + mIds.length * perNode;
+  }
+
+  /** Fails if the graph changed since it was last resolved. */
+  private void checkResolved() {
+    if (!mResolved) {
+      throw new IllegalStateException("The reply graph must be resolved first.");
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.thread;
+
+/**
+ * Feeds the headers of messages into a {@link ReplyGraph}.
+ *
+ * <p>A message is linked to the messages named by its References and In-Reply-To headers. Most
+ * messages of the Enron corpus predate these headers, so with the subject fallback enabled, a
+ * message without them joins the conversation of its subject and participants, as hashed by
+ * {@link MessageIds#hashConversation(String, String, String)}: a reply, whose subject starts
+ * with a prefix such as "Re:", gets a depth of one below the conversation, and any other
+ * message roots it.</p>
+ *
+ * <p>Builders are not thread-safe.</p>
+ */
+public final class ThreadBuilder {
+  /** The graph being built. */
+  private final ReplyGraph mGraph;
+  /** Whether messages without reply headers are threaded by subject. */
+  private final boolean mSubjectFallback;
+  /** Hashes of the ancestors of the message being added. */
+  private final long[] mAncestors = new long[MessageIds.MAX_REFERENCES + 1];
+
+  /** Number of messages linked by their reply headers, and by their subject. */
+  private long mLinkedByHeaders = 0;
+  private long mLinkedBySubject = 0;
+
+  /**
+   * @param graph the graph to build.
+   * @param subjectFallback whether messages without reply headers are threaded by subject.
+   */
+  public ThreadBuilder(ReplyGraph graph, boolean subjectFallback) {
+    mGraph = graph;
+    mSubjectFallback = subjectFallback;
+  }
+
+  /**
+   * Adds a message to the graph.
+   *
+   * @param messageId the Message-ID of the message.
+   * @param timestamp the date of the message.
+   * @param references the References header of the message, or null.
+   * @param inReplyTo the In-Reply-To header of the message, or null.
+   * @param from the sender of the message, or null.
+   * @param to the To header of the message, or null.
+   * @param subject the subject of the message, or null.
+   * @return the node of the message in the graph.
+   */
+  public int add(String messageId, long timestamp, String references, String inReplyTo,
+      String from, String to, String subject) {
+    final int node = mGraph.addMessage(MessageIds.hash(messageId), timestamp);
+    final int count = MessageIds.parseAncestors(references, inReplyTo, mAncestors);
+    if (count > 0) {
+      mGraph.addAncestors(node, mAncestors, count);
+      mLinkedByHeaders++;
+    } else if (mSubjectFallback) {
+      final long conversation = MessageIds.hashConversation(subject, from, to);
+      if (0L != conversation) {
+        if (MessageIds.isReply(subject)) {
+          mGraph.addReplyTo(node, conversation);
+        } else {
+          mGraph.join(node, conversation);
+        }
+        mLinkedBySubject++;
+      }
+    }
+    return node;
+  }
+
+  /** @return the graph being built. */
+  public ReplyGraph getGraph() {
+    return mGraph;
+  }
+
+  /** @return the number of messages linked by their References or In-Reply-To headers. */
+  public long getLinkedByHeaders() {
+    return mLinkedByHeaders;
+  }
+
+  /** @return the number of messages threaded by their subject. */
+  public long getLinkedBySubject() {
+    return mLinkedBySubject;
+  }
+}
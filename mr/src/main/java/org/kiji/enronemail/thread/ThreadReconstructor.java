@@ -0,0 +1,252 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.thread;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.kiji.common.flags.Flag;
+import org.kiji.common.flags.FlagParser;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiRowScanner;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiURI;
+
+/**
+ * Reconstructs the threads of the emails table, and writes the thread of each message to
+ * "features:thread_id" and its depth in the thread to "features:thread_depth", with the
+ * timestamp of the message.
+ *
+ * <p>The table is scanned once, reading only the reply headers, the subject and the recipients
+ * of the messages into a {@link ReplyGraph}. Threads can only be told once every message is
+ * known, as a late reply may merge two threads, so the features are written from memory after
+ * the scan rather than during it. The graph holds primitive arrays only: about 60 bytes per
+ * message and per missing message referred to, plus 16 bytes per message to rebuild its row key
+ * from an interned sender and its timestamp, so the whole corpus fits in a few tens of MB.</p>
+ *
+ * <p>The thread id is the 64-bit hash of the Message-ID of the first message of the thread, as
+ * computed by {@link MessageIds#hash(CharSequence)}.</p>
+ */
+public class ThreadReconstructor {
+  @Flag(name = "expected-messages",
+      usage = "Number of messages the table is expected to hold, to size the graph up front.")
+  private int mExpectedMessages = 600000;
+
+  @Flag(name = "subject-fallback",
+      usage = "Thread the messages without reply headers by subject and participants.")
+  private boolean mSubjectFallback = true;
+
+  @Flag(name = "dry-run", usage = "Reconstruct the threads without writing them.")
+  private boolean mDryRun = false;
+
+  /** Distinct senders of the messages, and the index of each sender. */
+  private final List<String> mSenders = Lists.newArrayList();
+  private final Map<String, Integer> mSenderIndexes = Maps.newHashMap();
+
+  /** Per message, in scan order: its node in the graph, sender index and timestamp. */
+  private int[] mMessageNodes;
+  private int[] mMessageSenders;
+  private long[] mMessageTimestamps;
+  private int mMessageCount = 0;
+
+  /** Rows skipped because they miss their Message-ID. */
+  private long mRowsWithoutId = 0;
+
+  /**
+   * @return the columns read by the scan.
+   */
+  public static KijiDataRequest buildDataRequest() {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1)
+        .add("info", "mid")
+        .add("info", "in_reply_to")
+        .add("info", "references")
+        .add("info", "to")
+        .add("info", "subject");
+    return builder.build();
+  }
+
+  /**
+   * Scans the table into the graph.
+   *
+   * @param table the emails table.
+   * @param builder the builder of the graph.
+   * @throws IOException on error.
+   */
+  private void scan(KijiTable table, ThreadBuilder builder) throws IOException {
+    final KijiTableReader reader = table.getReaderFactory().openTableReader();
+    try {
+      final KijiRowScanner scanner = reader.getScanner(buildDataRequest());
+      try {
+        for (KijiRowData row : scanner) {
+          if (!row.containsColumn("info", "mid")) {
+            mRowsWithoutId++;
+            continue;
+          }
+          // Rows are keyed by (from, timestamp): the key gives both without reading them.
+          final EntityId eid = row.getEntityId();
+          final String from = eid.getComponentByIndex(0);
+          final Long timestamp = eid.getComponentByIndex(1);
+          final int node = builder.add(
+              getString(row, "mid"), timestamp, getString(row, "references"),
+              getString(row, "in_reply_to"), from, getString(row, "to"),
+              getString(row, "subject"));
+          addMessage(node, from, timestamp);
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @param row a row of the scan.
+   * @param qualifier the qualifier of a string column of the info family.
+   * @return the latest value of the column, or null.
+   * @throws IOException on error.
+   */
+  private static String getString(KijiRowData row, String qualifier) throws IOException {
+    if (!row.containsColumn("info", qualifier)) {
+      return null;
+    }
+    final CharSequence value = row.getMostRecentValue("info", qualifier);
+    return value.toString();
+  }
+
+  /**
+   * Remembers a scanned message, to write its thread once the graph is resolved.
+   *
+   * @param node the node of the message.
+   * @param from the sender of the message.
+   * @param timestamp the timestamp of the message.
+   */
+  private void addMessage(int node, String from, long timestamp) {
+    if (mMessageCount == mMessageNodes.length) {
+      final int capacity = mMessageCount + (mMessageCount >> 1) + 1;
+      mMessageNodes = Arrays.copyOf(mMessageNodes, capacity);
+      mMessageSenders = Arrays.copyOf(mMessageSenders, capacity);
+      mMessageTimestamps = Arrays.copyOf(mMessageTimestamps, capacity);
+    }
+    Integer sender = mSenderIndexes.get(from);
+    if (null == sender) {
+      sender = mSenders.size();
+      mSenders.add(from);
+      mSenderIndexes.put(from, sender);
+    }
+    mMessageNodes[mMessageCount] = node;
+    mMessageSenders[mMessageCount] = sender;
+    mMessageTimestamps[mMessageCount] = timestamp;
+    mMessageCount++;
+  }
+
+  /**
+   * Writes the thread features of every scanned message.
+   *
+   * @param table the emails table.
+   * @param graph the resolved graph.
+   * @throws IOException on error.
+   */
+  private void write(KijiTable table, ReplyGraph graph) throws IOException {
+    final KijiBufferedWriter writer = table.getWriterFactory().openBufferedWriter();
+    try {
+      for (int i = 0; i < mMessageCount; i++) {
+        final int node = mMessageNodes[i];
+        final long timestamp = mMessageTimestamps[i];
+        final EntityId eid = table.getEntityId(mSenders.get(mMessageSenders[i]), timestamp);
+        writer.put(eid, "features", "thread_id", timestamp, graph.getThreadId(node));
+        writer.put(eid, "features", "thread_depth", timestamp, graph.getDepth(node));
+      }
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+  }
+
+  public static void main(String[] args) {
+    System.exit(new ThreadReconstructor().run(args));
+  }
+
+  private int run(String[] args) {
+    final List<String> nonFlagArgs = FlagParser.init(this, args);
+    if (null == nonFlagArgs) {
+      // The user asked for --help.
+      return 0;
+    }
+    if (nonFlagArgs.size() != 1) {
+      System.err.println("Usage: ThreadReconstructor [flags] <emails table URI>");
+      return 1;
+    }
+    final int expected = Math.max(16, mExpectedMessages);
+    mMessageNodes = new int[expected];
+    mMessageSenders = new int[expected];
+    mMessageTimestamps = new long[expected];
+
+    try {
+      final KijiURI tableURI = KijiURI.newBuilder(nonFlagArgs.get(0)).build();
+      final Kiji kiji = Kiji.Factory.open(tableURI);
+      try {
+        final KijiTable table = kiji.openTable(tableURI.getTable());
+        try {
+          final long startNanos = System.nanoTime();
+          // References to missing messages add placeholders: leave some room for them.
+          final ThreadBuilder builder =
+              new ThreadBuilder(new ReplyGraph(expected + expected / 4), mSubjectFallback);
+          scan(table, builder);
+          final ReplyGraph graph = builder.getGraph();
+          graph.resolve();
+          final long scanMillis = (System.nanoTime() - startNanos) / 1000000;
+          if (!mDryRun) {
+            write(table, graph);
+          }
+          final long millis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+          System.err.println(String.format(
+              "Threaded %d messages into %d threads in %d ms (%d ms scanning); "
+              + "%d linked by headers, %d by subject, %d placeholders, %d rows without "
+              + "Message-ID; graph of %d KB.",
+              mMessageCount, graph.getThreadCount(), millis, scanMillis,
+              builder.getLinkedByHeaders(), builder.getLinkedBySubject(),
+              graph.getNodeCount() - graph.getMessageCount(), mRowsWithoutId,
+              graph.getAllocatedBytes() / 1024));
+        } finally {
+          table.release();
+        }
+      } finally {
+        kiji.release();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 1;
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive longs to primitive ints.
+ *
+ * <p>The keys and values live in two parallel arrays, probed linearly, so an entry costs about
+ * 12 bytes at full load and 24 bytes right after the map grows, instead of the two boxed
+ * objects and the entry of a {@link java.util.HashMap}. Entries cannot be removed. The key 0
+ * marks the free slots, and is stored apart.</p>
+ *
+ * <p>Maps are not thread-safe.</p>
+ */
+public final class LongIntHashMap {
+  /** Key of the free slots. */
+  private static final long FREE = 0L;
+
+  /** The map grows once it is more than three quarters full. */
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** Keys of the slots, FREE for the free slots. The length is a power of two. */
+  private long[] mKeys;
+  /** Values of the slots. */
+  private int[] mValues;
+  /** Number of entries in the slots, excluding the entry of the key 0. */
+  private int mSlotsUsed = 0;
+  /** Number of entries the slots hold before growing. */
+  private int mThreshold;
+
+  /** Whether the map holds the key 0, and its value. */
+  private boolean mHasFreeKey = false;
+  private int mFreeKeyValue = 0;
+
+  /** Creates an empty map. */
+  public LongIntHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map able to hold some entries without growing.
+   *
+   * @param expectedSize the number of entries the map is expected to hold.
+   */
+  public LongIntHashMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize && capacity < (1 << 30)) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * @param key the key to look up.
+   * @param missing the value to return if the map does not hold the key.
+   * @return the value of the key, or the missing value.
+   */
+  public int get(long key, int missing) {
+    if (FREE == key) {
+      return mHasFreeKey ? mFreeKeyValue : missing;
+    }
+    final int mask = mKeys.length - 1;
+    int slot = mix(key) & mask;
+    while (true) {
+      final long slotKey = mKeys[slot];
+      if (slotKey == key) {
+        return mValues[slot];
+      } else if (FREE == slotKey) {
+        return missing;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * @param key the key to look up.
+   * @return whether the map holds the key.
+   */
+  public boolean containsKey(long key) {
+    if (FREE == key) {
+      return mHasFreeKey;
+    }
+    final int mask = mKeys.length - 1;
+    int slot = mix(key) & mask;
+    while (true) {
+      final long slotKey = mKeys[slot];
+      if (slotKey == key) {
+        return true;
+      } else if (FREE == slotKey) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Maps a key to a value, replacing its previous value.
+   *
+   * @param key the key.
+   * @param value the value.
+   */
+  public void put(long key, int value) {
+    if (FREE == key) {
+      mHasFreeKey = true;
+      mFreeKeyValue = value;
+      return;
+    }
+    final int mask = mKeys.length - 1;
+    int slot = mix(key) & mask;
+    while (true) {
+      final long slotKey = mKeys[slot];
+      if (slotKey == key) {
+        mValues[slot] = value;
+        return;
+      } else if (FREE == slotKey) {
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        if (++mSlotsUsed > mThreshold) {
+          rehash(mKeys.length << 1);
+        }
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** @return the number of entries of the map. */
+  public int size() {
+    return mSlotsUsed + (mHasFreeKey ? 1 : 0);
+  }
+
+  /** Removes every entry, keeping the slots allocated. */
+  public void clear() {
+    Arrays.fill(mKeys, FREE);
+    mSlotsUsed = 0;
+    mHasFreeKey = false;
+  }
+
+  /** @return an estimate of the bytes held by the arrays of the map. */
+  public long getAllocatedBytes() {
+    return (long) mKeys.length * (8 + 4);
+  }
+
+  /**
+   * Allocates empty slots.
+   *
+   * @param capacity the number of slots, a power of two.
+   */
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    mValues = new int[capacity];
+    mThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Moves the entries to a larger array of slots.
+   *
+   * @param capacity the new number of slots, a power of two.
+   */
+  private void rehash(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalStateException("Map is full: " + mSlotsUsed + " entries.");
+    }
+    final long[] keys = mKeys;
+    final int[] values = mValues;
+    allocate(capacity);
+    final int mask = capacity - 1;
+    for (int i = 0; i < keys.length; i++) {
+      final long key = keys[i];
+      if (FREE != key) {
+        int slot = mix(key) & mask;
+        while (FREE != mKeys[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = values[i];
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of a key, with the finalizer of MurmurHash3, so keys that differ only in
+   * their high bits do not collide in the low bits used to pick a slot.
+   *
+   * @param key the key.
+   * @return the mixed bits of the key.
+   */
+  private static int mix(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb93fe53a87cdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
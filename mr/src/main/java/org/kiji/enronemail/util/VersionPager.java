@@ -0,0 +1,242 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.util.KijiPager;
+
+/**
+ * Streams the versions of one column of a row, a page at a time, holding at most about a
+ * configured number of bytes of values in memory.
+ *
+ * <p>Columns with unbounded versions, like "sent_messages" in the employee table, can hold the
+ * whole history of a sender. Reading them in one {@link KijiRowData} takes memory proportional to
+ * that history; this pager keeps it flat. Pages start small and grow, from the observed size of
+ * the values, up to the largest page that fits in the byte budget and in the page size of the
+ * data request. The column must be requested with a page size, see
+ * {@link #addPagedColumn(KijiDataRequestBuilder, String, String, Configuration)}.</p>
+ *
+ * <pre>
+ *   final VersionPager&lt;CharSequence&gt; pager =
+ *       VersionPager.open(row, "sent_messages", "body", getConf());
+ *   try {
+ *     while (pager.next()) {
+ *       process(pager.getTimestamp(), pager.getValue());
+ *     }
+ *   } finally {
+ *     pager.close();
+ *   }
+ * </pre>
+ *
+ * @param <T> the type of the values of the column.
+ */
+public final class VersionPager<T> implements Closeable {
+  /** Configuration key of the largest number of versions read at a time. */
+  public static final String CONF_PAGE_SIZE = "org.kiji.enronemail.paging.page.size";
+
+  /** Default largest number of versions read at a time. */
+  public static final int DEFAULT_PAGE_SIZE = 1000;
+
+  /** Configuration key of the approximate largest number of bytes of values read at a time. */
+  public static final String CONF_MAX_PAGE_BYTES = "org.kiji.enronemail.paging.max.page.bytes";
+
+  /** Default approximate largest number of bytes of values read at a time. */
+  public static final long DEFAULT_MAX_PAGE_BYTES = 8L * 1024 * 1024;
+
+  /** Number of versions of the first page, before the size of the values is known. */
+  private static final int FIRST_PAGE_SIZE = 16;
+
+  /** Estimated size of a value of unknown type, in bytes. */
+  private static final int UNKNOWN_VALUE_BYTES = 64;
+
+  private final KijiPager mPager;
+  private final String mFamily;
+  private final String mQualifier;
+  private final int mMaxPageSize;
+  private final long mMaxPageBytes;
+
+  /** Versions of the current page not iterated yet, or null before the first page. */
+  private Iterator<Map.Entry<Long, T>> mPage = null;
+  private long mTimestamp;
+  private T mValue;
+
+  /** Size of the next page. */
+  private int mPageSize;
+  private long mPagesRead = 0;
+  private long mVersionsRead = 0;
+  private long mBytesRead = 0;
+
+  /**
+   * Opens a pager on a column.
+   *
+   * @param row the row, read with the column paged.
+   * @param family the column family.
+   * @param qualifier the column qualifier.
+   * @param maxPageSize the largest number of versions read at a time.
+   * @param maxPageBytes the approximate largest number of bytes of values read at a time.
+   * @throws IOException if the pager cannot be opened.
+   */
+  public VersionPager(KijiRowData row, String family, String qualifier, int maxPageSize,
+      long maxPageBytes) throws IOException {
+    Preconditions.checkArgument(maxPageSize > 0, "Invalid page size: %s", maxPageSize);
+    Preconditions.checkArgument(maxPageBytes > 0, "Invalid page bytes: %s", maxPageBytes);
+    mPager = row.getPager(family, qualifier);
+    mFamily = family;
+    mQualifier = qualifier;
+    mMaxPageSize = maxPageSize;
+    mMaxPageBytes = maxPageBytes;
+    mPageSize = Math.min(FIRST_PAGE_SIZE, maxPageSize);
+  }
+
+  /**
+   * Opens a pager on a column, sized by {@link #CONF_PAGE_SIZE} and {@link #CONF_MAX_PAGE_BYTES}.
+   *
+   * @param row the row, read with the column paged.
+   * @param family the column family.
+   * @param qualifier the column qualifier.
+   * @param conf the configuration of the job.
+   * @param <T> the type of the values of the column.
+   * @return the pager.
+   * @throws IOException if the pager cannot be opened.
+   */
+  public static <T> VersionPager<T> open(KijiRowData row, String family, String qualifier,
+      Configuration conf) throws IOException {
+    return new VersionPager<T>(row, family, qualifier, getPageSize(conf),
+        conf.getLong(CONF_MAX_PAGE_BYTES, DEFAULT_MAX_PAGE_BYTES));
+  }
+
+  /**
+   * Adds every version of a column, paged by {@link #CONF_PAGE_SIZE}, to a data request.
+   *
+   * @param builder the builder of the data request.
+   * @param family the column family.
+   * @param qualifier the column qualifier.
+   * @param conf the configuration of the job.
+   */
+  public static void addPagedColumn(KijiDataRequestBuilder builder, String family,
+      String qualifier, Configuration conf) {
+    builder.newColumnsDef()
+        .withMaxVersions(Integer.MAX_VALUE)
+        .withPageSize(getPageSize(conf))
+        .add(family, qualifier);
+  }
+
+  /**
+   * @param conf the configuration of the job.
+   * @return the largest number of versions read at a time.
+   */
+  private static int getPageSize(Configuration conf) {
+    return Math.max(1, conf.getInt(CONF_PAGE_SIZE, DEFAULT_PAGE_SIZE));
+  }
+
+  /**
+   * Moves to the next version, most recent first.
+   *
+   * @return whether there is a next version.
+   * @throws IOException if a page cannot be read.
+   */
+  public boolean next() throws IOException {
+    while (null == mPage || !mPage.hasNext()) {
+      if (!mPager.hasNext()) {
+        mValue = null;
+        return false;
+      }
+      final KijiRowData page = mPager.next(mPageSize);
+      mPagesRead++;
+      final NavigableMap<Long, T> versions = page.getValues(mFamily, mQualifier);
+      for (T value : versions.values()) {
+        mBytesRead += estimateBytes(value);
+      }
+      mVersionsRead += versions.size();
+      mPage = versions.entrySet().iterator();
+      resizePage();
+    }
+    final Map.Entry<Long, T> version = mPage.next();
+    mTimestamp = version.getKey();
+    mValue = version.getValue();
+    return true;
+  }
+
+  /** Sizes the next page to the byte budget, from the mean size of the values read so far. */
+  private void resizePage() {
+    if (0 == mVersionsRead) {
+      mPageSize = mMaxPageSize;
+      return;
+    }
+    final long meanBytes = Math.max(1, mBytesRead / mVersionsRead);
+    mPageSize = (int) Math.max(1, Math.min(mMaxPageSize, mMaxPageBytes / meanBytes));
+  }
+
+  /** @return the timestamp of the current version. */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  /** @return the value of the current version. */
+  public T getValue() {
+    return mValue;
+  }
+
+  /** @return the number of pages read so far. */
+  public long getPagesRead() {
+    return mPagesRead;
+  }
+
+  /** @return the number of versions read so far. */
+  public long getVersionsRead() {
+    return mVersionsRead;
+  }
+
+  /**
+   * Estimates the size of a value in memory.
+   *
+   * @param value a value of a column.
+   * @return its approximate size, in bytes.
+   */
+  static long estimateBytes(Object value) {
+    if (value instanceof CharSequence) {
+      return 40 + 2L * ((CharSequence) value).length();
+    } else if (value instanceof byte[]) {
+      return 16 + ((byte[]) value).length;
+    } else if (value instanceof ByteBuffer) {
+      return 48 + ((ByteBuffer) value).remaining();
+    }
+    return UNKNOWN_VALUE_BYTES;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    mPage = null;
+    mValue = null;
+    mPager.close();
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class TestEmailDateParser {
+  /** 14 May 2001 16:39:00 PDT. */
+  private static final long MAY_14 =
+      new DateTime(2001, 5, 14, 16, 39, 0, DateTimeZone.forOffsetHours(-7)).getMillis();
+
+  @Test
+  public void testEnronLayout() throws Exception {
+    assertEquals(MAY_14, EmailDateParser.parseFast("Mon, 14 May 2001 16:39:00 -0700 (PDT)"));
+    assertEquals(MAY_14, EmailDateParser.parse("Mon, 14 May 2001 16:39:00 -0700 (PDT)"));
+    assertEquals(MAY_14 + 3600 * 1000L,
+        EmailDateParser.parse("Mon, 14 May 2001 16:39:00 -0800 (PST)"));
+  }
+
+  @Test
+  public void testOneDigitDay() throws Exception {
+    assertEquals(
+        new DateTime(2001, 5, 1, 9, 5, 7, DateTimeZone.forOffsetHours(-7)).getMillis(),
+        EmailDateParser.parseFast("Tue, 1 May 2001 09:05:07 -0700 (PDT)"));
+  }
+
+  @Test
+  public void testNonDigitDay() {
+    assertEquals(Long.MIN_VALUE,
+        EmailDateParser.parseFast("Mon, 1a May 2001 16:39:00 -0700 (PDT)"));
+    assertEquals(Long.MIN_VALUE,
+        EmailDateParser.parseFast("Mon, a4 May 2001 16:39:00 -0700 (PDT)"));
+    assertMalformed("Mon, 1a May 2001 16:39:00 -0700 (PDT)");
+  }
+
+  @Test
+  public void testOutOfRangeFields() {
+    assertEquals(Long.MIN_VALUE,
+        EmailDateParser.parseFast("Mon, 32 May 2001 16:39:00 -0700 (PDT)"));
+    assertEquals(Long.MIN_VALUE,
+        EmailDateParser.parseFast("Mon, 14 May 2001 24:39:00 -0700 (PDT)"));
+    assertEquals(Long.MIN_VALUE,
+        EmailDateParser.parseFast("Mon, 14 Mai 2001 16:39:00 -0700 (PDT)"));
+  }
+
+  @Test
+  public void testFallbackLayouts() throws Exception {
+    assertEquals(MAY_14, EmailDateParser.parse("14 May 2001 16:39:00 -0700"));
+    assertEquals(MAY_14, EmailDateParser.parse("Mon, 14 May 2001 16:39:00 PDT"));
+    assertEquals(MAY_14, EmailDateParser.parse("Mon, 14 May 01 16:39:00 -0700"));
+    assertEquals(MAY_14, EmailDateParser.parse("Mon,  14 May 2001  16:39 -0700 (PDT)"));
+  }
+
+  @Test
+  public void testUnparseable() {
+    assertMalformed("yesterday");
+    assertMalformed("Mon, 14 May 2001");
+  }
+
+  /**
+   * @param date a date that cannot be parsed.
+   */
+  private static void assertMalformed(String date) {
+    try {
+      EmailDateParser.parse(date);
+      fail("Parsed " + date);
+    } catch (MalformedDateException mde) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+public class TestEmailParser {
+  private final EmailParser mParser = new EmailParser();
+
+  @Test
+  public void testHeaders() {
+    final EmailMessage email = mParser.parse(
+        "Message-ID: <1.JavaMail@thyme>\n"
+        + "From: a@enron.com\n"
+        + "X-Unknown: skipped\n"
+        + "Subject: Hello\n"
+        + "\tworld\n"
+        + "\n"
+        + "Body\n");
+    assertEquals("<1.JavaMail@thyme>", email.getHeader(EmailHeader.MESSAGE_ID));
+    assertEquals("a@enron.com", email.getHeader(EmailHeader.FROM));
+    assertEquals("Hello world", email.getHeader(EmailHeader.SUBJECT));
+    assertNull(email.getHeader(EmailHeader.TO));
+  }
+
+  @Test
+  public void testFirstNonEmptyOccurrence() {
+    final EmailMessage email =
+        mParser.parse("To: \nTo: b@enron.com\nTo: c@enron.com\n\nBody\n");
+    assertEquals("b@enron.com", email.getHeader(EmailHeader.TO));
+  }
+
+  @Test
+  public void testRepeatedReferences() {
+    final EmailMessage email =
+        mParser.parse("References: <1@a>\n <2@a>\nReferences: <3@a>\n\nBody\n");
+    assertEquals("<1@a> <2@a> <3@a>", email.getHeader(EmailHeader.REFERENCES));
+  }
+
+  @Test
+  public void testBodyNormalization() {
+    final EmailMessage email =
+        mParser.parse("From: a@enron.com\r\n\r\nDon't stop -- now!\r\n\r\nOK");
+    assertEquals(" Dont stop now OK ", email.getBody());
+    assertEquals("", mParser.parse("From: a@enron.com\n\n\n\n").getBody());
+  }
+
+  @Test
+  public void testQuoteStart() {
+    final EmailMessage email = mParser.parse("From: a@enron.com\n\n"
+        + "See the original message below.\n"
+        + "  -----Original Message-----\n"
+        + "From: b@enron.com\n");
+    assertEquals(" See the original message below ",
+        email.getBody().substring(0, email.getQuoteStart()));
+  }
+
+  @Test
+  public void testForwardedQuoteStart() {
+    final EmailMessage email = mParser.parse("From: a@enron.com\n\n"
+        + "FYI\n"
+        + "---------------------- Forwarded by Phillip K Allen/HOU/ECT on 05/14/2001\n"
+        + "Text\n");
+    assertEquals(" FYI ", email.getBody().substring(0, email.getQuoteStart()));
+  }
+
+  @Test
+  public void testNoQuoteStart() {
+    assertEquals(-1, mParser.parse("From: a@enron.com\n\n"
+        + "I was forwarded by Bob the original message.\n"
+        + "Inline -----Original Message----- is not a separator.\n").getQuoteStart());
+  }
+
+  @Test
+  public void testBytesLikeText() {
+    final String message = "From: a@enron.com\nSubject: caf\u00e9\n\n"
+        + "Caf\u00e9 time\n -----Original Message-----\nQuoted\n";
+    final EmailMessage text = mParser.parse(message);
+    final EmailMessage bytes = mParser.parse(ByteBuffer.wrap(message.getBytes(Charsets.UTF_8)));
+    assertEquals(text.getHeader(EmailHeader.SUBJECT), bytes.getHeader(EmailHeader.SUBJECT));
+    assertEquals("Caf time", text.getBody().substring(0, text.getQuoteStart()).trim());
+    assertEquals(text.getQuoteStart(), bytes.getQuoteStart());
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.enronemail.bulkimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestImportManifest {
+  @Rule
+  public TemporaryFolder mTempDir = new TemporaryFolder();
+
+  @Test
+  public void testRecordsFilesAsRead() throws IOException {
+    final File message = write("message", "first", 1000000L);
+    final ImportManifest manifest = new ImportManifest(mTempDir.newFile("manifest"));
+    try {
+      final ImportManifest.Entry entry = new ImportManifest.Entry(message);
+      // Rewritten between the read and the flush of its batch.
+      write("message", "second version", 2000000L);
+      manifest.record(Collections.singletonList(entry));
+      assertFalse(manifest.contains(message));
+
+      manifest.record(Collections.singletonList(new ImportManifest.Entry(message)));
+      assertTrue(manifest.contains(message));
+    } finally {
+      manifest.close();
+    }
+  }
+
+  @Test
+  public void testReload() throws IOException {
+    final File message = write("message", "first", 1000000L);
+    final File file = mTempDir.newFile("manifest");
+    final ImportManifest manifest = new ImportManifest(file);
+    manifest.record(Collections.singletonList(new ImportManifest.Entry(message)));
+    manifest.close();
+
+    final ImportManifest reloaded = new ImportManifest(file);
+    try {
+      assertEquals(1, reloaded.size());
+      assertTrue(reloaded.contains(message));
+      write("message", "first", 3000000L);
+      assertFalse(reloaded.contains(message));
+    } finally {
+      reloaded.close();
+    }
+  }
+
+  /**
+   * @param name the name of the file.
+   * @param content the content of the file.
+   * @param modified the modification time of the file.
+   * @return the file.
+   * @throws IOException on error.
+   */
+  private File write(String name, String content, long modified) throws IOException {
+    final File file = new File(mTempDir.getRoot(), name);
+    Files.write(content, file, Charsets.UTF_8);
+    assertTrue(file.setLastModified(modified));
+    return file;
+  }
+}